@@ -71,6 +71,19 @@
 
 <xsl:template match="stmt">
   <tr>
+    <xsl:if test="@node!=''">
+      <td bgcolor="f7f7f7">
+	<nobr>
+	  <xsl:text disable-output-escaping="yes"><![CDATA[&nbsp;]]></xsl:text>
+	  <xsl:value-of select="@change"/>
+	  #<xsl:value-of select="@node"/>
+	  <xsl:if test="@previous!=''">
+	    after #<xsl:value-of select="@previous"/>
+	  </xsl:if>
+	  <xsl:text disable-output-escaping="yes"><![CDATA[&nbsp;]]></xsl:text>
+	</nobr>
+      </td>
+    </xsl:if>
     <xsl:apply-templates select="imc"/>
   </tr>
 </xsl:template>
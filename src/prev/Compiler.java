@@ -10,6 +10,7 @@ import prev.data.lin.LinCodeChunk;
 import prev.phase.abstr.AbsLogger;
 import prev.phase.abstr.Abstr;
 import prev.phase.all.FinalPhase;
+import prev.phase.all.StreamingBackend;
 import prev.phase.asmgen.AsmGen;
 import prev.phase.imcgen.CodeGenerator;
 import prev.phase.imcgen.ImcGen;
@@ -51,6 +52,12 @@ public class Compiler {
 	/* Total number of registers (not including FP, SP and HP) */
 	public static int numberOfRegisters = 64;
 
+	/* Number of frames optimised at the same time */
+	public static int numberOfJobs = 1;
+
+	/* Number of loop bodies executed by each iteration of an unrolled loop */
+	public static int loopUnrollingFactor = 4;
+
 	public static boolean printInterpreterStatistics = false;
 
 	/** Logging level of the compiler. */
@@ -183,6 +190,72 @@ public class Compiler {
 							continue;
 						}
 					}
+					if (args[argc].matches("--control-flow-simplification=.*")) {
+						if (cmdLine.get("--control-flow-simplification") == null) {
+							cmdLine.put("--control-flow-simplification", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--sparse-conditional-constant-propagation=.*")) {
+						if (cmdLine.get("--sparse-conditional-constant-propagation") == null) {
+							cmdLine.put("--sparse-conditional-constant-propagation", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--global-value-numbering=.*")) {
+						if (cmdLine.get("--global-value-numbering") == null) {
+							cmdLine.put("--global-value-numbering", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--tail-recursion-elimination=.*")) {
+						if (cmdLine.get("--tail-recursion-elimination") == null) {
+							cmdLine.put("--tail-recursion-elimination", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--inlining=.*")) {
+						if (cmdLine.get("--inlining") == null) {
+							cmdLine.put("--inlining", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--tail-calls=.*")) {
+						if (cmdLine.get("--tail-calls") == null) {
+							cmdLine.put("--tail-calls", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--loop-unrolling=.*")) {
+						if (cmdLine.get("--loop-unrolling") == null) {
+							cmdLine.put("--loop-unrolling", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--loop-unrolling-factor=\\d+")) {
+						if (cmdLine.get("--loop-unrolling-factor") == null) {
+							cmdLine.put("--loop-unrolling-factor", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--lazy-code-motion=.*")) {
+						if (cmdLine.get("--lazy-code-motion") == null) {
+							cmdLine.put("--lazy-code-motion", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--jobs=\\d+")) {
+						if (cmdLine.get("--jobs") == null) {
+							cmdLine.put("--jobs", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (args[argc].matches("--streaming-backend=.*")) {
+						if (cmdLine.get("--streaming-backend") == null) {
+							cmdLine.put("--streaming-backend", args[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
 					if (args[argc].matches("--interpreter-statistics")) {
 						if (cmdLine.get("--interpreter-statistics") == null) {
 							printInterpreterStatistics = true;
@@ -225,6 +298,20 @@ public class Compiler {
 				Report.info("No number of registers set, using " + numberOfRegisters);
 			}
 
+			String numberOfJobsData = Compiler.cmdLineArgValue("--jobs");
+			if (numberOfJobsData != null) {
+				numberOfJobs = Integer.parseInt(numberOfJobsData);
+				if (numberOfJobs < 1)
+					throw new Report.Error("Number of jobs must be at least 1.");
+			}
+
+			String loopUnrollingFactorData = Compiler.cmdLineArgValue("--loop-unrolling-factor");
+			if (loopUnrollingFactorData != null) {
+				loopUnrollingFactor = Integer.parseInt(loopUnrollingFactorData);
+				if (loopUnrollingFactor < 1)
+					throw new Report.Error("Loop unrolling factor must be at least 1.");
+			}
+
 			// Compilation process carried out phase by phase.
 			while (true) {
 
@@ -280,6 +367,7 @@ public class Compiler {
 					Memory.frames.lock();
 					Memory.accesses.lock();
 					Memory.strings.lock();
+					Memory.isAddressTaken.lock();
 					AbsLogger logger = new AbsLogger(memory.logger);
 					logger.addSubvisitor(new SemLogger(memory.logger));
 					logger.addSubvisitor(new MemLogger(memory.logger));
@@ -322,6 +410,21 @@ public class Compiler {
 						break;
 				}
 
+				// Streaming back end, which compiles and writes the program one
+				// function at a time. It can only be used if the whole program
+				// is compiled and none of the back end phases is logged.
+				if (Boolean.parseBoolean(Compiler.cmdLineArgValue("--streaming-backend"))) {
+					String loggedPhase = Compiler.cmdLineArgValue("--logged-phase");
+					if (runInterpreter || !Compiler.cmdLineArgValue("--target-phase").equals("all")) {
+						Report.warning("Streaming back end only compiles whole programs, ignored.");
+					} else if (loggedPhase != null && loggedPhase.matches("optimisation|asmgen|livean|regall|all")) {
+						Report.warning("Streaming back end does not log its phases, ignored.");
+					} else {
+						new StreamingBackend().run();
+						break;
+					}
+				}
+
 				// Optimize generated intermediate code. The optimizer will
 				// modify code chunks in ImcLin.codeChunks Vector.
 				try (Optimisation optimisation = new Optimisation()) {
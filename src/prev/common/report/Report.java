@@ -42,7 +42,7 @@ public class Report {
 	 * 
 	 * @param message The debug message to be printed.
 	 */
-	public static void debug(String message) {
+	public static synchronized void debug(String message) {
 		numOfDebugs++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.DEBUG.getValue())
 			return;
@@ -57,7 +57,7 @@ public class Report {
 	 * @param location Location the debug message is related to.
 	 * @param message  The debug message to be printed.
 	 */
-	public static void debug(Locatable location, String message) {
+	public static synchronized void debug(Locatable location, String message) {
 		numOfDebugs++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.DEBUG.getValue())
 			return;
@@ -83,7 +83,7 @@ public class Report {
 	 * 
 	 * @param message The information message to be printed.
 	 */
-	public static void info(String message) {
+	public static synchronized void info(String message) {
 		numOfInfos++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.INFO.getValue())
 			return;
@@ -98,7 +98,7 @@ public class Report {
 	 * @param location Location the information message is related to.
 	 * @param message  The information message to be printed.
 	 */
-	public static void info(Locatable location, String message) {
+	public static synchronized void info(Locatable location, String message) {
 		numOfInfos++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.INFO.getValue())
 			return;
@@ -124,7 +124,7 @@ public class Report {
 	 * 
 	 * @param message The warning message.
 	 */
-	public static void warning(String message) {
+	public static synchronized void warning(String message) {
 		numOfWarnings++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.WARNING.getValue())
 			return;
@@ -138,7 +138,7 @@ public class Report {
 	 * @param location Location the warning message is related to.
 	 * @param message  The warning message to be printed.
 	 */
-	public static void warning(Locatable location, String message) {
+	public static synchronized void warning(Locatable location, String message) {
 		numOfWarnings++;
 		if (Compiler.loggingLevel.getValue() > LoggingLevel.WARNING.getValue())
 			return;
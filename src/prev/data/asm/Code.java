@@ -35,6 +35,15 @@ public class Code {
 	 */
 	public long tempSize = 0;
 
+	/**
+	 * Jumps to other functions that replace calls in tail position.
+	 * 
+	 * The frame of the function must be torn down right before each of these
+	 * jumps, so the called function returns directly to the caller of this
+	 * function.
+	 */
+	public final HashSet<AsmInstr> tailCalls = new HashSet<AsmInstr>();
+
 	/**
 	 * Creates a new fragment of code.
 	 * 
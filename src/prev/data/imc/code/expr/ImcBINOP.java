@@ -24,17 +24,26 @@ public class ImcBINOP extends ImcExpr {
 	/** The second operand. */
 	public final ImcExpr sndExpr;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcBINOP(Oper oper, ImcExpr fstExpr, ImcExpr sndExpr) {
+		this.oper = oper;
+		this.fstExpr = fstExpr;
+		this.sndExpr = sndExpr;
+		this.hash = mix(mix(mix(1, oper.ordinal()), fstExpr.hashCode()), sndExpr.hashCode());
+	}
+
 	/**
-	 * Constructs a new binary operation.
+	 * Returns a binary operation.
 	 * 
 	 * @param oper    The operator.
 	 * @param fstExpr The first operand.
 	 * @param sndExpr The second operand.
+	 * @return The interned binary operation.
 	 */
-	public ImcBINOP(Oper oper, ImcExpr fstExpr, ImcExpr sndExpr) {
-		this.oper = oper;
-		this.fstExpr = fstExpr;
-		this.sndExpr = sndExpr;
+	public static ImcBINOP of(Oper oper, ImcExpr fstExpr, ImcExpr sndExpr) {
+		return ImcExprPool.intern(new ImcBINOP(oper, fstExpr, sndExpr));
 	}
 
 	@Override
@@ -84,17 +93,12 @@ public class ImcBINOP extends ImcExpr {
 			return false;
 		}
 		ImcBINOP imcBINOP = (ImcBINOP) o;
-		return oper == imcBINOP.oper && fstExpr.equals(imcBINOP.fstExpr) && sndExpr.equals(imcBINOP.sndExpr);
+		return oper == imcBINOP.oper && fstExpr == imcBINOP.fstExpr && sndExpr == imcBINOP.sndExpr;
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = result * prime * oper.hashCode();
-		result = result * prime * fstExpr.hashCode();
-		result = result * prime * sndExpr.hashCode();
-		return result;
+		return hash;
 	}
 
 }
@@ -23,17 +23,29 @@ public class ImcCALL extends ImcExpr {
 	/** The values of arguments. */
 	private final Vector<ImcExpr> args;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcCALL(MemLabel label, Vector<Long> offs, Vector<ImcExpr> args) {
+		this.label = label;
+		this.offs = new Vector<Long>(offs);
+		this.args = new Vector<ImcExpr>(args);
+		int hash = mix(7, label.hashCode());
+		for (int a = 0; a < args.size(); a++)
+			hash = mix(mix(hash, offs.get(a).hashCode()), args.get(a).hashCode());
+		this.hash = hash;
+	}
+
 	/**
-	 * Constructs a function call.
+	 * Returns a function call.
 	 * 
 	 * @param label The label of the function.
 	 * @param offs  The offsets of arguments.
 	 * @param args  The values of arguments.
+	 * @return The interned function call.
 	 */
-	public ImcCALL(MemLabel label, Vector<Long> offs, Vector<ImcExpr> args) {
-		this.label = label;
-		this.offs = new Vector<Long>(offs);
-		this.args = new Vector<ImcExpr>(args);
+	public static ImcCALL of(MemLabel label, Vector<Long> offs, Vector<ImcExpr> args) {
+		return ImcExprPool.intern(new ImcCALL(label, offs, args));
 	}
 
 	/**
@@ -91,31 +103,22 @@ public class ImcCALL extends ImcExpr {
 			return false;
 		}
 		ImcCALL imcCALL = (ImcCALL) o;
-
-		if (!label.equals(imcCALL.label))
+		if (!label.equals(imcCALL.label) || !offs.equals(imcCALL.offs))
 			return false;
 		
 		if (args.size() != imcCALL.args.size())
 			return false;
 		
 		for (int i = 0; i < args.size(); i++) {
-			boolean equals = args.get(i).equals(imcCALL.args.get(i));
-			if (!equals)
+			if (args.get(i) != imcCALL.args.get(i))
 				return false;
 		}
-
 		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = result * prime * label.hashCode();
-		for (ImcExpr argument : args) {
-			result = result * prime * argument.hashCode();
-		}
-		return result;
+		return hash;
 	}
 
 }
@@ -13,13 +13,22 @@ public class ImcCONST extends ImcExpr {
 	/** The value. */
 	public final long value;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcCONST(long value) {
+		this.value = value;
+		this.hash = mix(5, Long.hashCode(value));
+	}
+
 	/**
-	 * Constructs a new constant.
+	 * Returns a constant.
 	 * 
 	 * @param value The value.
+	 * @return The interned constant.
 	 */
-	public ImcCONST(long value) {
-		this.value = value;
+	public static ImcCONST of(long value) {
+		return ImcExprPool.intern(new ImcCONST(value));
 	}
 
 	@Override
@@ -53,7 +62,7 @@ public class ImcCONST extends ImcExpr {
 
 	@Override
 	public int hashCode() {
-		return Long.hashCode(value);
+		return hash;
 	}
 
 }
@@ -6,4 +6,19 @@ import prev.data.imc.code.*;
  * Intermediate code instruction denoting an expression.
  */
 public abstract class ImcExpr extends ImcInstr {
+
+	/**
+	 * Combines a hash code with the hash code of a part of an expression,
+	 * spreading every bit of both over the result.
+	 * 
+	 * @param hash  The hash code so far.
+	 * @param value The hash code of the part.
+	 * @return The combined hash code.
+	 */
+	protected static int mix(int hash, int value) {
+		hash ^= value * 0x9e3779b9;
+		hash = Integer.rotateLeft(hash, 13) * 0x85ebca6b;
+		return hash ^ (hash >>> 16);
+	}
+
 }
@@ -0,0 +1,52 @@
+package prev.data.imc.code.expr;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * Pool of interned expressions.
+ *
+ * Expressions other than statement expressions are created only through the
+ * pool, so that structurally equal expressions are the same object. An
+ * expression is therefore compared with another one by comparing its
+ * operands by reference, and its hash code is computed once from the hash
+ * codes of its operands. The pool only references expressions weakly, so an
+ * expression is released as soon as no code refers to it any more (e.g.,
+ * once the assembly of its function has been written).
+ */
+class ImcExprPool {
+
+	/** The number of independently locked segments of the pool. */
+	private static final int SEGMENTS = 64;
+
+	/**
+	 * Segments of the pool, each mapping an expression to a weak reference
+	 * to itself (a value must not refer to its key strongly).
+	 */
+	private static final Vector<WeakHashMap<ImcExpr, WeakReference<ImcExpr>>> segments = new Vector<WeakHashMap<ImcExpr, WeakReference<ImcExpr>>>();
+
+	static {
+		for (int segment = 0; segment < SEGMENTS; segment++)
+			segments.add(new WeakHashMap<ImcExpr, WeakReference<ImcExpr>>());
+	}
+
+	/**
+	 * Returns the interned expression equal to the one provided.
+	 *
+	 * @param expr The expression.
+	 * @return The interned expression.
+	 */
+	@SuppressWarnings("unchecked")
+	static <Expr extends ImcExpr> Expr intern(Expr expr) {
+		WeakHashMap<ImcExpr, WeakReference<ImcExpr>> segment = segments.get(Math.floorMod(expr.hashCode(), SEGMENTS));
+		synchronized (segment) {
+			WeakReference<ImcExpr> reference = segment.get(expr);
+			ImcExpr internedExpr = reference == null ? null : reference.get();
+			if (internedExpr != null)
+				return (Expr) internedExpr;
+			segment.put(expr, new WeakReference<ImcExpr>(expr));
+			return expr;
+		}
+	}
+
+}
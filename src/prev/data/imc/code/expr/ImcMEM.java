@@ -15,13 +15,22 @@ public class ImcMEM extends ImcExpr {
 	/** The memory address. */
 	public final ImcExpr addr;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcMEM(ImcExpr addr) {
+		this.addr = addr;
+		this.hash = mix(3, addr.hashCode());
+	}
+
 	/**
-	 * Constucts a memory access.
+	 * Returns a memory access.
 	 * 
 	 * @param addr The memory address.
+	 * @return The interned memory access.
 	 */
-	public ImcMEM(ImcExpr addr) {
-		this.addr = addr;
+	public static ImcMEM of(ImcExpr addr) {
+		return ImcExprPool.intern(new ImcMEM(addr));
 	}
 
 	@Override
@@ -50,12 +59,12 @@ public class ImcMEM extends ImcExpr {
 			return false;
 		}
 		ImcMEM imcMEM = (ImcMEM) o;
-		return addr.equals(imcMEM.addr);
+		return addr == imcMEM.addr;
 	}
 
 	@Override
 	public int hashCode() {
-		return addr.hashCode();
+		return hash;
 	}
 
 }
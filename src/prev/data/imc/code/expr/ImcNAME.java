@@ -14,13 +14,22 @@ public class ImcNAME extends ImcExpr {
 	/** The label. */
 	public final MemLabel label;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcNAME(MemLabel label) {
+		this.label = label;
+		this.hash = mix(6, label.hashCode());
+	}
+
 	/**
-	 * Constructs a new name.
+	 * Returns a name.
 	 * 
 	 * @param label The label.
+	 * @return The interned name.
 	 */
-	public ImcNAME(MemLabel label) {
-		this.label = label;
+	public static ImcNAME of(MemLabel label) {
+		return ImcExprPool.intern(new ImcNAME(label));
 	}
 
 	@Override
@@ -54,7 +63,7 @@ public class ImcNAME extends ImcExpr {
 
 	@Override
 	public int hashCode() {
-		return label.hashCode();
+		return hash;
 	}
 
 
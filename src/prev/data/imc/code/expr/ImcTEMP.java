@@ -14,13 +14,22 @@ public class ImcTEMP extends ImcExpr {
 	/** The temporary variable. */
 	public final MemTemp temp;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcTEMP(MemTemp temp) {
+		this.temp = temp;
+		this.hash = mix(4, temp.hashCode());
+	}
+
 	/**
-	 * Constructs a temporary variable.
+	 * Returns a temporary variable.
 	 * 
 	 * @param temp The temporary variable.
+	 * @return The interned temporary variable.
 	 */
-	public ImcTEMP(MemTemp temp) {
-		this.temp = temp;
+	public static ImcTEMP of(MemTemp temp) {
+		return ImcExprPool.intern(new ImcTEMP(temp));
 	}
 
 	@Override
@@ -54,7 +63,7 @@ public class ImcTEMP extends ImcExpr {
 
 	@Override
 	public int hashCode() {
-		return temp.hashCode();
+		return hash;
 	}
 
 }
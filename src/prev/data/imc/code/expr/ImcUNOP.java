@@ -21,15 +21,24 @@ public class ImcUNOP extends ImcExpr {
 	/** The operand. */
 	public final ImcExpr subExpr;
 
+	/** The hash code. */
+	private final int hash;
+
+	private ImcUNOP(Oper oper, ImcExpr subExpr) {
+		this.oper = oper;
+		this.subExpr = subExpr;
+		this.hash = mix(mix(2, oper.ordinal()), subExpr.hashCode());
+	}
+
 	/**
-	 * Constructs a unary operation.
+	 * Returns a unary operation.
 	 * 
 	 * @param oper    The operator.
 	 * @param subExpr The operand.
+	 * @return The interned unary operation.
 	 */
-	public ImcUNOP(Oper oper, ImcExpr subExpr) {
-		this.oper = oper;
-		this.subExpr = subExpr;
+	public static ImcUNOP of(Oper oper, ImcExpr subExpr) {
+		return ImcExprPool.intern(new ImcUNOP(oper, subExpr));
 	}
 
 	@Override
@@ -60,16 +69,12 @@ public class ImcUNOP extends ImcExpr {
 			return false;
 		}
 		ImcUNOP imcUNOP = (ImcUNOP) o;
-		return oper == imcUNOP.oper && subExpr.equals(imcUNOP.subExpr);
+		return oper == imcUNOP.oper && subExpr == imcUNOP.subExpr;
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = result * prime * oper.hashCode();
-		result = result * prime * subExpr.hashCode();
-		return result;
+		return hash;
 	}
 
 
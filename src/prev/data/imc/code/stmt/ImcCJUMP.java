@@ -14,13 +14,13 @@ import prev.data.imc.visitor.*;
 public class ImcCJUMP extends ImcStmt {
 
 	/** The condition. */
-	public ImcExpr cond;
+	public final ImcExpr cond;
 
 	/** The positive label. */
-	public MemLabel posLabel;
+	public final MemLabel posLabel;
 
 	/** The negative label. */
-	public MemLabel negLabel;
+	public final MemLabel negLabel;
 
 	/**
 	 * Constructs a conditional jump.
@@ -12,7 +12,7 @@ import prev.data.imc.visitor.*;
 public class ImcJUMP extends ImcStmt {
 
 	/** The label. */
-	public MemLabel label;
+	public final MemLabel label;
 
 	/**
 	 * Constructs an uncoditional jump.
@@ -1,5 +1,6 @@
 package prev.data.mem;
 
+import java.util.*;
 import prev.common.logger.*;
 import prev.data.semtype.*;
 
@@ -8,6 +9,13 @@ import prev.data.semtype.*;
  */
 public class MemFrame implements Loggable {
 
+	/**
+	 * The labels of functions implemented by the standard library, whose
+	 * declared bodies are never used.
+	 */
+	public static final Set<String> LIBRARY_FUNCTIONS = Collections.unmodifiableSet(new HashSet<String>(
+			Arrays.asList("_new", "_del", "_exit", "_putChar", "_putInteger", "_getChar")));
+
 	/** The function's entry label. */
 	public final MemLabel label;
 
@@ -29,6 +37,12 @@ public class MemFrame implements Loggable {
 	/** The register to hold the return value. */
 	public final MemTemp RV;
 
+	/**
+	 * The offsets of variables and parameters within the frame whose address is
+	 * never taken, so they are only accessed directly through the frame pointer.
+	 */
+	public final Set<Long> privateOffsets;
+
 	/**
 	 * Constructs a new frame with no temporary variables and no saved registers.
 	 * 
@@ -38,6 +52,21 @@ public class MemFrame implements Loggable {
 	 * @param argsSize The size of the block of arguments within a frame.
 	 */
 	public MemFrame(MemLabel label, int depth, long locsSize, long argsSize) {
+		this(label, depth, locsSize, argsSize, new HashSet<Long>());
+	}
+
+	/**
+	 * Constructs a new frame with no temporary variables and no saved registers.
+	 * 
+	 * @param label          The function's entry label.
+	 * @param depth          The function's static depth.
+	 * @param locsSize       The size of the block of local variables within a
+	 *                       frame.
+	 * @param argsSize       The size of the block of arguments within a frame.
+	 * @param privateOffsets The offsets of variables and parameters whose address
+	 *                       is never taken.
+	 */
+	public MemFrame(MemLabel label, int depth, long locsSize, long argsSize, Set<Long> privateOffsets) {
 		this.label = label;
 		this.depth = depth;
 		this.locsSize = locsSize;
@@ -45,9 +74,10 @@ public class MemFrame implements Loggable {
 		this.size = this.locsSize + 2 * (new SemPointer(new SemVoid())).size() + this.argsSize;
 		this.FP = new MemTemp();
 		this.RV = new MemTemp();
+		this.privateOffsets = Collections.unmodifiableSet(privateOffsets);
 	}
 
-	public MemFrame(MemLabel label, int depth, long size, long locsSize, long argsSize, MemTemp fp, MemTemp rv) {
+	public MemFrame(MemLabel label, int depth, long size, long locsSize, long argsSize, MemTemp fp, MemTemp rv, Set<Long> privateOffsets) {
 		this.label = label;
 		this.depth = depth;
 		this.size = size;
@@ -55,10 +85,11 @@ public class MemFrame implements Loggable {
 		this.argsSize = argsSize;
 		this.FP = fp;
 		this.RV = rv;
+		this.privateOffsets = privateOffsets;
 	}
 
 	public MemFrame copyWithLabel(MemLabel newLabel) {
-		return new MemFrame(newLabel, this.depth, this.size, this.locsSize, this.argsSize, this.FP, this.RV);
+		return new MemFrame(newLabel, this.depth, this.size, this.locsSize, this.argsSize, this.FP, this.RV, this.privateOffsets);
 	}
 
 	@Override
@@ -13,8 +13,7 @@ public class MemLabel {
 
 	/** Creates a new anonymous label. */
 	public MemLabel() {
-		this.name = "L" + count;
-		count++;
+		this.name = "L" + nextSuffix();
 	}
 
 	/**
@@ -32,9 +31,17 @@ public class MemLabel {
 	 * @param name The name of a label.
 	 */
 	public static MemLabel uniqueFromName(String name) {
-		String uniqueName = String.format("%s%d", name, count);
-		count++;
-		return new MemLabel(uniqueName);
+		return new MemLabel(name + nextSuffix());
+	}
+
+	/** Returns the unique suffix of the next anonymous or unique label. */
+	private static String nextSuffix() {
+		MemNamespace namespace = MemNamespace.current();
+		if (namespace != null)
+			return namespace.nextLabelSuffix();
+		synchronized (MemLabel.class) {
+			return Long.toString(count++);
+		}
 	}
 
 	@Override
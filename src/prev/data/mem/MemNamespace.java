@@ -0,0 +1,79 @@
+package prev.data.mem;
+
+/**
+ * A namespace of temporary variables and anonymous labels.
+ * 
+ * While a thread works inside a namespace, the temporary variables and labels
+ * it creates are numbered within the namespace instead of by the global
+ * counters. Their names then depend only on the index of the namespace and on
+ * the order in which they were created inside it, and not on how threads
+ * working in different namespaces happen to interleave.
+ */
+public class MemNamespace {
+
+	/** The first temporary variable of the first namespace. */
+	private static final long FIRST_TEMP = 1L << 40;
+
+	/** The number of temporary variables of each namespace. */
+	private static final long TEMPS_PER_NAMESPACE = 1L << 32;
+
+	/** The namespace of the current thread. */
+	private static final ThreadLocal<MemNamespace> current = new ThreadLocal<MemNamespace>();
+
+	/** The index of the namespace. */
+	public final int index;
+
+	/** Counter of temporary variables in the namespace. */
+	private long tempCount = 0;
+
+	/** Counter of labels in the namespace. */
+	private long labelCount = 0;
+
+	private MemNamespace(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Makes the current thread work inside a new namespace.
+	 * 
+	 * @param index The index of the namespace, unique among all namespaces.
+	 */
+	public static void enter(int index) {
+		current.set(new MemNamespace(index));
+	}
+
+	/**
+	 * Makes the current thread leave its namespace.
+	 */
+	public static void exit() {
+		current.remove();
+	}
+
+	/**
+	 * Returns the namespace of the current thread.
+	 * 
+	 * @return The namespace or {@code null} if the thread is not in one.
+	 */
+	static MemNamespace current() {
+		return current.get();
+	}
+
+	/**
+	 * Returns the name of the next temporary variable in the namespace.
+	 * 
+	 * @return The name of the temporary variable.
+	 */
+	long nextTemp() {
+		return FIRST_TEMP + index * TEMPS_PER_NAMESPACE + tempCount++;
+	}
+
+	/**
+	 * Returns the unique suffix of the next label in the namespace.
+	 * 
+	 * @return The suffix of the label.
+	 */
+	String nextLabelSuffix() {
+		return index + "_" + labelCount++;
+	}
+
+}
@@ -13,8 +13,13 @@ public class MemTemp {
 
 	/** Creates a new temporary variable. */
 	public MemTemp() {
-		this.temp = count;
-		count++;
+		MemNamespace namespace = MemNamespace.current();
+		this.temp = namespace == null ? nextCount() : namespace.nextTemp();
+	}
+
+	/** Returns the next value of the global counter. */
+	private static synchronized long nextCount() {
+		return count++;
 	}
 
 	@Override
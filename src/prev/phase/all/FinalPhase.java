@@ -3,6 +3,7 @@ package prev.phase.all;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
 
@@ -118,6 +119,17 @@ public class FinalPhase extends Phase {
 		uses.add(code.frame.RV);
 		instructions.add(new AsmOPER("STO `s0,FP,0", uses, null, null));
 
+		// Tear down the frame
+		instructions.addAll(generateFrameTeardown(code, temporary));
+		
+		// Add the POP instruction that will tell the MMIX that we want to
+		// return from function
+		instructions.add(new AsmOPER("POP " + Compiler.numberOfRegisters + ",0", null, null, null));
+	}
+
+	private Vector<AsmInstr> generateFrameTeardown(Code code, MemTemp temporary) {
+		Vector<AsmInstr> instructions = new Vector<AsmInstr>();
+
 		// Set the stack pointer to current frame pointer
 		instructions.add(new AsmOPER("SET SP,FP", null, null, null));
 
@@ -133,10 +145,24 @@ public class FinalPhase extends Phase {
 		instructions.add(new AsmOPER("SUB $0,$0,8", null, null, null));
 		instructions.add(new AsmOPER("LDO $0,$0,0", null, null, null));
 		instructions.add(new AsmOPER("PUT rJ,$0", null, null, null));
-		
-		// Add the POP instruction that will tell the MMIX that we want to
-		// return from function
-		instructions.add(new AsmOPER("POP " + Compiler.numberOfRegisters + ",0", null, null, null));
+
+		return instructions;
+	}
+
+	private void generateTailCalls(Code code) {
+		// A call in tail position has already stored its arguments into the
+		// argument block of this function. Before jumping to the called
+		// function, restore the stack pointer, frame pointer and return
+		// address of the caller, so the called function builds its frame
+		// in place of this one and returns directly to our caller. Register
+		// $0 is free, as nothing is live after the jump.
+		MemTemp temporary = new MemTemp();
+		registers.put(temporary, 0);
+
+		for (int i = code.instrs.size() - 1; i >= 0; i--) {
+			if (code.tailCalls.contains(code.instrs.get(i)))
+				code.instrs.addAll(i, generateFrameTeardown(code, temporary));
+		}
 	}
 
 	private Vector<String> generateBootstrapRoutine() {
@@ -328,24 +354,49 @@ public class FinalPhase extends Phase {
 
 		// For each code in generated codes, generate prologue and epilogue
 		// and write them to file
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes)
+			instructions.addAll(generateCode(code));
 
-			// Don't compile putChar and getChar methods because we have
-			// already defined them in standard library
-			if (code.frame.label.name.equals("_putChar") ||
-				code.frame.label.name.equals("_getChar") ||
-				code.frame.label.name.equals("_exit"))
-				continue;
-			
-			// Generate PROLOGUE and EPILOGUE
-			generatePrologue(code);
-			generateEpilogue(code);
+		return instructions;
+	}
 
-			instructions.addAll(codeToString(code));
+	/**
+	 * Generate the instructions of a single function, including its prologue
+	 * and epilogue. This modifies the code, so it should only be called once.
+	 * 
+	 * @param code The code of the function.
+	 * @return The instructions.
+	 */
+	public Vector<String> generateCode(Code code) {
+		// Don't compile putChar and getChar methods because we have
+		// already defined them in standard library
+		if (code.frame.label.name.equals("_putChar") ||
+			code.frame.label.name.equals("_getChar") ||
+			code.frame.label.name.equals("_exit"))
+			return new Vector<String>();
+		
+		// Generate PROLOGUE and EPILOGUE
+		generateTailCalls(code);
+		generatePrologue(code);
+		generateEpilogue(code);
 
-		}
+		return codeToString(code);
+	}
 
-		return instructions;
+	/**
+	 * Write the bootstrap routine and the standard library, which precede
+	 * the compiled functions.
+	 * 
+	 * @param output The output file.
+	 */
+	public void writeHeader(BufferedWriter output) throws IOException {
+		// Generate BOOTSTRAP code and write it to file
+		for (String instruction : generateBootstrapRoutine())
+			output.write(instruction + "\n");
+
+		// Generate STANDARD LIBRARY and write it to file
+		for (String instruction : generateStandardLibrary())
+			output.write(instruction + "\n");
 	}
 
 	public void run() {
@@ -360,13 +411,7 @@ public class FinalPhase extends Phase {
 			File outputFile = new File(Compiler.cmdLineArgValue("--dst-file-name"));
 			BufferedWriter output = new BufferedWriter(new FileWriter(outputFile));
 
-			// Generate BOOTSTRAP code and write it to file
-			for (String instruction : generateBootstrapRoutine())
-				output.write(instruction + "\n");
-
-			// Generate STANDARD LIBRARY and write it to file
-			for (String instruction : generateStandardLibrary())
-				output.write(instruction + "\n");
+			writeHeader(output);
 
 			// Generate PROLOGUE and EPILOGUE for each function and write it to
 			// file
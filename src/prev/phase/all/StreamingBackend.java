@@ -0,0 +1,150 @@
+package prev.phase.all;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import prev.Compiler;
+import prev.common.report.Report;
+import prev.data.asm.Code;
+import prev.data.lin.LinCodeChunk;
+import prev.data.mem.MemLabel;
+import prev.data.mem.MemNamespace;
+import prev.data.mem.MemTemp;
+import prev.phase.asmgen.AsmGen;
+import prev.phase.imclin.ImcLin;
+import prev.phase.optimisation.Optimisation;
+import prev.phase.regall.RegAll;
+
+/**
+ * Back end that compiles one function at a time. Each function is optimised,
+ * translated to machine code and allocated registers by a worker and written
+ * to the output file as soon as all functions before it have been written, so
+ * only a bounded number of functions is held in memory at once.
+ */
+public class StreamingBackend {
+
+	/** The number of functions in flight per worker. */
+	private static final int FUNCTIONS_PER_JOB = 2;
+
+	/** Mapping of temporary variables of the emitted function to registers. */
+	private final HashMap<MemTemp, Integer> registers = new HashMap<MemTemp, Integer>();
+
+	/** A function after register allocation, ready to be emitted. */
+	private static class CompiledFunction {
+
+		final Code code;
+		final HashMap<MemTemp, Integer> tempToReg;
+
+		CompiledFunction(Code code, HashMap<MemTemp, Integer> tempToReg) {
+			this.code = code;
+			this.tempToReg = tempToReg;
+		}
+
+	}
+
+	/** Compilation of a single function, possibly run by another thread. */
+	private static class FunctionCompilation implements Callable<CompiledFunction> {
+
+		private final LinCodeChunk codeChunk;
+
+		/** The sizes of the argument blocks for tail calls or null for none */
+		private final HashMap<MemLabel, Long> argumentsSizes;
+
+		/** The namespace of new temporaries and labels or -1 for none */
+		private final int namespace;
+
+		FunctionCompilation(LinCodeChunk codeChunk, HashMap<MemLabel, Long> argumentsSizes, int namespace) {
+			this.codeChunk = codeChunk;
+			this.argumentsSizes = argumentsSizes;
+			this.namespace = namespace;
+		}
+
+		@Override
+		public CompiledFunction call() {
+			if (this.namespace >= 0)
+				MemNamespace.enter(this.namespace);
+			try {
+				LinCodeChunk optimisedCodeChunk = Optimisation.optimise(this.codeChunk, Optimisation.DEFAULT_MAX_ITERATIONS);
+				Code code = AsmGen.genAsmCode(optimisedCodeChunk, this.argumentsSizes);
+				HashMap<MemTemp, Integer> tempToReg = new HashMap<MemTemp, Integer>();
+				try (RegAll regall = new RegAll()) {
+					regall.allocate(code, tempToReg);
+				}
+				return new CompiledFunction(code, tempToReg);
+			} finally {
+				if (this.namespace >= 0)
+					MemNamespace.exit();
+			}
+		}
+
+	}
+
+	public void run() {
+		// The code chunks are removed from the linearized program, so each
+		// function can be released as soon as it has been written.
+		int jobs = Compiler.numberOfJobs;
+		LinkedList<LinCodeChunk> codeChunks = new LinkedList<LinCodeChunk>(Optimisation.runInterproceduralOptimisations(ImcLin.codeChunks()));
+		ImcLin.setCodeChunks(new Vector<LinCodeChunk>());
+
+		// Calls are not changed by the optimisation of a single function, so
+		// the argument blocks of all functions are known in advance.
+		HashMap<MemLabel, Long> argumentsSizes = AsmGen.argumentsSizes(new Vector<LinCodeChunk>(codeChunks));
+
+		ExecutorService pool = Executors.newFixedThreadPool(jobs);
+		try (FinalPhase finalPhase = new FinalPhase(registers)) {
+			File outputFile = new File(Compiler.cmdLineArgValue("--dst-file-name"));
+			BufferedWriter output = new BufferedWriter(new FileWriter(outputFile));
+			finalPhase.writeHeader(output);
+
+			// Functions are written in the source order, while at most
+			// FUNCTIONS_PER_JOB functions per worker are being compiled.
+			LinkedList<Future<CompiledFunction>> compilations = new LinkedList<Future<CompiledFunction>>();
+			int index = 0;
+			while (!codeChunks.isEmpty() || !compilations.isEmpty()) {
+				while (!codeChunks.isEmpty() && compilations.size() < FUNCTIONS_PER_JOB * jobs) {
+					compilations.add(pool.submit(new FunctionCompilation(codeChunks.poll(), argumentsSizes, jobs > 1 ? index : -1)));
+					index++;
+				}
+
+				CompiledFunction function = result(compilations.poll());
+				registers.clear();
+				registers.putAll(function.tempToReg);
+				for (String instruction : finalPhase.generateCode(function.code))
+					output.write(instruction + "\n");
+			}
+
+			output.close();
+		} catch (IOException e) {
+			throw new Report.Error("Cannot write file '" + Compiler.cmdLineArgValue("--dst-file-name") + "'.");
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/** Waits for the compilation of a function and rethrows its errors. */
+	private static CompiledFunction result(Future<CompiledFunction> compilation) {
+		try {
+			return compilation.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new Report.InternalError();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Report.InternalError();
+		}
+	}
+
+}
@@ -2,11 +2,17 @@ package prev.phase.asmgen;
 
 import java.util.*;
 
+import prev.Compiler;
+import prev.common.report.*;
+import prev.data.imc.code.expr.*;
 import prev.data.imc.code.stmt.*;
 import prev.data.lin.*;
+import prev.data.mem.*;
 import prev.data.asm.*;
 import prev.phase.*;
 import prev.phase.imclin.*;
+import prev.phase.optimisation.common.escape_analysis.*;
+import prev.phase.optimisation.common.tail_position.*;
 
 /**
  * Machine code generator.
@@ -20,18 +26,92 @@ public class AsmGen extends Phase {
 	}
 
 	public void genAsmCodes() {
+		HashMap<MemLabel, Long> argumentsSizes = argumentsSizes(ImcLin.codeChunks());
 		for (LinCodeChunk codeChunk : ImcLin.codeChunks()) {
-			Code code = genAsmCode(codeChunk);
+			Code code = genAsmCode(codeChunk, argumentsSizes);
 			codes.add(code);
 		}
 	}
 
-	public Code genAsmCode(LinCodeChunk codeChunk) {
+	/**
+	 * Generates the machine code of a function.
+	 * 
+	 * @param codeChunk      The function.
+	 * @param argumentsSizes The sizes of the argument blocks of all called
+	 *                       functions or null if calls in tail position are
+	 *                       compiled as ordinary calls.
+	 * @return The machine code.
+	 */
+	public static Code genAsmCode(LinCodeChunk codeChunk, HashMap<MemLabel, Long> argumentsSizes) {
 		Vector<AsmInstr> instrs = new Vector<AsmInstr>();
-		for (ImcStmt stmt : codeChunk.stmts()) {
-			instrs.addAll(stmt.accept(new StmtGenerator(), codeChunk));
+		HashSet<AsmInstr> tailCalls = new HashSet<AsmInstr>();
+		StmtGenerator stmtGenerator = new StmtGenerator();
+		Vector<ImcStmt> stmts = codeChunk.stmts();
+
+		// The called function takes over the frame, so neither the frame nor
+		// the argument block of the function may be referenced elsewhere.
+		Long argumentsSize = argumentsSizes == null ? null : argumentsSizes.get(codeChunk.frame.label);
+		boolean canTailCall = argumentsSize != null && !FrameEscapeAnalysis.frameAddressEscapes(stmts, codeChunk.frame);
+
+		HashMap<MemLabel, Integer> labelPositions = new HashMap<MemLabel, Integer>();
+		for (int i = 0; i < stmts.size(); i++)
+			if (stmts.get(i) instanceof ImcLABEL)
+				labelPositions.put(((ImcLABEL) stmts.get(i)).label, i);
+
+		for (int i = 0; i < stmts.size(); i++) {
+			ImcStmt stmt = stmts.get(i);
+			if (canTailCall && TailPosition.isTailCall(stmts, i, codeChunk, labelPositions)) {
+				// The arguments of the called function must fit into the
+				// argument block of this function, which has been reserved
+				// by its callers
+				ImcCALL call = (ImcCALL) ((ImcMOVE) stmt).src;
+				Long callArgumentsSize = argumentsSizes.get(call.label);
+				if (!MemFrame.LIBRARY_FUNCTIONS.contains(call.label.name) && callArgumentsSize != null && callArgumentsSize <= argumentsSize) {
+					Report.debug(String.format("Tail call of %s in %s", call.label.name, codeChunk.frame.label.name));
+					tailCalls.add(new ExprGenerator().tailCall(call, instrs));
+					continue;
+				}
+			}
+			instrs.addAll(stmt.accept(stmtGenerator, codeChunk));
+		}
+
+		Code code = new Code(codeChunk.frame, codeChunk.entryLabel, codeChunk.exitLabel, instrs);
+		code.tailCalls.addAll(tailCalls);
+		return code;
+	}
+
+	/**
+	 * Computes the sizes of the argument blocks of all called functions,
+	 * which are needed to compile calls in tail position.
+	 * 
+	 * @param codeChunks All functions of the program.
+	 * @return The sizes of the argument blocks or null if tail calls are
+	 *         disabled.
+	 */
+	public static HashMap<MemLabel, Long> argumentsSizes(Vector<LinCodeChunk> codeChunks) {
+		if (!Boolean.parseBoolean(Compiler.cmdLineArgValue("--tail-calls")))
+			return null;
+
+		HashMap<MemLabel, Long> argumentsSizes = new HashMap<MemLabel, Long>();
+		for (LinCodeChunk codeChunk : codeChunks) {
+			for (ImcStmt stmt : codeChunk.stmts()) {
+				ImcExpr expr = null;
+				if (stmt instanceof ImcMOVE)
+					expr = ((ImcMOVE) stmt).src;
+				else if (stmt instanceof ImcESTMT)
+					expr = ((ImcESTMT) stmt).expr;
+				if (!(expr instanceof ImcCALL))
+					continue;
+
+				ImcCALL call = (ImcCALL) expr;
+				long size = 0;
+				for (Long offset : call.offs())
+					size = Math.max(size, offset + 8);
+				Long previousSize = argumentsSizes.get(call.label);
+				argumentsSizes.put(call.label, previousSize == null ? size : Math.min(previousSize, size));
+			}
 		}
-		return new Code(codeChunk.frame, codeChunk.entryLabel, codeChunk.exitLabel, instrs);
+		return argumentsSizes;
 	}
 
 	public void log() {
@@ -1,10 +1,12 @@
 package prev.phase.asmgen;
 
+import java.math.BigInteger;
 import java.util.*;
 import prev.data.mem.*;
 import prev.data.imc.code.expr.*;
 import prev.data.imc.visitor.*;
 import prev.Compiler;
+import prev.common.report.*;
 import prev.data.asm.*;
 
 /**
@@ -13,11 +15,45 @@ import prev.data.asm.*;
 public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 
 	public MemTemp visit(ImcBINOP binOp, Vector<AsmInstr> instructions) {
-		MemTemp register = new MemTemp();
+		// Multiplication, division and modulo by a constant can be computed
+		// with cheaper instructions than MUL and DIV.
+		if (binOp.sndExpr instanceof ImcCONST && !(binOp.fstExpr instanceof ImcCONST)) {
+			long constant = ((ImcCONST) binOp.sndExpr).value;
+			if (isReducible(binOp.oper, constant))
+				return reduce(binOp.oper, binOp.fstExpr.accept(this, instructions), constant, instructions);
+		} else if (binOp.fstExpr instanceof ImcCONST && !(binOp.sndExpr instanceof ImcCONST) && binOp.oper == ImcBINOP.Oper.MUL) {
+			long constant = ((ImcCONST) binOp.fstExpr).value;
+			if (isReducible(binOp.oper, constant))
+				return reduce(binOp.oper, binOp.sndExpr.accept(this, instructions), constant, instructions);
+		}
+
+		// Evaluate the subtree that needs more registers first (Sethi-Ullman
+		// ordering), so fewer temporaries are live at the same time. The
+		// order can only be changed if neither subtree has side effects.
+		MemTemp first;
+		MemTemp second;
+		if (registerNeed(binOp.sndExpr) > registerNeed(binOp.fstExpr) && !hasSideEffects(binOp.fstExpr) && !hasSideEffects(binOp.sndExpr)) {
+			second = binOp.sndExpr.accept(this, instructions);
+			first = binOp.fstExpr.accept(this, instructions);
+		} else {
+			first = binOp.fstExpr.accept(this, instructions);
+			second = binOp.sndExpr.accept(this, instructions);
+		}
+
+		// If one of the operands was computed into a new temporary, it is not
+		// used anywhere else, so the result can be stored to it instead of
+		// creating another temporary.
+		MemTemp register;
+		if (!containsTemporary(binOp.fstExpr, first))
+			register = first;
+		else if (!containsTemporary(binOp.sndExpr, second))
+			register = second;
+		else
+			register = new MemTemp();
 
 		Vector<MemTemp> uses = new Vector<MemTemp>();
-		uses.add(binOp.fstExpr.accept(this, instructions));
-		uses.add(binOp.sndExpr.accept(this, instructions));
+		uses.add(first);
+		uses.add(second);
 
 		Vector<MemTemp> defines = new Vector<MemTemp>();
 		defines.add(register);
@@ -80,6 +116,207 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 		return register;
 	}
 
+	/**
+	 * Returns the number of registers needed to evaluate the expression
+	 * without storing intermediate results (the Sethi-Ullman number).
+	 */
+	private static int registerNeed(ImcExpr expression) {
+		if (expression instanceof ImcTEMP)
+			return 0;
+		if (expression instanceof ImcBINOP) {
+			int first = registerNeed(((ImcBINOP) expression).fstExpr);
+			int second = registerNeed(((ImcBINOP) expression).sndExpr);
+			return Math.max(1, first == second ? first + 1 : Math.max(first, second));
+		}
+		if (expression instanceof ImcUNOP)
+			return Math.max(1, registerNeed(((ImcUNOP) expression).subExpr));
+		if (expression instanceof ImcMEM)
+			return Math.max(1, registerNeed(((ImcMEM) expression).addr));
+		if (expression instanceof ImcCALL) {
+			int need = 1;
+			for (ImcExpr argument : ((ImcCALL) expression).args())
+				need = Math.max(need, registerNeed(argument));
+			return need;
+		}
+		if (expression instanceof ImcSEXPR)
+			return Math.max(1, registerNeed(((ImcSEXPR) expression).expr));
+		return 1;
+	}
+
+	private static boolean hasSideEffects(ImcExpr expression) {
+		if (expression instanceof ImcCALL || expression instanceof ImcSEXPR)
+			return true;
+		if (expression instanceof ImcBINOP)
+			return hasSideEffects(((ImcBINOP) expression).fstExpr) || hasSideEffects(((ImcBINOP) expression).sndExpr);
+		if (expression instanceof ImcUNOP)
+			return hasSideEffects(((ImcUNOP) expression).subExpr);
+		if (expression instanceof ImcMEM)
+			return hasSideEffects(((ImcMEM) expression).addr);
+		return false;
+	}
+
+	/**
+	 * Checks if the temporary appears in the expression, so its value might
+	 * be needed after the expression is evaluated.
+	 */
+	private static boolean containsTemporary(ImcExpr expression, MemTemp temporary) {
+		if (expression instanceof ImcTEMP)
+			return ((ImcTEMP) expression).temp == temporary;
+		if (expression instanceof ImcBINOP)
+			return containsTemporary(((ImcBINOP) expression).fstExpr, temporary) || containsTemporary(((ImcBINOP) expression).sndExpr, temporary);
+		if (expression instanceof ImcUNOP)
+			return containsTemporary(((ImcUNOP) expression).subExpr, temporary);
+		if (expression instanceof ImcMEM)
+			return containsTemporary(((ImcMEM) expression).addr, temporary);
+		if (expression instanceof ImcSEXPR)
+			return true;
+		if (expression instanceof ImcCALL) {
+			for (ImcExpr argument : ((ImcCALL) expression).args())
+				if (containsTemporary(argument, temporary))
+					return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if operation x oper constant can be computed without using the
+	 * MUL or DIV instructions.
+	 */
+	private static boolean isReducible(ImcBINOP.Oper oper, long constant) {
+		switch (oper) {
+			case MUL:
+				if (constant <= 0)
+					return false;
+				long odd = constant >> Long.numberOfTrailingZeros(constant);
+				return odd == 1 || isPowerOfTwo(odd + 1) || isPowerOfTwo(odd - 1);
+			case DIV:
+			case MOD:
+				// Negative divisors are left to the DIV instruction, so the
+				// sign of the remainder is computed correctly.
+				return constant > 0;
+			default:
+				return false;
+		}
+	}
+
+	private MemTemp reduce(ImcBINOP.Oper oper, MemTemp operand, long constant, Vector<AsmInstr> instructions) {
+		switch (oper) {
+			case MUL:	return multiply(operand, constant, instructions);
+			case DIV:	return divide(operand, constant, instructions);
+			case MOD:	return remainder(operand, constant, instructions);
+			default:	throw new Report.InternalError();
+		}
+	}
+
+	/**
+	 * Multiplies the operand with positive constant c = b * 2^k using shifts
+	 * and additions, where b is 1, 2^n + 1 or 2^n - 1.
+	 */
+	private MemTemp multiply(MemTemp operand, long multiplier, Vector<AsmInstr> instructions) {
+		int shift = Long.numberOfTrailingZeros(multiplier);
+		long odd = multiplier >> shift;
+
+		MemTemp register = operand;
+		if (odd == 3 || odd == 5 || odd == 9 || odd == 17) {
+			// The instruction 2ADDU $X,$Y,$Z computes 2 * $Y + $Z, similarly
+			// for 4ADDU, 8ADDU and 16ADDU.
+			register = emit(instructions, (odd - 1) + "ADDU `d0,`s0,`s0", operand);
+		} else if (odd != 1 && isPowerOfTwo(odd - 1)) {
+			MemTemp shifted = emit(instructions, "SL `d0,`s0," + Long.numberOfTrailingZeros(odd - 1), operand);
+			register = emit(instructions, "ADD `d0,`s0,`s1", shifted, operand);
+		} else if (odd != 1) {
+			MemTemp shifted = emit(instructions, "SL `d0,`s0," + Long.numberOfTrailingZeros(odd + 1), operand);
+			register = emit(instructions, "SUB `d0,`s0,`s1", shifted, operand);
+		}
+
+		if (shift > 0)
+			register = emit(instructions, "SL `d0,`s0," + shift, register);
+		return register;
+	}
+
+	/**
+	 * Divides the operand with positive constant. The result is rounded
+	 * towards negative infinity, the same as with the DIV instruction.
+	 */
+	private MemTemp divide(MemTemp operand, long divisor, Vector<AsmInstr> instructions) {
+		if (divisor == 1)
+			return operand;
+
+		// Arithmetic right shift rounds towards negative infinity, so it can
+		// be used directly for powers of two.
+		if (isPowerOfTwo(divisor))
+			return emit(instructions, "SR `d0,`s0," + Long.numberOfTrailingZeros(divisor), operand);
+
+		// For negative n, floor(n / d) = ~floor(~n / d) and ~n is
+		// non-negative. Let s = n >> 63 (either 0 or -1), then
+		// floor(n / d) = s ^ (x / d), where x = s ^ n < 2^63.
+		MemTemp sign = emit(instructions, "SR `d0,`s0,63", operand);
+		MemTemp absolute = emit(instructions, "XOR `d0,`s0,`s1", operand, sign);
+
+		// Unsigned division of a 63-bit number x with d is computed as
+		// x / d = (x * m) >> (63 + l), where l = ceil(log2(d)) and
+		// m = ceil(2^(63 + l) / d) is the magic number that fits into 64 bits.
+		// MULU stores the upper 64 bits of the product to the special
+		// register rH.
+		int l = 64 - Long.numberOfLeadingZeros(divisor - 1);
+		BigInteger d = BigInteger.valueOf(divisor);
+		long magic = BigInteger.ONE.shiftLeft(63 + l).add(d).subtract(BigInteger.ONE).divide(d).longValue();
+
+		MemTemp magicRegister = new MemTemp();
+		instructions.addAll(loadConstant(magicRegister, magic));
+		emit(instructions, "MULU `d0,`s0,`s1", absolute, magicRegister);
+		MemTemp high = emit(instructions, "GET `d0,rH");
+		MemTemp quotient = emit(instructions, "SRU `d0,`s0," + (l - 1), high);
+		return emit(instructions, "XOR `d0,`s0,`s1", quotient, sign);
+	}
+
+	/**
+	 * Computes the remainder of division with positive constant. The result
+	 * has the sign of the divisor, the same as the rR register after DIV.
+	 */
+	private MemTemp remainder(MemTemp operand, long divisor, Vector<AsmInstr> instructions) {
+		if (isPowerOfTwo(divisor)) {
+			if (divisor - 1 <= 0xFF)
+				return emit(instructions, "AND `d0,`s0," + (divisor - 1), operand);
+			MemTemp mask = new MemTemp();
+			instructions.addAll(loadConstant(mask, divisor - 1));
+			return emit(instructions, "AND `d0,`s0,`s1", operand, mask);
+		}
+
+		// n mod d = n - (n / d) * d
+		MemTemp quotient = divide(operand, divisor, instructions);
+		MemTemp product;
+		if (isReducible(ImcBINOP.Oper.MUL, divisor)) {
+			product = multiply(quotient, divisor, instructions);
+		} else if (divisor <= 0xFF) {
+			product = emit(instructions, "MUL `d0,`s0," + divisor, quotient);
+		} else {
+			MemTemp divisorRegister = new MemTemp();
+			instructions.addAll(loadConstant(divisorRegister, divisor));
+			product = emit(instructions, "MUL `d0,`s0,`s1", quotient, divisorRegister);
+		}
+		return emit(instructions, "SUB `d0,`s0,`s1", operand, product);
+	}
+
+	/**
+	 * Adds instruction that defines a new temporary to instructions and
+	 * returns the new temporary.
+	 */
+	private static MemTemp emit(Vector<AsmInstr> instructions, String instruction, MemTemp... operands) {
+		MemTemp register = new MemTemp();
+
+		Vector<MemTemp> uses = new Vector<MemTemp>(Arrays.asList(operands));
+		Vector<MemTemp> defines = new Vector<MemTemp>();
+		defines.add(register);
+
+		instructions.add(new AsmOPER(instruction, uses, defines, null));
+		return register;
+	}
+
+	private static boolean isPowerOfTwo(long value) {
+		return value > 0 && (value & (value - 1)) == 0;
+	}
+
 	public MemTemp visit(ImcCALL call, Vector<AsmInstr> instructions) {
 		// PROLOGUE - prepare function call, save static link and all arguments
 		// to the call stack. Save SL (static link) and arguments to the bottom
@@ -113,6 +350,41 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 		return returnValueTemporary;
 	}
 
+	/**
+	 * Generates a call in tail position, which reuses the argument block of
+	 * the current function and jumps to the called function instead of
+	 * pushing a new register frame.
+	 *
+	 * @param call         The call in tail position.
+	 * @param instructions The generated instructions.
+	 * @return The jump to the called function, before which the final phase
+	 *         tears down the current frame.
+	 */
+	public AsmOPER tailCall(ImcCALL call, Vector<AsmInstr> instructions) {
+		// The arguments are stored over the arguments of the current function,
+		// so all of them must be evaluated before the first one is stored.
+		Vector<MemTemp> argumentTemporaries = new Vector<MemTemp>();
+		for (ImcExpr argument : call.args())
+			argumentTemporaries.add(argument.accept(this, instructions));
+
+		// The called function finds its arguments at the bottom of the
+		// current function's argument block, where its frame pointer will
+		// point to.
+		for (int i = 0; i < argumentTemporaries.size(); i++) {
+			Vector<MemTemp> uses = new Vector<MemTemp>();
+			uses.add(argumentTemporaries.get(i));
+			instructions.add(new AsmOPER("STO `s0,FP," + call.offs().get(i), uses, null, null));
+		}
+
+		// The called function is not part of this code, so the jump has no
+		// successors and nothing is live after it.
+		Vector<MemLabel> jumps = new Vector<MemLabel>();
+		jumps.add(call.label);
+		AsmOPER jump = new AsmOPER("JMP " + call.label.name, null, null, jumps);
+		instructions.add(jump);
+		return jump;
+	}
+
 	public MemTemp visit(ImcCONST constant, Vector<AsmInstr> instructions) {
 		// Create a new temporary (= register) where our constant will be stored
 		MemTemp register = new MemTemp();
@@ -165,10 +437,11 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 	}
 
 	public MemTemp visit(ImcUNOP unOp, Vector<AsmInstr> instructions) {
-		MemTemp register = new MemTemp();
+		MemTemp operand = unOp.subExpr.accept(this, instructions);
+		MemTemp register = containsTemporary(unOp.subExpr, operand) ? new MemTemp() : operand;
 
 		Vector<MemTemp> uses = new Vector<MemTemp>();
-		uses.add(unOp.subExpr.accept(this, instructions));
+		uses.add(operand);
 
 		Vector<MemTemp> defines = new Vector<MemTemp>();
 		defines.add(register);
@@ -210,6 +483,15 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 		defines.add(temporary);
 
 		long absoluteValue = Math.abs(value);
+
+		// Some negative numbers (for example the magic numbers used for
+		// division) have fewer non-zero wydes than their absolute values. Load
+		// those directly, without negation.
+		boolean negate = value < 0;
+		if (negate && nonZeroWydes(value) <= nonZeroWydes(absoluteValue)) {
+			absoluteValue = value;
+			negate = false;
+		}
 		
 		// Compute all 4 wydes using bit shifting and bitwise and operations
 		int low = (int) (absoluteValue & 0xFFFF);
@@ -229,10 +511,19 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 		
 		// If the constant that we are trying to load is negative, negate the
 		// current register
-		if (value < 0)
+		if (negate)
 			instructions.add(new AsmOPER("NEG `d0,`s0", uses, defines, null));
 
 		return instructions;
 	}
 
+	private static int nonZeroWydes(long value) {
+		int count = 0;
+		for (int shift = 0; shift < 64; shift += 16) {
+			if (((value >> shift) & 0xFFFF) != 0)
+				count++;
+		}
+		return count;
+	}
+
 }
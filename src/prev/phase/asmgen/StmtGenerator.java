@@ -1,11 +1,15 @@
 package prev.phase.asmgen;
 
+import java.util.HashSet;
 import java.util.Vector;
 
 import prev.data.asm.AsmInstr;
 import prev.data.asm.AsmLABEL;
 import prev.data.asm.AsmMOVE;
 import prev.data.asm.AsmOPER;
+import prev.data.imc.code.expr.ImcBINOP;
+import prev.data.imc.code.expr.ImcCONST;
+import prev.data.imc.code.expr.ImcExpr;
 import prev.data.imc.code.expr.ImcMEM;
 import prev.data.imc.code.stmt.ImcCJUMP;
 import prev.data.imc.code.stmt.ImcESTMT;
@@ -23,26 +27,61 @@ import prev.data.mem.MemTemp;
  * Machine code generator for ststements.
  */
 public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
-	
+
+	/** Labels that have already been emitted in the current code chunk. */
+	private final HashSet<MemLabel> emittedLabels = new HashSet<MemLabel>();
+
 	public Vector<AsmInstr> visit(ImcCJUMP cjump, Object arg) {
 		Vector<AsmInstr> instructions = new Vector<AsmInstr>();
 
-		// First, visit condition and get the temporary register that the result
-		// is saved to. The result will either be 0 or 1.
-		MemTemp conditionTemporary = cjump.cond.accept(new ExprGenerator(), instructions);
-
-		// The negative label is directly after the condition, so we need to
-		// check if conditionTemporary contains non-zero value (=1). If it does,
-		// jump to positive label, otherwise continue.
+		// The negative label is directly after the condition, so we only need
+		// to branch to the positive label if the condition holds, otherwise
+		// continue.
 		Vector<MemLabel> jumps = new Vector<MemLabel>();
 		jumps.add(cjump.posLabel);
 		jumps.add(cjump.negLabel);
 
+		// If the positive label has already been emitted, this is a loop
+		// back-edge, which is usually taken. Use the probable branch PBxx.
+		String branch = emittedLabels.contains(cjump.posLabel) ? "PB" : "B";
+
 		Vector<MemTemp> uses = new Vector<MemTemp>();
-		uses.add(conditionTemporary);
 
-		// Add a jump if the conditionTemporary contains nonzero value
-		instructions.add(new AsmOPER("BNZ `s0," + cjump.posLabel.name, uses, null, jumps));
+		String condition = null;
+		if (cjump.cond instanceof ImcBINOP)
+			condition = branchCondition(((ImcBINOP) cjump.cond).oper);
+
+		if (condition != null) {
+			// The condition is a comparison, so we can branch on the result of
+			// the CMP instruction directly, without converting it to 0 or 1.
+			ImcBINOP binOp = (ImcBINOP) cjump.cond;
+			if (isZero(binOp.sndExpr)) {
+				// Comparison x ? 0 - the sign of x is the result of CMP
+				uses.add(binOp.fstExpr.accept(new ExprGenerator(), instructions));
+			} else if (isZero(binOp.fstExpr)) {
+				// Comparison 0 ? x - the same as x ?' 0 with mirrored operator
+				uses.add(binOp.sndExpr.accept(new ExprGenerator(), instructions));
+				condition = branchCondition(mirror(binOp.oper));
+			} else {
+				Vector<MemTemp> operands = new Vector<MemTemp>();
+				operands.add(binOp.fstExpr.accept(new ExprGenerator(), instructions));
+				operands.add(binOp.sndExpr.accept(new ExprGenerator(), instructions));
+
+				MemTemp comparison = new MemTemp();
+				Vector<MemTemp> defines = new Vector<MemTemp>();
+				defines.add(comparison);
+
+				instructions.add(new AsmOPER("CMP `d0,`s0,`s1", operands, defines, null));
+				uses.add(comparison);
+			}
+		} else {
+			// Visit condition and get the temporary register that the result
+			// is saved to. The result will either be 0 or 1.
+			uses.add(cjump.cond.accept(new ExprGenerator(), instructions));
+			condition = "NZ";
+		}
+
+		instructions.add(new AsmOPER(branch + condition + " `s0," + cjump.posLabel.name, uses, null, jumps));
 
 		return instructions;
 	}
@@ -76,6 +115,7 @@ public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
 	public Vector<AsmInstr> visit(ImcLABEL label, Object arg) {
 		Vector<AsmInstr> instructions = new Vector<AsmInstr>();
 		instructions.add(new AsmLABEL(label.label));
+		emittedLabels.add(label.label);
 		return instructions;
 	}
 
@@ -153,4 +193,38 @@ public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
 		return instructions;
 	}
 
+	/**
+	 * Returns the branch condition suffix that tests the result of the CMP
+	 * instruction for the given relational operator or null if the operator
+	 * is not relational.
+	 */
+	private static String branchCondition(ImcBINOP.Oper oper) {
+		switch (oper) {
+			case EQU:	return "Z";
+			case NEQ:	return "NZ";
+			case LTH:	return "N";
+			case GTH:	return "P";
+			case LEQ:	return "NP";
+			case GEQ:	return "NN";
+			default:	return null;
+		}
+	}
+
+	/**
+	 * Returns the operator with swapped operands, so that a ? b equals b ?' a.
+	 */
+	private static ImcBINOP.Oper mirror(ImcBINOP.Oper oper) {
+		switch (oper) {
+			case LTH:	return ImcBINOP.Oper.GTH;
+			case GTH:	return ImcBINOP.Oper.LTH;
+			case LEQ:	return ImcBINOP.Oper.GEQ;
+			case GEQ:	return ImcBINOP.Oper.LEQ;
+			default:	return oper;
+		}
+	}
+
+	private static boolean isZero(ImcExpr expression) {
+		return expression instanceof ImcCONST && ((ImcCONST) expression).value == 0;
+	}
+
 }
@@ -29,7 +29,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		if (memoryAccess instanceof MemAbsAccess) {
 			// The absolute access is easier, we simply return NAME(Label(access))
 			MemAbsAccess absoluteMemoryAccess = (MemAbsAccess) memoryAccess;
-			return new ImcNAME(absoluteMemoryAccess.label);
+			return ImcNAME.of(absoluteMemoryAccess.label);
 		} else {
 			// The access is relative, calculate its address from function frame
 			MemRelAccess relativeMemoryAccess = (MemRelAccess) memoryAccess;
@@ -39,20 +39,20 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 
 			// The offset is already calculated in the relativeMemoryAccess.offset,
 			// convert it to CONST instruction
-			ImcExpr offsetInstruction = new ImcCONST(relativeMemoryAccess.offset);
+			ImcExpr offsetInstruction = ImcCONST.of(relativeMemoryAccess.offset);
 
 			// Create an access to the frame pointer temporary value
-			ImcExpr framePointer = new ImcTEMP(currentFunction.FP);
+			ImcExpr framePointer = ImcTEMP.of(currentFunction.FP);
 			
 			// We know that the access is at depth relativeMemoryAccess.depth
 			// and the function is at depth currentFunction.depth
 			// So we need to climb up currentFunction.depth - relativeMemoryAccess.depth times
 			int accessDepth = currentFunction.depth - relativeMemoryAccess.depth;
 			for (int i = 0; i < accessDepth; i++)
-				framePointer = new ImcMEM(framePointer);
+				framePointer = ImcMEM.of(framePointer);
 
 			// Add the offset to the frame pointer
-			return new ImcBINOP(ImcBINOP.Oper.ADD, framePointer, offsetInstruction);
+			return ImcBINOP.of(ImcBINOP.Oper.ADD, framePointer, offsetInstruction);
 		}
 	}
 
@@ -85,7 +85,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		if (declaration instanceof AstMemDecl) {
 			MemAccess access = Memory.accesses.get((AstMemDecl) declaration);
 			if (access instanceof TemporaryAccess) {
-				return new ImcTEMP(((TemporaryAccess) access).temporary);
+				return ImcTEMP.of(((TemporaryAccess) access).temporary);
 			}
 		}
 
@@ -94,7 +94,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		// the address where it is declared. Here we want to access the value at
 		// the returned address, so we wrap it in MEM(address)
 		ImcExpr accessInstruction = declaration.accept(this, frames);
-		ImcExpr instruction = new ImcMEM(accessInstruction);
+		ImcExpr instruction = ImcMEM.of(accessInstruction);
 
 		ImcGen.exprImc.put(nameExpression, instruction);
 		return instruction;
@@ -124,10 +124,10 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		// Finally, construct the instruction for accessing the i-th element of
 		// the array. Use the address of the first element and move i times size
 		// of element of the array to the right
-		ImcExpr newIndexInstruction = new ImcBINOP(ImcBINOP.Oper.MUL, indexInstruction, new ImcCONST(arrayType.size()));
-		ImcExpr newArrayAccessInstruction = new ImcBINOP(ImcBINOP.Oper.ADD, arrayAddressInstruction, newIndexInstruction);
+		ImcExpr newIndexInstruction = ImcBINOP.of(ImcBINOP.Oper.MUL, indexInstruction, ImcCONST.of(arrayType.size()));
+		ImcExpr newArrayAccessInstruction = ImcBINOP.of(ImcBINOP.Oper.ADD, arrayAddressInstruction, newIndexInstruction);
 
-		ImcExpr instruction = new ImcMEM(newArrayAccessInstruction);
+		ImcExpr instruction = ImcMEM.of(newArrayAccessInstruction);
 		ImcGen.exprImc.put(arrayExpression, instruction);
 		return instruction;
 	}
@@ -143,11 +143,11 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 
 		AstMemDecl componentDeclaration = (AstMemDecl) SemAn.declaredAt.get(recordExpression.comp());
 		MemRelAccess relativeMemoryAccess = (MemRelAccess) Memory.accesses.get(componentDeclaration);
-		ImcExpr componentOffset = new ImcCONST(relativeMemoryAccess.offset);
-		ImcExpr newAddress = new ImcBINOP(ImcBINOP.Oper.ADD, recordAddressInstruction, componentOffset);
+		ImcExpr componentOffset = ImcCONST.of(relativeMemoryAccess.offset);
+		ImcExpr newAddress = ImcBINOP.of(ImcBINOP.Oper.ADD, recordAddressInstruction, componentOffset);
 
 		//ImcExpr recordAddressInstruction = ((ImcMEM) arrayInstruction).addr;
-		ImcExpr instruction = new ImcMEM(newAddress);
+		ImcExpr instruction = ImcMEM.of(newAddress);
 		ImcGen.exprImc.put(recordExpression, instruction);
 		return instruction;
 	}
@@ -158,27 +158,27 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		switch (atomExpression.type()) {
 			case VOID:
 				// The none instruction should return an undefined value
-				instruction = new ImcCONST(18290);
+				instruction = ImcCONST.of(18290);
 				break;
 			case CHAR:
 				// First, convert string to character (get the first character)
 				char character = atomExpression.value().charAt(0);
 				// Convert character to integer, then to long
-				instruction = new ImcCONST((long)((int) character));
+				instruction = ImcCONST.of((long)((int) character));
 				break;
 			case INTEGER:
 				// Integers are simple, simply convert string to integer
-				instruction = new ImcCONST(Long.parseLong(atomExpression.value()));
+				instruction = ImcCONST.of(Long.parseLong(atomExpression.value()));
 				break;
 			case BOOLEAN:
 				// Boolean with value "true" is 1, otherwise 0
 				boolean booleanValue = atomExpression.value().equals("true");
 				// If boolean value is true, take long 1, otherwise 0
-				instruction = new ImcCONST(booleanValue ? 1L : 0L);
+				instruction = ImcCONST.of(booleanValue ? 1L : 0L);
 				break;
 			case POINTER:
 				// The nil instruction is a pointer to zero
-				instruction = new ImcCONST(0);
+				instruction = ImcCONST.of(0);
 				break;
 			case STRING:
 				// Use the rule A1 for accessing strings in memory
@@ -186,7 +186,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 				MemAbsAccess absoluteAccess = Memory.strings.get(atomExpression);
 				// Then, use the absolute access label and construct an
 				// instruction that returns the address that the label is mapped to
-				instruction = new ImcNAME(absoluteAccess.label);
+				instruction = ImcNAME.of(absoluteAccess.label);
 				break;
 		}
 		ImcGen.exprImc.put(atomExpression, instruction);
@@ -204,14 +204,14 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		// Get the calling function (current function) frame pointer and
 		// add its static link to list of arguments
 		MemFrame callingFunction = frames.peek();
-		arguments.add(new ImcTEMP(callingFunction.FP));
+		arguments.add(ImcTEMP.of(callingFunction.FP));
 
 		// Now add a second parameter, the subexpression instructions
 		offsets.add(0L + new SemPointer(new SemVoid()).size());
 		arguments.add(subexpressionInstruction);
 
 		// The final instruction is a function call to a function named new
-		return new ImcCALL(new MemLabel(functionName), offsets, arguments);
+		return ImcCALL.of(new MemLabel(functionName), offsets, arguments);
 	}
 
 	@Override
@@ -225,10 +225,10 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 				instruction = subexpressionInstruction;
 				break;
 			case SUB:
-				instruction = new ImcUNOP(ImcUNOP.Oper.NEG, subexpressionInstruction);
+				instruction = ImcUNOP.of(ImcUNOP.Oper.NEG, subexpressionInstruction);
 				break;
 			case NOT:
-				instruction = new ImcUNOP(ImcUNOP.Oper.NOT, subexpressionInstruction);
+				instruction = ImcUNOP.of(ImcUNOP.Oper.NOT, subexpressionInstruction);
 				break;
 			case PTR:
 				// We are trying to get the address of the expression prefixExpression
@@ -252,7 +252,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 	public ImcExpr visit(AstSfxExpr suffixExpression, Stack<MemFrame> frames) {
 		// We are trying to get the value of the expression
 		ImcExpr subexpressionInstruction = suffixExpression.expr().accept(this, frames);
-		ImcExpr instruction = new ImcMEM(subexpressionInstruction);
+		ImcExpr instruction = ImcMEM.of(subexpressionInstruction);
 		ImcGen.exprImc.put(suffixExpression, instruction);
 		return instruction;
 	}
@@ -268,7 +268,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		String operation = binaryExpression.oper().name();
 		ImcBINOP.Oper operator = ImcBINOP.Oper.valueOf(operation);
 
-		ImcExpr instruction = new ImcBINOP(operator, firstInstruction, secondInstruction);
+		ImcExpr instruction = ImcBINOP.of(operator, firstInstruction, secondInstruction);
 		
 		ImcGen.exprImc.put(binaryExpression, instruction);
 		return instruction;
@@ -298,11 +298,11 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		// the MEM(MEM(TEMP(FP)))
 		ImcExpr staticLink = null;
 		if (functionFrame.depth == 1)
-			staticLink = new ImcCONST(0);
+			staticLink = ImcCONST.of(0);
 		else {
-			staticLink = new ImcTEMP(parentFrame.FP);
+			staticLink = ImcTEMP.of(parentFrame.FP);
 			for (int i = 0; i <= parentFrame.depth - functionFrame.depth; i++)
-				staticLink = new ImcMEM(staticLink);
+				staticLink = ImcMEM.of(staticLink);
 		}
 
 		// Compute the instructions for argument one after the other and add
@@ -325,7 +325,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 			currentOffset += semanticType.actualType().size();
 		}
 		
-		ImcExpr instruction = new ImcCALL(functionFrame.label, argumentOffsets, argumentInstructions);
+		ImcExpr instruction = ImcCALL.of(functionFrame.label, argumentOffsets, argumentInstructions);
 		ImcGen.exprImc.put(callExpression, instruction);
 		return instruction;
 	}
@@ -355,7 +355,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		} else {
 			// The last statement is not expression, return undefined value (404)
 			statementInstructions.add(lastStatementInsctuction);
-			lastExpression = new ImcCONST(404);
+			lastExpression = ImcCONST.of(404);
 		}
 
 		ImcStmt statementsInstruction = new ImcSTMTS(statementInstructions);
@@ -373,7 +373,7 @@ public class ExprGenerator extends AstFullVisitor<ImcExpr, Stack<MemFrame>> {
 		// on previous instruction
 		SemType type = SemAn.isType.get(castExpression.type());
 		if (type.actualType() instanceof SemChar) {
-			instruction = new ImcBINOP(ImcBINOP.Oper.MOD, instruction, new ImcCONST(256));
+			instruction = ImcBINOP.of(ImcBINOP.Oper.MOD, instruction, ImcCONST.of(256));
 		}
 
 		ImcGen.exprImc.put(castExpression, instruction);
@@ -92,21 +92,25 @@ public class StmtGenerator extends AstFullVisitor<ImcStmt, Stack<MemFrame>> {
 		Vector<ImcStmt> statements = new Vector<ImcStmt>();
 
 		// The while statement while cond do bodyStmt should be transformed to
-		// cond		CJUMP cond loop end
+		//			CJUMP cond loop end
 		// loop		... ; bodyStmt code
-		//			JMP start
+		//			CJUMP cond loop end
 		// end		... ; end label
-		ImcExpr conditionInstruction = whileStatement.cond().accept(new ExprGenerator(), frames);
+		// The condition is tested once before the loop (so the body is not
+		// executed if the condition is false) and then at the bottom of the
+		// loop, which saves an unconditional jump in each iteration. The
+		// condition is generated separately for each test, as it may contain
+		// statements with their own labels (e.g., in a statement expression).
+		ImcExpr guardInstruction = whileStatement.cond().accept(new ExprGenerator(), frames);
 
-		ImcLABEL conditionLabel = new ImcLABEL(new MemLabel());
 		ImcLABEL loopLabel = new ImcLABEL(new MemLabel());
 		ImcLABEL endLabel = new ImcLABEL(new MemLabel());
 
-		statements.add(conditionLabel);
-		statements.add(new ImcCJUMP(conditionInstruction, loopLabel.label, endLabel.label));
+		statements.add(new ImcCJUMP(guardInstruction, loopLabel.label, endLabel.label));
 		statements.add(loopLabel);
 		statements.add(whileStatement.bodyStmt().accept(this, frames));
-		statements.add(new ImcJUMP(conditionLabel.label));
+		ImcExpr conditionInstruction = whileStatement.cond().accept(new ExprGenerator(), frames);
+		statements.add(new ImcCJUMP(conditionInstruction, loopLabel.label, endLabel.label));
 		statements.add(endLabel);
 
 		ImcStmt instruction = new ImcSTMTS(statements);;
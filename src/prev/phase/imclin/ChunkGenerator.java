@@ -38,7 +38,7 @@ public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 		Vector<ImcStmt> canonStmts = new Vector<ImcStmt>();
 		canonStmts.add(new ImcLABEL(entryLabel));
 		ImcExpr bodyExpr = ImcGen.exprImc.get(funDecl.expr());
-		ImcStmt bodyStmt = new ImcMOVE(new ImcTEMP(frame.RV), bodyExpr);
+		ImcStmt bodyStmt = new ImcMOVE(ImcTEMP.of(frame.RV), bodyExpr);
 		canonStmts.addAll(bodyStmt.accept(new StmtCanonizer(), null));
 		canonStmts.add(new ImcJUMP(exitLabel));
 		
@@ -60,29 +60,140 @@ public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 	
 	private Vector<ImcStmt> linearize(Vector<ImcStmt> stmts) {
 		// The CALL and STMTS expression problems were already solved by our
-		// professor, we have to fix the CJUMP statements
+		// professor, we have to fix the CJUMP statements. The statements are
+		// split into basic blocks, which are then arranged into traces, so
+		// that most CJUMP statements are followed by their negative label.
+		Vector<Vector<ImcStmt>> blocks = basicBlocks(stmts);
+		Vector<ImcStmt> tracedStatements = traces(blocks);
+		return fixJumps(tracedStatements);
+	}
 
-		Vector<ImcStmt> linearizedStatements = new Vector<ImcStmt>();
+	/**
+	 * Splits statements into basic blocks. Each basic block starts with a
+	 * label and ends with a JUMP or CJUMP statement.
+	 */
+	private Vector<Vector<ImcStmt>> basicBlocks(Vector<ImcStmt> stmts) {
+		Vector<Vector<ImcStmt>> blocks = new Vector<Vector<ImcStmt>>();
+		Vector<ImcStmt> block = null;
 		for (ImcStmt statement : stmts) {
-			// Everything that is not CJUMP should simply be copyed
-			if (!(statement instanceof ImcCJUMP)) {
-				linearizedStatements.add(statement);
-				continue;
+			if (statement instanceof ImcLABEL) {
+				// A label always starts a new basic block. If the previous block
+				// has not ended with a jump, it falls through to this label.
+				if (block != null)
+					block.add(new ImcJUMP(((ImcLABEL) statement).label));
+				block = new Vector<ImcStmt>();
+				blocks.add(block);
+			} else if (block == null) {
+				// The statement after a jump is not labeled, add a new label
+				block = new Vector<ImcStmt>();
+				block.add(new ImcLABEL(new MemLabel()));
+				blocks.add(block);
 			}
+			block.add(statement);
+
+			if (statement instanceof ImcJUMP || statement instanceof ImcCJUMP)
+				block = null;
+		}
+		return blocks;
+	}
+
+	/**
+	 * Arranges basic blocks into traces. Each trace is continued with the
+	 * negative successor of the CJUMP statement if it has not been scheduled
+	 * yet, otherwise with the positive one.
+	 */
+	private Vector<ImcStmt> traces(Vector<Vector<ImcStmt>> blocks) {
+		HashMap<MemLabel, Integer> blockIndices = new HashMap<MemLabel, Integer>();
+		for (int i = 0; i < blocks.size(); i++)
+			blockIndices.put(((ImcLABEL) blocks.get(i).firstElement()).label, i);
 
-			// We have reached the CJUMp statement, 
-			ImcCJUMP conditionalJumpStatement = (ImcCJUMP) statement;
+		boolean[] scheduled = new boolean[blocks.size()];
+		Vector<ImcStmt> tracedStatements = new Vector<ImcStmt>();
 
-			// Here, we have reached the CJUMP statement, create a new negative label
-			ImcLABEL newNegativeLabel = new ImcLABEL(new MemLabel());
-			
-			linearizedStatements.add(new ImcCJUMP(conditionalJumpStatement.cond, conditionalJumpStatement.posLabel, newNegativeLabel.label));
-			linearizedStatements.add(newNegativeLabel);
-			linearizedStatements.add(new ImcJUMP(conditionalJumpStatement.negLabel));
+		// The first block contains the function entry label, so the first
+		// trace will always start with it.
+		for (int i = 0; i < blocks.size(); i++) {
+			Integer current = i;
+			while (current != null && !scheduled[current]) {
+				scheduled[current] = true;
+				Vector<ImcStmt> block = blocks.get(current);
+				tracedStatements.addAll(block);
 
+				ImcStmt lastStatement = block.lastElement();
+				current = null;
+				if (lastStatement instanceof ImcCJUMP) {
+					Integer negative = blockIndices.get(((ImcCJUMP) lastStatement).negLabel);
+					Integer positive = blockIndices.get(((ImcCJUMP) lastStatement).posLabel);
+					if (negative != null && !scheduled[negative])
+						current = negative;
+					else
+						current = positive;
+				} else if (lastStatement instanceof ImcJUMP) {
+					current = blockIndices.get(((ImcJUMP) lastStatement).label);
+				}
+			}
+		}
+		return tracedStatements;
+	}
+
+	/**
+	 * Makes sure that every CJUMP statement is followed by its negative label
+	 * and removes jumps to the next statement.
+	 */
+	private Vector<ImcStmt> fixJumps(Vector<ImcStmt> stmts) {
+		Vector<ImcStmt> linearizedStatements = new Vector<ImcStmt>();
+		for (int i = 0; i < stmts.size(); i++) {
+			ImcStmt statement = stmts.get(i);
+
+			MemLabel nextLabel = null;
+			if (i + 1 < stmts.size() && stmts.get(i + 1) instanceof ImcLABEL)
+				nextLabel = ((ImcLABEL) stmts.get(i + 1)).label;
+
+			if (statement instanceof ImcJUMP) {
+				// Jumps to the next statement are useless
+				if (((ImcJUMP) statement).label != nextLabel)
+					linearizedStatements.add(statement);
+			} else if (statement instanceof ImcCJUMP) {
+				ImcCJUMP conditionalJumpStatement = (ImcCJUMP) statement;
+				if (conditionalJumpStatement.negLabel == nextLabel) {
+					linearizedStatements.add(conditionalJumpStatement);
+				} else if (conditionalJumpStatement.posLabel == nextLabel) {
+					// The positive label follows, negate the condition and swap
+					// the labels
+					ImcExpr negatedCondition = negate(conditionalJumpStatement.cond);
+					linearizedStatements.add(new ImcCJUMP(negatedCondition, conditionalJumpStatement.negLabel, conditionalJumpStatement.posLabel));
+				} else {
+					// Neither label follows, create a new negative label
+					ImcLABEL newNegativeLabel = new ImcLABEL(new MemLabel());
+					linearizedStatements.add(new ImcCJUMP(conditionalJumpStatement.cond, conditionalJumpStatement.posLabel, newNegativeLabel.label));
+					linearizedStatements.add(newNegativeLabel);
+					linearizedStatements.add(new ImcJUMP(conditionalJumpStatement.negLabel));
+				}
+			} else {
+				linearizedStatements.add(statement);
+			}
 		}
 		return linearizedStatements;
+	}
 
+	private static ImcExpr negate(ImcExpr condition) {
+		if (condition instanceof ImcBINOP) {
+			ImcBINOP binOp = (ImcBINOP) condition;
+			ImcBINOP.Oper negatedOper = null;
+			switch (binOp.oper) {
+				case EQU: negatedOper = ImcBINOP.Oper.NEQ; break;
+				case NEQ: negatedOper = ImcBINOP.Oper.EQU; break;
+				case LTH: negatedOper = ImcBINOP.Oper.GEQ; break;
+				case GEQ: negatedOper = ImcBINOP.Oper.LTH; break;
+				case GTH: negatedOper = ImcBINOP.Oper.LEQ; break;
+				case LEQ: negatedOper = ImcBINOP.Oper.GTH; break;
+				default: break;
+			}
+			if (negatedOper != null)
+				return ImcBINOP.of(negatedOper, binOp.fstExpr, binOp.sndExpr);
+		}
+		// The condition is either 0 or 1
+		return ImcBINOP.of(ImcBINOP.Oper.EQU, condition, ImcCONST.of(0));
 	}
 
 }
@@ -14,13 +14,13 @@ public class ExprCanonizer implements ImcVisitor<ImcExpr, Vector<ImcStmt>> {
 	public ImcExpr visit(ImcBINOP imcBinop, Vector<ImcStmt> stmts) {
 		ImcExpr fstExpr = imcBinop.fstExpr.accept(this, stmts);
 		MemTemp temp1 = new MemTemp();
-		stmts.add(new ImcMOVE(new ImcTEMP(temp1), fstExpr));
+		stmts.add(new ImcMOVE(ImcTEMP.of(temp1), fstExpr));
 		ImcExpr sndExpr = imcBinop.sndExpr.accept(this, stmts);
 		MemTemp temp2 = new MemTemp();
-		stmts.add(new ImcMOVE(new ImcTEMP(temp2), sndExpr));
+		stmts.add(new ImcMOVE(ImcTEMP.of(temp2), sndExpr));
 		MemTemp resultTemp = new MemTemp();
-		stmts.add(new ImcMOVE(new ImcTEMP(resultTemp), new ImcBINOP(imcBinop.oper, new ImcTEMP(temp1), new ImcTEMP(temp2))));
-		return new ImcTEMP(resultTemp);
+		stmts.add(new ImcMOVE(ImcTEMP.of(resultTemp), ImcBINOP.of(imcBinop.oper, ImcTEMP.of(temp1), ImcTEMP.of(temp2))));
+		return ImcTEMP.of(resultTemp);
 	}
 	
 	public ImcExpr visit(ImcCALL imcCall, Vector<ImcStmt> stmts) {
@@ -28,27 +28,27 @@ public class ExprCanonizer implements ImcVisitor<ImcExpr, Vector<ImcStmt>> {
 		for (ImcExpr arg: imcCall.args()) {
 			ImcExpr canonArg = arg.accept(this, stmts);
 			MemTemp temp = new MemTemp();
-			stmts.add(new ImcMOVE(new ImcTEMP(temp), canonArg));
-			canonArgs.add(new ImcTEMP(temp));
+			stmts.add(new ImcMOVE(ImcTEMP.of(temp), canonArg));
+			canonArgs.add(ImcTEMP.of(temp));
 		}
 		MemTemp temp = new MemTemp();
-		stmts.add(new ImcMOVE(new ImcTEMP(temp), new ImcCALL(imcCall.label, imcCall.offs(), canonArgs)));
-		return new ImcTEMP(temp);
+		stmts.add(new ImcMOVE(ImcTEMP.of(temp), ImcCALL.of(imcCall.label, imcCall.offs(), canonArgs)));
+		return ImcTEMP.of(temp);
 	}
 
 	public ImcExpr visit(ImcCONST imcConst, Vector<ImcStmt> stmts) {
-		return new ImcCONST(imcConst.value);
+		return ImcCONST.of(imcConst.value);
 	}
 
 	public ImcExpr visit(ImcMEM imcMem, Vector<ImcStmt> stmts) {
 		ImcExpr addrExpr = imcMem.addr.accept(this, stmts);
 		MemTemp addrTemporary = new MemTemp();
-		stmts.add(new ImcMOVE(new ImcTEMP(addrTemporary), new ImcMEM(addrExpr)));
-		return new ImcTEMP(addrTemporary);
+		stmts.add(new ImcMOVE(ImcTEMP.of(addrTemporary), ImcMEM.of(addrExpr)));
+		return ImcTEMP.of(addrTemporary);
 	}
 
 	public ImcExpr visit(ImcNAME imcName, Vector<ImcStmt> stmts) {
-		return new ImcNAME(imcName.label);
+		return ImcNAME.of(imcName.label);
 	}
 
 	public ImcExpr visit(ImcSEXPR imcSExpr, Vector<ImcStmt> stmts) {
@@ -57,12 +57,12 @@ public class ExprCanonizer implements ImcVisitor<ImcExpr, Vector<ImcStmt>> {
 	}
 	
 	public ImcExpr visit(ImcTEMP imcTemp, Vector<ImcStmt> stmts) {
-		return new ImcTEMP(imcTemp.temp);
+		return ImcTEMP.of(imcTemp.temp);
 	}
 	
 	public ImcExpr visit(ImcUNOP imcUnop, Vector<ImcStmt> stmts) {
 		ImcExpr subExpr = imcUnop.subExpr.accept(this, stmts);
-		return new ImcUNOP(imcUnop.oper, subExpr);
+		return ImcUNOP.of(imcUnop.oper, subExpr);
 	}
 
 }
@@ -15,6 +15,29 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 
 	public Vector<ImcStmt> visit(ImcCJUMP imcCJump, Object visArg) {
 		Vector<ImcStmt> result = new Vector<ImcStmt>();
+		if (imcCJump.cond instanceof ImcBINOP && isRelational(((ImcBINOP) imcCJump.cond).oper)) {
+			// Relational conditions are kept inside of the CJUMP statement, so
+			// the code generator can emit a compare-and-branch instead of
+			// computing the value 0 or 1 first. Only the operands are moved to
+			// temporaries. Constant operands are left in place, so that a
+			// comparison with zero can branch on the other operand directly.
+			ImcBINOP imcBinop = (ImcBINOP) imcCJump.cond;
+			ImcExpr fstExpr = imcBinop.fstExpr.accept(new ExprCanonizer(), result);
+			if (!(fstExpr instanceof ImcCONST)) {
+				MemTemp temp1 = new MemTemp();
+				result.add(new ImcMOVE(ImcTEMP.of(temp1), fstExpr));
+				fstExpr = ImcTEMP.of(temp1);
+			}
+			ImcExpr sndExpr = imcBinop.sndExpr.accept(new ExprCanonizer(), result);
+			if (!(sndExpr instanceof ImcCONST)) {
+				MemTemp temp2 = new MemTemp();
+				result.add(new ImcMOVE(ImcTEMP.of(temp2), sndExpr));
+				sndExpr = ImcTEMP.of(temp2);
+			}
+			ImcExpr cond = ImcBINOP.of(imcBinop.oper, fstExpr, sndExpr);
+			result.add(new ImcCJUMP(cond, imcCJump.posLabel, imcCJump.negLabel));
+			return result;
+		}
 		ImcExpr cond = imcCJump.cond.accept(new ExprCanonizer(), result);
 		result.add(new ImcCJUMP(cond, imcCJump.posLabel, imcCJump.negLabel));
 		return result;
@@ -29,7 +52,7 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 				ImcExpr canonArg = arg.accept(new ExprCanonizer(), result);
 				canonArgs.add(canonArg);
 			}
-			result.add(new ImcESTMT(new ImcCALL(imcCall.label, imcCall.offs(), canonArgs)));
+			result.add(new ImcESTMT(ImcCALL.of(imcCall.label, imcCall.offs(), canonArgs)));
 			return result;
 		}
 		Vector<ImcStmt> result = new Vector<ImcStmt>();
@@ -55,11 +78,11 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 			Vector<ImcStmt> result = new Vector<ImcStmt>();
 			ImcExpr dstExpr = ((ImcMEM) (imcMove.dst)).addr.accept(new ExprCanonizer(), result);
 			MemTemp dstTemp = new MemTemp();
-			result.add(new ImcMOVE(new ImcTEMP(dstTemp), dstExpr));
+			result.add(new ImcMOVE(ImcTEMP.of(dstTemp), dstExpr));
 			ImcExpr srcExpr = imcMove.src.accept(new ExprCanonizer(), result);
 			MemTemp srcTemp = new MemTemp();
-			result.add(new ImcMOVE(new ImcTEMP(srcTemp), srcExpr));
-			result.add(new ImcMOVE(new ImcMEM(new ImcTEMP(dstTemp)), new ImcTEMP(srcTemp)));
+			result.add(new ImcMOVE(ImcTEMP.of(srcTemp), srcExpr));
+			result.add(new ImcMOVE(ImcMEM.of(ImcTEMP.of(dstTemp)), ImcTEMP.of(srcTemp)));
 			return result;
 		}
 		if (imcMove.dst instanceof ImcTEMP) {
@@ -67,8 +90,8 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 			MemTemp dstTemp = ((ImcTEMP) (imcMove.dst)).temp;
 			ImcExpr srcExpr = imcMove.src.accept(new ExprCanonizer(), result);
 			MemTemp srcTemp = new MemTemp();
-			result.add(new ImcMOVE(new ImcTEMP(srcTemp), srcExpr));
-			result.add(new ImcMOVE(new ImcTEMP(dstTemp), new ImcTEMP(srcTemp)));
+			result.add(new ImcMOVE(ImcTEMP.of(srcTemp), srcExpr));
+			result.add(new ImcMOVE(ImcTEMP.of(dstTemp), ImcTEMP.of(srcTemp)));
 			return result;
 		}
 		throw new Report.InternalError();
@@ -82,4 +105,13 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 		return result;
 	}
 
+	private static boolean isRelational(ImcBINOP.Oper oper) {
+		switch (oper) {
+			case EQU: case NEQ: case LTH: case GTH: case LEQ: case GEQ:
+				return true;
+			default:
+				return false;
+		}
+	}
+
 }
@@ -2,6 +2,7 @@ package prev.phase.memory;
 
 import prev.data.ast.tree.decl.AstCompDecl;
 import prev.data.ast.tree.decl.AstFunDecl;
+import prev.data.ast.tree.decl.AstMemDecl;
 import prev.data.ast.tree.decl.AstParDecl;
 import prev.data.ast.tree.decl.AstVarDecl;
 import prev.data.ast.tree.expr.AstAtomExpr;
@@ -15,12 +16,16 @@ import prev.data.mem.TemporaryAccess;
 import prev.data.mem.MemFrame;
 import prev.data.mem.MemLabel;
 import prev.data.mem.MemRelAccess;
+import prev.data.semtype.SemArray;
 import prev.data.semtype.SemChar;
 import prev.data.semtype.SemPointer;
+import prev.data.semtype.SemRecord;
 import prev.data.semtype.SemType;
 import prev.data.semtype.SemVoid;
 import prev.phase.seman.SemAn;
 
+import java.util.HashSet;
+
 /**
  * Computing memory layout: frames and accesses.
  */
@@ -42,6 +47,7 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
 		public long locsSize = 0;
 		public long argsSize = 0;
 		public long parsSize = new SemPointer(new SemVoid()).size();
+		public HashSet<Long> privateOffsets = new HashSet<Long>();
 	}
 
 	/**
@@ -115,7 +121,7 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
 			functionLabel = new MemLabel();
 		}
 		// Use function context to construct function memory frame
-		MemFrame functionFrame = new MemFrame(functionLabel, functionContext.depth, functionContext.locsSize, functionContext.argsSize);
+		MemFrame functionFrame = new MemFrame(functionLabel, functionContext.depth, functionContext.locsSize, functionContext.argsSize, functionContext.privateOffsets);
 		
 		Memory.frames.put(functionDeclaration, functionFrame);
 		return null;
@@ -158,6 +164,8 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
 		long offset = -functionContext.locsSize - semanticType.size();
 		MemRelAccess memoryAccess = new MemRelAccess(semanticType.size(), offset, functionContext.depth);
 		Memory.accesses.put(variableDeclaration, memoryAccess);
+		if (isPrivate(variableDeclaration, semanticType))
+			functionContext.privateOffsets.add(offset);
 		
 		functionContext.locsSize += semanticType.size();
 		
@@ -180,12 +188,26 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
 		// Compute the offset (parameters have positive offset values)
 		MemRelAccess memoryAccess = new MemRelAccess(semanticType.size(), functionContext.parsSize, functionContext.depth);
 		Memory.accesses.put(parameterDeclaration, memoryAccess);
+		if (isPrivate(parameterDeclaration, semanticType))
+			functionContext.privateOffsets.add(functionContext.parsSize);
 
 		functionContext.parsSize += semanticType.size();
 		
 		return null;
 	}
 
+	/**
+	 * Checks whether a variable or parameter can only be accessed directly
+	 * through the frame pointer: its address is never taken and it is not an
+	 * array or a record, whose elements are accessed at computed addresses.
+	 */
+	private static boolean isPrivate(AstMemDecl declaration, SemType semanticType) {
+		if (Memory.isAddressTaken.get(declaration) != null)
+			return false;
+		SemType actualType = semanticType.actualType();
+		return !(actualType instanceof SemArray) && !(actualType instanceof SemRecord);
+	}
+
 	@Override
 	public Object visit(AstCallExpr callExpression, Context context) {
 		// Inside the call expression, we should calculate the new
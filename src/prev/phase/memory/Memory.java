@@ -23,6 +23,9 @@ public class Memory extends Phase {
 	/** Indicates whether the variable can be represented in register or not. */
 	public static final AstAttribute<AstDecl, Boolean> isRegisterRepresentable = new AstAttribute<AstDecl, Boolean>(0);
 
+	/** Indicates whether the address of the variable or parameter is taken. */
+	public static final AstAttribute<AstMemDecl, Boolean> isAddressTaken = new AstAttribute<AstMemDecl, Boolean>(0);
+
 	/**
 	 * Constructs a new phase for computing layout.
 	 */
@@ -95,6 +95,11 @@ public class VariableMemoryAnalysis extends AstFullVisitor<Object, VariableMemor
             // This is a pointer to variable
             Memory.isRegisterRepresentable.put(declaration, false);
         }
+
+        // The variable or parameter may now be accessed through any pointer,
+        // so its location in memory can alias other memory accesses.
+        if (declaration instanceof AstMemDecl)
+            Memory.isAddressTaken.put((AstMemDecl) declaration, true);
         
 		return null;
 	}
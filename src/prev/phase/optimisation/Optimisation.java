@@ -10,14 +10,22 @@ import prev.phase.imclin.*;
 import prev.data.mem.*;
 import prev.phase.optimisation.common.control_flow_graph.*;
 import prev.phase.optimisation.constant_folding.*;
+import prev.phase.optimisation.control_flow_simplification.*;
 import prev.phase.optimisation.peephole_optimisation.*;
 import prev.phase.optimisation.constant_propagation.*;
+import prev.phase.optimisation.sparse_conditional_constant_propagation.*;
 import prev.phase.optimisation.copy_propagation.*;
 import prev.phase.optimisation.dead_code_elimination.*;
 import prev.phase.optimisation.common_subexpression_elimination.*;
+import prev.phase.optimisation.global_value_numbering.*;
 import prev.phase.optimisation.loop_hoisting.*;
+import prev.phase.optimisation.lazy_code_motion.*;
 import prev.phase.optimisation.induction_variable_elimination.*;
+import prev.phase.optimisation.loop_unrolling.*;
+import prev.phase.optimisation.inlining.*;
+import prev.phase.optimisation.tail_recursion_elimination.*;
 import java.util.*;
+import java.util.concurrent.*;
 import prev.common.logger.*;
 
 /**
@@ -29,11 +37,12 @@ public class Optimisation extends Phase {
      * for. */
     public static int DEFAULT_MAX_ITERATIONS = 32;
 
-    /** A list of steps of performed optimisations. */
-    private static Vector<LinCodeChunk> optimisations = new Vector<LinCodeChunk>();
+    /** Traces of the optimisation of each frame, only recorded if the
+     * optimisation is logged. */
+    private final Vector<OptimisationTrace> traces = new Vector<OptimisationTrace>();
 
     /** Optimisations before and after for each frame. */
-    private static Vector<LinCodeChunk> beforeAfterOptimisations = new Vector<LinCodeChunk>();
+    private final Vector<LinCodeChunk> beforeAfterOptimisations = new Vector<LinCodeChunk>();
 
 	public Optimisation() {
 		super("optimisation");
@@ -45,33 +54,140 @@ public class Optimisation extends Phase {
 
     public void run(int maxIterations) {
 
-        logOptimisationsBefore();
+        boolean traced = this.logger != null;
+        if (traced)
+            logOptimisationsBefore();
 
-        // Execute optimisation on all code chunks
+        ImcLin.setCodeChunks(runInterproceduralOptimisations(ImcLin.codeChunks()));
+
+        // Frames are optimised independently of each other. With more than
+        // one job, each frame creates its temporaries and labels in its own
+        // namespace, so the result does not depend on the order in which
+        // the frames are optimised.
+        int jobs = Compiler.numberOfJobs;
+        Vector<FrameOptimisation> frameOptimisations = new Vector<FrameOptimisation>();
+        for (LinCodeChunk codeChunk : ImcLin.codeChunks())
+            frameOptimisations.add(new FrameOptimisation(codeChunk, maxIterations, jobs > 1 ? frameOptimisations.size() : -1, traced));
+
+        if (jobs > 1) {
+            ForkJoinPool pool = new ForkJoinPool(jobs);
+            try {
+                for (FrameOptimisation frameOptimisation : frameOptimisations)
+                    pool.execute(frameOptimisation);
+                for (FrameOptimisation frameOptimisation : frameOptimisations)
+                    frameOptimisation.join();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (FrameOptimisation frameOptimisation : frameOptimisations)
+                frameOptimisation.invoke();
+        }
+
+        // Collect the results in the order of frames
         Vector<LinCodeChunk> optimizedCodeChunks = new Vector<LinCodeChunk>();
-        for (LinCodeChunk codeChunk : ImcLin.codeChunks()) {
-
-            // Construct a control-flow graph on which all optimisations will run
-            ControlFlowGraph graph = ControlFlowGraphBuilder.build(codeChunk);
-            addOptimisationLog(optimisations, "original", graph);
-
-            addOptimisationLog(beforeAfterOptimisations, "original", graph);
-            
-            // Repeat optimisations until graph is fully optimized
-            Optimisation.runOptimisations(graph, maxIterations);
-            
-            addOptimisationLog(beforeAfterOptimisations, "optimised", graph);
-
-            // Convert control-flow graph back to list of statements and create
-            // a new code chunk with modified statements.
-            Vector<ImcStmt> newStatements = ControlFlowGraphBuilder.toStatements(graph);
-            LinCodeChunk newCodeChunk = new LinCodeChunk(codeChunk.frame, newStatements, codeChunk.entryLabel, codeChunk.exitLabel);
-            optimizedCodeChunks.add(newCodeChunk);
+        for (FrameOptimisation frameOptimisation : frameOptimisations) {
+            if (traced) {
+                this.traces.add(frameOptimisation.trace);
+                this.beforeAfterOptimisations.add(renamed(frameOptimisation.trace.codeChunk, "original"));
+                this.beforeAfterOptimisations.add(renamed(frameOptimisation.optimisedCodeChunk, "optimised"));
+            }
+            optimizedCodeChunks.add(frameOptimisation.optimisedCodeChunk);
         }
         ImcLin.setCodeChunks(optimizedCodeChunks);
     }
 
-    public static void runOptimisations(ControlFlowGraph graph, int maxIterations) {
+    /** Optimisation of a single frame, possibly run by another thread. */
+    private static class FrameOptimisation extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LinCodeChunk codeChunk;
+        private final int maxIterations;
+
+        /** The namespace of new temporaries and labels or -1 for none */
+        private final int namespace;
+
+        /** Whether the steps of the optimisation should be traced */
+        private final boolean traced;
+
+        OptimisationTrace trace = null;
+
+        LinCodeChunk optimisedCodeChunk = null;
+
+        FrameOptimisation(LinCodeChunk codeChunk, int maxIterations, int namespace, boolean traced) {
+            this.codeChunk = codeChunk;
+            this.maxIterations = maxIterations;
+            this.namespace = namespace;
+            this.traced = traced;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.namespace >= 0)
+                MemNamespace.enter(this.namespace);
+            try {
+                // Construct a control-flow graph on which all optimisations will run
+                ControlFlowGraph graph = ControlFlowGraphBuilder.build(this.codeChunk);
+                if (this.traced)
+                    this.trace = new OptimisationTrace(graph);
+
+                // Repeat optimisations until graph is fully optimized
+                Optimisation.runOptimisations(graph, this.maxIterations, this.trace);
+
+                // Convert control-flow graph back to list of statements and create
+                // a new code chunk with modified statements.
+                Vector<ImcStmt> newStatements = ControlFlowGraphBuilder.toStatements(graph);
+                this.optimisedCodeChunk = new LinCodeChunk(this.codeChunk.frame, newStatements, this.codeChunk.entryLabel, this.codeChunk.exitLabel);
+            } finally {
+                if (this.namespace >= 0)
+                    MemNamespace.exit();
+            }
+        }
+
+    }
+
+    /**
+     * Run optimisations that change several frames at once. They run before
+     * frames are optimised, so the optimisations of frames see their results.
+     * 
+     * @param codeChunks The code chunks of all frames.
+     * @return The new code chunks.
+     */
+    public static Vector<LinCodeChunk> runInterproceduralOptimisations(Vector<LinCodeChunk> codeChunks) {
+        // Tail-recursion elimination runs first, as functions it turns into
+        // loops can then be inlined
+        if (getFlagValue("--tail-recursion-elimination")) {
+            Report.debug("Tail-recursion elimination started");
+            Vector<LinCodeChunk> newCodeChunks = new Vector<LinCodeChunk>();
+            for (LinCodeChunk codeChunk : codeChunks)
+                newCodeChunks.add(TailRecursionElimination.run(codeChunk));
+            codeChunks = newCodeChunks;
+            Report.debug("Tail-recursion elimination ended");
+        }
+        if (getFlagValue("--inlining")) {
+            Report.debug("Inlining started");
+            codeChunks = Inlining.run(codeChunks);
+            Report.debug("Inlining ended");
+        }
+        return codeChunks;
+    }
+
+    /**
+     * Optimise a single frame without recording any steps of the optimisation.
+     * 
+     * @param codeChunk     The code chunk of the frame.
+     * @param maxIterations The maximum number of iterations.
+     * @return The optimised code chunk.
+     */
+    public static LinCodeChunk optimise(LinCodeChunk codeChunk, int maxIterations) {
+        ControlFlowGraph graph = ControlFlowGraphBuilder.build(codeChunk);
+        Optimisation.runOptimisations(graph, maxIterations, null);
+        Vector<ImcStmt> newStatements = ControlFlowGraphBuilder.toStatements(graph);
+        return new LinCodeChunk(codeChunk.frame, newStatements, codeChunk.entryLabel, codeChunk.exitLabel);
+    }
+
+    public static void runOptimisations(ControlFlowGraph graph, int maxIterations, OptimisationTrace trace) {
         // Check which types of optimisation should be performed
         boolean constantFolding = getFlagValue("--constant-folding");
         boolean symbolicConstantFolding = getFlagValue("--symbolic-constant-folding");
@@ -79,9 +195,14 @@ public class Optimisation extends Phase {
         boolean constantPropagation = getFlagValue("--constant-propagation");
         boolean copyPropagation = getFlagValue("--copy-propagation");
         boolean commonSubexpressionElimination = getFlagValue("--common-subexpression-elimination");
+        boolean lazyCodeMotion = getFlagValue("--lazy-code-motion");
+        boolean globalValueNumbering = getFlagValue("--global-value-numbering");
         boolean deadCodeElimination = getFlagValue("--dead-code-elimination");
         boolean loopHoisting = getFlagValue("--loop-hoisting");
         boolean inductionVariableElimination = getFlagValue("--induction-variable-elimination");
+        boolean controlFlowSimplification = getFlagValue("--control-flow-simplification");
+        boolean sparseConditionalConstantPropagation = getFlagValue("--sparse-conditional-constant-propagation");
+        boolean loopUnrolling = getFlagValue("--loop-unrolling");
 
         Report.info(String.format("Optimising frame %s", graph.codeChunk.frame.label.name));
 
@@ -90,16 +211,29 @@ public class Optimisation extends Phase {
         // number of iterations maxIter. 
         int currentIteration = 0;
         boolean repeatOptimisations = false;
+        boolean hasUnrolledLoops = false;
 
         long startTime = System.currentTimeMillis();
         do {
             repeatOptimisations = false;
 
+            if (sparseConditionalConstantPropagation) {
+                Report.debug("Sparse conditional constant propagation started");
+                boolean graphChanged = SparseConditionalConstantPropagation.run(graph);
+                graph.analysisManager.passFinished(graphChanged, SparseConditionalConstantPropagation.PRESERVED_ANALYSES);
+                if (graphChanged) {
+                    addOptimisationLog(trace, "sparse conditional constant propagation");
+                }
+                repeatOptimisations = repeatOptimisations || graphChanged;
+                Report.debug("Sparse conditional constant propagation ended");
+            }
+
             if (constantFolding) {
                 Report.debug("Constant folding started");
                 boolean graphChanged = ConstantFolding.run(graph);
+                graph.analysisManager.passFinished(graphChanged, ConstantFolding.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "constant folding", graph);
+                    addOptimisationLog(trace, "constant folding");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Constant folding ended");
@@ -108,38 +242,75 @@ public class Optimisation extends Phase {
             if (symbolicConstantFolding) {
                 Report.debug("Symbolic constant folding started");
                 boolean graphChanged = SymbolicConstantFolding.run(graph);
+                graph.analysisManager.passFinished(graphChanged, SymbolicConstantFolding.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "symbolic constant folding", graph);
+                    addOptimisationLog(trace, "symbolic constant folding");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Symbolic constant folding ended");
             }
 
+            if (controlFlowSimplification) {
+                Report.debug("Control-flow simplification started");
+                boolean graphChanged = ControlFlowSimplification.run(graph);
+                graph.analysisManager.passFinished(graphChanged, ControlFlowSimplification.PRESERVED_ANALYSES);
+                if (graphChanged) {
+                    addOptimisationLog(trace, "control-flow simplification");
+                }
+                repeatOptimisations = repeatOptimisations || graphChanged;
+                Report.debug("Control-flow simplification ended");
+            }
+
             if (peepholeOptimisation) {
                 Report.debug("Peephole optimisations started");
                 boolean graphChanged = PeepholeOptimisation.run(graph);
+                graph.analysisManager.passFinished(graphChanged, PeepholeOptimisation.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "peephole optimisation", graph);
+                    addOptimisationLog(trace, "peephole optimisation");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Peephole optimisations ended");
             }
 
+            if (globalValueNumbering) {
+                Report.debug("Global value numbering started");
+                boolean graphChanged = GlobalValueNumbering.run(graph);
+                graph.analysisManager.passFinished(graphChanged, GlobalValueNumbering.PRESERVED_ANALYSES);
+                if (graphChanged) {
+                    addOptimisationLog(trace, "global value numbering");
+                }
+                repeatOptimisations = repeatOptimisations || graphChanged;
+                Report.debug("Global value numbering ended");
+            }
+
             if (commonSubexpressionElimination) {
                 Report.debug("Common subexpression elimination started");
                 boolean graphChanged = CommonSubexpressionElimination.run(graph);
+                graph.analysisManager.passFinished(graphChanged, CommonSubexpressionElimination.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "common subexpression elimination", graph);
+                    addOptimisationLog(trace, "common subexpression elimination");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Common subexpression elimination ended");
             }
 
+            if (lazyCodeMotion) {
+                Report.debug("Lazy code motion started");
+                boolean graphChanged = LazyCodeMotion.run(graph);
+                graph.analysisManager.passFinished(graphChanged, LazyCodeMotion.PRESERVED_ANALYSES);
+                if (graphChanged) {
+                    addOptimisationLog(trace, "lazy code motion");
+                }
+                repeatOptimisations = repeatOptimisations || graphChanged;
+                Report.debug("Lazy code motion ended");
+            }
+
             if (constantPropagation) {
                 Report.debug("Constant propagation started");
                 boolean graphChanged = ConstantPropagation.run(graph);
+                graph.analysisManager.passFinished(graphChanged, ConstantPropagation.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "constant propagation", graph);
+                    addOptimisationLog(trace, "constant propagation");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Constant propagation ended");
@@ -148,8 +319,9 @@ public class Optimisation extends Phase {
             if (copyPropagation) {
                 Report.debug("Copy propagation started");
                 boolean graphChanged = CopyPropagation.run(graph);
+                graph.analysisManager.passFinished(graphChanged, CopyPropagation.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "copy propagation", graph);
+                    addOptimisationLog(trace, "copy propagation");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Copy propagation ended");
@@ -158,8 +330,9 @@ public class Optimisation extends Phase {
             if (deadCodeElimination) {
                 Report.debug("Dead code elimination started");
                 boolean graphChanged = DeadCodeElimination.run(graph);
+                graph.analysisManager.passFinished(graphChanged, DeadCodeElimination.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "dead code elimination", graph);
+                    addOptimisationLog(trace, "dead code elimination");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Dead code elimination ended");
@@ -168,8 +341,9 @@ public class Optimisation extends Phase {
             if (loopHoisting) {
                 Report.debug("Loop invariant code motion started");
                 boolean graphChanged = LoopHoisting.run(graph);
+                graph.analysisManager.passFinished(graphChanged, LoopHoisting.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "loop invariant code motion", graph);
+                    addOptimisationLog(trace, "loop invariant code motion");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Loop invariant code motion ended");
@@ -178,13 +352,29 @@ public class Optimisation extends Phase {
             if (inductionVariableElimination) {
                 Report.debug("Induction variable elimination started");
                 boolean graphChanged = InductionVariableElimination.run(graph);
+                graph.analysisManager.passFinished(graphChanged, InductionVariableElimination.PRESERVED_ANALYSES);
                 if (graphChanged) {
-                    addOptimisationLog(optimisations, "induction variable elimination", graph);
+                    addOptimisationLog(trace, "induction variable elimination");
                 }
                 repeatOptimisations = repeatOptimisations || graphChanged;
                 Report.debug("Induction variable elimination ended");
             }
 
+            // Loops are unrolled only once, after the other optimisations
+            // have simplified them, and the unrolled bodies are optimised in
+            // the following iterations
+            if (loopUnrolling && !repeatOptimisations && !hasUnrolledLoops) {
+                Report.debug("Loop unrolling started");
+                boolean graphChanged = LoopUnrolling.run(graph);
+                graph.analysisManager.passFinished(graphChanged, LoopUnrolling.PRESERVED_ANALYSES);
+                if (graphChanged) {
+                    addOptimisationLog(trace, "loop unrolling");
+                }
+                repeatOptimisations = repeatOptimisations || graphChanged;
+                hasUnrolledLoops = true;
+                Report.debug("Loop unrolling ended");
+            }
+
             currentIteration += 1;
 
         } while (repeatOptimisations && currentIteration < maxIterations);
@@ -196,12 +386,16 @@ public class Optimisation extends Phase {
 
     }
 
-    private static void addOptimisationLog(Vector<LinCodeChunk> optimisations, String title, ControlFlowGraph graph) {
-        LinCodeChunk codeChunk = graph.codeChunk;
-        Vector<ImcStmt> newStatements = ControlFlowGraphBuilder.toStatements(graph);
+    private static void addOptimisationLog(OptimisationTrace trace, String title) {
+        if (trace == null)
+            return;
+        trace.step(title);
+    }
+
+    /** Return a copy of the code chunk whose frame label is suffixed by `title` */
+    private static LinCodeChunk renamed(LinCodeChunk codeChunk, String title) {
         MemFrame newFrame = codeChunk.frame.copyWithLabel(new MemLabel(codeChunk.frame.label.name + " " + title));
-        LinCodeChunk newCodeChunk = new LinCodeChunk(newFrame, newStatements, codeChunk.entryLabel, codeChunk.exitLabel);
-        optimisations.add(newCodeChunk);
+        return new LinCodeChunk(newFrame, codeChunk.stmts(), codeChunk.entryLabel, codeChunk.exitLabel);
     }
 
     private static boolean getFlagValue(String flag) {
@@ -212,11 +406,13 @@ public class Optimisation extends Phase {
     }
 
 	public void log() {
+        if (logger == null)
+            return;
         OptimisationLogger optimisationLogger = new OptimisationLogger(logger);
 		for (LinDataChunk dataChunk : ImcLin.dataChunks())
             optimisationLogger.log(dataChunk);
-        for (LinCodeChunk codeChunk : optimisations)
-            optimisationLogger.log(codeChunk);
+        for (OptimisationTrace trace : traces)
+            optimisationLogger.log(trace);
         
         logOptimisationsAfter();
         logOptimisationsBeforeAfter();
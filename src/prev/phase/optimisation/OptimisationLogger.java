@@ -4,6 +4,9 @@ import prev.common.logger.*;
 import prev.data.ast.visitor.*;
 import prev.data.imc.code.stmt.*;
 import prev.data.lin.*;
+import prev.data.mem.*;
+import prev.phase.optimisation.common.control_flow_graph.*;
+import java.util.*;
 
 public class OptimisationLogger extends AstNullVisitor<Object, String> {
 
@@ -47,6 +50,51 @@ public class OptimisationLogger extends AstNullVisitor<Object, String> {
 		}
 		logger.endElement();
 	}
+
+	public void log(OptimisationTrace trace) {
+		if (logger == null)
+			return;
+		LinCodeChunk codeChunk = trace.codeChunk;
+		logger.begElement("codechunk");
+		logger.addAttribute("entrylabel", codeChunk.entryLabel.name);
+		logger.addAttribute("exitlabel", codeChunk.exitLabel.name);
+		codeChunk.frame.copyWithLabel(new MemLabel(codeChunk.frame.label.name + " original")).log(logger);
+		Vector<ImcStmt> stmts = codeChunk.stmts();
+		for (int i = 0; i < stmts.size(); i++) {
+			logger.begElement("stmt");
+			logger.addAttribute("node", Integer.toString(trace.nodes.get(i)));
+			log(stmts.get(i));
+			logger.endElement();
+		}
+		logger.endElement();
+
+		// Each step only lists the statements it has changed
+		for (OptimisationTrace.Step step : trace.steps) {
+			logger.begElement("codechunk");
+			logger.addAttribute("entrylabel", codeChunk.entryLabel.name);
+			logger.addAttribute("exitlabel", codeChunk.exitLabel.name);
+			codeChunk.frame.copyWithLabel(new MemLabel(codeChunk.frame.label.name + " " + step.title)).log(logger);
+			for (StatementChange change : step.changes) {
+				logger.begElement("stmt");
+				logger.addAttribute("change", change.kind.toString().toLowerCase());
+				logger.addAttribute("node", Integer.toString(change.node));
+				if (change.previous >= 0)
+					logger.addAttribute("previous", Integer.toString(change.previous));
+				if (change.before != null)
+					log(change.before);
+				if (change.after != null)
+					log(change.after);
+				logger.endElement();
+			}
+			logger.endElement();
+		}
+	}
+
+	private void log(ImcStmt stmt) {
+		logger.begElement("imc");
+		logger.addAttribute("instruction", stmt.toString());
+		logger.endElement();
+	}
 	
 }
 
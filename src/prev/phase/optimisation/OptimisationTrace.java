@@ -0,0 +1,56 @@
+package prev.phase.optimisation;
+
+import java.util.*;
+import prev.data.lin.*;
+import prev.data.imc.code.stmt.*;
+import prev.phase.optimisation.common.control_flow_graph.*;
+
+/**
+ * The trace of the optimisation of a single frame: its statements before the
+ * optimisation and the changes of statements made by each optimisation that
+ * changed the control-flow graph.
+ */
+public class OptimisationTrace {
+
+    /** The changes made by a single optimisation */
+    public static class Step {
+
+        public final String title;
+        public final Vector<StatementChange> changes;
+
+        public Step(String title, Vector<StatementChange> changes) {
+            this.title = title;
+            this.changes = changes;
+        }
+
+    }
+
+    /** The code chunk before the optimisation */
+    public final LinCodeChunk codeChunk;
+
+    /** Indices of nodes of the statements before the optimisation */
+    public final Vector<Integer> nodes = new Vector<Integer>();
+
+    public final Vector<Step> steps = new Vector<Step>();
+
+    private final ControlFlowGraphJournal journal;
+
+    public OptimisationTrace(ControlFlowGraph graph) {
+        Vector<ImcStmt> statements = new Vector<ImcStmt>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            statements.add(node.statement);
+            this.nodes.add(node.index());
+        }
+        LinCodeChunk codeChunk = graph.codeChunk;
+        this.codeChunk = new LinCodeChunk(codeChunk.frame, statements, codeChunk.entryLabel, codeChunk.exitLabel);
+        this.journal = graph.startJournal();
+    }
+
+    /** Record the changes made since the previous step */
+    public void step(String title) {
+        Vector<StatementChange> changes = this.journal.takeChanges();
+        if (!changes.isEmpty())
+            this.steps.add(new Step(title, changes));
+    }
+
+}
@@ -0,0 +1,237 @@
+package prev.phase.optimisation.common.alias_analysis;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.available_expressions.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.mem.*;
+import prev.data.semtype.*;
+import java.util.*;
+
+/**
+ * Alias analysis of memory accesses.
+ *
+ * The address of each access is resolved to a region of memory, a base within
+ * it and a constant offset from the base, if it is known:
+ *   * the frame of the function (its frame pointer),
+ *   * a static variable or string (its label),
+ *   * a block allocated by new (the statement allocating it) or
+ *   * an unknown region (a temporary that cannot be resolved or nothing).
+ * Temporaries with a single definition are resolved through it. Accesses to
+ * different regions, to different static labels, to blocks allocated by
+ * different statements or to non-overlapping offsets from the same base never
+ * alias. A variable or parameter whose address is never taken is only
+ * accessed directly through the frame pointer, so its slot cannot be accessed
+ * through an unknown address, unless the frame pointer itself is stored to
+ * memory (e.g., as the static link of an inlined nested function).
+ */
+public class AliasAnalysis {
+
+    /** The size of every memory access */
+    private static final long ACCESS_SIZE = new SemPointer(new SemVoid()).size();
+
+    private enum Region { FRAME, STATIC, HEAP, UNKNOWN }
+
+    /** An address resolved to a base within a region and an offset from
+     * the base, which is null if unknown. */
+    private static class Location {
+
+        final Region region;
+
+        /** The frame pointer, label, allocating statement, temporary or null
+         * for an unknown base */
+        final Object base;
+
+        final Long offset;
+
+        Location(Region region, Object base, Long offset) {
+            this.region = region;
+            this.base = base;
+            this.offset = offset;
+        }
+
+        Location plus(long constant) {
+            return new Location(this.region, this.base, this.offset == null ? null : this.offset + constant);
+        }
+
+        Location withUnknownOffset() {
+            return new Location(this.region, this.base, null);
+        }
+
+    }
+
+    private static final Location UNKNOWN = new Location(Region.UNKNOWN, null, null);
+
+    private static final MemLabel NEW_LABEL = new MemLabel("new");
+
+    private final ControlFlowGraph graph;
+    private final MemFrame frame;
+
+    /** Whether an address within the frame is stored to memory */
+    private boolean frameAddressStored = false;
+
+    private final HashMap<ImcExpr, Location> locations = new HashMap<ImcExpr, Location>();
+    private final HashMap<MemTemp, Location> temporaryLocations = new HashMap<MemTemp, Location>();
+
+    private AliasAnalysis(ControlFlowGraph graph) {
+        this.graph = graph;
+        this.frame = graph.codeChunk.frame;
+    }
+
+    /** Return the alias analysis of the current statements of `graph`. The
+     * analysis must be built again after definitions of temporaries change. */
+    public static AliasAnalysis build(ControlFlowGraph graph) {
+        AliasAnalysis analysis = new AliasAnalysis(graph);
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (!(node.statement instanceof ImcMOVE))
+                continue;
+            ImcMOVE move = (ImcMOVE) node.statement;
+            if (move.dst instanceof ImcMEM && analysis.locate(move.src).region == Region.FRAME)
+                analysis.frameAddressStored = true;
+        }
+        return analysis;
+    }
+
+    /** Check whether `statement` calls a function, which may access any
+     * memory */
+    public static boolean callsFunction(ImcStmt statement) {
+        if (statement instanceof ImcMOVE)
+            return ((ImcMOVE) statement).src instanceof ImcCALL;
+        return statement instanceof ImcESTMT;
+    }
+
+    /** Return the destination of `statement` if it stores to memory or null */
+    public static ImcMEM storedTo(ImcStmt statement) {
+        if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcMEM)
+            return (ImcMEM) ((ImcMOVE) statement).dst;
+        return null;
+    }
+
+    /** Check whether `first` and `second` may access the same memory */
+    public boolean mayAlias(ImcMEM first, ImcMEM second) {
+        if (first == second)
+            return true;
+        Location firstLocation = this.locate(first.addr);
+        Location secondLocation = this.locate(second.addr);
+
+        if (firstLocation.region == Region.UNKNOWN && secondLocation.region == Region.UNKNOWN) {
+            if (firstLocation.base == null || !firstLocation.base.equals(secondLocation.base))
+                return true;
+            return overlap(firstLocation, secondLocation);
+        }
+        if (firstLocation.region == Region.UNKNOWN)
+            return !this.isPrivate(secondLocation);
+        if (secondLocation.region == Region.UNKNOWN)
+            return !this.isPrivate(firstLocation);
+
+        if (firstLocation.region != secondLocation.region)
+            return false;
+        if (!firstLocation.base.equals(secondLocation.base)) {
+            // Addresses within the frame are always based on its frame pointer
+            return firstLocation.region == Region.FRAME;
+        }
+        if (firstLocation.region == Region.FRAME && firstLocation.offset == null && this.isPrivate(secondLocation))
+            return false;
+        if (secondLocation.region == Region.FRAME && secondLocation.offset == null && this.isPrivate(firstLocation))
+            return false;
+        return overlap(firstLocation, secondLocation);
+    }
+
+    /** Check whether any memory load within `expression` may read memory
+     * written by a store to `store` */
+    public boolean mayLoad(ImcExpr expression, ImcMEM store) {
+        for (ImcMEM load : MemoryOperationsFinder.getMemoryOperations(expression)) {
+            if (this.mayAlias(load, store))
+                return true;
+        }
+        return false;
+    }
+
+    /** Return the offset of the slot of a variable or parameter whose address
+     * is never taken, if `access` accesses one, or null otherwise. */
+    public Long privateSlot(ImcMEM access) {
+        Location location = this.locate(access.addr);
+        return this.isPrivate(location) ? location.offset : null;
+    }
+
+    private boolean isPrivate(Location location) {
+        return location.region == Region.FRAME
+            && location.offset != null
+            && !this.frameAddressStored
+            && this.frame.privateOffsets.contains(location.offset);
+    }
+
+    private static boolean overlap(Location first, Location second) {
+        if (first.offset == null || second.offset == null)
+            return true;
+        return Math.abs(first.offset - second.offset) < ACCESS_SIZE;
+    }
+
+    /** Resolve the address `expression` to a location */
+    private Location locate(ImcExpr expression) {
+        Location location = this.locations.get(expression);
+        if (location == null) {
+            location = this.locate(expression, new HashSet<MemTemp>());
+            this.locations.put(expression, location);
+        }
+        return location;
+    }
+
+    private Location locate(ImcExpr expression, HashSet<MemTemp> visited) {
+        if (expression instanceof ImcTEMP)
+            return this.locateTemporary((ImcTEMP) expression, visited);
+        if (expression instanceof ImcNAME)
+            return new Location(Region.STATIC, ((ImcNAME) expression).label, 0L);
+        if (!(expression instanceof ImcBINOP))
+            return UNKNOWN;
+
+        ImcBINOP binaryOperation = (ImcBINOP) expression;
+        if (binaryOperation.oper == ImcBINOP.Oper.SUB && binaryOperation.sndExpr instanceof ImcCONST)
+            return this.locate(binaryOperation.fstExpr, visited).plus(-((ImcCONST) binaryOperation.sndExpr).value);
+        if (binaryOperation.oper != ImcBINOP.Oper.ADD)
+            return UNKNOWN;
+        if (binaryOperation.sndExpr instanceof ImcCONST)
+            return this.locate(binaryOperation.fstExpr, visited).plus(((ImcCONST) binaryOperation.sndExpr).value);
+        if (binaryOperation.fstExpr instanceof ImcCONST)
+            return this.locate(binaryOperation.sndExpr, visited).plus(((ImcCONST) binaryOperation.fstExpr).value);
+
+        // A known base plus an index (e.g., an element of an array)
+        Location first = this.locate(binaryOperation.fstExpr, visited);
+        Location second = this.locate(binaryOperation.sndExpr, visited);
+        if (first.region != Region.UNKNOWN && second.region == Region.UNKNOWN)
+            return first.withUnknownOffset();
+        if (first.region == Region.UNKNOWN && second.region != Region.UNKNOWN)
+            return second.withUnknownOffset();
+        return UNKNOWN;
+    }
+
+    private Location locateTemporary(ImcTEMP temporary, HashSet<MemTemp> visited) {
+        if (temporary.temp.equals(this.frame.FP))
+            return new Location(Region.FRAME, this.frame.FP, 0L);
+        Location location = this.temporaryLocations.get(temporary.temp);
+        if (location != null)
+            return location;
+        if (!visited.add(temporary.temp))
+            return UNKNOWN;
+
+        // Only a temporary with a single definition holds the same kind of
+        // address wherever it is used. Otherwise, it is a base of its own,
+        // which is only comparable at the same point of the program.
+        location = new Location(Region.UNKNOWN, temporary.temp, 0L);
+        ControlFlowGraphNode definition = this.graph.defUseIndex.singleDefinition(temporary);
+        if (definition != null && definition.statement instanceof ImcMOVE) {
+            ImcExpr source = ((ImcMOVE) definition.statement).src;
+            if (source instanceof ImcCALL) {
+                if (((ImcCALL) source).label.equals(NEW_LABEL))
+                    location = new Location(Region.HEAP, definition, 0L);
+            } else {
+                Location sourceLocation = this.locate(source, visited);
+                if (sourceLocation.region != Region.UNKNOWN)
+                    location = sourceLocation;
+            }
+        }
+        this.temporaryLocations.put(temporary.temp, location);
+        return location;
+    }
+
+}
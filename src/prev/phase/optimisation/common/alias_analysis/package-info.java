@@ -0,0 +1,4 @@
+/**
+ * Alias analysis of memory accesses for control-flow graphs.
+ */
+package prev.phase.optimisation.common.alias_analysis;
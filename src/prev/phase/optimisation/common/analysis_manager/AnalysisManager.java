@@ -0,0 +1,105 @@
+package prev.phase.optimisation.common.analysis_manager;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.liveness_analysis.*;
+import prev.phase.optimisation.common.reaching_definitions.*;
+import prev.phase.optimisation.common.available_expressions.*;
+import prev.phase.optimisation.common.dominators.*;
+import prev.common.report.*;
+import java.util.*;
+
+/**
+ * Analysis manager. Keeps the analyses of a control-flow graph cached until
+ * they are invalidated. An analysis is invalidated when nodes or edges of the
+ * graph change, or when a pass that changed the graph does not preserve it.
+ */
+public class AnalysisManager {
+
+    public enum Analysis {
+        /** Uses, definitions, live-in and live-out of each node */
+        LIVENESS,
+        /** Reaching definitions of each node */
+        REACHING_DEFINITIONS,
+        /** Available expressions of each node */
+        AVAILABLE_EXPRESSIONS,
+        /** Dominator tree of the basic blocks */
+        DOMINATORS,
+        /** The loop nesting tree */
+        LOOPS
+    }
+
+    private final ControlFlowGraph graph;
+
+    /** The graph version at which each cached analysis was computed */
+    private final EnumMap<Analysis, Integer> computedAt = new EnumMap<Analysis, Integer>(Analysis.class);
+
+    private DominatorTree dominatorTree = null;
+    private LoopNode loopNestingTree = null;
+
+    public AnalysisManager(ControlFlowGraph graph) {
+        this.graph = graph;
+    }
+
+    public boolean isValid(Analysis analysis) {
+        Integer version = this.computedAt.get(analysis);
+        return version != null && version == this.graph.version();
+    }
+
+    /** Make sure all `analyses` are computed and up to date. */
+    public void require(Analysis... analyses) {
+        for (Analysis analysis : analyses) {
+            if (this.isValid(analysis))
+                continue;
+            Report.debug("Computing " + analysis);
+            switch (analysis) {
+                case LIVENESS:
+                    LivenessAnalysis.run(this.graph);
+                    break;
+                case REACHING_DEFINITIONS:
+                    ReachingDefinitionsAnalysis.run(this.graph);
+                    break;
+                case AVAILABLE_EXPRESSIONS:
+                    AvailableExpressionsAnalysis.run(this.graph);
+                    break;
+                case DOMINATORS:
+                    this.dominatorTree = DominatorTree.build(this.graph);
+                    break;
+                case LOOPS:
+                    this.loopNestingTree = LoopFinder.findAllLoops(this.graph, this.dominators());
+                    break;
+            }
+            this.computedAt.put(analysis, this.graph.version());
+        }
+    }
+
+    /** Return the dominator tree of the graph. */
+    public DominatorTree dominators() {
+        this.require(Analysis.DOMINATORS);
+        return this.dominatorTree;
+    }
+
+    /** Return the loop nesting tree of the graph. */
+    public LoopNode loops() {
+        this.require(Analysis.LOOPS);
+        return this.loopNestingTree;
+    }
+
+    public void invalidate(Analysis... analyses) {
+        for (Analysis analysis : analyses)
+            this.computedAt.remove(analysis);
+    }
+
+    public void invalidateAll() {
+        this.computedAt.clear();
+    }
+
+    /** Invalidate all analyses not `preserved` by a pass, if it changed the
+     * graph. Changes of statements are not visible to the graph, so each pass
+     * must declare which analyses its changes keep valid. */
+    public void passFinished(boolean hasGraphChanged, EnumSet<Analysis> preserved) {
+        if (!hasGraphChanged)
+            return;
+        this.computedAt.keySet().retainAll(preserved);
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Caching of analyses across optimisation passes.
+ */
+package prev.phase.optimisation.common.analysis_manager;
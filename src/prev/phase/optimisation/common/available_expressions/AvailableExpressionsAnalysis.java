@@ -1,6 +1,8 @@
 package prev.phase.optimisation.common.available_expressions;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.alias_analysis.*;
+import prev.phase.optimisation.common.dataflow.*;
 import prev.data.imc.code.*;
 import prev.data.imc.code.expr.*;
 import prev.data.imc.code.stmt.*;
@@ -18,22 +20,6 @@ public class AvailableExpressionsAnalysis {
 		runAnalysis(graph);
 	}
 
-	private static HashSet<ImcExpr> generates(ControlFlowGraphNode node, HashSet<ImcExpr> allExpressions) {
-		// In reaching definitions analysis, only two expressions actually
-		// generate available expressions:
-		//   * MOVE(TEMP(...), BINOP(..., b, c))
-		//       generates { BINOP(..., b, c) } - kills(node)
-		//   * MOVE(TEMP(...), MEM(...))
-		//       generates { MEM(...) } - kills(node)
-		ImcStmt statement = node.statement;
-		HashSet<ImcExpr> generates = new HashSet<ImcExpr>();
-		if (statement instanceof ImcMOVE) {
-			generates = SubexpressionFinder.getAllSubexpressions(((ImcMOVE) statement).src);
-			generates.removeAll(kills(node, allExpressions));
-		}
-		return generates;
-	}
-
 	public static HashSet<ImcExpr> containingTemporary(HashSet<ImcExpr> expressions, ImcTEMP temporary) {
 		// All expressions in expressions HashSet are on of the following three
 		// possible ImcExpr:
@@ -61,63 +47,63 @@ public class AvailableExpressionsAnalysis {
 	}
 
 	public static HashSet<ImcExpr> kills(ControlFlowGraphNode node, HashSet<ImcExpr> allExpressions) throws Report.Error {
-		ImcStmt statement = node.statement;
 		HashSet<ImcExpr> kills = new HashSet<ImcExpr>();
+		ImcTEMP killedTemporary = killedTemporary(node.statement);
+		if (killedTemporary != null)
+			kills.addAll(containingTemporary(allExpressions, killedTemporary));
+		if (killsMemoryOperations(node.statement))
+			kills.addAll(containingMemoryOperations(allExpressions));
+		return kills;
+	}
 
+	/** Return the temporary whose expressions are killed by `statement`: a
+	 * move to temporary t kills all expressions containing t. */
+	private static ImcTEMP killedTemporary(ImcStmt statement) {
+		if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP)
+			return (ImcTEMP) ((ImcMOVE) statement).dst;
+		return null;
+	}
+
+	/** Check whether `statement` kills all expressions containing memory
+	 * operations (stores and function calls). */
+	private static boolean killsMemoryOperations(ImcStmt statement) throws Report.Error {
 		if (statement instanceof ImcCJUMP || statement instanceof ImcJUMP || statement instanceof ImcLABEL) {
 			// The simplest form - CJUMP, JUMP and LABEL kill nothing
-			return kills;
+			return false;
 		} else if (statement instanceof ImcMOVE) {
 			ImcMOVE moveStatement = (ImcMOVE) statement;
 			if (moveStatement.dst instanceof ImcTEMP) {
-				if (moveStatement.src instanceof ImcBINOP) {
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				} else if (moveStatement.src instanceof ImcMEM) {
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				} else if (moveStatement.src instanceof ImcCALL) {
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					kills.addAll(containingMemoryOperations(allExpressions));
-					return kills;
-				} else if (moveStatement.src instanceof ImcTEMP) {
-					// This is a copy statement, don't throw an exception
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				} else if (moveStatement.src instanceof ImcCONST) {
-					// This is a t <- const statement, don't throw an exception
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				} else if (moveStatement.src instanceof ImcNAME) {
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				} else if (moveStatement.src instanceof ImcUNOP) {
-					kills.addAll(containingTemporary(allExpressions, (ImcTEMP) moveStatement.dst));
-					return kills;
-				}
-				// throw new Report.Error("Invalid expression " + moveStatement + ", expected: t <- b + c, t <- M[b] or t <- f(a_1, ..., a_n)");
+				// Only function calls kill memory operations, other moves to
+				// temporaries only kill expressions containing the temporary
+				return moveStatement.src instanceof ImcCALL;
 			} else if (moveStatement.dst instanceof ImcMEM) {
-				if (moveStatement.src instanceof ImcTEMP) {
-					kills.addAll(containingMemoryOperations(allExpressions));
-					return kills;
-				} else if (moveStatement.src instanceof ImcCONST) {
-					kills.addAll(containingMemoryOperations(allExpressions));
-					return kills;
-				}
+				if (moveStatement.src instanceof ImcTEMP || moveStatement.src instanceof ImcCONST)
+					return true;
 				throw new Report.Error("Invalid expression " + moveStatement + ", expected: M[a] <- b");
 			}
-			// throw new Report.Error("Invalid expression " + moveStatement + ", expected: t <- b + c, t <- M[b], M[a] <- b or t <- f(a_1, ..., a_n)");
 		} else if (statement instanceof ImcESTMT) {
 			// Function call CALL kills expressions of the form M[x]
 			ImcESTMT expressionStatement = (ImcESTMT) statement;
-			if (expressionStatement.expr instanceof ImcCALL) {
-				kills.addAll(containingMemoryOperations(allExpressions));
-				return kills;
-			}
+			if (expressionStatement.expr instanceof ImcCALL)
+				return true;
 			throw new Report.Error("Invalid expression: " + expressionStatement + ", expected: f(a_1, ..., a_n)");
 		}
-		// throw new Report.Error("Invalid expression: " + statement);
-		return kills;
+		return false;
+	}
+
+	/** Return the expressions containing memory operations killed by
+	 * `statement`: a call kills all of them and a store only kills those that
+	 * may load from the memory it writes to. */
+	public static BitVector killedMemoryOperations(ImcStmt statement, Indexer<ImcExpr> expressions, BitVector containingMemoryOperations, AliasAnalysis aliasAnalysis) {
+		ImcMEM destination = AliasAnalysis.storedTo(statement);
+		if (destination == null)
+			return containingMemoryOperations;
+		BitVector killed = new BitVector(expressions.size());
+		for (int i = containingMemoryOperations.nextSetBit(0); i >= 0; i = containingMemoryOperations.nextSetBit(i + 1)) {
+			if (aliasAnalysis.mayLoad(expressions.get(i), destination))
+				killed.set(i);
+		}
+		return killed;
 	}
 
 	private static HashSet<ImcExpr> getAllExpressions(ControlFlowGraph graph) {
@@ -129,57 +115,92 @@ public class AvailableExpressionsAnalysis {
 			
 			ImcMOVE moveStatement = (ImcMOVE) statement;
 
+			// Every call computes a new value (e.g., new returns a different
+			// block every time), so calls are never available
 			HashSet<ImcExpr> statementSubexpressions = SubexpressionFinder.getAllSubexpressions(statement);
-			allExpressions.addAll(statementSubexpressions);
+			for (ImcExpr expression : statementSubexpressions) {
+				if (!(expression instanceof ImcCALL))
+					allExpressions.add(expression);
+			}
 		}
 		return allExpressions;
 	}
 
 	private static void runAnalysis(ControlFlowGraph graph) {
-		HashSet<ImcExpr> allExpressions = getAllExpressions(graph);
-
-		// All other in and out sets should contain ALL possible expressions
-		// because the algorithm works using the intersection operator.
-		for (ControlFlowGraphNode node : graph.nodes) {
-			node.setAvailableExpressionsIn(allExpressions);
-			node.setAvailableExpressionsOut(allExpressions);
+		// Expressions are densely indexed. For each temporary (and for memory
+		// operations), the expressions containing it are precomputed, so the
+		// kills of a node are a single bit vector lookup.
+		Indexer<ImcExpr> expressions = new Indexer<ImcExpr>();
+		for (ImcExpr expression : getAllExpressions(graph))
+			expressions.add(expression);
+		int size = expressions.size();
+
+		AliasAnalysis aliasAnalysis = AliasAnalysis.build(graph);
+		HashMap<ImcTEMP, BitVector> containingTemporary = new HashMap<ImcTEMP, BitVector>();
+		BitVector containingMemoryOperations = new BitVector(size);
+		for (int i = 0; i < size; i++) {
+			ImcExpr expression = expressions.get(i);
+			for (ImcTEMP temporary : TemporaryFinder.getTemporaries(expression)) {
+				if (!containingTemporary.containsKey(temporary))
+					containingTemporary.put(temporary, new BitVector(size));
+				containingTemporary.get(temporary).set(i);
+			}
+			if (MemoryOperationsFinder.getMemoryOperations(expression).size() > 0)
+				containingMemoryOperations.set(i);
 		}
 
-		// Define the in set of the initial node as empty
-		graph.initialNode().setAvailableExpressionsIn(new HashSet<ImcExpr>());
-
-		boolean hasChanged = false;
-		do {
-			hasChanged = false;
-
-			for (ControlFlowGraphNode node : graph.nodes) {
-				
-				HashSet<ImcExpr> oldIn = node.getAvailableExpressionsIn();
-				HashSet<ImcExpr> oldOut = node.getAvailableExpressionsOut();
-
-				HashSet<ImcExpr> newIn = null;
-				for (ControlFlowGraphNode predecessor : node.getPredecessors()) {
-					if (newIn == null) {
-						newIn = predecessor.getAvailableExpressionsOut();
-						continue;
-					}
-					newIn.retainAll(predecessor.getAvailableExpressionsOut());
-				}
-				if (newIn == null)
-					newIn = new HashSet<ImcExpr>();
-
-				HashSet<ImcExpr> newOut = new HashSet<ImcExpr>(oldIn);
-				newOut.removeAll(kills(node, allExpressions));
-				newOut.addAll(generates(node, allExpressions));
-
-				node.setAvailableExpressionsIn(newIn);
-				node.setAvailableExpressionsOut(newOut);
+		// In available expressions analysis, only moves generate available
+		// expressions:
+		//   * MOVE(TEMP(...), BINOP(..., b, c))
+		//       generates { BINOP(..., b, c) } - kills(node)
+		//   * MOVE(TEMP(...), MEM(...))
+		//       generates { MEM(...) } - kills(node)
+		BitVector[] generates = new BitVector[graph.nodeIndexBound()];
+		BitVector[] kills = new BitVector[graph.nodeIndexBound()];
+		for (ControlFlowGraphNode node : graph.nodes) {
+			ImcStmt statement = node.statement;
+			BitVector killed = new BitVector(size);
+			ImcTEMP killedTemporary = killedTemporary(statement);
+			if (killedTemporary != null && containingTemporary.containsKey(killedTemporary))
+				killed.or(containingTemporary.get(killedTemporary));
+			if (killsMemoryOperations(statement))
+				killed.or(killedMemoryOperations(statement, expressions, containingMemoryOperations, aliasAnalysis));
+
+			BitVector generated = new BitVector(size);
+			if (statement instanceof ImcMOVE) {
+				generated = expressions.toBitVector(SubexpressionFinder.getAllSubexpressions(((ImcMOVE) statement).src));
+				generated.andNot(killed);
+			}
 
-				hasChanged = hasChanged || !oldIn.equals(newIn) || !oldOut.equals(newOut);
+			generates[node.index()] = generated;
+			kills[node.index()] = killed;
+		}
 
+		// A block generates the expressions available at its end and kills
+		// all expressions killed by any of its nodes.
+		BasicBlockGraph blockGraph = ControlFlowGraphBuilder.buildBasicBlocks(graph);
+		DataflowProblem problem = new DataflowProblem(DataflowProblem.Direction.FORWARD, DataflowProblem.Meet.INTERSECTION, size) {
+			public BitVector generates(BasicBlock block) {
+				BitVector blockGenerates = new BitVector(this.size);
+				for (ControlFlowGraphNode node : block.nodes)
+					blockGenerates.transfer(generates[node.index()], kills[node.index()]);
+				return blockGenerates;
 			}
 
-		} while (hasChanged);
+			public BitVector kills(BasicBlock block) {
+				BitVector blockKills = new BitVector(this.size);
+				for (ControlFlowGraphNode node : block.nodes)
+					blockKills.or(kills[node.index()]);
+				return blockKills;
+			}
+		};
+		DataflowSolver solution = DataflowSolver.solve(blockGraph, problem);
+
+		// The in and out sets of each node are derived from its block when
+		// they are queried
+		NodeFacts<ImcExpr> availableExpressions = new NodeFacts<ImcExpr>(problem.direction, expressions, solution, blockGraph, generates, kills);
+		for (ControlFlowGraphNode node : graph.nodes)
+			node.setAvailableExpressions(availableExpressions);
 	}
 
 }
@@ -0,0 +1,31 @@
+package prev.phase.optimisation.common.control_flow_graph;
+
+import java.util.*;
+
+/**
+ * A basic block - a maximal sequence of control-flow graph nodes that is
+ * always entered at the first node and left at the last node.
+ */
+public class BasicBlock {
+
+    /** Position of this block in the block graph */
+    public int index;
+
+    /** Control-flow graph nodes in this block (in program order) */
+    public Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>();
+    public LinkedHashSet<BasicBlock> predecessors = new LinkedHashSet<BasicBlock>();
+    public LinkedHashSet<BasicBlock> successors = new LinkedHashSet<BasicBlock>();
+
+    public ControlFlowGraphNode first() {
+        return this.nodes.firstElement();
+    }
+
+    public ControlFlowGraphNode last() {
+        return this.nodes.lastElement();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BasicBlock(%s .. %s)", this.first(), this.last());
+    }
+}
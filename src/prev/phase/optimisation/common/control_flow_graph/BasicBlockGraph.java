@@ -0,0 +1,32 @@
+package prev.phase.optimisation.common.control_flow_graph;
+
+import java.util.*;
+
+/**
+ * A control-flow graph of basic blocks built on top of a control-flow graph
+ * of statements. Analyses are solved over blocks and per-statement facts are
+ * then derived from the block summaries.
+ */
+public class BasicBlockGraph {
+
+    public final ControlFlowGraph graph;
+    public Vector<BasicBlock> blocks = new Vector<BasicBlock>();
+
+    /** A mapping between control-flow graph nodes and their blocks */
+    public HashMap<ControlFlowGraphNode, BasicBlock> nodeBlocks = new HashMap<ControlFlowGraphNode, BasicBlock>();
+
+    public BasicBlockGraph(ControlFlowGraph graph) {
+        this.graph = graph;
+    }
+
+    public BasicBlock initialBlock() {
+        if (this.blocks.size() <= 0)
+            return null;
+        return this.blocks.get(0);
+    }
+
+    public BasicBlock blockOf(ControlFlowGraphNode node) {
+        return this.nodeBlocks.get(node);
+    }
+
+}
@@ -1,30 +1,91 @@
 package prev.phase.optimisation.common.control_flow_graph;
 
 import java.util.Set;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Vector;
 import prev.data.lin.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.def_use.*;
+import prev.phase.optimisation.common.dominators.*;
+import prev.data.imc.code.stmt.*;
 
 public class ControlFlowGraph {
 
     public final LinCodeChunk codeChunk;
-    public Vector<ControlFlowGraphNode> nodes;
-    public HashSet<ControlFlowGraphNode> nodeSet;
+    public final ControlFlowGraphNodeList nodes;
+
+    /** Analyses computed on this graph */
+    public final AnalysisManager analysisManager;
+
+    /** Definitions and uses of temporaries, kept up to date on every change
+     * of nodes */
+    public final DefUseIndex defUseIndex = new DefUseIndex();
+
+    /** Loop preheaders constructed in this graph, by loop header */
+    public final HashMap<ControlFlowGraphNode, Preheader> preheaders = new HashMap<ControlFlowGraphNode, Preheader>();
+
+    /** Incremented on every change of nodes or edges of the graph */
+    private int version = 0;
+
+    /** The index that will be given to the next node added to the graph */
+    private int nextNodeIndex = 0;
+
+    /** The journal notified about changes of statements or null */
+    private ControlFlowGraphJournal journal = null;
 
     public ControlFlowGraph(LinCodeChunk codeChunk) {
         this.codeChunk = codeChunk;
-        this.nodes = new Vector<ControlFlowGraphNode>();
-        this.nodeSet = new HashSet<ControlFlowGraphNode>();
+        this.nodes = new ControlFlowGraphNodeList();
+        this.analysisManager = new AnalysisManager(this);
+    }
+
+    public int version() {
+        return this.version;
+    }
+
+    /** Return an upper bound of node indices, so per-node data can be kept
+     * in arrays indexed by ControlFlowGraphNode.index(). */
+    public int nodeIndexBound() {
+        return this.nextNodeIndex;
+    }
+
+    /** Start recording changes of statements of this graph */
+    public ControlFlowGraphJournal startJournal() {
+        this.journal = new ControlFlowGraphJournal(this);
+        return this.journal;
+    }
+
+    private void assignIndex(ControlFlowGraphNode node) {
+        if (node.index < 0)
+            node.index = this.nextNodeIndex++;
     }
 
     public void addNode(ControlFlowGraphNode node) {
-        this.nodes.add(node);
-        this.nodeSet.add(node);
+        this.assignIndex(node);
+        this.nodes.addLast(node);
+        this.defUseIndex.add(node);
+        if (this.journal != null)
+            this.journal.nodeAdded(node);
+        this.version++;
+    }
+
+    /** Replace the statement of `node`. Statements of nodes in the graph
+     * should only be changed through this method to keep the def-use index
+     * up to date. */
+    public void setStatement(ControlFlowGraphNode node, ImcStmt statement) {
+        ImcStmt previousStatement = node.statement;
+        node.statement = statement;
+        if (this.containsNode(node)) {
+            this.defUseIndex.update(node);
+            if (this.journal != null)
+                this.journal.statementChanged(node, previousStatement);
+        }
     }
 
     public boolean containsNode(ControlFlowGraphNode node) {
-        return this.nodeSet.contains(node);
+        return this.nodes.contains(node);
     }
 
     public void addEdge(ControlFlowGraphNode first, ControlFlowGraphNode second) {
@@ -36,19 +97,27 @@ public class ControlFlowGraph {
         
         first.addSuccessor(second);
         second.addPredecessor(first);
+        this.version++;
+    }
+
+    public void removeEdge(ControlFlowGraphNode first, ControlFlowGraphNode second) {
+        first.successors.remove(second);
+        second.predecessors.remove(first);
+        this.version++;
     }
 
     public ControlFlowGraphNode initialNode() {
-        if (this.nodes.size() <= 0)
-            return null;
-        return this.nodes.get(0);
+        return this.nodes.first();
     }
 
     /** Insert `prepend` node before `node` node */
     public void insertBefore(ControlFlowGraphNode node, ControlFlowGraphNode prepend) {
-        int nodeIndex = this.nodes.indexOf(node);
-        this.nodes.add(nodeIndex, prepend);
-        this.nodeSet.add(prepend);
+        this.assignIndex(prepend);
+        this.nodes.insertBefore(node, prepend);
+        this.defUseIndex.add(prepend);
+        if (this.journal != null)
+            this.journal.nodeAdded(prepend);
+        this.version++;
     
         // Add edges from all predecessors of `node` to `prepend`
         for (ControlFlowGraphNode predecessor : node.getPredecessors()) {
@@ -61,11 +130,25 @@ public class ControlFlowGraph {
         this.addEdge(prepend, node);
     }
 
+    /** Insert `prepend` node before `node` node in the list of statements
+     * without changing any edges */
+    public void insertNodeBefore(ControlFlowGraphNode node, ControlFlowGraphNode prepend) {
+        this.assignIndex(prepend);
+        this.nodes.insertBefore(node, prepend);
+        this.defUseIndex.add(prepend);
+        if (this.journal != null)
+            this.journal.nodeAdded(prepend);
+        this.version++;
+    }
+
     /** Insert `append` node after `node` node */
     public void insertAfter(ControlFlowGraphNode node, ControlFlowGraphNode append) {
-        int nodeIndex = this.nodes.indexOf(node);
-        this.nodes.add(nodeIndex + 1, append);
-        this.nodeSet.add(append);
+        this.assignIndex(append);
+        this.nodes.insertAfter(node, append);
+        this.defUseIndex.add(append);
+        if (this.journal != null)
+            this.journal.nodeAdded(append);
+        this.version++;
         
         for (ControlFlowGraphNode successor : node.getSuccessors()) {
             node.successors.remove(successor);
@@ -78,8 +161,11 @@ public class ControlFlowGraph {
     }
     
     public void removeNode(ControlFlowGraphNode node) {
-        this.nodes.remove(node);
-        this.nodeSet.remove(node);
+        if (this.journal != null && this.containsNode(node))
+            this.journal.nodeRemoved(node);
+        this.nodes.unlink(node);
+        this.defUseIndex.remove(node);
+        this.version++;
 
         LinkedHashSet<ControlFlowGraphNode> predecessors = node.getPredecessors();
         LinkedHashSet<ControlFlowGraphNode> successors = node.getSuccessors();
@@ -33,59 +33,87 @@ public class ControlFlowGraphBuilder {
             controlFlowGraph.addNode(node);
         }
 
-        Vector<ImcStmt> statements = codeChunk.stmts();
-
-        // Initialize the first statement and the first node
-        ImcStmt previousStatement = statements.get(0);
-        ControlFlowGraphNode previousNode = controlFlowGraph.nodes.get(0);
-
-        for (int i = 1; i < statements.size(); i++) {
-            ImcStmt currentStatement = statements.get(i);
-
-            // First, construct a new node for this statement
-            ControlFlowGraphNode currentNode = controlFlowGraph.nodes.get(i);
+        for (ControlFlowGraphNode currentNode : controlFlowGraph.nodes) {
+            ImcStmt currentStatement = currentNode.statement;
 
             // The only statements after linearization that can alter the flow
             // of program are the JUMP and CJUMP statements. Any other statement
             // has only one successor - next statement in `statements` list.
-            if (previousStatement instanceof ImcJUMP) {
+            // The JUMP or CJUMP statements are not necessarily the last
+            // statements of the chunk, because basic blocks are reordered
+            // during linearization.
+            if (currentStatement instanceof ImcJUMP) {
                 // Find the label that this JUMP actually jumps to
-                MemLabel jumpLabel = ((ImcJUMP) previousStatement).label;
+                MemLabel jumpLabel = ((ImcJUMP) currentStatement).label;
                 ControlFlowGraphNode jumpNode = labels.get(jumpLabel);
 
-                // The last statement in linearized code chunk is a jump out of
-                // this chunk. Because the label for this is outside of the
-                // chunk, it will not get inserted in the `labels` map, so
-                // jumpNode will be null.
+                // The jump out of this chunk (to the exit label) has a label
+                // outside of the chunk, it will not get inserted in the
+                // `labels` map, so jumpNode will be null.
                 if (jumpNode != null)
-                    controlFlowGraph.addEdge(previousNode, jumpNode);
-            } else if (previousStatement instanceof ImcCJUMP) {
+                    controlFlowGraph.addEdge(currentNode, jumpNode);
+            } else if (currentStatement instanceof ImcCJUMP) {
                 // The CJUMP statement is similar to JUMP statement, but it can
                 // jump to two different label.
 
                 // Handle negative label
-                MemLabel negativeJumpLabel = ((ImcCJUMP) previousStatement).negLabel;
+                MemLabel negativeJumpLabel = ((ImcCJUMP) currentStatement).negLabel;
                 ControlFlowGraphNode negativeJumpNode = labels.get(negativeJumpLabel);
                 if (negativeJumpNode != null)
-                    controlFlowGraph.addEdge(previousNode, negativeJumpNode);
+                    controlFlowGraph.addEdge(currentNode, negativeJumpNode);
 
                 // Handle positive label
-                MemLabel positiveJumpLabel = ((ImcCJUMP) previousStatement).posLabel;
+                MemLabel positiveJumpLabel = ((ImcCJUMP) currentStatement).posLabel;
                 ControlFlowGraphNode positiveJumpNode = labels.get(positiveJumpLabel);
                 if (positiveJumpNode != null)
-                    controlFlowGraph.addEdge(previousNode, positiveJumpNode);
-            } else {
-                // Add an edge in control-flow graph between previousNode and
-                // currentStatement (this will also insert both nodes into the graph).
-                controlFlowGraph.addEdge(previousNode, currentNode);
+                    controlFlowGraph.addEdge(currentNode, positiveJumpNode);
+            } else if (currentNode.next() != null) {
+                // Add an edge in control-flow graph between currentNode and
+                // the next statement.
+                controlFlowGraph.addEdge(currentNode, currentNode.next());
             }
-
-            previousStatement = currentStatement;
-            previousNode = currentNode;
         }
         return controlFlowGraph;
     }
 
+    /** Partition the nodes of `graph` into basic blocks. A node starts a new
+     * block unless its only predecessor is the previous node and the previous
+     * node's only successor is this node. */
+    public static BasicBlockGraph buildBasicBlocks(ControlFlowGraph graph) {
+        BasicBlockGraph blockGraph = new BasicBlockGraph(graph);
+
+        BasicBlock currentBlock = null;
+        ControlFlowGraphNode previousNode = null;
+        for (ControlFlowGraphNode node : graph.nodes) {
+            boolean continuesBlock = previousNode != null
+                && previousNode.successors.size() == 1
+                && previousNode.successors.contains(node)
+                && node.predecessors.size() == 1
+                && node.predecessors.contains(previousNode);
+
+            if (!continuesBlock) {
+                currentBlock = new BasicBlock();
+                currentBlock.index = blockGraph.blocks.size();
+                blockGraph.blocks.add(currentBlock);
+            }
+            currentBlock.nodes.add(node);
+            blockGraph.nodeBlocks.put(node, currentBlock);
+            previousNode = node;
+        }
+
+        // Edges between blocks can only leave the last node of a block and
+        // enter the first node of a block.
+        for (BasicBlock block : blockGraph.blocks) {
+            for (ControlFlowGraphNode successor : block.last().successors) {
+                BasicBlock successorBlock = blockGraph.nodeBlocks.get(successor);
+                block.successors.add(successorBlock);
+                successorBlock.predecessors.add(block);
+            }
+        }
+
+        return blockGraph;
+    }
+
     public static Vector<ImcStmt> toStatements(ControlFlowGraph graph) {
         Vector<ImcStmt> statements = new Vector<ImcStmt>();
         for (ControlFlowGraphNode node : graph.nodes) {
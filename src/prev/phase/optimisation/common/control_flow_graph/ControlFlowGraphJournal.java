@@ -0,0 +1,77 @@
+package prev.phase.optimisation.common.control_flow_graph;
+
+import java.util.*;
+import prev.data.imc.code.stmt.*;
+
+/**
+ * A journal of changes of the statements of a control-flow graph. The graph
+ * notifies its journal about every added and removed node and every replaced
+ * statement, so the changes made since the last call of takeChanges can be
+ * collected in time proportional to their number instead of the size of the
+ * graph.
+ */
+public class ControlFlowGraphJournal {
+
+    /** The state of a node before the first change since the last step */
+    private static class Entry {
+
+        final ImcStmt before;
+        final boolean wasPresent;
+        boolean relinked = false;
+
+        Entry(ImcStmt before, boolean wasPresent) {
+            this.before = before;
+            this.wasPresent = wasPresent;
+        }
+
+    }
+
+    private final ControlFlowGraph graph;
+
+    private LinkedHashMap<ControlFlowGraphNode, Entry> entries = new LinkedHashMap<ControlFlowGraphNode, Entry>();
+
+    public ControlFlowGraphJournal(ControlFlowGraph graph) {
+        this.graph = graph;
+    }
+
+    void nodeAdded(ControlFlowGraphNode node) {
+        Entry entry = this.entries.get(node);
+        if (entry == null)
+            this.entries.put(node, new Entry(null, false));
+        else if (entry.wasPresent)
+            entry.relinked = true;
+    }
+
+    void nodeRemoved(ControlFlowGraphNode node) {
+        if (!this.entries.containsKey(node))
+            this.entries.put(node, new Entry(node.statement, true));
+    }
+
+    void statementChanged(ControlFlowGraphNode node, ImcStmt before) {
+        if (!this.entries.containsKey(node))
+            this.entries.put(node, new Entry(before, true));
+    }
+
+    /** Return the changes since the previous call and start a new step */
+    public Vector<StatementChange> takeChanges() {
+        Vector<StatementChange> changes = new Vector<StatementChange>();
+        for (Map.Entry<ControlFlowGraphNode, Entry> mapEntry : this.entries.entrySet()) {
+            ControlFlowGraphNode node = mapEntry.getKey();
+            Entry entry = mapEntry.getValue();
+            boolean isPresent = this.graph.containsNode(node);
+            int previous = isPresent && node.previous() != null ? node.previous().index() : -1;
+
+            if (entry.wasPresent && !isPresent)
+                changes.add(new StatementChange(StatementChange.Kind.REMOVED, node.index(), -1, entry.before, null));
+            else if (!entry.wasPresent && isPresent)
+                changes.add(new StatementChange(StatementChange.Kind.ADDED, node.index(), previous, null, node.statement));
+            else if (entry.wasPresent && entry.before != node.statement)
+                changes.add(new StatementChange(StatementChange.Kind.CHANGED, node.index(), previous, entry.before, node.statement));
+            else if (entry.wasPresent && entry.relinked)
+                changes.add(new StatementChange(StatementChange.Kind.MOVED, node.index(), previous, entry.before, node.statement));
+        }
+        this.entries = new LinkedHashMap<ControlFlowGraphNode, Entry>();
+        return changes;
+    }
+
+}
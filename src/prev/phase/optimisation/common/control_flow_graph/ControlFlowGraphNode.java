@@ -2,39 +2,54 @@ package prev.phase.optimisation.common.control_flow_graph;
 
 import prev.data.imc.code.stmt.*;
 import prev.data.imc.code.expr.*;
+import prev.phase.optimisation.common.dataflow.*;
 import prev.common.report.*;
 import java.util.*;
 
 public class ControlFlowGraphNode {
 
     public ImcStmt statement;
+
+    /** Neighbours in the program order of the graph (see
+     * ControlFlowGraphNodeList) */
+    ControlFlowGraphNode previous = null;
+    ControlFlowGraphNode next = null;
+    ControlFlowGraphNodeList list = null;
+
+    /** Index of this node, unique within its graph and stable while the graph
+     * changes */
+    int index = -1;
     public LinkedHashSet<ControlFlowGraphNode> predecessors = new LinkedHashSet<ControlFlowGraphNode>();
     public LinkedHashSet<ControlFlowGraphNode> successors = new LinkedHashSet<ControlFlowGraphNode>();
 
-    /** Sets for liveness analysis */
-    private HashSet<ImcTEMP> liveIn = new HashSet<ImcTEMP>();
-    private HashSet<ImcTEMP> liveOut = new HashSet<ImcTEMP>();
-
     /** Sets for usages and definitions */
     private HashSet<ImcTEMP> uses = new HashSet<ImcTEMP>();
     private HashSet<ImcTEMP> defines = new HashSet<ImcTEMP>();
 
-    /** Sets for reaching definitions analysis */
-    private HashSet<ControlFlowGraphNode> reachingDefinitionsIn = new HashSet<ControlFlowGraphNode>();
-    private HashSet<ControlFlowGraphNode> reachingDefinitionsOut = new HashSet<ControlFlowGraphNode>();
-
-    /** Sets for available expressions analysis */
-    private HashSet<ImcExpr> availableExpressionsIn = new HashSet<ImcExpr>();
-    private HashSet<ImcExpr> availableExpressionsOut = new HashSet<ImcExpr>();
-
-    /** Dominators */
-    private HashSet<ControlFlowGraphNode> dominators = new HashSet<ControlFlowGraphNode>();
-    ControlFlowGraphNode immediateDominator = null;
+    /** Solutions of the analyses the facts of this node are computed from
+     * (null until the analysis is run) */
+    private NodeFacts<ImcTEMP> liveness = null;
+    private NodeFacts<ControlFlowGraphNode> reachingDefinitions = null;
+    private NodeFacts<ImcExpr> availableExpressions = null;
     
     public ControlFlowGraphNode(ImcStmt statement) {
         this.statement = statement;
     }
     
+    /** Return the previous node in program order or null. */
+    public ControlFlowGraphNode previous() {
+        return this.previous;
+    }
+
+    /** Return the next node in program order or null. */
+    public ControlFlowGraphNode next() {
+        return this.list == null ? null : this.next;
+    }
+
+    public int index() {
+        return this.index;
+    }
+
     public void addSuccessor(ControlFlowGraphNode node) {
         this.successors.add((ControlFlowGraphNode) node);
     }
@@ -51,34 +66,18 @@ public class ControlFlowGraphNode {
         return new LinkedHashSet<ControlFlowGraphNode>(this.successors);
     }
 
-    /** Getters and setters for dominators */
-    public HashSet<ControlFlowGraphNode> getDominators() {
-        return new HashSet<ControlFlowGraphNode>(this.dominators);
-    }
-
-    public void setDominators(HashSet<ControlFlowGraphNode> dominators) {
-        this.dominators = dominators;
-    }
-
-    public ControlFlowGraphNode getImmediateDominator() {
-        return this.immediateDominator;
-    }
-
-    public void setImmediateDominator(ControlFlowGraphNode dominator) {
-        this.immediateDominator = dominator;
-    }
-
-    /** Getters and setters for statement defines and uses */
-    public HashSet<ImcTEMP> getUses() {
-        return new HashSet<ImcTEMP>(this.uses);
+    /** Getters and setters for statement defines and uses. The getters of
+     * sets below return read-only views. */
+    public Set<ImcTEMP> getUses() {
+        return Collections.unmodifiableSet(this.uses);
     }
 
     public void setUses(HashSet<ImcTEMP> uses) {
         this.uses = uses;
     }
 
-    public HashSet<ImcTEMP> getDefines() {
-        return new HashSet<ImcTEMP>(this.defines);
+    public Set<ImcTEMP> getDefines() {
+        return Collections.unmodifiableSet(this.defines);
     }
 
     public void setDefines(HashSet<ImcTEMP> defines) {
@@ -86,62 +85,53 @@ public class ControlFlowGraphNode {
     }
 
     /** Getters and setters for liveness analysis */
-    public HashSet<ImcTEMP> getLiveIn() {
-        return new HashSet<ImcTEMP>(this.liveIn);
-    }
-
-    public void setLiveIn(HashSet<ImcTEMP> liveIn) {
-        this.liveIn = liveIn;
+    public Set<ImcTEMP> getLiveIn() {
+        return this.liveness == null ? Collections.<ImcTEMP>emptySet() : this.liveness.in(this);
     }
 
-    public HashSet<ImcTEMP> getLiveOut() {
-        return new HashSet<ImcTEMP>(this.liveOut);
+    public Set<ImcTEMP> getLiveOut() {
+        return this.liveness == null ? Collections.<ImcTEMP>emptySet() : this.liveness.out(this);
     }
 
-    public void setLiveOut(HashSet<ImcTEMP> liveOut) {
-        this.liveOut = liveOut;
-    }
-
-    public void clearLiveIn() {
-        this.liveIn.clear();
-    }
-
-    public void clearLiveOut() {
-        this.liveOut.clear();
+    public void setLiveness(NodeFacts<ImcTEMP> liveness) {
+        this.liveness = liveness;
     }
 
     /** Getters and setters for reaching definitions analysis */
-    public HashSet<ControlFlowGraphNode> getReachingDefinitionsIn() {
-        return new HashSet<ControlFlowGraphNode>(this.reachingDefinitionsIn);
+    public Set<ControlFlowGraphNode> getReachingDefinitionsIn() {
+        return this.reachingDefinitions == null ? Collections.<ControlFlowGraphNode>emptySet() : this.reachingDefinitions.in(this);
     }
 
-    public void setReachingDefinitionsIn(HashSet<ControlFlowGraphNode> reachingDefinitionsIn) {
-        this.reachingDefinitionsIn = reachingDefinitionsIn;
+    public Set<ControlFlowGraphNode> getReachingDefinitionsOut() {
+        return this.reachingDefinitions == null ? Collections.<ControlFlowGraphNode>emptySet() : this.reachingDefinitions.out(this);
     }
 
-    public HashSet<ControlFlowGraphNode> getReachingDefinitionsOut() {
-        return new HashSet<ControlFlowGraphNode>(this.reachingDefinitionsOut);
+    /** Return the definitions among `definitions` that reach this node. */
+    public HashSet<ControlFlowGraphNode> getReachingDefinitionsIn(Collection<ControlFlowGraphNode> definitions) {
+        Set<ControlFlowGraphNode> reachingDefinitionsIn = this.getReachingDefinitionsIn();
+        HashSet<ControlFlowGraphNode> reachingDefinitions = new HashSet<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode definition : definitions) {
+            if (reachingDefinitionsIn.contains(definition))
+                reachingDefinitions.add(definition);
+        }
+        return reachingDefinitions;
     }
 
-    public void setReachingDefinitionsOut(HashSet<ControlFlowGraphNode> reachingDefinitionsOut) {
-        this.reachingDefinitionsOut = reachingDefinitionsOut;
+    public void setReachingDefinitions(NodeFacts<ControlFlowGraphNode> reachingDefinitions) {
+        this.reachingDefinitions = reachingDefinitions;
     }
 
     /** Getters and setters for available expressions analysis */
-    public HashSet<ImcExpr> getAvailableExpressionsIn() {
-        return new HashSet<ImcExpr>(this.availableExpressionsIn);
-    }
-
-    public void setAvailableExpressionsIn(HashSet<ImcExpr> availableExpressionsIn) {
-        this.availableExpressionsIn = availableExpressionsIn;
+    public Set<ImcExpr> getAvailableExpressionsIn() {
+        return this.availableExpressions == null ? Collections.<ImcExpr>emptySet() : this.availableExpressions.in(this);
     }
 
-    public HashSet<ImcExpr> getAvailableExpressionsOut() {
-        return new HashSet<ImcExpr>(this.availableExpressionsOut);
+    public Set<ImcExpr> getAvailableExpressionsOut() {
+        return this.availableExpressions == null ? Collections.<ImcExpr>emptySet() : this.availableExpressions.out(this);
     }
 
-    public void setAvailableExpressionsOut(HashSet<ImcExpr> availableExpressionsOut) {
-        this.availableExpressionsOut = availableExpressionsOut;
+    public void setAvailableExpressions(NodeFacts<ImcExpr> availableExpressions) {
+        this.availableExpressions = availableExpressions;
     }
 
     @Override
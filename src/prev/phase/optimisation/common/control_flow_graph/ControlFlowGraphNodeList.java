@@ -0,0 +1,110 @@
+package prev.phase.optimisation.common.control_flow_graph;
+
+import java.util.*;
+
+/**
+ * Nodes of a control-flow graph in program order, stored as an intrusive
+ * doubly linked list so that nodes can be inserted and removed in constant
+ * time. The list can only be changed through the control-flow graph.
+ *
+ * Iteration tolerates the removal of the node that was returned last and
+ * visits nodes inserted after it.
+ */
+public class ControlFlowGraphNodeList extends AbstractCollection<ControlFlowGraphNode> {
+
+    private ControlFlowGraphNode first = null;
+    private ControlFlowGraphNode last = null;
+    private int size = 0;
+
+    public ControlFlowGraphNode first() {
+        return this.first;
+    }
+
+    public ControlFlowGraphNode last() {
+        return this.last;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ControlFlowGraphNode))
+            return false;
+        ControlFlowGraphNode node = (ControlFlowGraphNode) o;
+        return node.list == this;
+    }
+
+    @Override
+    public Iterator<ControlFlowGraphNode> iterator() {
+        return new Iterator<ControlFlowGraphNode>() {
+            private ControlFlowGraphNode current = null;
+            private boolean started = false;
+
+            private ControlFlowGraphNode following() {
+                return this.started ? this.current.next : first;
+            }
+
+            public boolean hasNext() {
+                return this.following() != null;
+            }
+
+            public ControlFlowGraphNode next() {
+                ControlFlowGraphNode following = this.following();
+                if (following == null)
+                    throw new NoSuchElementException();
+                this.current = following;
+                this.started = true;
+                return following;
+            }
+        };
+    }
+
+    void addLast(ControlFlowGraphNode node) {
+        this.link(node, this.last, null);
+    }
+
+    void insertBefore(ControlFlowGraphNode node, ControlFlowGraphNode prepend) {
+        this.link(prepend, node.previous, node);
+    }
+
+    void insertAfter(ControlFlowGraphNode node, ControlFlowGraphNode append) {
+        this.link(append, node, node.next);
+    }
+
+    private void link(ControlFlowGraphNode node, ControlFlowGraphNode previous, ControlFlowGraphNode next) {
+        node.list = this;
+        node.previous = previous;
+        node.next = next;
+        if (previous == null)
+            this.first = node;
+        else
+            previous.next = node;
+        if (next == null)
+            this.last = node;
+        else
+            next.previous = node;
+        this.size++;
+    }
+
+    void unlink(ControlFlowGraphNode node) {
+        if (node.list != this)
+            return;
+        if (node.previous == null)
+            this.first = node.next;
+        else
+            node.previous.next = node.next;
+        if (node.next == null)
+            this.last = node.previous;
+        else
+            node.next.previous = node.previous;
+        // The next pointer is kept, so an iterator positioned at this node
+        // can still continue.
+        node.previous = null;
+        node.list = null;
+        this.size--;
+    }
+
+}
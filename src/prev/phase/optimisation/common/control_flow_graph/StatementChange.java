@@ -0,0 +1,38 @@
+package prev.phase.optimisation.common.control_flow_graph;
+
+import prev.data.imc.code.stmt.*;
+
+/**
+ * A change of a single statement of a control-flow graph, as recorded by a
+ * ControlFlowGraphJournal.
+ */
+public class StatementChange {
+
+    public enum Kind {
+        ADDED, REMOVED, CHANGED, MOVED
+    }
+
+    public final Kind kind;
+
+    /** The index of the changed node */
+    public final int node;
+
+    /** The index of the node the changed node follows, or -1 if it is the
+     * first node or has been removed */
+    public final int previous;
+
+    /** The statement before the change, null if the node has been added */
+    public final ImcStmt before;
+
+    /** The statement after the change, null if the node has been removed */
+    public final ImcStmt after;
+
+    public StatementChange(Kind kind, int node, int previous, ImcStmt before, ImcStmt after) {
+        this.kind = kind;
+        this.node = node;
+        this.previous = previous;
+        this.before = before;
+        this.after = after;
+    }
+
+}
@@ -0,0 +1,131 @@
+package prev.phase.optimisation.common.dataflow;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size set of dense indices stored as an array of longs.
+ */
+public class BitVector {
+
+    private final long[] words;
+    public final int size;
+
+    public BitVector(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    private BitVector(BitVector other) {
+        this.size = other.size;
+        this.words = other.words.clone();
+    }
+
+    public BitVector copy() {
+        return new BitVector(this);
+    }
+
+    public boolean get(int index) {
+        return (this.words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void set(int index) {
+        this.words[index >>> 6] |= 1L << index;
+    }
+
+    public void clear(int index) {
+        this.words[index >>> 6] &= ~(1L << index);
+    }
+
+    /** Set all indices in range [0, size). */
+    public void setAll() {
+        Arrays.fill(this.words, -1L);
+        int remainder = this.size & 63;
+        if (remainder != 0)
+            this.words[this.words.length - 1] = (1L << remainder) - 1;
+    }
+
+    public void clearAll() {
+        Arrays.fill(this.words, 0L);
+    }
+
+    /** this = this U other */
+    public void or(BitVector other) {
+        for (int i = 0; i < this.words.length; i++)
+            this.words[i] |= other.words[i];
+    }
+
+    /** this = this ^ other */
+    public void and(BitVector other) {
+        for (int i = 0; i < this.words.length; i++)
+            this.words[i] &= other.words[i];
+    }
+
+    /** this = this - other */
+    public void andNot(BitVector other) {
+        for (int i = 0; i < this.words.length; i++)
+            this.words[i] &= ~other.words[i];
+    }
+
+    /** this = gen U (this - kill), the transfer function of gen/kill
+     * problems. */
+    public void transfer(BitVector generates, BitVector kills) {
+        for (int i = 0; i < this.words.length; i++)
+            this.words[i] = generates.words[i] | (this.words[i] & ~kills.words[i]);
+    }
+
+    /** Copy contents of `other` into this vector and report whether anything
+     * changed. */
+    public boolean assign(BitVector other) {
+        boolean hasChanged = false;
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != other.words[i]) {
+                this.words[i] = other.words[i];
+                hasChanged = true;
+            }
+        }
+        return hasChanged;
+    }
+
+    /** Return the first set index at or after `from`, or -1. */
+    public int nextSetBit(int from) {
+        if (from >= this.size)
+            return -1;
+        int wordIndex = from >>> 6;
+        long word = this.words[wordIndex] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+            if (++wordIndex == this.words.length)
+                return -1;
+            word = this.words[wordIndex];
+        }
+    }
+
+    public boolean isEmpty() {
+        for (long word : this.words)
+            if (word != 0)
+                return false;
+        return true;
+    }
+
+    /** Return the number of set indices. */
+    public int cardinality() {
+        int cardinality = 0;
+        for (long word : this.words)
+            cardinality += Long.bitCount(word);
+        return cardinality;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitVector)) return false;
+        return Arrays.equals(this.words, ((BitVector) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.words);
+    }
+
+}
@@ -0,0 +1,44 @@
+package prev.phase.optimisation.common.dataflow;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+
+/**
+ * A gen/kill dataflow problem over basic blocks. The transfer function of
+ * each block is out = gen U (in - kill) in the direction of the problem.
+ */
+public abstract class DataflowProblem {
+
+    public enum Direction {
+        FORWARD, BACKWARD
+    }
+
+    public enum Meet {
+        UNION, INTERSECTION
+    }
+
+    public final Direction direction;
+    public final Meet meet;
+
+    /** Number of dense indices of the facts of this problem */
+    public final int size;
+
+    public DataflowProblem(Direction direction, Meet meet, int size) {
+        this.direction = direction;
+        this.meet = meet;
+        this.size = size;
+    }
+
+    /** Facts generated by the block (in the direction of the problem). */
+    public abstract BitVector generates(BasicBlock block);
+
+    /** Facts killed by the block. */
+    public abstract BitVector kills(BasicBlock block);
+
+    /** Facts holding at the boundary: at the entry of the initial block
+     * (and of blocks without predecessors) for forward problems, at the exit
+     * of blocks without successors for backward problems. */
+    public BitVector boundary() {
+        return new BitVector(this.size);
+    }
+
+}
@@ -0,0 +1,157 @@
+package prev.phase.optimisation.common.dataflow;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import java.util.*;
+
+/**
+ * Worklist solver for gen/kill dataflow problems over basic blocks. Blocks
+ * are visited in reverse postorder for forward problems and in postorder for
+ * backward problems.
+ */
+public class DataflowSolver {
+
+    /** Facts at the entry (in program order) of each block, by block index */
+    public final BitVector[] in;
+    /** Facts at the exit (in program order) of each block, by block index */
+    public final BitVector[] out;
+
+    private DataflowSolver(int blocks) {
+        this.in = new BitVector[blocks];
+        this.out = new BitVector[blocks];
+    }
+
+    public BitVector in(BasicBlock block) {
+        return this.in[block.index];
+    }
+
+    public BitVector out(BasicBlock block) {
+        return this.out[block.index];
+    }
+
+    public static DataflowSolver solve(BasicBlockGraph blockGraph, DataflowProblem problem) {
+        Vector<BasicBlock> blocks = blockGraph.blocks;
+        DataflowSolver solution = new DataflowSolver(blocks.size());
+        if (blocks.isEmpty())
+            return solution;
+
+        boolean forward = problem.direction == DataflowProblem.Direction.FORWARD;
+        boolean union = problem.meet == DataflowProblem.Meet.UNION;
+
+        BitVector[] generates = new BitVector[blocks.size()];
+        BitVector[] kills = new BitVector[blocks.size()];
+        for (BasicBlock block : blocks) {
+            generates[block.index] = problem.generates(block);
+            kills[block.index] = problem.kills(block);
+        }
+
+        // `before` holds the facts flowing into the block transfer function
+        // and `after` the facts flowing out of it.
+        BitVector[] before = forward ? solution.in : solution.out;
+        BitVector[] after = forward ? solution.out : solution.in;
+        BitVector boundary = problem.boundary();
+        for (BasicBlock block : blocks) {
+            before[block.index] = new BitVector(problem.size);
+            after[block.index] = new BitVector(problem.size);
+            if (!union)
+                after[block.index].setAll();
+        }
+
+        // Order the blocks and assign each block its position in the order
+        Vector<BasicBlock> order = reversePostorder(blockGraph);
+        if (!forward)
+            Collections.reverse(order);
+        int[] position = new int[blocks.size()];
+        for (int i = 0; i < order.size(); i++)
+            position[order.get(i).index] = i;
+
+        PriorityQueue<Integer> worklist = new PriorityQueue<Integer>();
+        boolean[] queued = new boolean[blocks.size()];
+        for (int i = 0; i < order.size(); i++) {
+            worklist.add(i);
+            queued[i] = true;
+        }
+
+        BasicBlock initialBlock = blockGraph.initialBlock();
+        BitVector newAfter = new BitVector(problem.size);
+        while (!worklist.isEmpty()) {
+            int current = worklist.poll();
+            queued[current] = false;
+            BasicBlock block = order.get(current);
+
+            Collection<BasicBlock> sources = forward ? block.predecessors : block.successors;
+            Collection<BasicBlock> targets = forward ? block.successors : block.predecessors;
+
+            // Meet over all blocks flowing into this one
+            BitVector meet = before[block.index];
+            if (sources.isEmpty() || (forward && block == initialBlock)) {
+                meet.assign(boundary);
+            } else {
+                boolean first = true;
+                for (BasicBlock source : sources) {
+                    if (first) {
+                        meet.assign(after[source.index]);
+                        first = false;
+                    } else if (union) {
+                        meet.or(after[source.index]);
+                    } else {
+                        meet.and(after[source.index]);
+                    }
+                }
+            }
+
+            newAfter.assign(meet);
+            newAfter.transfer(generates[block.index], kills[block.index]);
+            if (after[block.index].assign(newAfter)) {
+                for (BasicBlock target : targets) {
+                    int targetPosition = position[target.index];
+                    if (!queued[targetPosition]) {
+                        worklist.add(targetPosition);
+                        queued[targetPosition] = true;
+                    }
+                }
+            }
+        }
+
+        return solution;
+    }
+
+    /** Blocks in reverse postorder from the initial block, followed by the
+     * blocks unreachable from it. */
+    public static Vector<BasicBlock> reversePostorder(BasicBlockGraph blockGraph) {
+        Vector<BasicBlock> postorder = new Vector<BasicBlock>();
+        boolean[] visited = new boolean[blockGraph.blocks.size()];
+
+        // Iterative depth-first search, as recursion could overflow the stack
+        // on large functions.
+        Deque<BasicBlock> stack = new ArrayDeque<BasicBlock>();
+        Deque<Iterator<BasicBlock>> iterators = new ArrayDeque<Iterator<BasicBlock>>();
+        BasicBlock initialBlock = blockGraph.initialBlock();
+        if (initialBlock != null) {
+            visited[initialBlock.index] = true;
+            stack.push(initialBlock);
+            iterators.push(initialBlock.successors.iterator());
+        }
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> iterator = iterators.peek();
+            if (iterator.hasNext()) {
+                BasicBlock successor = iterator.next();
+                if (!visited[successor.index]) {
+                    visited[successor.index] = true;
+                    stack.push(successor);
+                    iterators.push(successor.successors.iterator());
+                }
+            } else {
+                postorder.add(stack.pop());
+                iterators.pop();
+            }
+        }
+        Collections.reverse(postorder);
+
+        for (BasicBlock block : blockGraph.blocks) {
+            if (!visited[block.index])
+                postorder.add(block);
+        }
+        return postorder;
+    }
+
+}
@@ -0,0 +1,99 @@
+package prev.phase.optimisation.common.dataflow;
+
+import java.util.*;
+
+/**
+ * Dense indexing of dataflow facts (temporaries, definitions, expressions).
+ */
+public class Indexer<T> {
+
+    private final HashMap<T, Integer> indices = new HashMap<T, Integer>();
+    private final Vector<T> elements = new Vector<T>();
+
+    /** Return the index of `element`, adding it if it has no index yet. */
+    public int add(T element) {
+        Integer index = this.indices.get(element);
+        if (index == null) {
+            index = this.elements.size();
+            this.indices.put(element, index);
+            this.elements.add(element);
+        }
+        return index;
+    }
+
+    /** Return the index of `element` or -1 if it has no index. */
+    public int indexOf(T element) {
+        Integer index = this.indices.get(element);
+        return index == null ? -1 : index;
+    }
+
+    public T get(int index) {
+        return this.elements.get(index);
+    }
+
+    public int size() {
+        return this.elements.size();
+    }
+
+    public BitVector toBitVector(Collection<? extends T> elements) {
+        BitVector vector = new BitVector(this.size());
+        for (T element : elements) {
+            int index = this.indexOf(element);
+            if (index >= 0)
+                vector.set(index);
+        }
+        return vector;
+    }
+
+    /** Return a read-only view of the elements whose indices are set in
+     * `vector`. The view follows later changes of `vector`. */
+    public Set<T> asSet(BitVector vector) {
+        return new IndexedSet(vector);
+    }
+
+    private class IndexedSet extends AbstractSet<T> {
+
+        private final BitVector vector;
+
+        IndexedSet(BitVector vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        public boolean contains(Object element) {
+            Integer index = Indexer.this.indices.get(element);
+            return index != null && index < this.vector.size && this.vector.get(index);
+        }
+
+        @Override
+        public int size() {
+            return this.vector.cardinality();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.vector.isEmpty();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int next = IndexedSet.this.vector.nextSetBit(0);
+
+                public boolean hasNext() {
+                    return this.next >= 0;
+                }
+
+                public T next() {
+                    if (this.next < 0)
+                        throw new NoSuchElementException();
+                    T element = Indexer.this.elements.get(this.next);
+                    this.next = IndexedSet.this.vector.nextSetBit(this.next + 1);
+                    return element;
+                }
+            };
+        }
+
+    }
+
+}
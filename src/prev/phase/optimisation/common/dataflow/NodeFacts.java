@@ -0,0 +1,94 @@
+package prev.phase.optimisation.common.dataflow;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import java.util.*;
+
+/**
+ * Facts of a solved dataflow problem at single control-flow graph nodes.
+ *
+ * Only the facts at the block boundaries are kept by the solution. The facts
+ * at the nodes of a block are computed when a node of the block is first
+ * queried, by applying the transfer functions of its nodes from the boundary
+ * of the block.
+ */
+public class NodeFacts<T> {
+
+    private final DataflowProblem.Direction direction;
+    private final Indexer<T> indexer;
+    private final DataflowSolver solution;
+    private final BasicBlockGraph blockGraph;
+
+    /** Facts generated and killed by each node, by node index */
+    private final BitVector[] generates;
+    private final BitVector[] kills;
+
+    /** Position of each node within its block, by node index */
+    private final int[] positions;
+
+    /** Facts before each node of a block and after its last node (in program
+     * order), by block index; null until the block is queried */
+    private final BitVector[][] blockFacts;
+
+    public NodeFacts(DataflowProblem.Direction direction, Indexer<T> indexer, DataflowSolver solution, BasicBlockGraph blockGraph, BitVector[] generates, BitVector[] kills) {
+        this.direction = direction;
+        this.indexer = indexer;
+        this.solution = solution;
+        this.blockGraph = blockGraph;
+        this.generates = generates;
+        this.kills = kills;
+        this.positions = new int[generates.length];
+        for (BasicBlock block : blockGraph.blocks) {
+            for (int i = 0; i < block.nodes.size(); i++)
+                this.positions[block.nodes.get(i).index()] = i;
+        }
+        this.blockFacts = new BitVector[blockGraph.blocks.size()][];
+    }
+
+    /** Return the facts at the entry (in program order) of `node` as a
+     * read-only set. */
+    public Set<T> in(ControlFlowGraphNode node) {
+        return this.facts(node, 0);
+    }
+
+    /** Return the facts at the exit (in program order) of `node` as a
+     * read-only set. */
+    public Set<T> out(ControlFlowGraphNode node) {
+        return this.facts(node, 1);
+    }
+
+    private Set<T> facts(ControlFlowGraphNode node, int offset) {
+        // Nodes added to the graph after the problem was solved have no facts
+        BasicBlock block = this.blockGraph.blockOf(node);
+        if (block == null)
+            return Collections.emptySet();
+        BitVector[] facts = this.blockFacts(block);
+        return this.indexer.asSet(facts[this.positions[node.index()] + offset]);
+    }
+
+    private BitVector[] blockFacts(BasicBlock block) {
+        BitVector[] facts = this.blockFacts[block.index];
+        if (facts != null)
+            return facts;
+
+        int size = block.nodes.size();
+        facts = new BitVector[size + 1];
+        if (this.direction == DataflowProblem.Direction.FORWARD) {
+            facts[0] = this.solution.in(block);
+            for (int i = 0; i < size; i++) {
+                int index = block.nodes.get(i).index();
+                facts[i + 1] = facts[i].copy();
+                facts[i + 1].transfer(this.generates[index], this.kills[index]);
+            }
+        } else {
+            facts[size] = this.solution.out(block);
+            for (int i = size - 1; i >= 0; i--) {
+                int index = block.nodes.get(i).index();
+                facts[i] = facts[i + 1].copy();
+                facts[i].transfer(this.generates[index], this.kills[index]);
+            }
+        }
+        this.blockFacts[block.index] = facts;
+        return facts;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Generic bit-vector dataflow framework.
+ */
+package prev.phase.optimisation.common.dataflow;
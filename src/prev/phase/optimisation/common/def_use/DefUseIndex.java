@@ -0,0 +1,111 @@
+package prev.phase.optimisation.common.def_use;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.liveness_analysis.*;
+import prev.data.imc.code.expr.*;
+import java.util.*;
+
+/**
+ * An index of definitions and uses of temporaries in a control-flow graph.
+ * The index is updated by the graph whenever a node is added or removed or
+ * its statement is replaced (see ControlFlowGraph.setStatement).
+ *
+ * Only moves to temporaries are definitions. The return value temporary is
+ * not considered used at the end of the function.
+ */
+public class DefUseIndex {
+
+    private final HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>> definitions = new HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>>();
+    private final HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>> uses = new HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>>();
+
+    /** Temporaries indexed for each node, so a node can be unindexed even
+     * if its statement was changed in the meantime */
+    private final HashMap<ControlFlowGraphNode, Vector<ImcTEMP>> nodeDefinitions = new HashMap<ControlFlowGraphNode, Vector<ImcTEMP>>();
+    private final HashMap<ControlFlowGraphNode, Vector<ImcTEMP>> nodeUses = new HashMap<ControlFlowGraphNode, Vector<ImcTEMP>>();
+
+    public void add(ControlFlowGraphNode node) {
+        if (this.nodeDefinitions.containsKey(node))
+            this.remove(node);
+
+        Vector<ImcTEMP> definedTemporaries = LivenessAnalysis.statementDefinitions(node.statement);
+        Vector<ImcTEMP> usedTemporaries = LivenessAnalysis.statementUses(node.statement);
+        this.nodeDefinitions.put(node, definedTemporaries);
+        this.nodeUses.put(node, usedTemporaries);
+        for (ImcTEMP temporary : definedTemporaries)
+            add(this.definitions, temporary, node);
+        for (ImcTEMP temporary : usedTemporaries)
+            add(this.uses, temporary, node);
+    }
+
+    public void remove(ControlFlowGraphNode node) {
+        Vector<ImcTEMP> definedTemporaries = this.nodeDefinitions.remove(node);
+        Vector<ImcTEMP> usedTemporaries = this.nodeUses.remove(node);
+        if (definedTemporaries != null) {
+            for (ImcTEMP temporary : definedTemporaries)
+                remove(this.definitions, temporary, node);
+        }
+        if (usedTemporaries != null) {
+            for (ImcTEMP temporary : usedTemporaries)
+                remove(this.uses, temporary, node);
+        }
+    }
+
+    /** Re-index `node` after its statement has changed. */
+    public void update(ControlFlowGraphNode node) {
+        this.add(node);
+    }
+
+    private static void add(HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>> index, ImcTEMP temporary, ControlFlowGraphNode node) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = index.get(temporary);
+        if (nodes == null) {
+            nodes = new LinkedHashSet<ControlFlowGraphNode>();
+            index.put(temporary, nodes);
+        }
+        nodes.add(node);
+    }
+
+    private static void remove(HashMap<ImcTEMP, LinkedHashSet<ControlFlowGraphNode>> index, ImcTEMP temporary, ControlFlowGraphNode node) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = index.get(temporary);
+        if (nodes == null)
+            return;
+        nodes.remove(node);
+        if (nodes.isEmpty())
+            index.remove(temporary);
+    }
+
+    /** Return all nodes defining `temporary` (the set must not be modified). */
+    public Set<ControlFlowGraphNode> definitions(ImcTEMP temporary) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = this.definitions.get(temporary);
+        return nodes == null ? Collections.<ControlFlowGraphNode>emptySet() : Collections.unmodifiableSet(nodes);
+    }
+
+    /** Return all nodes using `temporary` (the set must not be modified). */
+    public Set<ControlFlowGraphNode> uses(ImcTEMP temporary) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = this.uses.get(temporary);
+        return nodes == null ? Collections.<ControlFlowGraphNode>emptySet() : Collections.unmodifiableSet(nodes);
+    }
+
+    /** Return the only node defining `temporary` or null if there is not
+     * exactly one definition. */
+    public ControlFlowGraphNode singleDefinition(ImcTEMP temporary) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = this.definitions.get(temporary);
+        if (nodes == null || nodes.size() != 1)
+            return null;
+        return nodes.iterator().next();
+    }
+
+    /** Return the only node using `temporary` or null if there is not
+     * exactly one use. */
+    public ControlFlowGraphNode singleUse(ImcTEMP temporary) {
+        LinkedHashSet<ControlFlowGraphNode> nodes = this.uses.get(temporary);
+        if (nodes == null || nodes.size() != 1)
+            return null;
+        return nodes.iterator().next();
+    }
+
+    /** Return all temporaries with at least one definition. */
+    public Set<ImcTEMP> definedTemporaries() {
+        return Collections.unmodifiableSet(this.definitions.keySet());
+    }
+
+}
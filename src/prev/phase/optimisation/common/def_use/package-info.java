@@ -0,0 +1,4 @@
+/**
+ * Def-use and use-def index of temporaries.
+ */
+package prev.phase.optimisation.common.def_use;
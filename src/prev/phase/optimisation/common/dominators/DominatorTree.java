@@ -0,0 +1,246 @@
+package prev.phase.optimisation.common.dominators;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.dataflow.*;
+import java.util.*;
+
+/**
+ * Dominator tree of the basic blocks of a control-flow graph.
+ *
+ * Immediate dominators are computed by iterating over blocks in reverse
+ * postorder until no immediate dominator changes (Cooper, Harvey and
+ * Kennedy). The tree is then numbered by a depth-first search, so that `a`
+ * dominates `b` exactly when the preorder-postorder interval of `b` lies
+ * inside the interval of `a`.
+ *
+ * Blocks unreachable from the initial block are not in the tree and do not
+ * dominate and are not dominated by any block.
+ */
+public class DominatorTree {
+
+    public final BasicBlockGraph blockGraph;
+
+    /** Blocks in reverse postorder, reachable blocks first */
+    private final Vector<BasicBlock> order;
+    private final int[] positions;
+
+    private final BasicBlock[] immediateDominators;
+    private final boolean[] reachable;
+    private final Vector<Vector<BasicBlock>> children = new Vector<Vector<BasicBlock>>();
+
+    /** Depth-first numbering of the tree, by block index */
+    private final int[] preorder;
+    private final int[] postorder;
+
+    /** Position of each node in its block, by node index */
+    private final int[] nodePositions;
+
+    /** Dominance frontier of each block, computed when first needed */
+    private Vector<LinkedHashSet<BasicBlock>> dominanceFrontiers = null;
+
+    private DominatorTree(BasicBlockGraph blockGraph) {
+        int size = blockGraph.blocks.size();
+        this.blockGraph = blockGraph;
+        this.order = DataflowSolver.reversePostorder(blockGraph);
+        this.positions = new int[size];
+        this.immediateDominators = new BasicBlock[size];
+        this.reachable = new boolean[size];
+        this.preorder = new int[size];
+        this.postorder = new int[size];
+        this.nodePositions = new int[blockGraph.graph.nodeIndexBound()];
+        for (int i = 0; i < size; i++)
+            this.children.add(new Vector<BasicBlock>());
+    }
+
+    public static DominatorTree build(ControlFlowGraph graph) {
+        return build(ControlFlowGraphBuilder.buildBasicBlocks(graph));
+    }
+
+    public static DominatorTree build(BasicBlockGraph blockGraph) {
+        DominatorTree tree = new DominatorTree(blockGraph);
+        if (blockGraph.initialBlock() == null)
+            return tree;
+
+        tree.computeImmediateDominators();
+        tree.numberTree();
+        for (BasicBlock block : blockGraph.blocks) {
+            for (int i = 0; i < block.nodes.size(); i++)
+                tree.nodePositions[block.nodes.get(i).index()] = i;
+        }
+        return tree;
+    }
+
+    private void computeImmediateDominators() {
+        for (int i = 0; i < this.order.size(); i++)
+            this.positions[this.order.get(i).index] = i;
+
+        // A block is processed once its immediate dominator is known,
+        // unprocessed predecessors are skipped.
+        BasicBlock initialBlock = this.blockGraph.initialBlock();
+        this.reachable[initialBlock.index] = true;
+        boolean hasChanged;
+        do {
+            hasChanged = false;
+            for (int i = 1; i < this.order.size(); i++) {
+                BasicBlock block = this.order.get(i);
+                BasicBlock newDominator = null;
+                for (BasicBlock predecessor : block.predecessors) {
+                    if (!this.reachable[predecessor.index])
+                        continue;
+                    newDominator = newDominator == null ? predecessor : this.intersect(predecessor, newDominator);
+                }
+                if (newDominator != null && this.immediateDominators[block.index] != newDominator) {
+                    this.immediateDominators[block.index] = newDominator;
+                    this.reachable[block.index] = true;
+                    hasChanged = true;
+                }
+            }
+        } while (hasChanged);
+
+        for (BasicBlock block : this.order) {
+            BasicBlock immediateDominator = this.immediateDominators[block.index];
+            if (immediateDominator != null)
+                this.children.get(immediateDominator.index).add(block);
+        }
+    }
+
+    /** Return the nearest common dominator of two processed blocks. */
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (this.positions[first.index] > this.positions[second.index])
+                first = this.immediateDominators[first.index];
+            while (this.positions[second.index] > this.positions[first.index])
+                second = this.immediateDominators[second.index];
+        }
+        return first;
+    }
+
+    private void numberTree() {
+        // Iterative depth-first search, as recursion could overflow the stack
+        // on large functions.
+        int counter = 0;
+        Deque<BasicBlock> stack = new ArrayDeque<BasicBlock>();
+        Deque<Iterator<BasicBlock>> iterators = new ArrayDeque<Iterator<BasicBlock>>();
+        BasicBlock initialBlock = this.blockGraph.initialBlock();
+        this.preorder[initialBlock.index] = counter++;
+        stack.push(initialBlock);
+        iterators.push(this.children.get(initialBlock.index).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> iterator = iterators.peek();
+            if (iterator.hasNext()) {
+                BasicBlock child = iterator.next();
+                this.preorder[child.index] = counter++;
+                stack.push(child);
+                iterators.push(this.children.get(child.index).iterator());
+            } else {
+                this.postorder[stack.pop().index] = counter++;
+                iterators.pop();
+            }
+        }
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return this.reachable[block.index];
+    }
+
+    /** Return the immediate dominator of `block` or null for the initial
+     * block and unreachable blocks. */
+    public BasicBlock immediateDominator(BasicBlock block) {
+        return this.immediateDominators[block.index];
+    }
+
+    /** Return blocks immediately dominated by `block` (the list must not be
+     * modified). */
+    public List<BasicBlock> children(BasicBlock block) {
+        return Collections.unmodifiableList(this.children.get(block.index));
+    }
+
+    /** Return the blocks in reverse postorder of the control-flow graph,
+     * followed by the unreachable blocks (the list must not be modified). */
+    public List<BasicBlock> reversePostorder() {
+        return Collections.unmodifiableList(this.order);
+    }
+
+    /** Return true if every path from the initial block to `second` passes
+     * through `first`. */
+    public boolean dominates(BasicBlock first, BasicBlock second) {
+        if (!this.reachable[first.index] || !this.reachable[second.index])
+            return false;
+        return this.preorder[first.index] <= this.preorder[second.index]
+            && this.postorder[second.index] <= this.postorder[first.index];
+    }
+
+    /** Return true if every path from the initial node to `second` passes
+     * through `first`. Nodes added to the graph after the tree was built do
+     * not dominate and are not dominated by any node. */
+    public boolean dominates(ControlFlowGraphNode first, ControlFlowGraphNode second) {
+        BasicBlock firstBlock = this.blockGraph.blockOf(first);
+        BasicBlock secondBlock = this.blockGraph.blockOf(second);
+        if (firstBlock == null || secondBlock == null)
+            return false;
+        if (firstBlock == secondBlock)
+            return this.reachable[firstBlock.index] && this.nodePositions[first.index()] <= this.nodePositions[second.index()];
+        return this.dominates(firstBlock, secondBlock);
+    }
+
+    /** Return the immediate dominator of `node` or null. */
+    public ControlFlowGraphNode immediateDominator(ControlFlowGraphNode node) {
+        BasicBlock block = this.blockGraph.blockOf(node);
+        if (block == null || !this.reachable[block.index])
+            return null;
+        int position = this.nodePositions[node.index()];
+        if (position > 0)
+            return block.nodes.get(position - 1);
+        BasicBlock immediateDominator = this.immediateDominators[block.index];
+        return immediateDominator == null ? null : immediateDominator.last();
+    }
+
+    /** Return the dominance frontier of `block`: the blocks not strictly
+     * dominated by `block` that have a predecessor dominated by it. */
+    public Set<BasicBlock> dominanceFrontier(BasicBlock block) {
+        if (this.dominanceFrontiers == null)
+            this.computeDominanceFrontiers();
+        return Collections.unmodifiableSet(this.dominanceFrontiers.get(block.index));
+    }
+
+    /** Return the iterated dominance frontier of `blocks`: the blocks where
+     * values defined in `blocks` have to be merged. */
+    public LinkedHashSet<BasicBlock> iteratedDominanceFrontier(Collection<BasicBlock> blocks) {
+        LinkedHashSet<BasicBlock> frontier = new LinkedHashSet<BasicBlock>();
+        ArrayDeque<BasicBlock> worklist = new ArrayDeque<BasicBlock>(blocks);
+        HashSet<BasicBlock> queued = new HashSet<BasicBlock>(blocks);
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.poll();
+            for (BasicBlock frontierBlock : this.dominanceFrontier(block)) {
+                frontier.add(frontierBlock);
+                if (queued.add(frontierBlock))
+                    worklist.add(frontierBlock);
+            }
+        }
+        return frontier;
+    }
+
+    private void computeDominanceFrontiers() {
+        this.dominanceFrontiers = new Vector<LinkedHashSet<BasicBlock>>();
+        for (int i = 0; i < this.blockGraph.blocks.size(); i++)
+            this.dominanceFrontiers.add(new LinkedHashSet<BasicBlock>());
+
+        // A join block is in the frontier of every block on the dominator
+        // tree path from each of its predecessors up to its immediate
+        // dominator (Cooper, Harvey and Kennedy).
+        for (BasicBlock block : this.blockGraph.blocks) {
+            if (!this.reachable[block.index] || block.predecessors.size() < 2)
+                continue;
+            for (BasicBlock predecessor : block.predecessors) {
+                if (!this.reachable[predecessor.index])
+                    continue;
+                BasicBlock runner = predecessor;
+                while (runner != this.immediateDominators[block.index]) {
+                    this.dominanceFrontiers.get(runner.index).add(block);
+                    runner = this.immediateDominators[runner.index];
+                }
+            }
+        }
+    }
+
+}
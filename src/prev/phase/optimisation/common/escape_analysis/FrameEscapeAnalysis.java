@@ -0,0 +1,75 @@
+package prev.phase.optimisation.common.escape_analysis;
+
+import java.util.*;
+import prev.data.mem.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+
+/**
+ * Finds whether an address within the frame of a function may be used other
+ * than to access memory, i.e., whether it may be stored, passed to another
+ * function or compared. If it may not, the frame is only ever accessed by the
+ * function itself and can be reused as soon as the function no longer needs
+ * its contents.
+ */
+public class FrameEscapeAnalysis {
+
+    public static boolean frameAddressEscapes(Vector<ImcStmt> statements, MemFrame frame) {
+        // Find all temporaries that may hold an address within the frame
+        HashSet<MemTemp> addresses = new HashSet<MemTemp>();
+        addresses.add(frame.FP);
+        boolean hasChanged;
+        do {
+            hasChanged = false;
+            for (ImcStmt statement : statements) {
+                if (!(statement instanceof ImcMOVE))
+                    continue;
+                ImcMOVE move = (ImcMOVE) statement;
+                if (move.dst instanceof ImcTEMP && usesOutsideMemory(move.src, addresses))
+                    hasChanged = addresses.add(((ImcTEMP) move.dst).temp) || hasChanged;
+            }
+        } while (hasChanged);
+
+        for (ImcStmt statement : statements) {
+            if (statement instanceof ImcMOVE) {
+                // Addresses may only be used to access memory or to compute
+                // other addresses, but they must not be stored or passed to
+                // other functions
+                ImcMOVE move = (ImcMOVE) statement;
+                if (move.dst instanceof ImcMEM && usesOutsideMemory(move.src, addresses))
+                    return true;
+                if (move.src instanceof ImcCALL && usesOutsideMemory(move.src, addresses))
+                    return true;
+            } else if (statement instanceof ImcESTMT) {
+                if (usesOutsideMemory(((ImcESTMT) statement).expr, addresses))
+                    return true;
+            } else if (statement instanceof ImcCJUMP) {
+                if (usesOutsideMemory(((ImcCJUMP) statement).cond, addresses))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Check whether any of `temporaries` is used in `expression` other
+     * than within an address of a memory access */
+    private static boolean usesOutsideMemory(ImcExpr expression, HashSet<MemTemp> temporaries) {
+        if (expression instanceof ImcTEMP)
+            return temporaries.contains(((ImcTEMP) expression).temp);
+        if (expression instanceof ImcUNOP)
+            return usesOutsideMemory(((ImcUNOP) expression).subExpr, temporaries);
+        if (expression instanceof ImcBINOP)
+            return usesOutsideMemory(((ImcBINOP) expression).fstExpr, temporaries)
+                || usesOutsideMemory(((ImcBINOP) expression).sndExpr, temporaries);
+        if (expression instanceof ImcCALL) {
+            for (ImcExpr argument : ((ImcCALL) expression).args())
+                if (usesOutsideMemory(argument, temporaries))
+                    return true;
+            return false;
+        }
+        if (expression instanceof ImcSEXPR)
+            return true;
+        return false;
+    }
+
+}
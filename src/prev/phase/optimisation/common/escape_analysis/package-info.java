@@ -0,0 +1,4 @@
+/**
+ * Classes for finding addresses within a frame that escape the function.
+ */
+package prev.phase.optimisation.common.escape_analysis;
\ No newline at end of file
@@ -1,7 +1,9 @@
 package prev.phase.optimisation.common.liveness_analysis;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.dataflow.*;
 import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
 import java.util.*;
 
 /**
@@ -14,55 +16,78 @@ public class LivenessAnalysis {
 	}
 	
 	public static void analysis(ControlFlowGraph graph) {
-		// Set liveIn and liveOut for each node to empty sets
+		// Compute uses and definitions of each node. Temporaries are densely
+		// indexed and the analysis is solved over basic blocks using bit
+		// vectors.
+		Indexer<ImcTEMP> temporaries = new Indexer<ImcTEMP>();
+		HashMap<ControlFlowGraphNode, HashSet<ImcTEMP>> nodeUses = new HashMap<ControlFlowGraphNode, HashSet<ImcTEMP>>();
+		HashMap<ControlFlowGraphNode, HashSet<ImcTEMP>> nodeDefines = new HashMap<ControlFlowGraphNode, HashSet<ImcTEMP>>();
 		for (ControlFlowGraphNode node : graph.nodes) {
-			node.clearLiveIn();
-			node.clearLiveOut();
-
 			StmtGenerator.UsesDefinitions usesDefinitions = getUsesDefinitions(node);
 			HashSet<ImcTEMP> uses = new HashSet<ImcTEMP>(usesDefinitions.uses);
 			HashSet<ImcTEMP> defines = new HashSet<ImcTEMP>(usesDefinitions.definitions);
-			if (node.getSuccessors().isEmpty()) {
+			if (node.successors.isEmpty()) {
 				// This is the last node (or last statement) in control-flow
 				// graph. To make sure that nodes with return value get lost, we
 				// make the last node USE return value temporary.
-				uses.add(new ImcTEMP(graph.codeChunk.frame.RV));
+				uses.add(ImcTEMP.of(graph.codeChunk.frame.RV));
 			}
 			node.setUses(uses);
 			node.setDefines(defines);
+			nodeUses.put(node, uses);
+			nodeDefines.put(node, defines);
+			for (ImcTEMP temporary : uses)
+				temporaries.add(temporary);
+			for (ImcTEMP temporary : defines)
+				temporaries.add(temporary);
 		}
 
-		boolean hasAnyChanged;
-		do {
-
-			hasAnyChanged = false;
-			
-			for (ControlFlowGraphNode node : graph.nodes) {
-				
-				HashSet<ImcTEMP> oldLiveIn = node.getLiveIn();
-				HashSet<ImcTEMP> oldLiveOut = node.getLiveOut();
-
-				// Compute new in as in[n] = use[n] U (out[n] - def[n])
-				HashSet<ImcTEMP> newIn = new HashSet<ImcTEMP>();
-				newIn.addAll(oldLiveOut);
-				newIn.removeAll(node.getDefines());
-				newIn.addAll(node.getUses());
+		BitVector[] uses = new BitVector[graph.nodeIndexBound()];
+		BitVector[] defines = new BitVector[graph.nodeIndexBound()];
+		for (ControlFlowGraphNode node : graph.nodes) {
+			uses[node.index()] = temporaries.toBitVector(nodeUses.get(node));
+			defines[node.index()] = temporaries.toBitVector(nodeDefines.get(node));
+		}
 
-				// Compute new out as out[n] = U_{s \in succ[n]} in[s]
-				HashSet<ImcTEMP> newOut = new HashSet<ImcTEMP>();
-				for (ControlFlowGraphNode successor : node.successors) {
-					newOut.addAll(successor.getLiveIn());
-				}
+		BasicBlockGraph blockGraph = ControlFlowGraphBuilder.buildBasicBlocks(graph);
+		DataflowProblem problem = new DataflowProblem(DataflowProblem.Direction.BACKWARD, DataflowProblem.Meet.UNION, temporaries.size()) {
+			// The uses of a block are temporaries used before they are
+			// defined in the block.
+			public BitVector generates(BasicBlock block) {
+				BitVector blockUses = new BitVector(this.size);
+				for (int i = block.nodes.size() - 1; i >= 0; i--)
+					blockUses.transfer(uses[block.nodes.get(i).index()], defines[block.nodes.get(i).index()]);
+				return blockUses;
+			}
 
-				// Store newly computed sets
-				node.setLiveIn(newIn);
-				node.setLiveOut(newOut);
+			public BitVector kills(BasicBlock block) {
+				BitVector blockDefines = new BitVector(this.size);
+				for (ControlFlowGraphNode node : block.nodes)
+					blockDefines.or(defines[node.index()]);
+				return blockDefines;
+			}
+		};
+		DataflowSolver solution = DataflowSolver.solve(blockGraph, problem);
 
-				hasAnyChanged = hasAnyChanged || !newIn.equals(oldLiveIn) || !newOut.equals(oldLiveOut);
+		// The liveIn and liveOut of each node are derived from its block when
+		// they are queried
+		NodeFacts<ImcTEMP> liveness = new NodeFacts<ImcTEMP>(problem.direction, temporaries, solution, blockGraph, uses, defines);
+		for (ControlFlowGraphNode node : graph.nodes)
+			node.setLiveness(liveness);
+	}
 
-			}
+	/** Return temporaries read by `statement`. */
+	public static Vector<ImcTEMP> statementUses(ImcStmt statement) {
+		Vector<ImcTEMP> uses = new Vector<ImcTEMP>();
+		statement.accept(new StmtGenerator(), new StmtGenerator.UsesDefinitions(uses, new Vector<ImcTEMP>()));
+		return uses;
+	}
 
-		} while (hasAnyChanged);
+	/** Return temporaries written by `statement`. */
+	public static Vector<ImcTEMP> statementDefinitions(ImcStmt statement) {
+		Vector<ImcTEMP> definitions = new Vector<ImcTEMP>();
+		statement.accept(new StmtGenerator(), new StmtGenerator.UsesDefinitions(new Vector<ImcTEMP>(), definitions));
+		return definitions;
 	}
 
 	public static StmtGenerator.UsesDefinitions getUsesDefinitions(ControlFlowGraphNode node) {
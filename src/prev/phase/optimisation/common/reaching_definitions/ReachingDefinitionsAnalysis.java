@@ -1,6 +1,7 @@
 package prev.phase.optimisation.common.reaching_definitions;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.dataflow.*;
 import prev.data.imc.code.*;
 import prev.data.imc.code.expr.*;
 import prev.data.imc.code.stmt.*;
@@ -35,15 +36,6 @@ public class ReachingDefinitionsAnalysis {
 		return definitions;
 	}
 
-	private static HashSet<ControlFlowGraphNode> generates(ControlFlowGraphNode node) {
-		ImcStmt statement = node.statement;
-		HashSet<ControlFlowGraphNode> generates = new HashSet<>();
-		if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP) {
-			generates.add(node);
-		}
-		return generates;
-	}
-
 	public static HashSet<ControlFlowGraphNode> kills(ControlFlowGraphNode node, HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions) {
 		HashSet<ControlFlowGraphNode> kills = new HashSet<ControlFlowGraphNode>();
 		ImcStmt statement = node.statement;
@@ -60,43 +52,75 @@ public class ReachingDefinitionsAnalysis {
 
 	private static void runAnalysis(ControlFlowGraph graph) {
 
-		HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions = definitions(graph);
-		HashMap<ControlFlowGraphNode, HashSet<ControlFlowGraphNode>> generates = new HashMap<ControlFlowGraphNode, HashSet<ControlFlowGraphNode>>();
-		HashMap<ControlFlowGraphNode, HashSet<ControlFlowGraphNode>> kills = new HashMap<ControlFlowGraphNode, HashSet<ControlFlowGraphNode>>();
-		
+		// Definitions are densely indexed. The definitions of the same
+		// temporary kill each other.
+		Indexer<ControlFlowGraphNode> definitionNodes = new Indexer<ControlFlowGraphNode>();
+		HashMap<ImcTEMP, Vector<ControlFlowGraphNode>> definitions = new HashMap<ImcTEMP, Vector<ControlFlowGraphNode>>();
 		for (ControlFlowGraphNode node : graph.nodes) {
-			generates.put(node, ReachingDefinitionsAnalysis.generates(node));
-			kills.put(node, ReachingDefinitionsAnalysis.kills(node, definitions));
-			node.setReachingDefinitionsIn(new HashSet<ControlFlowGraphNode>());
-			node.setReachingDefinitionsOut(new HashSet<ControlFlowGraphNode>());
+			ImcTEMP definedTemporary = definedTemporary(node);
+			if (definedTemporary == null)
+				continue;
+			definitionNodes.add(node);
+			if (!definitions.containsKey(definedTemporary))
+				definitions.put(definedTemporary, new Vector<ControlFlowGraphNode>());
+			definitions.get(definedTemporary).add(node);
 		}
+		int size = definitionNodes.size();
 
-		boolean hasChanged = false;
-		do {
-			hasChanged = false;
-
-			for (ControlFlowGraphNode node : graph.nodes) {
-				HashSet<ControlFlowGraphNode> oldIn = node.getReachingDefinitionsIn();
-				HashSet<ControlFlowGraphNode> oldOut = node.getReachingDefinitionsOut();
-
-				HashSet<ControlFlowGraphNode> newIn = new HashSet<ControlFlowGraphNode>();
-				for (ControlFlowGraphNode predecessor : ((HashSet<ControlFlowGraphNode>) node.getPredecessors())) {
-					newIn.addAll(predecessor.getReachingDefinitionsOut());
-				}
+		HashMap<ImcTEMP, BitVector> temporaryDefinitions = new HashMap<ImcTEMP, BitVector>();
+		for (ImcTEMP temporary : definitions.keySet())
+			temporaryDefinitions.put(temporary, definitionNodes.toBitVector(definitions.get(temporary)));
 
-				HashSet<ControlFlowGraphNode> newOut = new HashSet<ControlFlowGraphNode>();
-				newOut.addAll(oldIn);
-				newOut.removeAll(kills.get(node));
-				newOut.addAll(generates.get(node));
+		BitVector[] generates = new BitVector[graph.nodeIndexBound()];
+		BitVector[] kills = new BitVector[graph.nodeIndexBound()];
+		BitVector empty = new BitVector(size);
+		for (ControlFlowGraphNode node : graph.nodes) {
+			ImcTEMP definedTemporary = definedTemporary(node);
+			if (definedTemporary == null) {
+				generates[node.index()] = empty;
+				kills[node.index()] = empty;
+				continue;
+			}
+			BitVector generated = new BitVector(size);
+			generated.set(definitionNodes.indexOf(node));
+			BitVector killed = temporaryDefinitions.get(definedTemporary).copy();
+			killed.andNot(generated);
+			generates[node.index()] = generated;
+			kills[node.index()] = killed;
+		}
 
-				hasChanged = hasChanged || (!newIn.equals(oldIn)) || (!newOut.equals(oldOut));
+		// A block generates the definitions that reach its end and kills all
+		// definitions killed by any of its nodes.
+		BasicBlockGraph blockGraph = ControlFlowGraphBuilder.buildBasicBlocks(graph);
+		DataflowProblem problem = new DataflowProblem(DataflowProblem.Direction.FORWARD, DataflowProblem.Meet.UNION, size) {
+			public BitVector generates(BasicBlock block) {
+				BitVector blockGenerates = new BitVector(this.size);
+				for (ControlFlowGraphNode node : block.nodes)
+					blockGenerates.transfer(generates[node.index()], kills[node.index()]);
+				return blockGenerates;
+			}
 
-				node.setReachingDefinitionsIn(newIn);
-				node.setReachingDefinitionsOut(newOut);
+			public BitVector kills(BasicBlock block) {
+				BitVector blockKills = new BitVector(this.size);
+				for (ControlFlowGraphNode node : block.nodes)
+					blockKills.or(kills[node.index()]);
+				return blockKills;
 			}
+		};
+		DataflowSolver solution = DataflowSolver.solve(blockGraph, problem);
+
+		// The in and out sets of each node are derived from its block when
+		// they are queried
+		NodeFacts<ControlFlowGraphNode> reachingDefinitions = new NodeFacts<ControlFlowGraphNode>(problem.direction, definitionNodes, solution, blockGraph, generates, kills);
+		for (ControlFlowGraphNode node : graph.nodes)
+			node.setReachingDefinitions(reachingDefinitions);
+	}
 
-		} while (hasChanged);
-		
+	private static ImcTEMP definedTemporary(ControlFlowGraphNode node) {
+		ImcStmt statement = node.statement;
+		if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP)
+			return (ImcTEMP) ((ImcMOVE) statement).dst;
+		return null;
 	}
 
 }
@@ -0,0 +1,35 @@
+package prev.phase.optimisation.common.ssa;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.data.imc.code.expr.*;
+import java.util.*;
+
+/**
+ * A φ-node at the start of a basic block. It merges the values of a
+ * temporary flowing in from each predecessor of the block.
+ */
+public class PhiNode {
+
+    public final BasicBlock block;
+    public final ImcTEMP temporary;
+
+    /** The value defined by this φ-node */
+    public SsaValue target;
+
+    /** The value of the temporary flowing in from each predecessor */
+    public final LinkedHashMap<BasicBlock, SsaValue> operands = new LinkedHashMap<BasicBlock, SsaValue>();
+
+    PhiNode(BasicBlock block, ImcTEMP temporary) {
+        this.block = block;
+        this.temporary = temporary;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner operands = new StringJoiner(", ");
+        for (SsaValue operand : this.operands.values())
+            operands.add(operand.toString());
+        return this.target + " ← φ(" + operands + ")";
+    }
+
+}
@@ -0,0 +1,238 @@
+package prev.phase.optimisation.common.ssa;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.phase.optimisation.common.dominators.*;
+import prev.phase.optimisation.common.liveness_analysis.*;
+import prev.data.imc.code.expr.*;
+import prev.common.report.*;
+import java.util.*;
+
+/**
+ * Static single assignment form of a control-flow graph (Cytron et al.).
+ *
+ * The form is kept beside the statements rather than in them: statements
+ * still name the original temporaries, each use and definition of a
+ * temporary is mapped to its SSA value and φ-nodes are attached to basic
+ * blocks. Translating out of SSA form therefore drops the φ-nodes and maps
+ * every value back to its temporary. This is correct as long as the passes
+ * working on the form only substitute values for uses and remove code, so
+ * that no two versions of a temporary are live at the same time.
+ *
+ * φ-nodes are placed on the iterated dominance frontier of the definitions
+ * of a temporary, but only where the temporary is live (pruned SSA form).
+ * Blocks unreachable from the initial block get no values.
+ */
+public class SsaForm {
+
+    public final ControlFlowGraph graph;
+    public final BasicBlockGraph blockGraph;
+
+    /** φ-nodes of each block, by block index */
+    private final Vector<Vector<PhiNode>> phis = new Vector<Vector<PhiNode>>();
+
+    /** The values used and defined by each statement */
+    private final HashMap<ControlFlowGraphNode, HashMap<ImcTEMP, SsaValue>> uses = new HashMap<ControlFlowGraphNode, HashMap<ImcTEMP, SsaValue>>();
+    private final HashMap<ControlFlowGraphNode, HashMap<ImcTEMP, SsaValue>> definitions = new HashMap<ControlFlowGraphNode, HashMap<ImcTEMP, SsaValue>>();
+
+    private final Vector<SsaValue> values = new Vector<SsaValue>();
+    private final HashMap<ImcTEMP, SsaValue> entryValues = new HashMap<ImcTEMP, SsaValue>();
+    private final HashMap<ImcTEMP, Integer> versions = new HashMap<ImcTEMP, Integer>();
+
+    public final DominatorTree dominatorTree;
+
+    private SsaForm(ControlFlowGraph graph, DominatorTree dominatorTree) {
+        this.graph = graph;
+        this.blockGraph = dominatorTree.blockGraph;
+        this.dominatorTree = dominatorTree;
+        for (int i = 0; i < blockGraph.blocks.size(); i++)
+            this.phis.add(new Vector<PhiNode>());
+    }
+
+    /** Construct SSA form of `graph`. The initial node of the graph must not
+     * have any predecessors. */
+    public static SsaForm build(ControlFlowGraph graph) {
+        if (graph.initialNode() != null && !graph.initialNode().predecessors.isEmpty())
+            throw new Report.InternalError();
+
+        graph.analysisManager.require(Analysis.LIVENESS);
+        SsaForm ssa = new SsaForm(graph, graph.analysisManager.dominators());
+        if (ssa.blockGraph.initialBlock() == null)
+            return ssa;
+
+        ssa.placePhiNodes();
+        ssa.rename();
+        return ssa;
+    }
+
+    public Vector<PhiNode> phis(BasicBlock block) {
+        return this.phis.get(block.index);
+    }
+
+    /** Return the values of temporaries used by `node` (the map must not be
+     * modified). */
+    public Map<ImcTEMP, SsaValue> uses(ControlFlowGraphNode node) {
+        HashMap<ImcTEMP, SsaValue> nodeUses = this.uses.get(node);
+        return nodeUses == null ? Collections.<ImcTEMP, SsaValue>emptyMap() : Collections.unmodifiableMap(nodeUses);
+    }
+
+    /** Return the values of temporaries defined by `node` (the map must not
+     * be modified). */
+    public Map<ImcTEMP, SsaValue> definitions(ControlFlowGraphNode node) {
+        HashMap<ImcTEMP, SsaValue> nodeDefinitions = this.definitions.get(node);
+        return nodeDefinitions == null ? Collections.<ImcTEMP, SsaValue>emptyMap() : Collections.unmodifiableMap(nodeDefinitions);
+    }
+
+    /** Return all values, ordered by SsaValue.index. */
+    public List<SsaValue> values() {
+        return Collections.unmodifiableList(this.values);
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return this.dominatorTree.isReachable(block);
+    }
+
+    private SsaValue newValue(ImcTEMP temporary, ControlFlowGraphNode definition, PhiNode phi) {
+        Integer version = this.versions.get(temporary);
+        version = version == null ? 0 : version + 1;
+        this.versions.put(temporary, version);
+        SsaValue value = new SsaValue(temporary, version, this.values.size(), definition, phi);
+        this.values.add(value);
+        return value;
+    }
+
+    private SsaValue entryValue(ImcTEMP temporary) {
+        SsaValue value = this.entryValues.get(temporary);
+        if (value == null) {
+            value = this.newValue(temporary, null, null);
+            this.entryValues.put(temporary, value);
+        }
+        return value;
+    }
+
+    private void placePhiNodes() {
+        // Blocks defining each temporary
+        LinkedHashMap<ImcTEMP, LinkedHashSet<BasicBlock>> definingBlocks = new LinkedHashMap<ImcTEMP, LinkedHashSet<BasicBlock>>();
+        for (BasicBlock block : this.blockGraph.blocks) {
+            if (!this.isReachable(block))
+                continue;
+            for (ControlFlowGraphNode node : block.nodes) {
+                for (ImcTEMP temporary : LivenessAnalysis.statementDefinitions(node.statement)) {
+                    LinkedHashSet<BasicBlock> blocks = definingBlocks.get(temporary);
+                    if (blocks == null) {
+                        blocks = new LinkedHashSet<BasicBlock>();
+                        definingBlocks.put(temporary, blocks);
+                    }
+                    blocks.add(block);
+                }
+            }
+        }
+
+        // A φ-node of a temporary is needed on the iterated dominance
+        // frontier of its definitions, as a φ-node is itself a definition.
+        Vector<Set<ImcTEMP>> liveIn = new Vector<Set<ImcTEMP>>();
+        for (BasicBlock block : this.blockGraph.blocks)
+            liveIn.add(this.isReachable(block) ? block.first().getLiveIn() : Collections.<ImcTEMP>emptySet());
+
+        for (Map.Entry<ImcTEMP, LinkedHashSet<BasicBlock>> entry : definingBlocks.entrySet()) {
+            ImcTEMP temporary = entry.getKey();
+            HashSet<BasicBlock> hasPhi = new HashSet<BasicBlock>();
+            ArrayDeque<BasicBlock> worklist = new ArrayDeque<BasicBlock>(entry.getValue());
+            HashSet<BasicBlock> queued = new HashSet<BasicBlock>(entry.getValue());
+            while (!worklist.isEmpty()) {
+                BasicBlock block = worklist.poll();
+                for (BasicBlock frontier : this.dominatorTree.dominanceFrontier(block)) {
+                    if (hasPhi.contains(frontier) || !liveIn.get(frontier.index).contains(temporary))
+                        continue;
+                    hasPhi.add(frontier);
+                    this.phis.get(frontier.index).add(new PhiNode(frontier, temporary));
+                    if (queued.add(frontier))
+                        worklist.add(frontier);
+                }
+            }
+        }
+    }
+
+    /** Give each definition a new version and map each use to the version
+     * on top of the stack of its temporary, walking the dominator tree. */
+    private void rename() {
+        HashMap<ImcTEMP, ArrayDeque<SsaValue>> stacks = new HashMap<ImcTEMP, ArrayDeque<SsaValue>>();
+
+        // Temporaries pushed in each block, so they can be popped once the
+        // block's subtree of the dominator tree has been renamed. A block is
+        // visited twice: on entry and after all of its children.
+        Vector<Vector<ImcTEMP>> pushed = new Vector<Vector<ImcTEMP>>();
+        for (int i = 0; i < this.blockGraph.blocks.size(); i++)
+            pushed.add(new Vector<ImcTEMP>());
+        boolean[] entered = new boolean[this.blockGraph.blocks.size()];
+
+        ArrayDeque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+        work.push(this.blockGraph.initialBlock());
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (entered[block.index]) {
+                for (ImcTEMP temporary : pushed.get(block.index))
+                    stacks.get(temporary).pop();
+                continue;
+            }
+            entered[block.index] = true;
+
+            for (PhiNode phi : this.phis.get(block.index)) {
+                phi.target = this.newValue(phi.temporary, null, phi);
+                push(stacks, phi.temporary, phi.target);
+                pushed.get(block.index).add(phi.temporary);
+            }
+
+            for (ControlFlowGraphNode node : block.nodes) {
+                HashMap<ImcTEMP, SsaValue> nodeUses = new HashMap<ImcTEMP, SsaValue>();
+                for (ImcTEMP temporary : LivenessAnalysis.statementUses(node.statement)) {
+                    if (nodeUses.containsKey(temporary))
+                        continue;
+                    SsaValue value = this.top(stacks, temporary);
+                    nodeUses.put(temporary, value);
+                    value.uses.add(node);
+                }
+                this.uses.put(node, nodeUses);
+
+                HashMap<ImcTEMP, SsaValue> nodeDefinitions = new HashMap<ImcTEMP, SsaValue>();
+                for (ImcTEMP temporary : LivenessAnalysis.statementDefinitions(node.statement)) {
+                    SsaValue value = this.newValue(temporary, node, null);
+                    nodeDefinitions.put(temporary, value);
+                    push(stacks, temporary, value);
+                    pushed.get(block.index).add(temporary);
+                }
+                this.definitions.put(node, nodeDefinitions);
+            }
+
+            for (BasicBlock successor : block.successors) {
+                for (PhiNode phi : this.phis.get(successor.index)) {
+                    SsaValue value = this.top(stacks, phi.temporary);
+                    phi.operands.put(block, value);
+                    value.phiUses.add(phi);
+                }
+            }
+
+            work.push(block);
+            List<BasicBlock> blockChildren = this.dominatorTree.children(block);
+            for (int i = blockChildren.size() - 1; i >= 0; i--)
+                work.push(blockChildren.get(i));
+        }
+    }
+
+    private static void push(HashMap<ImcTEMP, ArrayDeque<SsaValue>> stacks, ImcTEMP temporary, SsaValue value) {
+        ArrayDeque<SsaValue> stack = stacks.get(temporary);
+        if (stack == null) {
+            stack = new ArrayDeque<SsaValue>();
+            stacks.put(temporary, stack);
+        }
+        stack.push(value);
+    }
+
+    private SsaValue top(HashMap<ImcTEMP, ArrayDeque<SsaValue>> stacks, ImcTEMP temporary) {
+        ArrayDeque<SsaValue> stack = stacks.get(temporary);
+        if (stack == null || stack.isEmpty())
+            return this.entryValue(temporary);
+        return stack.peek();
+    }
+
+}
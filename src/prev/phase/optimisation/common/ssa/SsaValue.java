@@ -0,0 +1,48 @@
+package prev.phase.optimisation.common.ssa;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.data.imc.code.expr.*;
+import java.util.*;
+
+/**
+ * A value of a temporary in static single assignment form. Every value has
+ * exactly one definition: a statement, a φ-node or the entry of the function
+ * (the value a temporary has before it is first defined).
+ */
+public class SsaValue {
+
+    /** The temporary this value is a version of */
+    public final ImcTEMP temporary;
+    public final int version;
+
+    /** Position of this value in SsaForm.values() */
+    public final int index;
+
+    /** The statement defining this value or null */
+    public final ControlFlowGraphNode definition;
+    /** The φ-node defining this value or null */
+    public final PhiNode phi;
+
+    /** Statements and φ-nodes using this value */
+    public final Vector<ControlFlowGraphNode> uses = new Vector<ControlFlowGraphNode>();
+    public final Vector<PhiNode> phiUses = new Vector<PhiNode>();
+
+    SsaValue(ImcTEMP temporary, int version, int index, ControlFlowGraphNode definition, PhiNode phi) {
+        this.temporary = temporary;
+        this.version = version;
+        this.index = index;
+        this.definition = definition;
+        this.phi = phi;
+    }
+
+    /** Return true if this is the value of the temporary at function entry. */
+    public boolean isEntryValue() {
+        return this.definition == null && this.phi == null;
+    }
+
+    @Override
+    public String toString() {
+        return this.temporary + "_" + this.version;
+    }
+
+}
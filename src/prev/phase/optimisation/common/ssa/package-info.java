@@ -0,0 +1,4 @@
+/**
+ * Static single assignment form of the control-flow graph.
+ */
+package prev.phase.optimisation.common.ssa;
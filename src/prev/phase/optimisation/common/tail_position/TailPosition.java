@@ -0,0 +1,72 @@
+package prev.phase.optimisation.common.tail_position;
+
+import java.util.*;
+import prev.data.lin.*;
+import prev.data.mem.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+
+/**
+ * Finds calls in tail position, i.e., calls whose result is only copied
+ * between temporaries on the way to the return value and the exit label, so
+ * nothing remains to be done by the function once the call returns.
+ */
+public class TailPosition {
+
+    /** Check whether the statement at `position` is a call whose result is
+     * returned without any other effect */
+    public static boolean isTailCall(Vector<ImcStmt> statements, int position, LinCodeChunk codeChunk, HashMap<MemLabel, Integer> labelPositions) {
+        ImcStmt statement = statements.get(position);
+        if (!(statement instanceof ImcMOVE))
+            return false;
+        ImcMOVE move = (ImcMOVE) statement;
+        if (!(move.dst instanceof ImcTEMP) || !(move.src instanceof ImcCALL))
+            return false;
+
+        // Follow the only path from the call to the exit label, tracking the
+        // temporaries that hold the result of the call
+        HashSet<MemTemp> results = new HashSet<MemTemp>();
+        results.add(((ImcTEMP) move.dst).temp);
+        HashSet<Integer> visited = new HashSet<Integer>();
+        int i = position + 1;
+        while (i < statements.size() && visited.add(i)) {
+            statement = statements.get(i);
+            if (statement instanceof ImcLABEL) {
+                i++;
+            } else if (statement instanceof ImcJUMP) {
+                MemLabel label = ((ImcJUMP) statement).label;
+                if (label.equals(codeChunk.exitLabel))
+                    return results.contains(codeChunk.frame.RV);
+                Integer target = labelPositions.get(label);
+                if (target == null)
+                    return false;
+                i = target;
+            } else if (statement instanceof ImcESTMT && ((ImcESTMT) statement).expr instanceof ImcCONST) {
+                i++;
+            } else if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP && isPure(((ImcMOVE) statement).src)) {
+                MemTemp destination = ((ImcTEMP) ((ImcMOVE) statement).dst).temp;
+                ImcExpr source = ((ImcMOVE) statement).src;
+                if (source instanceof ImcTEMP && results.contains(((ImcTEMP) source).temp))
+                    results.add(destination);
+                else
+                    results.remove(destination);
+                i++;
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /** Check whether `expression` neither reads memory nor calls functions */
+    private static boolean isPure(ImcExpr expression) {
+        if (expression instanceof ImcTEMP || expression instanceof ImcCONST || expression instanceof ImcNAME)
+            return true;
+        if (expression instanceof ImcUNOP)
+            return isPure(((ImcUNOP) expression).subExpr);
+        if (expression instanceof ImcBINOP)
+            return isPure(((ImcBINOP) expression).fstExpr) && isPure(((ImcBINOP) expression).sndExpr);
+        return false;
+    }
+
+}
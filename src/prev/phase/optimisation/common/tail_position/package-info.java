@@ -0,0 +1,4 @@
+/**
+ * Classes for finding calls in tail position.
+ */
+package prev.phase.optimisation.common.tail_position;
\ No newline at end of file
@@ -6,32 +6,46 @@ import prev.data.imc.code.expr.*;
 import prev.data.imc.code.stmt.*;
 import prev.data.imc.visitor.*;
 
+/**
+ * Replaces every occurrence of an expression in an expression tree. Trees are
+ * copied on write: a subtree without any occurrence is returned as it is, so
+ * the result is the original expression exactly when nothing was replaced.
+ */
 public class ExpressionReplacer implements ImcVisitor<ImcExpr, Replacement> {
 	
 	public ImcExpr visit(ImcBINOP imcBinop, Replacement replacement) {
         if (replacement.replace.equals(imcBinop)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		ImcExpr fstExpr = imcBinop.fstExpr.accept(this, replacement);
 		ImcExpr sndExpr = imcBinop.sndExpr.accept(this, replacement);
-		return new ImcBINOP(imcBinop.oper, fstExpr, sndExpr);
+		if (fstExpr == imcBinop.fstExpr && sndExpr == imcBinop.sndExpr)
+			return imcBinop;
+		return ImcBINOP.of(imcBinop.oper, fstExpr, sndExpr);
 	}
 	
 	public ImcExpr visit(ImcCALL imcCall, Replacement replacement) {
         if (replacement.replace.equals(imcCall)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 
 		Vector<ImcExpr> newArguments = new Vector<ImcExpr>();
+		boolean hasChanged = false;
 		for (ImcExpr arg: imcCall.args()) {
 			ImcExpr newArgument = arg.accept(this, replacement);
 			newArguments.add(newArgument);
+			hasChanged = hasChanged || newArgument != arg;
 		}
-		return new ImcCALL(imcCall.label, imcCall.offs(), newArguments);
+		if (!hasChanged)
+			return imcCall;
+		return ImcCALL.of(imcCall.label, imcCall.offs(), newArguments);
 	}
 
 	public ImcExpr visit(ImcCONST imcConst, Replacement replacement) {
         if (replacement.replace.equals(imcConst)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		return imcConst;
@@ -39,14 +53,18 @@ public class ExpressionReplacer implements ImcVisitor<ImcExpr, Replacement> {
 
 	public ImcExpr visit(ImcMEM imcMem, Replacement replacement) {
         if (replacement.replace.equals(imcMem)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		ImcExpr addr = imcMem.addr.accept(this, replacement);
-		return new ImcMEM(addr);
+		if (addr == imcMem.addr)
+			return imcMem;
+		return ImcMEM.of(addr);
 	}
 
 	public ImcExpr visit(ImcNAME imcName, Replacement replacement) {
         if (replacement.replace.equals(imcName)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		return imcName;
@@ -54,15 +72,19 @@ public class ExpressionReplacer implements ImcVisitor<ImcExpr, Replacement> {
 
 	public ImcExpr visit(ImcSEXPR imcSExpr, Replacement replacement) {
         if (replacement.replace.equals(imcSExpr)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		ImcStmt statement = imcSExpr.stmt.accept(new StatementReplacer(), replacement);
         ImcExpr expression = imcSExpr.expr.accept(this, replacement);
+        if (statement == imcSExpr.stmt && expression == imcSExpr.expr)
+            return imcSExpr;
         return new ImcSEXPR(statement, expression);
 	}
 	
 	public ImcExpr visit(ImcTEMP imcTemp, Replacement replacement) {
         if (replacement.replace.equals(imcTemp)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		return imcTemp;
@@ -70,10 +92,13 @@ public class ExpressionReplacer implements ImcVisitor<ImcExpr, Replacement> {
 	
 	public ImcExpr visit(ImcUNOP imcUnop, Replacement replacement) {
         if (replacement.replace.equals(imcUnop)) {
+            replacement.hasReplaced = true;
             return replacement.replaceWith;
         }
 		ImcExpr subExpr = imcUnop.subExpr.accept(this, replacement);
-		return new ImcUNOP(imcUnop.oper, subExpr);
+		if (subExpr == imcUnop.subExpr)
+			return imcUnop;
+		return ImcUNOP.of(imcUnop.oper, subExpr);
 	}
 
 }
@@ -8,6 +8,9 @@ public class Replacement {
     ImcExpr replaceWith;
     boolean replaceInMoveDestination;
 
+    /** Set when an occurrence of `replace` has been replaced */
+    boolean hasReplaced = false;
+
     public Replacement(ImcExpr replace, ImcExpr replaceWith, boolean replaceInMoveDestination) {
         this.replace = replace;
         this.replaceWith = replaceWith;
@@ -18,4 +21,10 @@ public class Replacement {
         this(replace, replaceWith, false);
     }
 
-}
\ No newline at end of file
+    /** Return true if any tree visited with this replacement has been
+     * rewritten. */
+    public boolean hasReplaced() {
+        return this.hasReplaced;
+    }
+
+}
@@ -8,15 +8,23 @@ import prev.data.imc.code.expr.*;
 import prev.data.imc.code.stmt.*;
 import prev.data.imc.visitor.*;
 
+/**
+ * Replaces every occurrence of an expression in a statement, copying the
+ * statement only if an occurrence has been found (see ExpressionReplacer).
+ */
 public class StatementReplacer implements ImcVisitor<ImcStmt, Replacement> {
 
     public ImcStmt visit(ImcCJUMP imcCJump, Replacement replacement) {
         ImcExpr newCondition = imcCJump.cond.accept(new ExpressionReplacer(), replacement);
+        if (newCondition == imcCJump.cond)
+            return imcCJump;
         return new ImcCJUMP(newCondition, imcCJump.posLabel, imcCJump.negLabel);
     }
 
     public ImcStmt visit(ImcESTMT imcEStmt, Replacement replacement) {
         ImcExpr newExpression = imcEStmt.expr.accept(new ExpressionReplacer(), replacement);
+        if (newExpression == imcEStmt.expr)
+            return imcEStmt;
         return new ImcESTMT(newExpression);
     }
 
@@ -35,15 +43,21 @@ public class StatementReplacer implements ImcVisitor<ImcStmt, Replacement> {
         else
             destination = imcMove.dst;
         ImcExpr newSource = imcMove.src.accept(new ExpressionReplacer(), replacement);
+        if (destination == imcMove.dst && newSource == imcMove.src)
+            return imcMove;
         return new ImcMOVE(destination, newSource);
     }
 
     public ImcStmt visit(ImcSTMTS imcStmts, Replacement replacement) {
         Vector<ImcStmt> newStatements = new Vector<ImcStmt>();
+        boolean hasChanged = false;
         for (ImcStmt statement : imcStmts.stmts()) {
             ImcStmt newStatement = statement.accept(this, replacement);
             newStatements.add(newStatement);
+            hasChanged = hasChanged || newStatement != statement;
         }
+        if (!hasChanged)
+            return imcStmts;
         return new ImcSTMTS(newStatements);
     }
 
@@ -1,6 +1,8 @@
 package prev.phase.optimisation.common_subexpression_elimination;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.available_expressions.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
 import prev.phase.optimisation.common.tree_replacement.*;
@@ -14,6 +16,9 @@ import prev.data.lin.*;
 
 public class CommonSubexpressionElimination {
 
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
     public static boolean run(ControlFlowGraph graph) {
         return runAnalysis(graph);
     }
@@ -25,12 +30,11 @@ public class CommonSubexpressionElimination {
         
         do {
 
-            AvailableExpressionsAnalysis.run(graph);
+            graph.analysisManager.require(Analysis.AVAILABLE_EXPRESSIONS);
 
             hasGraphChanged = false;
 
-            for (int i = graph.nodes.size() - 1; i >= 0; i--) {
-                ControlFlowGraphNode node = graph.nodes.get(i);
+            for (ControlFlowGraphNode node = graph.nodes.last(); node != null; node = node.previous()) {
                 if (!(node.statement instanceof ImcMOVE))
                     continue;
                 
@@ -44,7 +48,7 @@ public class CommonSubexpressionElimination {
                 // a candidate for common subexpression elimination. If MOVE source
                 // expression is already in this node available expression, it might
                 // be possible to rewrite this statement.
-                HashSet<ImcExpr> availableExpressionsIn = node.getAvailableExpressionsIn();
+                Set<ImcExpr> availableExpressionsIn = node.getAvailableExpressionsIn();
 
                 HashSet<ImcExpr> statementSubexpressions = SubexpressionFinder.getAllSubexpressions(moveStatement.src);
                 statementSubexpressions.retainAll(availableExpressionsIn);
@@ -53,10 +57,13 @@ public class CommonSubexpressionElimination {
 
                 for (ImcExpr sourceExpression : statementSubexpressions) {
 
-                    // Find a statement n that defines sourceExpression and there is
-                    // no redefinition of temporaries used by sourceExpression (= sourceTemporaries) and
-                    // there is no other computation of sourceExpression on path
-                    // from n to statement s.
+                    // Find all statements n that compute sourceExpression and
+                    // reach statement s, so that there is no redefinition of
+                    // temporaries used by sourceExpression (= sourceTemporaries)
+                    // and no other computation of sourceExpression on path
+                    // from n to statement s. The expression is available on
+                    // every path to s, so each of those statements must store
+                    // the computed value.
                     HashSet<ImcTEMP> sourceTemporaries = TemporaryFinder.getTemporaries(sourceExpression);
 
                     Queue<ControlFlowGraphNode> frontier = new LinkedList<ControlFlowGraphNode>();
@@ -64,25 +71,25 @@ public class CommonSubexpressionElimination {
                     frontier.add(node);
                     alreadyVisited.add(node);
 
-                    ControlFlowGraphNode foundNode = null;
+                    Vector<ControlFlowGraphNode> foundNodes = new Vector<ControlFlowGraphNode>();
                     while (frontier.size() > 0) {
                         ControlFlowGraphNode currentNode = frontier.remove();
 
                         if (currentNode != node && currentNode.statement instanceof ImcMOVE) {
                             // Check if this node defines any of the temporaries that
                             // appear in sourceTemporaries
-                            HashSet<ImcTEMP> currentNodeDefinitions = currentNode.getDefines();
-                            currentNodeDefinitions.retainAll(sourceTemporaries);
-                            if (currentNodeDefinitions.size() > 0) {
+                            if (!Collections.disjoint(currentNode.getDefines(), sourceTemporaries)) {
+                                foundNodes.clear();
                                 break;
                             }
 
-                            // If this node uses the same common subexpression, this is
-                            // the first found subexpression, stop finding the next one
+                            // If this node uses the same common subexpression,
+                            // this is the nearest computation on this path, don't
+                            // search its predecessors
                             HashSet<ImcExpr> currentSubexpressions = SubexpressionFinder.getAllSubexpressions(((ImcMOVE) currentNode.statement).src);
                             if (currentSubexpressions.contains(sourceExpression)) {
-                                foundNode = currentNode;
-                                break;
+                                foundNodes.add(currentNode);
+                                continue;
                             }
                         }
                         
@@ -94,24 +101,26 @@ public class CommonSubexpressionElimination {
                         }
                     }
 
-                    if (foundNode != null) {
-                        // A node has been found. Perform replacement.
+                    if (foundNodes.size() > 0) {
+                        // Nodes have been found. Perform replacement.
                         Report.debug("Replacing: " + sourceExpression);
 
-                        // Generate statement n: w <- sourceExpression
-                        ImcTEMP temporary = new ImcTEMP(new MemTemp());
-                        ImcStmt initializeStatement = new ImcMOVE( temporary, sourceExpression );
-                        // Insert newly generated statement into control-flow graph
-                        ControlFlowGraphNode newNode = new ControlFlowGraphNode(initializeStatement);
-                        graph.insertBefore(foundNode, newNode);
-                        Report.debug("  * Inserted new statement: " + initializeStatement);
-                        
-                        // Modify found statement n': v <- w
-                        foundNode.statement = foundNode.statement.accept(new StatementReplacer(), new Replacement(sourceExpression, temporary, true));
-                        Report.debug("  * Modified statement after: " + foundNode.statement);
+                        ImcTEMP temporary = ImcTEMP.of(new MemTemp());
+                        for (ControlFlowGraphNode foundNode : foundNodes) {
+                            // Generate statement n: w <- sourceExpression
+                            ImcStmt initializeStatement = new ImcMOVE( temporary, sourceExpression );
+                            // Insert newly generated statement into control-flow graph
+                            ControlFlowGraphNode newNode = new ControlFlowGraphNode(initializeStatement);
+                            graph.insertBefore(foundNode, newNode);
+                            Report.debug("  * Inserted new statement: " + initializeStatement);
+                            
+                            // Modify found statement n': v <- w
+                            graph.setStatement(foundNode, foundNode.statement.accept(new StatementReplacer(), new Replacement(sourceExpression, temporary, true)));
+                            Report.debug("  * Modified statement after: " + foundNode.statement);
+                        }
 
                         // Modify this node statement s': t <- w
-                        node.statement = node.statement.accept(new StatementReplacer(), new Replacement(sourceExpression, temporary, true));
+                        graph.setStatement(node, node.statement.accept(new StatementReplacer(), new Replacement(sourceExpression, temporary, true)));
                         Report.debug("  * Modified statement after: " + node.statement);
 
                         hasGraphChanged = true;
@@ -43,10 +43,10 @@ public class ExpressionConstantFolder implements ImcVisitor<ImcExpr, Object> {
             }
 
             if (result != null)
-                return new ImcCONST(result);
-            return new ImcBINOP(imcBinop.oper, first, second);
+                return ImcCONST.of(result);
+            return ImcBINOP.of(imcBinop.oper, first, second);
         } else {
-            return new ImcBINOP(imcBinop.oper, first, second);
+            return ImcBINOP.of(imcBinop.oper, first, second);
         }
 	}
 	
@@ -55,7 +55,7 @@ public class ExpressionConstantFolder implements ImcVisitor<ImcExpr, Object> {
         for (ImcExpr expression : imcCall.args()) {
             newArguments.add(expression.accept(this, null));
         }
-		return new ImcCALL(imcCall.label, imcCall.offs(), newArguments);
+		return ImcCALL.of(imcCall.label, imcCall.offs(), newArguments);
 	}
 
 	public ImcExpr visit(ImcCONST imcConst, Object argument) {
@@ -63,7 +63,7 @@ public class ExpressionConstantFolder implements ImcVisitor<ImcExpr, Object> {
 	}
 
 	public ImcExpr visit(ImcMEM imcMem, Object argument) {
-        return new ImcMEM(imcMem.addr.accept(this, argument));
+        return ImcMEM.of(imcMem.addr.accept(this, argument));
 	}
 
 	public ImcExpr visit(ImcNAME imcName, Object argument) {
@@ -93,10 +93,10 @@ public class ExpressionConstantFolder implements ImcVisitor<ImcExpr, Object> {
             }
 
             if (result != null)
-                return new ImcCONST(result);
-            return new ImcUNOP(imcUnop.oper, newExpression);
+                return ImcCONST.of(result);
+            return ImcUNOP.of(imcUnop.oper, newExpression);
         } else {
-            return new ImcUNOP(imcUnop.oper, newExpression);
+            return ImcUNOP.of(imcUnop.oper, newExpression);
         }
 	}
 
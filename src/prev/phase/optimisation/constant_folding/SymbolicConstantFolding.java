@@ -3,6 +3,8 @@ package prev.phase.optimisation.constant_folding;
 import java.util.*;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.data.ast.tree.decl.*;
 import prev.data.ast.tree.expr.*;
 import prev.data.ast.visitor.*;
@@ -14,6 +16,10 @@ import prev.phase.imcgen.ImcGen;
 import prev.phase.memory.*;
 
 public class SymbolicConstantFolding extends AstFullVisitor<Object, Object> {
+
+    /** Analyses that remain valid when this pass changes the graph (only
+     * expressions are rewritten, defined temporaries and edges stay the same) */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.of(Analysis.REACHING_DEFINITIONS, Analysis.DOMINATORS, Analysis.LOOPS);
     
     @Override
 	public Object visit(AstFunDecl funDecl, Object arg) {
@@ -32,10 +38,11 @@ public class SymbolicConstantFolding extends AstFullVisitor<Object, Object> {
         for (ControlFlowGraphNode node : graph.nodes) {
             ImcStmt newStatement = node.statement.accept(new StatementConstantFolder(), new SymbolicExpressionConstantFolder());
             
-            // Check if statement has changed
-            hasChanged = hasChanged || !node.statement.toString().equals(newStatement.toString());
-
-            node.statement = newStatement;
+            // The folder returns the statement itself if nothing was folded
+            if (newStatement != node.statement) {
+                graph.setStatement(node, newStatement);
+                hasChanged = true;
+            }
         }
         return hasChanged;
     }
@@ -18,10 +18,10 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
         if (imcBinop.oper == ImcBINOP.Oper.MUL) {
             // 0 * x = 0
             if (first instanceof ImcCONST && ((ImcCONST) first).value == 0L)
-                return new ImcCONST(0);
+                return ImcCONST.of(0);
             // x * 0 = 0
             else if (second instanceof ImcCONST && ((ImcCONST) second).value == 0L)
-                return new ImcCONST(0);
+                return ImcCONST.of(0);
             // 1 * x = x
             else if (first instanceof ImcCONST && ((ImcCONST) first).value == 1L)
                 return second;
@@ -42,10 +42,10 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
         } else if (imcBinop.oper == ImcBINOP.Oper.OR) {
             // true or x = true
 	        if (first instanceof ImcCONST && ((ImcCONST) first).value == 1L)
-                return new ImcCONST(1);
+                return ImcCONST.of(1);
             // x or true = true
             else if (second instanceof ImcCONST && ((ImcCONST) second).value == 1L)
-                return new ImcCONST(1);
+                return ImcCONST.of(1);
             
             // false or x = x
             else if (first instanceof ImcCONST && ((ImcCONST) first).value == 0L)
@@ -56,10 +56,10 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
         } else if (imcBinop.oper == ImcBINOP.Oper.AND) {
             // false and x = false
             if (first instanceof ImcCONST && ((ImcCONST) first).value == 0L)
-                return new ImcCONST(0);
+                return ImcCONST.of(0);
             // x and false = false
             else if (second instanceof ImcCONST && ((ImcCONST) second).value == 0L)
-                return new ImcCONST(0);
+                return ImcCONST.of(0);
             
             // true and x = x
             else if (first instanceof ImcCONST && ((ImcCONST) first).value == 1L)
@@ -69,7 +69,7 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
                 return first;
         }
 
-        return new ImcBINOP(imcBinop.oper, first, second);
+        return ImcBINOP.of(imcBinop.oper, first, second);
 	}
 	
 	public ImcExpr visit(ImcCALL imcCall, Object argument) {
@@ -77,7 +77,7 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
         for (ImcExpr expression : imcCall.args()) {
             newArguments.add(expression.accept(this, null));
         }
-		return new ImcCALL(imcCall.label, imcCall.offs(), newArguments);
+		return ImcCALL.of(imcCall.label, imcCall.offs(), newArguments);
 	}
 
 	public ImcExpr visit(ImcCONST imcConst, Object argument) {
@@ -85,7 +85,7 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
 	}
 
 	public ImcExpr visit(ImcMEM imcMem, Object argument) {
-        return new ImcMEM(imcMem.addr.accept(this, argument));
+        return ImcMEM.of(imcMem.addr.accept(this, argument));
 	}
 
 	public ImcExpr visit(ImcNAME imcName, Object argument) {
@@ -104,7 +104,7 @@ public class SymbolicExpressionConstantFolder implements ImcVisitor<ImcExpr, Obj
 	
 	public ImcExpr visit(ImcUNOP imcUnop, Object argument) {
         ImcExpr newExpression = imcUnop.subExpr.accept(this, argument);
-         return new ImcUNOP(imcUnop.oper, newExpression);
+         return ImcUNOP.of(imcUnop.oper, newExpression);
 	}
 
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package prev.phase.optimisation.constant_propagation;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.reaching_definitions.*;
 import prev.phase.optimisation.dead_code_elimination.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
@@ -15,6 +17,10 @@ import prev.data.lin.*;
 
 public class ConstantPropagation {
 
+    /** Analyses that remain valid when this pass changes the graph (only
+     * uses of temporaries are rewritten) */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.of(Analysis.REACHING_DEFINITIONS, Analysis.DOMINATORS, Analysis.LOOPS);
+
     private static ImcCONST getConstantValue(ImcStmt statement) {
         if (statement instanceof ImcMOVE) {
             ImcMOVE move = (ImcMOVE) statement;
@@ -31,33 +37,32 @@ public class ConstantPropagation {
         // should change to true.
         boolean hasGraphChanged = false;
 
-        LivenessAnalysis.run(graph);
-        ReachingDefinitionsAnalysis.run(graph);
-
-        HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions = ReachingDefinitionsAnalysis.definitions(graph);
+        graph.analysisManager.require(Analysis.LIVENESS, Analysis.REACHING_DEFINITIONS);
 
         for (ControlFlowGraphNode node : graph.nodes) {
-            HashSet<ImcTEMP> uses = node.getUses();
+            Set<ImcTEMP> uses = node.getUses();
 
             for (ImcTEMP usedTemporary : uses) {
-                HashSet<ControlFlowGraphNode> temporaryDefinitions = definitions.get(usedTemporary);
-                if (temporaryDefinitions == null)
+                Set<ControlFlowGraphNode> temporaryDefinitions = graph.defUseIndex.definitions(usedTemporary);
+                if (temporaryDefinitions.isEmpty())
                     continue;
 
                 // We know that t is constant in n if:
                 //   * d reaches n
                 //   * no other definitions of t reach n
 
-                HashSet<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn();
-                reachingDefinitions.retainAll(temporaryDefinitions);
+                HashSet<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn(temporaryDefinitions);
                 boolean canPerformConstantPropagation = reachingDefinitions.size() == 1;
 
                 if (canPerformConstantPropagation) {
                     ImcCONST constantValue = getConstantValue(reachingDefinitions.iterator().next().statement);
                     if (constantValue != null) {
-                        ImcStmt newStatement = node.statement.accept(new StatementReplacer(), new Replacement(usedTemporary, constantValue));
-                        hasGraphChanged = hasGraphChanged || !node.statement.toString().equals(newStatement.toString());
-                        node.statement = newStatement;
+                        Replacement replacement = new Replacement(usedTemporary, constantValue);
+                        ImcStmt newStatement = node.statement.accept(new StatementReplacer(), replacement);
+                        if (replacement.hasReplaced()) {
+                            graph.setStatement(node, newStatement);
+                            hasGraphChanged = true;
+                        }
                     }
                 }
             }
@@ -0,0 +1,208 @@
+package prev.phase.optimisation.control_flow_simplification;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.mem.*;
+import prev.common.report.*;
+import java.util.*;
+
+/**
+ * Control-flow graph simplification: constant conditional jumps are folded,
+ * jumps to jumps are threaded, labels that are never jumped to are removed
+ * and unreachable statements are deleted.
+ */
+public class ControlFlowSimplification {
+
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
+    public static boolean run(ControlFlowGraph graph) {
+        boolean hasGraphChanged = false;
+
+        {
+            boolean hasChanged = foldConstantConditionalJumps(graph);
+            hasGraphChanged = hasGraphChanged || hasChanged;
+        }
+
+        {
+            boolean hasChanged = threadJumps(graph);
+            hasGraphChanged = hasGraphChanged || hasChanged;
+        }
+
+        {
+            boolean hasChanged = removeUnreachableStatements(graph);
+            hasGraphChanged = hasGraphChanged || hasChanged;
+        }
+
+        {
+            boolean hasChanged = removeUnusedLabels(graph);
+            hasGraphChanged = hasGraphChanged || hasChanged;
+        }
+
+        return hasGraphChanged;
+    }
+
+    private static HashMap<MemLabel, ControlFlowGraphNode> labels(ControlFlowGraph graph) {
+        HashMap<MemLabel, ControlFlowGraphNode> labels = new HashMap<MemLabel, ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node.statement instanceof ImcLABEL)
+                labels.put(((ImcLABEL) node.statement).label, node);
+        }
+        return labels;
+    }
+
+    private static boolean foldConstantConditionalJumps(ControlFlowGraph graph) {
+        boolean hasGraphChanged = false;
+        HashMap<MemLabel, ControlFlowGraphNode> labels = labels(graph);
+
+        Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>(graph.nodes);
+        for (ControlFlowGraphNode node : nodes) {
+            if (!(node.statement instanceof ImcCJUMP))
+                continue;
+            ImcCJUMP conditionalJump = (ImcCJUMP) node.statement;
+            if (!(conditionalJump.cond instanceof ImcCONST))
+                continue;
+            if (conditionalJump.posLabel == conditionalJump.negLabel)
+                continue;
+
+            ControlFlowGraphNode positiveNode = labels.get(conditionalJump.posLabel);
+            ControlFlowGraphNode negativeNode = labels.get(conditionalJump.negLabel);
+
+            if (((ImcCONST) conditionalJump.cond).value != 0) {
+                // The condition is always true: CJUMP(1, pos, neg) => JUMP(pos)
+                Report.debug("Replacing statement " + node.statement + " with JUMP " + conditionalJump.posLabel.name);
+                graph.setStatement(node, new ImcJUMP(conditionalJump.posLabel));
+                if (negativeNode != null)
+                    graph.removeEdge(node, negativeNode);
+            } else {
+                // The condition is always false, the negative label directly
+                // follows this statement, so it can simply be removed.
+                Report.debug("Removing statement " + node.statement);
+                if (positiveNode != null)
+                    graph.removeEdge(node, positiveNode);
+                graph.removeNode(node);
+            }
+            hasGraphChanged = true;
+        }
+        return hasGraphChanged;
+    }
+
+    /** Returns the label that a jump to `label` finally jumps to */
+    private static MemLabel finalTarget(MemLabel label, HashMap<MemLabel, ControlFlowGraphNode> labels) {
+        HashSet<MemLabel> alreadyVisited = new HashSet<MemLabel>();
+        while (labels.containsKey(label) && !alreadyVisited.contains(label)) {
+            alreadyVisited.add(label);
+
+            // Skip all labels that directly follow the target label
+            ControlFlowGraphNode node = labels.get(label);
+            while (node.statement instanceof ImcLABEL && node.successors.size() == 1)
+                node = node.successors.iterator().next();
+
+            if (!(node.statement instanceof ImcJUMP))
+                break;
+            label = ((ImcJUMP) node.statement).label;
+        }
+        return label;
+    }
+
+    private static boolean threadJumps(ControlFlowGraph graph) {
+        boolean hasGraphChanged = false;
+        HashMap<MemLabel, ControlFlowGraphNode> labels = labels(graph);
+
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node.statement instanceof ImcJUMP) {
+                ImcJUMP jump = (ImcJUMP) node.statement;
+                MemLabel target = finalTarget(jump.label, labels);
+                if (target == jump.label)
+                    continue;
+
+                Report.debug("Threading jump " + jump.label.name + " to " + target.name);
+                graph.removeEdge(node, labels.get(jump.label));
+                graph.setStatement(node, new ImcJUMP(target));
+                if (labels.containsKey(target))
+                    graph.addEdge(node, labels.get(target));
+                hasGraphChanged = true;
+            } else if (node.statement instanceof ImcCJUMP) {
+                // Only the positive label can be threaded, the negative label
+                // must directly follow the CJUMP statement. A CJUMP can not
+                // jump out of the chunk, because only the JUMP to the exit label
+                // makes the return value live.
+                ImcCJUMP conditionalJump = (ImcCJUMP) node.statement;
+                MemLabel target = finalTarget(conditionalJump.posLabel, labels);
+                if (target == conditionalJump.posLabel || !labels.containsKey(target))
+                    continue;
+
+                Report.debug("Threading jump " + conditionalJump.posLabel.name + " to " + target.name);
+                if (conditionalJump.posLabel != conditionalJump.negLabel)
+                    graph.removeEdge(node, labels.get(conditionalJump.posLabel));
+                graph.setStatement(node, new ImcCJUMP(conditionalJump.cond, target, conditionalJump.negLabel));
+                graph.addEdge(node, labels.get(target));
+                hasGraphChanged = true;
+            }
+        }
+        return hasGraphChanged;
+    }
+
+    private static boolean removeUnreachableStatements(ControlFlowGraph graph) {
+        if (graph.initialNode() == null)
+            return false;
+
+        // Find all statements reachable from the first statement
+        HashSet<ControlFlowGraphNode> reachable = new HashSet<ControlFlowGraphNode>();
+        Stack<ControlFlowGraphNode> stack = new Stack<ControlFlowGraphNode>();
+        stack.push(graph.initialNode());
+        reachable.add(graph.initialNode());
+        while (!stack.isEmpty()) {
+            ControlFlowGraphNode node = stack.pop();
+            for (ControlFlowGraphNode successor : node.successors) {
+                if (!reachable.contains(successor)) {
+                    reachable.add(successor);
+                    stack.push(successor);
+                }
+            }
+        }
+
+        Vector<ControlFlowGraphNode> unreachable = new Vector<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (!reachable.contains(node))
+                unreachable.add(node);
+        }
+
+        for (ControlFlowGraphNode node : unreachable) {
+            Report.debug("Removing unreachable statement " + node.statement);
+            graph.removeNode(node);
+        }
+        return unreachable.size() > 0;
+    }
+
+    private static boolean removeUnusedLabels(ControlFlowGraph graph) {
+        HashSet<MemLabel> usedLabels = new HashSet<MemLabel>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node.statement instanceof ImcJUMP) {
+                usedLabels.add(((ImcJUMP) node.statement).label);
+            } else if (node.statement instanceof ImcCJUMP) {
+                usedLabels.add(((ImcCJUMP) node.statement).posLabel);
+                usedLabels.add(((ImcCJUMP) node.statement).negLabel);
+            }
+        }
+
+        // The first label is the function entry label and must be kept
+        Vector<ControlFlowGraphNode> unusedLabels = new Vector<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node == graph.initialNode() || !(node.statement instanceof ImcLABEL))
+                continue;
+            if (!usedLabels.contains(((ImcLABEL) node.statement).label))
+                unusedLabels.add(node);
+        }
+
+        for (ControlFlowGraphNode node : unusedLabels) {
+            Report.debug("Removing unused label " + node.statement);
+            graph.removeNode(node);
+        }
+        return unusedLabels.size() > 0;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Control-flow graph simplification phase of the IR optimisation.
+ */
+package prev.phase.optimisation.control_flow_simplification;
\ No newline at end of file
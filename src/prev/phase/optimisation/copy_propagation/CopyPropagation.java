@@ -1,6 +1,8 @@
 package prev.phase.optimisation.copy_propagation;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.reaching_definitions.*;
 import prev.phase.optimisation.dead_code_elimination.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
@@ -16,6 +18,10 @@ import prev.common.report.*;
 
 public class CopyPropagation {
 
+    /** Analyses that remain valid when this pass changes the graph (only
+     * uses of temporaries are rewritten) */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.of(Analysis.REACHING_DEFINITIONS, Analysis.DOMINATORS, Analysis.LOOPS);
+
     private static ImcTEMP getCopyTemporary(ImcStmt statement) {
         if (statement instanceof ImcMOVE) {
             ImcMOVE move = (ImcMOVE) statement;
@@ -27,9 +33,8 @@ public class CopyPropagation {
     }
 
     public static boolean isInvalid(ControlFlowGraphNode currentNode, ControlFlowGraphNode finishNode, ImcTEMP temp) {
-        connectionPath.clear();
-        connectionPaths.clear();
-        findAllPaths(currentNode, finishNode);
+        List<Stack<ControlFlowGraphNode>> connectionPaths = new ArrayList<Stack<ControlFlowGraphNode>>();
+        findAllPaths(currentNode, finishNode, new Stack<ControlFlowGraphNode>(), connectionPaths);
         for (Stack<ControlFlowGraphNode> path : connectionPaths) {
             while (!path.isEmpty()) {
                 ControlFlowGraphNode pathNode = path.pop();
@@ -42,9 +47,7 @@ public class CopyPropagation {
         return false;
     }
 
-    static Stack<ControlFlowGraphNode> connectionPath = new Stack<ControlFlowGraphNode>();
-    static List<Stack<ControlFlowGraphNode>> connectionPaths = new ArrayList<Stack<ControlFlowGraphNode>>();
-    static void findAllPaths(ControlFlowGraphNode node, ControlFlowGraphNode targetNode) {
+    static void findAllPaths(ControlFlowGraphNode node, ControlFlowGraphNode targetNode, Stack<ControlFlowGraphNode> connectionPath, List<Stack<ControlFlowGraphNode>> connectionPaths) {
         for (ControlFlowGraphNode nextNode : node.getPredecessors()) {
             if (nextNode.equals(targetNode)) {
                 Stack<ControlFlowGraphNode> temp = new Stack<ControlFlowGraphNode>();
@@ -53,7 +56,7 @@ public class CopyPropagation {
                 connectionPaths.add(temp);
             } else if (!connectionPath.contains(nextNode)) {
                 connectionPath.push(nextNode);
-                findAllPaths(nextNode, targetNode);
+                findAllPaths(nextNode, targetNode, connectionPath, connectionPaths);
                 connectionPath.pop();
             }
         }
@@ -65,10 +68,7 @@ public class CopyPropagation {
         // change to true.
         boolean hasGraphChanged = false;
 
-        ReachingDefinitionsAnalysis.run(graph);
-        LivenessAnalysis.run(graph);
-
-        HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions = ReachingDefinitionsAnalysis.definitions(graph);
+        graph.analysisManager.require(Analysis.REACHING_DEFINITIONS, Analysis.LIVENESS);
 
         // Suppose we have a statement d: t <- z, and another statement n that
         // uses t, such as  n: y <- t + x. We can rewrite n as n: y <- z + x if:
@@ -77,16 +77,15 @@ public class CopyPropagation {
         //   3. there is no definition of z on any path from d to n
 
         for (ControlFlowGraphNode node : graph.nodes) {
-            HashSet<ImcTEMP> uses = node.getUses();
+            Set<ImcTEMP> uses = node.getUses();
 
             for (ImcTEMP usedTemporary : uses) {
-                HashSet<ControlFlowGraphNode> temporaryDefinitions = definitions.get(usedTemporary);
-                if (temporaryDefinitions == null)
+                Set<ControlFlowGraphNode> temporaryDefinitions = graph.defUseIndex.definitions(usedTemporary);
+                if (temporaryDefinitions.isEmpty())
                     continue;
 
                 // Check rules 1 and 2
-                HashSet<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn();
-                reachingDefinitions.retainAll(temporaryDefinitions);
+                HashSet<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn(temporaryDefinitions);
 
                 boolean canPerformCopyPropagation = reachingDefinitions.size() == 1;
                 if (!canPerformCopyPropagation)
@@ -103,9 +102,14 @@ public class CopyPropagation {
                 if (isInvalidPath)
                     continue;
 
-                ImcStmt newStatement = node.statement.accept(new StatementReplacer(), new Replacement(usedTemporary, replacementTemporary));
-                hasGraphChanged = hasGraphChanged || !newStatement.equals(node.statement);
-                node.statement = newStatement;
+                // The address of a store is a use as well
+                boolean replaceInMoveDestination = node.statement instanceof ImcMOVE && ((ImcMOVE) node.statement).dst instanceof ImcMEM;
+                Replacement replacement = new Replacement(usedTemporary, replacementTemporary, replaceInMoveDestination);
+                ImcStmt newStatement = node.statement.accept(new StatementReplacer(), replacement);
+                if (replacement.hasReplaced()) {
+                    graph.setStatement(node, newStatement);
+                    hasGraphChanged = true;
+                }
             }
         }
 
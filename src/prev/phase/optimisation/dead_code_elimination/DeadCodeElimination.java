@@ -1,6 +1,11 @@
 package prev.phase.optimisation.dead_code_elimination;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.alias_analysis.*;
+import prev.phase.optimisation.common.available_expressions.*;
+import prev.phase.optimisation.common.dataflow.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.reaching_definitions.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
 import prev.data.imc.code.*;
@@ -13,8 +18,11 @@ import prev.common.report.*;
 
 public class DeadCodeElimination { 
 
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
     public static boolean run(ControlFlowGraph graph) {
-        LivenessAnalysis.run(graph);
+        graph.analysisManager.require(Analysis.LIVENESS);
         
         // If any copy propagation has been performed, hasGraphChanged should
         // change to true.
@@ -25,7 +33,7 @@ public class DeadCodeElimination {
             if (!statementValidForDeadCodeElimination(node.statement))
                 continue;
             
-            HashSet<ImcTEMP> statementDefines = node.getDefines();
+            Set<ImcTEMP> statementDefines = node.getDefines();
             if (statementDefines.size() != 1)
                 continue;
             
@@ -42,9 +50,104 @@ public class DeadCodeElimination {
             hasGraphChanged = true;
         }
 
+        for (ControlFlowGraphNode node : deadStores(graph)) {
+            Report.debug("Removing store " + node.statement);
+            graph.removeNode(node);
+            hasGraphChanged = true;
+        }
+
         return hasGraphChanged;
     }
 
+    /** Find stores to slots of variables and parameters whose address is
+     * never taken (see {@link AliasAnalysis#privateSlot}) that are not read
+     * before the slot is overwritten or the function returns. A slot is read
+     * by any load that may alias it and by every call, as nested functions
+     * access the variables of the function through the static link. */
+    private static Vector<ControlFlowGraphNode> deadStores(ControlFlowGraph graph) {
+        Vector<ControlFlowGraphNode> deadStores = new Vector<ControlFlowGraphNode>();
+        AliasAnalysis aliasAnalysis = AliasAnalysis.build(graph);
+
+        // Slots are densely indexed and represented by one of their stores
+        Indexer<Long> slots = new Indexer<Long>();
+        Vector<ImcMEM> slotAccesses = new Vector<ImcMEM>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            ImcMEM destination = AliasAnalysis.storedTo(node.statement);
+            Long slot = destination == null ? null : aliasAnalysis.privateSlot(destination);
+            if (slot != null && slots.indexOf(slot) < 0) {
+                slots.add(slot);
+                slotAccesses.add(destination);
+            }
+        }
+        int size = slots.size();
+        if (size == 0)
+            return deadStores;
+
+        // Slots are live (backwards) from the loads that may read them up
+        // to the stores overwriting them
+        BitVector[] generates = new BitVector[graph.nodeIndexBound()];
+        BitVector[] kills = new BitVector[graph.nodeIndexBound()];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            BitVector generated = new BitVector(size);
+            BitVector killed = new BitVector(size);
+            ImcMEM destination = AliasAnalysis.storedTo(node.statement);
+            if (AliasAnalysis.callsFunction(node.statement)) {
+                generated.setAll();
+            } else {
+                HashSet<ImcMEM> loads = MemoryOperationsFinder.getMemoryOperations(node.statement);
+                if (destination != null) {
+                    loads = MemoryOperationsFinder.getMemoryOperations(((ImcMOVE) node.statement).src);
+                    loads.addAll(MemoryOperationsFinder.getMemoryOperations(destination.addr));
+                }
+                for (ImcMEM load : loads) {
+                    for (int i = 0; i < size; i++) {
+                        if (aliasAnalysis.mayAlias(load, slotAccesses.get(i)))
+                            generated.set(i);
+                    }
+                }
+            }
+            Long slot = destination == null ? null : aliasAnalysis.privateSlot(destination);
+            if (slot != null)
+                killed.set(slots.indexOf(slot));
+            generates[node.index()] = generated;
+            kills[node.index()] = killed;
+        }
+
+        BasicBlockGraph blockGraph = ControlFlowGraphBuilder.buildBasicBlocks(graph);
+        DataflowProblem problem = new DataflowProblem(DataflowProblem.Direction.BACKWARD, DataflowProblem.Meet.UNION, size) {
+            public BitVector generates(BasicBlock block) {
+                BitVector blockGenerates = new BitVector(this.size);
+                for (int i = block.nodes.size() - 1; i >= 0; i--) {
+                    ControlFlowGraphNode node = block.nodes.get(i);
+                    blockGenerates.transfer(generates[node.index()], kills[node.index()]);
+                }
+                return blockGenerates;
+            }
+
+            public BitVector kills(BasicBlock block) {
+                BitVector blockKills = new BitVector(this.size);
+                for (ControlFlowGraphNode node : block.nodes)
+                    blockKills.or(kills[node.index()]);
+                return blockKills;
+            }
+        };
+        DataflowSolver solution = DataflowSolver.solve(blockGraph, problem);
+
+        // A store is dead if its slot is not live after it
+        for (BasicBlock block : blockGraph.blocks) {
+            BitVector live = solution.out(block).copy();
+            for (int i = block.nodes.size() - 1; i >= 0; i--) {
+                ControlFlowGraphNode node = block.nodes.get(i);
+                ImcMEM destination = AliasAnalysis.storedTo(node.statement);
+                Long slot = destination == null ? null : aliasAnalysis.privateSlot(destination);
+                if (slot != null && !live.get(slots.indexOf(slot)))
+                    deadStores.add(node);
+                live.transfer(generates[node.index()], kills[node.index()]);
+            }
+        }
+        return deadStores;
+    }
+
     private static boolean statementValidForDeadCodeElimination(ImcStmt statement) {
         return statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP && (((ImcMOVE) statement).src instanceof ImcTEMP || ((ImcMOVE) statement).src instanceof ImcCONST || ((ImcMOVE) statement).src instanceof ImcMEM || ((ImcMOVE) statement).src instanceof ImcBINOP || ((ImcMOVE) statement).src instanceof ImcUNOP);
     }
@@ -0,0 +1,417 @@
+package prev.phase.optimisation.global_value_numbering;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.phase.optimisation.common.dominators.*;
+import prev.phase.optimisation.common.ssa.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.common.report.*;
+import java.util.*;
+
+/**
+ * Global value numbering over the dominator tree (dominator-based value
+ * numbering of Briggs, Cooper and Simpson, on the SSA form).
+ *
+ * Every expression gets a value number from its operator and the value
+ * numbers of its operands, where temporaries are numbered by their SSA
+ * values, so equal numbers mean equal values. Walking the dominator tree, a
+ * BINOP, UNOP or MEM expression whose value is already held by a temporary
+ * computed in a dominating statement is replaced by the oldest such
+ * temporary. Temporaries themselves are never replaced by other temporaries,
+ * as that is left to copy propagation. A statement recomputing the value its
+ * own temporary already holds is removed.
+ *
+ * Loads are also numbered by a version of memory. Every store and call
+ * defines a new version and versions are merged on the iterated dominance
+ * frontier of stores and calls, just like φ-nodes of temporaries, so a load
+ * is only reused if no store or call can come in between. A store makes
+ * the stored value available for loads from the same address.
+ */
+public class GlobalValueNumbering {
+
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
+    private final ControlFlowGraph graph;
+    private final SsaForm ssa;
+    private final DominatorTree dominatorTree;
+
+    /** Value numbers of expressions */
+    private final HashMap<ValueKey, Integer> valueNumbers = new HashMap<ValueKey, Integer>();
+    /** Value numbers of SSA values, by SsaValue.index */
+    private final int[] ssaValueNumbers;
+    /** Constants of value numbers of constants */
+    private final HashMap<Integer, Long> constants = new HashMap<Integer, Long>();
+    private int nextValueNumber = 0;
+
+    /** SSA values computed in dominating statements holding each value
+     * number, in the order of their definitions */
+    private final HashMap<Integer, Vector<SsaValue>> holders = new HashMap<Integer, Vector<SsaValue>>();
+    /** The current value of each temporary in the walk or CLOBBERED */
+    private final HashMap<ImcTEMP, ArrayDeque<Object>> currentValues = new HashMap<ImcTEMP, ArrayDeque<Object>>();
+    private static final Object CLOBBERED = new Object();
+    /** Temporaries redefined on some path into each block without a
+     * φ-node, as they are dead there (the SSA form is pruned) */
+    private final Vector<Vector<ImcTEMP>> clobberedTemporaries = new Vector<Vector<ImcTEMP>>();
+
+    /** The current version of memory in the walk */
+    private int memoryVersion = 0;
+    private int nextMemoryVersion = 1;
+    /** Blocks at which versions of memory are merged */
+    private final HashSet<BasicBlock> memoryMerges;
+
+    /** Statements recomputing the value their temporary already holds */
+    private final Vector<ControlFlowGraphNode> redundantNodes = new Vector<ControlFlowGraphNode>();
+    private boolean hasGraphChanged = false;
+
+    private GlobalValueNumbering(ControlFlowGraph graph, SsaForm ssa) {
+        this.graph = graph;
+        this.ssa = ssa;
+        this.dominatorTree = ssa.dominatorTree;
+        this.ssaValueNumbers = new int[ssa.values().size()];
+        Arrays.fill(this.ssaValueNumbers, -1);
+
+        HashSet<BasicBlock> storingBlocks = new HashSet<BasicBlock>();
+        LinkedHashMap<ImcTEMP, HashSet<BasicBlock>> definingBlocks = new LinkedHashMap<ImcTEMP, HashSet<BasicBlock>>();
+        for (BasicBlock block : ssa.blockGraph.blocks) {
+            this.clobberedTemporaries.add(new Vector<ImcTEMP>());
+            if (!ssa.isReachable(block))
+                continue;
+            for (ControlFlowGraphNode node : block.nodes) {
+                if (writesMemory(node.statement))
+                    storingBlocks.add(block);
+                for (ImcTEMP temporary : ssa.definitions(node).keySet()) {
+                    if (!definingBlocks.containsKey(temporary))
+                        definingBlocks.put(temporary, new HashSet<BasicBlock>());
+                    definingBlocks.get(temporary).add(block);
+                }
+            }
+        }
+        this.memoryMerges = this.dominatorTree.iteratedDominanceFrontier(storingBlocks);
+
+        // A temporary holding a value may be given another value on a path
+        // into a block where it has no φ-node.
+        for (Map.Entry<ImcTEMP, HashSet<BasicBlock>> entry : definingBlocks.entrySet()) {
+            for (BasicBlock block : this.dominatorTree.iteratedDominanceFrontier(entry.getValue())) {
+                boolean hasPhi = false;
+                for (PhiNode phi : ssa.phis(block))
+                    hasPhi = hasPhi || phi.temporary.equals(entry.getKey());
+                if (!hasPhi)
+                    this.clobberedTemporaries.get(block.index).add(entry.getKey());
+            }
+        }
+    }
+
+    public static boolean run(ControlFlowGraph graph) {
+        ControlFlowGraphNode initialNode = graph.initialNode();
+        if (initialNode == null || !initialNode.predecessors.isEmpty())
+            return false;
+
+        GlobalValueNumbering valueNumbering = new GlobalValueNumbering(graph, SsaForm.build(graph));
+        valueNumbering.walk();
+
+        for (ControlFlowGraphNode node : valueNumbering.redundantNodes) {
+            Report.debug("Removing redundant statement " + node.statement);
+            graph.removeNode(node);
+        }
+        return valueNumbering.hasGraphChanged || valueNumbering.redundantNodes.size() > 0;
+    }
+
+    private static boolean writesMemory(ImcStmt statement) {
+        if (statement instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) statement;
+            return move.dst instanceof ImcMEM || move.src instanceof ImcCALL;
+        }
+        return statement instanceof ImcESTMT && ((ImcESTMT) statement).expr instanceof ImcCALL;
+    }
+
+    /** Walk the dominator tree in preorder. Holders and values defined in a
+     * block are only visible in the blocks it dominates. */
+    private void walk() {
+        int blocks = this.ssa.blockGraph.blocks.size();
+        boolean[] entered = new boolean[blocks];
+        int[] memoryVersionBefore = new int[blocks];
+        Vector<Vector<ImcTEMP>> pushedValues = new Vector<Vector<ImcTEMP>>();
+        Vector<Vector<Integer>> addedHolders = new Vector<Vector<Integer>>();
+        for (int i = 0; i < blocks; i++) {
+            pushedValues.add(new Vector<ImcTEMP>());
+            addedHolders.add(new Vector<Integer>());
+        }
+
+        ArrayDeque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+        work.push(this.ssa.blockGraph.initialBlock());
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (entered[block.index]) {
+                for (ImcTEMP temporary : pushedValues.get(block.index))
+                    this.currentValues.get(temporary).pop();
+                for (Integer valueNumber : addedHolders.get(block.index)) {
+                    Vector<SsaValue> valueHolders = this.holders.get(valueNumber);
+                    valueHolders.remove(valueHolders.size() - 1);
+                }
+                this.memoryVersion = memoryVersionBefore[block.index];
+                continue;
+            }
+            entered[block.index] = true;
+
+            memoryVersionBefore[block.index] = this.memoryVersion;
+            if (this.memoryMerges.contains(block))
+                this.memoryVersion = this.nextMemoryVersion++;
+
+            for (ImcTEMP temporary : this.clobberedTemporaries.get(block.index))
+                this.pushValue(temporary, CLOBBERED, pushedValues.get(block.index));
+            for (PhiNode phi : this.ssa.phis(block)) {
+                this.ssaValueNumbers[phi.target.index] = this.nextValueNumber++;
+                this.pushValue(phi.target.temporary, phi.target, pushedValues.get(block.index));
+                this.addHolder(this.ssaValueNumbers[phi.target.index], phi.target, addedHolders.get(block.index));
+            }
+
+            for (ControlFlowGraphNode node : block.nodes)
+                this.visitNode(node, pushedValues.get(block.index), addedHolders.get(block.index));
+
+            work.push(block);
+            List<BasicBlock> children = this.dominatorTree.children(block);
+            for (int i = children.size() - 1; i >= 0; i--)
+                work.push(children.get(i));
+        }
+    }
+
+    private void pushValue(ImcTEMP temporary, Object value, Vector<ImcTEMP> pushed) {
+        ArrayDeque<Object> stack = this.currentValues.get(temporary);
+        if (stack == null) {
+            stack = new ArrayDeque<Object>();
+            this.currentValues.put(temporary, stack);
+        }
+        stack.push(value);
+        pushed.add(temporary);
+    }
+
+    private void addHolder(int valueNumber, SsaValue value, Vector<Integer> added) {
+        if (this.isFrameTemporary(value.temporary))
+            return;
+        Vector<SsaValue> valueHolders = this.holders.get(valueNumber);
+        if (valueHolders == null) {
+            valueHolders = new Vector<SsaValue>();
+            this.holders.put(valueNumber, valueHolders);
+        }
+        valueHolders.add(value);
+        added.add(valueNumber);
+    }
+
+    /** Return true for the frame and return value temporaries, which are
+     * never replaced and never hold other values. */
+    private boolean isFrameTemporary(ImcTEMP temporary) {
+        return temporary.temp == this.graph.codeChunk.frame.FP || temporary.temp == this.graph.codeChunk.frame.RV;
+    }
+
+    /** Return the first temporary computed in a dominating statement that
+     * still holds `valueNumber` or null. Holders are kept in the order of
+     * their definitions, so this is the oldest one (e.g., the source of a
+     * copy rather than its destination). */
+    private ImcTEMP findHolder(int valueNumber) {
+        Vector<SsaValue> valueHolders = this.holders.get(valueNumber);
+        if (valueHolders == null)
+            return null;
+        for (SsaValue holder : valueHolders) {
+            ArrayDeque<Object> stack = this.currentValues.get(holder.temporary);
+            if (stack != null && stack.peek() == holder)
+                return holder.temporary;
+        }
+        return null;
+    }
+
+    /** Return true if the current value of `temporary` is `valueNumber` */
+    private boolean holds(ImcTEMP temporary, int valueNumber) {
+        ArrayDeque<Object> stack = this.currentValues.get(temporary);
+        if (stack == null || !(stack.peek() instanceof SsaValue))
+            return false;
+        return this.ssaValueNumbers[((SsaValue) stack.peek()).index] == valueNumber;
+    }
+
+    private int valueNumber(SsaValue value) {
+        if (this.ssaValueNumbers[value.index] < 0)
+            this.ssaValueNumbers[value.index] = this.nextValueNumber++;
+        return this.ssaValueNumbers[value.index];
+    }
+
+    private int valueNumber(ValueKey key) {
+        Integer valueNumber = this.valueNumbers.get(key);
+        if (valueNumber == null) {
+            valueNumber = this.nextValueNumber++;
+            this.valueNumbers.put(key, valueNumber);
+        }
+        return valueNumber;
+    }
+
+    private int constantValueNumber(long value) {
+        int valueNumber = this.valueNumber(new ValueKey("CONST", value, -1, -1));
+        this.constants.put(valueNumber, value);
+        return valueNumber;
+    }
+
+    private void visitNode(ControlFlowGraphNode node, Vector<ImcTEMP> pushed, Vector<Integer> added) {
+        ImcStmt statement = node.statement;
+        Map<ImcTEMP, SsaValue> uses = this.ssa.uses(node);
+        ImcStmt newStatement = statement;
+
+        if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP) {
+            ImcMOVE move = (ImcMOVE) statement;
+            ImcTEMP destination = (ImcTEMP) move.dst;
+            Numbered source = this.number(move.src, uses);
+            if (source.expression != move.src)
+                newStatement = new ImcMOVE(destination, source.expression);
+
+            // The temporary already holds the value it is about to be given
+            boolean isCopyToItself = source.expression instanceof ImcTEMP && ((ImcTEMP) source.expression).equals(destination);
+            if (isCopyToItself || (!this.isFrameTemporary(destination) && this.holds(destination, source.valueNumber))) {
+                this.redundantNodes.add(node);
+                newStatement = statement;
+            }
+
+            for (SsaValue definition : this.ssa.definitions(node).values()) {
+                this.ssaValueNumbers[definition.index] = source.valueNumber;
+                this.pushValue(definition.temporary, definition, pushed);
+                if (!(source.expression instanceof ImcCONST))
+                    this.addHolder(source.valueNumber, definition, added);
+            }
+        } else if (statement instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) statement;
+            ImcMEM destination = (ImcMEM) move.dst;
+            Numbered address = this.number(destination.addr, uses);
+            Numbered source = this.number(move.src, uses);
+            if (address.expression != destination.addr || source.expression != move.src)
+                newStatement = new ImcMOVE(ImcMEM.of(address.expression), source.expression);
+
+            // A load from the same address right after the store reads the
+            // stored value
+            this.memoryVersion = this.nextMemoryVersion++;
+            this.valueNumbers.put(new ValueKey("MEM", null, address.valueNumber, this.memoryVersion), source.valueNumber);
+        } else if (statement instanceof ImcCJUMP) {
+            ImcCJUMP conditionalJump = (ImcCJUMP) statement;
+            Numbered condition = this.number(conditionalJump.cond, uses);
+            if (condition.expression != conditionalJump.cond)
+                newStatement = new ImcCJUMP(condition.expression, conditionalJump.posLabel, conditionalJump.negLabel);
+        } else if (statement instanceof ImcESTMT) {
+            ImcESTMT expressionStatement = (ImcESTMT) statement;
+            Numbered expression = this.number(expressionStatement.expr, uses);
+            if (expression.expression != expressionStatement.expr)
+                newStatement = new ImcESTMT(expression.expression);
+        } else {
+            // Any other statement defines values that can not be numbered
+            for (SsaValue definition : this.ssa.definitions(node).values()) {
+                this.addHolder(this.valueNumber(definition), definition, added);
+                this.pushValue(definition.temporary, definition, pushed);
+            }
+        }
+
+        if (newStatement != statement) {
+            Report.debug("Replacing statement " + statement + " with " + newStatement);
+            this.graph.setStatement(node, newStatement);
+            this.hasGraphChanged = true;
+        }
+    }
+
+    /** An expression with redundant subexpressions replaced and its value
+     * number. */
+    private static class Numbered {
+        final ImcExpr expression;
+        final int valueNumber;
+
+        Numbered(ImcExpr expression, int valueNumber) {
+            this.expression = expression;
+            this.valueNumber = valueNumber;
+        }
+    }
+
+    /** Number `expression` bottom-up, replacing every subexpression whose
+     * value is already held by a temporary or is a constant. Operands are
+     * evaluated from left to right, so a call changes memory for the loads
+     * to its right. */
+    private Numbered number(ImcExpr expression, Map<ImcTEMP, SsaValue> uses) {
+        if (expression instanceof ImcCONST)
+            return new Numbered(expression, this.constantValueNumber(((ImcCONST) expression).value));
+
+        if (expression instanceof ImcNAME)
+            return new Numbered(expression, this.valueNumber(new ValueKey("NAME", ((ImcNAME) expression).label, -1, -1)));
+
+        if (expression instanceof ImcTEMP) {
+            // A temporary is kept even if an older one holds its value, so
+            // value numbering and copy propagation agree on every use
+            return new Numbered(expression, this.valueNumber(uses.get(expression)));
+        }
+
+        if (expression instanceof ImcBINOP) {
+            ImcBINOP binop = (ImcBINOP) expression;
+            Numbered first = this.number(binop.fstExpr, uses);
+            Numbered second = this.number(binop.sndExpr, uses);
+            int firstNumber = first.valueNumber;
+            int secondNumber = second.valueNumber;
+            if (isCommutative(binop.oper) && firstNumber > secondNumber) {
+                firstNumber = second.valueNumber;
+                secondNumber = first.valueNumber;
+            }
+            int valueNumber = this.valueNumber(new ValueKey("BINOP", binop.oper, firstNumber, secondNumber));
+            ImcExpr newExpression = (first.expression == binop.fstExpr && second.expression == binop.sndExpr) ? binop : ImcBINOP.of(binop.oper, first.expression, second.expression);
+            return this.replaceRedundant(newExpression, valueNumber);
+        }
+
+        if (expression instanceof ImcUNOP) {
+            ImcUNOP unop = (ImcUNOP) expression;
+            Numbered operand = this.number(unop.subExpr, uses);
+            int valueNumber = this.valueNumber(new ValueKey("UNOP", unop.oper, operand.valueNumber, -1));
+            ImcExpr newExpression = operand.expression == unop.subExpr ? unop : ImcUNOP.of(unop.oper, operand.expression);
+            return this.replaceRedundant(newExpression, valueNumber);
+        }
+
+        if (expression instanceof ImcMEM) {
+            ImcMEM mem = (ImcMEM) expression;
+            Numbered address = this.number(mem.addr, uses);
+            int valueNumber = this.valueNumber(new ValueKey("MEM", null, address.valueNumber, this.memoryVersion));
+            ImcExpr newExpression = address.expression == mem.addr ? mem : ImcMEM.of(address.expression);
+            return this.replaceRedundant(newExpression, valueNumber);
+        }
+
+        if (expression instanceof ImcCALL) {
+            ImcCALL call = (ImcCALL) expression;
+            Vector<ImcExpr> arguments = new Vector<ImcExpr>();
+            boolean hasChanged = false;
+            for (ImcExpr argument : call.args()) {
+                Numbered numberedArgument = this.number(argument, uses);
+                arguments.add(numberedArgument.expression);
+                hasChanged = hasChanged || numberedArgument.expression != argument;
+            }
+            // Every call computes a new value and may change memory
+            this.memoryVersion = this.nextMemoryVersion++;
+            ImcExpr newExpression = hasChanged ? ImcCALL.of(call.label, call.offs(), arguments) : call;
+            return new Numbered(newExpression, this.nextValueNumber++);
+        }
+
+        throw new Report.InternalError();
+    }
+
+    private Numbered replaceRedundant(ImcExpr expression, int valueNumber) {
+        Long constant = this.constants.get(valueNumber);
+        if (constant != null)
+            return new Numbered(ImcCONST.of(constant), valueNumber);
+        ImcTEMP holder = this.findHolder(valueNumber);
+        if (holder != null)
+            return new Numbered(holder, valueNumber);
+        return new Numbered(expression, valueNumber);
+    }
+
+    private static boolean isCommutative(ImcBINOP.Oper oper) {
+        switch (oper) {
+            case ADD:
+            case MUL:
+            case AND:
+            case OR:
+            case EQU:
+            case NEQ:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
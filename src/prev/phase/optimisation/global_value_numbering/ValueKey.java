@@ -0,0 +1,47 @@
+package prev.phase.optimisation.global_value_numbering;
+
+import java.util.*;
+
+/**
+ * The hash key of an expression in value numbering: its operator and the
+ * value numbers of its operands. Constants and names are keyed by their
+ * value and label, loads also by the version of memory they read.
+ */
+public class ValueKey {
+
+    public final String operator;
+    public final Object operand;
+    public final int first;
+    public final int second;
+
+    public ValueKey(String operator, Object operand, int first, int second) {
+        this.operator = operator;
+        this.operand = operand;
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof ValueKey))
+            return false;
+        ValueKey valueKey = (ValueKey) o;
+        return this.operator.equals(valueKey.operator)
+            && Objects.equals(this.operand, valueKey.operand)
+            && this.first == valueKey.first
+            && this.second == valueKey.second;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.operator, this.operand, this.first, this.second);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s, %d, %d)", this.operator, this.operand, this.first, this.second);
+    }
+
+}
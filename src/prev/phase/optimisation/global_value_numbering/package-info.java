@@ -0,0 +1,4 @@
+/**
+ * Global value numbering phase of the IR optimisation.
+ */
+package prev.phase.optimisation.global_value_numbering;
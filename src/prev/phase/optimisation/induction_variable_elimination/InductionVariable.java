@@ -38,6 +38,12 @@ public abstract class InductionVariable {
     /** Add a definition to this induction variable. */
     public abstract void addDefinition(ControlFlowGraphNode node);
 
+    /** Check whether this is a basic induction variable, which is only
+     * incremented or decremented by loop-invariant expressions. */
+    public boolean isBasic() {
+        return false;
+    }
+
     @Override
     public String toString() {
         // return String.format("(%s, %s, %s)", this.inductionVariable, this.additionTerm, this.multiplicationTerm);
@@ -62,7 +68,7 @@ class BasicInductionVariable extends InductionVariable {
     private Vector<ControlFlowGraphNode> definitions;
 
     public BasicInductionVariable(ImcTEMP inductionVariable) {
-        super(inductionVariable, new ImcCONST(0), new ImcCONST(1));
+        super(inductionVariable, ImcCONST.of(0), ImcCONST.of(1));
         this.definitions = new Vector<ControlFlowGraphNode>();
     }
 
@@ -78,6 +84,11 @@ class BasicInductionVariable extends InductionVariable {
         this.definitions.add(node);
     }
 
+    @Override
+    public boolean isBasic() {
+        return true;
+    }
+
 }
 
 /**
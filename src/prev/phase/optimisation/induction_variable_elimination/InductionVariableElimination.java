@@ -1,6 +1,8 @@
 package prev.phase.optimisation.induction_variable_elimination;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.reaching_definitions.*;
 import prev.phase.optimisation.common.dominators.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
@@ -13,19 +15,16 @@ import java.util.*;
 
 public class InductionVariableElimination {
 
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
     public static boolean run(ControlFlowGraph graph) {
 
         boolean hasGraphChanged = false;
 
         // The nesting tree contains all loops in the current program. The
         // first level of nestingTree is a full program.
-        LoopNode nestingTree = LoopFinder.findAllLoops(graph);
-
-        // Only add preheaders to all loops ONCE. Exclude the first level of
-        // nesting (the whole program).
-        for (LoopNode loop : nestingTree.subLoops) {
-            LoopHoisting.addPreheader(graph, loop);
-        }
+        LoopNode nestingTree = graph.analysisManager.loops();
 
         // Don't optimize the first level of nesting tree.
         for (LoopNode loop : nestingTree.subLoops) {
@@ -47,7 +46,7 @@ public class InductionVariableElimination {
             return true;
         }
         
-        HashSet<ControlFlowGraphNode> reachingDefinitionsIn = node.getReachingDefinitionsIn();
+        Set<ControlFlowGraphNode> reachingDefinitionsIn = node.getReachingDefinitionsIn();
         // All the definitions of expression that reach node are outside the
         // loop
         boolean allDefinitionsOutsideLoop = true;
@@ -83,9 +82,7 @@ public class InductionVariableElimination {
         return false;
     }
 
-    static Stack<ControlFlowGraphNode> connectionPath = new Stack<ControlFlowGraphNode>();
-    static List<Stack<ControlFlowGraphNode>> connectionPaths = new ArrayList<Stack<ControlFlowGraphNode>>();
-    static void findAllPaths(ControlFlowGraphNode node, ControlFlowGraphNode targetNode) {
+    static void findAllPaths(ControlFlowGraphNode node, ControlFlowGraphNode targetNode, Stack<ControlFlowGraphNode> connectionPath, List<Stack<ControlFlowGraphNode>> connectionPaths) {
         for (ControlFlowGraphNode nextNode : node.getPredecessors()) {
             if (nextNode.equals(targetNode)) {
                 Stack<ControlFlowGraphNode> temp = new Stack<ControlFlowGraphNode>();
@@ -94,13 +91,20 @@ public class InductionVariableElimination {
                 connectionPaths.add(temp);
             } else if (!connectionPath.contains(nextNode)) {
                 connectionPath.push(nextNode);
-                findAllPaths(nextNode, targetNode);
+                findAllPaths(nextNode, targetNode, connectionPath, connectionPaths);
                 connectionPath.pop();
             }
         }
     }
 
-    private static InductionVariable getDerivedInductionVariable(ImcTEMP temporary, HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> allDefinitions, ControlFlowGraph graph, LoopNode loop) {
+    private static InductionVariable getDerivedInductionVariable(ImcTEMP temporary, ControlFlowGraph graph, LoopNode loop) {
+        return getDerivedInductionVariable(temporary, graph, loop, new HashSet<ImcTEMP>());
+    }
+
+    /** The temporaries in `visited` are already being checked further up
+     * the chain of derivations. Temporaries derived from each other in a
+     * cycle are not induction variables. */
+    private static InductionVariable getDerivedInductionVariable(ImcTEMP temporary, ControlFlowGraph graph, LoopNode loop, HashSet<ImcTEMP> visited) {
         // The variable k is a *derived induction variable* in loop L if:
         //   1. There is only one definition of k within L, of the form k <- j *
         //      c or k <- j + d, where j is an induction variable and c, d are
@@ -111,7 +115,10 @@ public class InductionVariableElimination {
         //       * there is no definition of i on any path between the
         //         definition of j and the definition of k
 
-        HashSet<ControlFlowGraphNode> definitions = new HashSet<ControlFlowGraphNode>(allDefinitions.get(temporary));
+        if (!visited.add(temporary))
+            return null;
+
+        HashSet<ControlFlowGraphNode> definitions = new HashSet<ControlFlowGraphNode>(graph.defUseIndex.definitions(temporary));
         HashSet<ControlFlowGraphNode> loopNodes = loop.getLoopNodes();
         definitions.retainAll(loopNodes);
         
@@ -172,14 +179,14 @@ public class InductionVariableElimination {
         // Check if possibleInductionTemporary is a basic induction variable. If
         // yes, then this is a derived induction variable without any other
         // checks.
-        HashSet<ControlFlowGraphNode> basicInductionVariableDefinitions = new HashSet<ControlFlowGraphNode>(allDefinitions.get(possibleInductionTemporary));
+        HashSet<ControlFlowGraphNode> basicInductionVariableDefinitions = new HashSet<ControlFlowGraphNode>(graph.defUseIndex.definitions(possibleInductionTemporary));
         basicInductionVariableDefinitions.retainAll(loopNodes);
         inductionVariable = getBasicInductionVariable(possibleInductionTemporary, basicInductionVariableDefinitions, graph, loop);
         if (inductionVariable == null) {
             // Check if possibleInductionTemporary is a derived induction
             // variable. If it is not, then this is not an derived induction
             // variable.
-            inductionVariable = getDerivedInductionVariable(possibleInductionTemporary, allDefinitions, graph, loop);
+            inductionVariable = getDerivedInductionVariable(possibleInductionTemporary, graph, loop, visited);
             if (inductionVariable == null)
                 return null;
             
@@ -193,10 +200,9 @@ public class InductionVariableElimination {
             
             // Check if the only definition of possibleInductionTemporary that
             // reaches temporary is the one in the loop.
-            HashSet<ControlFlowGraphNode> reachingDefinitionsIn = definitionNode.getReachingDefinitionsIn();
-            // Only leave reaching definitions where possibleInductionTemporary
+            // Only take reaching definitions where possibleInductionTemporary
             // is defined.
-            reachingDefinitionsIn.retainAll(allDefinitions.get(possibleInductionTemporary));
+            HashSet<ControlFlowGraphNode> reachingDefinitionsIn = definitionNode.getReachingDefinitionsIn(graph.defUseIndex.definitions(possibleInductionTemporary));
             // reachingDefinitionsIn - all definitions of j that reach k
 
             int numberOfDefinitions = reachingDefinitionsIn.size();
@@ -218,9 +224,8 @@ public class InductionVariableElimination {
             // inductionVariable.inductionVariable on any path between the
             // definition of possibleInductionTemporary and the definition of
             // temporary.
-            connectionPath.clear();
-            connectionPaths.clear();
-            findAllPaths(definitionNode, reachingDefinitionsIn.iterator().next());
+            List<Stack<ControlFlowGraphNode>> connectionPaths = new ArrayList<Stack<ControlFlowGraphNode>>();
+            findAllPaths(definitionNode, reachingDefinitionsIn.iterator().next(), new Stack<ControlFlowGraphNode>(), connectionPaths);
 
             for (Stack<ControlFlowGraphNode> path : connectionPaths) {
                 while (!path.isEmpty()) {
@@ -243,11 +248,11 @@ public class InductionVariableElimination {
         //   * k: (i, a - d, b) if k <- j - d
         DerivedInductionVariable derivedInductionVariable = null;
         if (binaryOperation.oper == ImcBINOP.Oper.ADD) {
-            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, new ImcBINOP(ImcBINOP.Oper.ADD, inductionVariable.additionTerm, loopInvariantExpression), inductionVariable.multiplicationTerm);
+            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, ImcBINOP.of(ImcBINOP.Oper.ADD, inductionVariable.additionTerm, loopInvariantExpression), inductionVariable.multiplicationTerm);
         } else if (binaryOperation.oper == ImcBINOP.Oper.SUB) {
-            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, new ImcBINOP(ImcBINOP.Oper.SUB, inductionVariable.additionTerm, loopInvariantExpression), inductionVariable.multiplicationTerm);
+            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, ImcBINOP.of(ImcBINOP.Oper.SUB, inductionVariable.additionTerm, loopInvariantExpression), inductionVariable.multiplicationTerm);
         } else if (binaryOperation.oper == ImcBINOP.Oper.MUL) {
-            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, new ImcBINOP(ImcBINOP.Oper.MUL, inductionVariable.additionTerm, loopInvariantExpression), new ImcBINOP(ImcBINOP.Oper.MUL, inductionVariable.multiplicationTerm, loopInvariantExpression));
+            derivedInductionVariable = new DerivedInductionVariable(inductionVariable.inductionVariable, ImcBINOP.of(ImcBINOP.Oper.MUL, inductionVariable.additionTerm, loopInvariantExpression), ImcBINOP.of(ImcBINOP.Oper.MUL, inductionVariable.multiplicationTerm, loopInvariantExpression));
         }
 
         if (derivedInductionVariable != null) {
@@ -258,7 +263,9 @@ public class InductionVariableElimination {
 
     }
 
-    private static ImcExpr getIncrementExpression(ControlFlowGraphNode node, ImcTEMP temporary) {
+    /** Return the expression `temporary` is incremented by in `node` or null
+     * if the node does not increment it. */
+    public static ImcExpr getIncrementExpression(ControlFlowGraphNode node, ImcTEMP temporary) {
         ImcStmt statement = node.statement;
         if (!(statement instanceof ImcMOVE))
             return null;
@@ -283,7 +290,7 @@ public class InductionVariableElimination {
         // If the operation is subtraction, the expression should be
         // -otherExpression. Otherwise, return otherExpression.
         if (binaryOperation.oper == ImcBINOP.Oper.SUB)
-            return new ImcUNOP(ImcUNOP.Oper.NEG, otherExpression);
+            return ImcUNOP.of(ImcUNOP.Oper.NEG, otherExpression);
         
         return otherExpression;
     }
@@ -335,18 +342,16 @@ public class InductionVariableElimination {
         return inductionVariable;
     }
 
-    private static HashMap<ImcTEMP, InductionVariable> detectInductionVariables(ControlFlowGraph graph, LoopNode loop) {
+    /** Find all basic and derived induction variables of `loop`. */
+    public static HashMap<ImcTEMP, InductionVariable> detectInductionVariables(ControlFlowGraph graph, LoopNode loop) {
         HashMap<ImcTEMP, InductionVariable> inductionVariables = new HashMap<ImcTEMP, InductionVariable>();
         HashSet<ControlFlowGraphNode> loopNodes = loop.getLoopNodes();
 
-        LivenessAnalysis.analysis(graph);
-        ReachingDefinitionsAnalysis.run(graph);
+        graph.analysisManager.require(Analysis.LIVENESS, Analysis.REACHING_DEFINITIONS);
         // Find all defined variables and ControlFlowGraphNodes where those
         // variables are defined.
-        HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions = ReachingDefinitionsAnalysis.definitions(graph);
-
-        for (ImcTEMP temporary: definitions.keySet()) {
-            HashSet<ControlFlowGraphNode> temporaryDefinedIn = new HashSet<ControlFlowGraphNode>(definitions.get(temporary));
+        for (ImcTEMP temporary : new Vector<ImcTEMP>(graph.defUseIndex.definedTemporaries())) {
+            HashSet<ControlFlowGraphNode> temporaryDefinedIn = new HashSet<ControlFlowGraphNode>(graph.defUseIndex.definitions(temporary));
             // Remove all definitions outside the current loop
             temporaryDefinedIn.retainAll(loopNodes);
 
@@ -358,7 +363,7 @@ public class InductionVariableElimination {
                 Report.debug(String.format("  * %s is basic induction variable: %s", temporary, basicInductionVariable));
                 inductionVariables.put(temporary, basicInductionVariable);
             } else {
-                InductionVariable derivedInductionVariable = getDerivedInductionVariable(temporary, definitions, graph, loop);
+                InductionVariable derivedInductionVariable = getDerivedInductionVariable(temporary, graph, loop);
                 if (derivedInductionVariable != null) {
                     Report.debug(String.format("  * %s is derived induction variable: %s", temporary, derivedInductionVariable));
                     inductionVariables.put(temporary, derivedInductionVariable);
@@ -397,13 +402,13 @@ public class InductionVariableElimination {
             // The inductionVariable is now a DerivedInductionVariable and the
             // only definition of this variable is multiplication operation.
             // Perform strength reduction here.
-            ImcTEMP newInductionTemporary = new ImcTEMP(new MemTemp());
+            ImcTEMP newInductionTemporary = ImcTEMP.of(new MemTemp());
 
             // After each assignment to variable i, make an assignment j' <- j' + c * b
             Vector<ControlFlowGraphNode> inductionVariableAssignments = basicInductionVariable.getDefinitions();
             for (ControlFlowGraphNode inductionVariableAssignment : inductionVariableAssignments) {
                 ImcExpr incrementExpression = getIncrementExpression(inductionVariableAssignment, inductionVariable.inductionVariable);
-                ImcMOVE move = new ImcMOVE(newInductionTemporary, new ImcBINOP(ImcBINOP.Oper.ADD, newInductionTemporary, new ImcBINOP(ImcBINOP.Oper.MUL, incrementExpression, inductionVariable.multiplicationTerm)));
+                ImcMOVE move = new ImcMOVE(newInductionTemporary, ImcBINOP.of(ImcBINOP.Oper.ADD, newInductionTemporary, ImcBINOP.of(ImcBINOP.Oper.MUL, incrementExpression, inductionVariable.multiplicationTerm)));
                 ControlFlowGraphNode moveNode = new ControlFlowGraphNode(move);
                 graph.insertAfter(inductionVariableAssignment, moveNode);                    
             }
@@ -411,12 +416,12 @@ public class InductionVariableElimination {
             // Replace assignment j <- ... with j <- j' (there is only one)
             Vector<ControlFlowGraphNode> derivedInductionVariableAssignments = inductionVariable.getDefinitions();
             ControlFlowGraphNode derivedInductionVariableAssignment = derivedInductionVariableAssignments.get(0);
-            derivedInductionVariableAssignment.statement = new ImcMOVE(temporary, newInductionTemporary);
+            graph.setStatement(derivedInductionVariableAssignment, new ImcMOVE(temporary, newInductionTemporary));
 
             // Initialize j' in loop preheader to j' <- a + i * b
-            ImcMOVE newInductionTemporaryInitialization = new ImcMOVE(newInductionTemporary, new ImcBINOP(ImcBINOP.Oper.ADD, inductionVariable.additionTerm, new ImcBINOP(ImcBINOP.Oper.MUL, inductionVariable.inductionVariable, inductionVariable.multiplicationTerm)));
+            ImcMOVE newInductionTemporaryInitialization = new ImcMOVE(newInductionTemporary, ImcBINOP.of(ImcBINOP.Oper.ADD, inductionVariable.additionTerm, ImcBINOP.of(ImcBINOP.Oper.MUL, inductionVariable.inductionVariable, inductionVariable.multiplicationTerm)));
             ControlFlowGraphNode initializationNode = new ControlFlowGraphNode(newInductionTemporaryInitialization);
-            loop.preheader.append(initializationNode);
+            LoopHoisting.getPreheader(graph, loop).append(initializationNode);
             hasGraphChanged = true;
             
         }
@@ -0,0 +1,101 @@
+package prev.phase.optimisation.inlining;
+
+import java.util.*;
+import prev.common.report.*;
+import prev.data.mem.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.imc.visitor.*;
+
+/**
+ * Copies statements of an inlined function, replacing all of its temporaries
+ * and labels with new ones, so that several copies of the function can be
+ * placed in the same caller.
+ */
+public class BodyRenamer implements ImcVisitor<ImcExpr, Object> {
+
+    private final HashMap<MemTemp, MemTemp> temporaries = new HashMap<MemTemp, MemTemp>();
+    private final HashMap<MemLabel, MemLabel> labels = new HashMap<MemLabel, MemLabel>();
+
+    /** Labels defined by the inlined function */
+    private final HashSet<MemLabel> localLabels;
+
+    public BodyRenamer(HashSet<MemLabel> localLabels) {
+        this.localLabels = localLabels;
+    }
+
+    /** Use `newTemporary` in place of `temporary` */
+    public void rename(MemTemp temporary, MemTemp newTemporary) {
+        this.temporaries.put(temporary, newTemporary);
+    }
+
+    /** Use `newLabel` in place of `label` */
+    public void rename(MemLabel label, MemLabel newLabel) {
+        this.labels.put(label, newLabel);
+    }
+
+    public ImcStmt copy(ImcStmt statement) {
+        if (statement instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) statement;
+            return new ImcMOVE(move.dst.accept(this, null), move.src.accept(this, null));
+        }
+        if (statement instanceof ImcESTMT)
+            return new ImcESTMT(((ImcESTMT) statement).expr.accept(this, null));
+        if (statement instanceof ImcJUMP)
+            return new ImcJUMP(this.label(((ImcJUMP) statement).label));
+        if (statement instanceof ImcCJUMP) {
+            ImcCJUMP cjump = (ImcCJUMP) statement;
+            return new ImcCJUMP(cjump.cond.accept(this, null), this.label(cjump.posLabel), this.label(cjump.negLabel));
+        }
+        if (statement instanceof ImcLABEL)
+            return new ImcLABEL(this.label(((ImcLABEL) statement).label));
+        // Linearized code contains no other statements
+        throw new Report.InternalError();
+    }
+
+    private MemLabel label(MemLabel label) {
+        MemLabel newLabel = this.labels.get(label);
+        if (newLabel == null && this.localLabels.contains(label)) {
+            newLabel = new MemLabel();
+            this.labels.put(label, newLabel);
+        }
+        return newLabel == null ? label : newLabel;
+    }
+
+    public ImcExpr visit(ImcBINOP imcBinop, Object arg) {
+        return ImcBINOP.of(imcBinop.oper, imcBinop.fstExpr.accept(this, null), imcBinop.sndExpr.accept(this, null));
+    }
+
+    public ImcExpr visit(ImcCALL imcCall, Object arg) {
+        Vector<ImcExpr> newArguments = new Vector<ImcExpr>();
+        for (ImcExpr argument : imcCall.args())
+            newArguments.add(argument.accept(this, null));
+        return ImcCALL.of(imcCall.label, imcCall.offs(), newArguments);
+    }
+
+    public ImcExpr visit(ImcCONST imcConst, Object arg) {
+        return imcConst;
+    }
+
+    public ImcExpr visit(ImcMEM imcMem, Object arg) {
+        return ImcMEM.of(imcMem.addr.accept(this, null));
+    }
+
+    public ImcExpr visit(ImcNAME imcName, Object arg) {
+        return imcName;
+    }
+
+    public ImcExpr visit(ImcTEMP imcTemp, Object arg) {
+        MemTemp temporary = this.temporaries.get(imcTemp.temp);
+        if (temporary == null) {
+            temporary = new MemTemp();
+            this.temporaries.put(imcTemp.temp, temporary);
+        }
+        return ImcTEMP.of(temporary);
+    }
+
+    public ImcExpr visit(ImcUNOP imcUnop, Object arg) {
+        return ImcUNOP.of(imcUnop.oper, imcUnop.subExpr.accept(this, null));
+    }
+
+}
@@ -0,0 +1,77 @@
+package prev.phase.optimisation.inlining;
+
+import java.util.*;
+import prev.data.lin.*;
+import prev.data.mem.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+
+/**
+ * Finds the functions that are part of a cycle of the call graph, i.e., the
+ * functions in strongly connected components of more than one function and
+ * the functions calling themselves (Tarjan's algorithm).
+ */
+public class CallGraphCycles {
+
+    private final HashMap<MemLabel, LinCodeChunk> functions;
+
+    /** Order of discovery of each function and the smallest order of a
+     * function reachable from it that is still on the stack */
+    private final HashMap<MemLabel, Integer> indices = new HashMap<MemLabel, Integer>();
+    private final HashMap<MemLabel, Integer> lowLinks = new HashMap<MemLabel, Integer>();
+
+    /** Functions whose strongly connected component is not complete yet */
+    private final Stack<MemLabel> stack = new Stack<MemLabel>();
+    private final HashSet<MemLabel> onStack = new HashSet<MemLabel>();
+
+    private final HashSet<MemLabel> recursiveFunctions = new HashSet<MemLabel>();
+
+    public CallGraphCycles(HashMap<MemLabel, LinCodeChunk> functions) {
+        this.functions = functions;
+    }
+
+    /** Return the functions of `codeChunks` that are part of a cycle */
+    public HashSet<MemLabel> find(Vector<LinCodeChunk> codeChunks) {
+        for (LinCodeChunk codeChunk : codeChunks)
+            if (!this.indices.containsKey(codeChunk.frame.label))
+                this.visit(codeChunk.frame.label);
+        return this.recursiveFunctions;
+    }
+
+    private void visit(MemLabel label) {
+        int index = this.indices.size();
+        this.indices.put(label, index);
+        this.lowLinks.put(label, index);
+        this.stack.push(label);
+        this.onStack.add(label);
+
+        boolean callsItself = false;
+        for (ImcStmt statement : this.functions.get(label).stmts()) {
+            ImcCALL call = Inlining.call(statement);
+            if (call == null || !this.functions.containsKey(call.label))
+                continue;
+            callsItself = callsItself || call.label.equals(label);
+            if (!this.indices.containsKey(call.label)) {
+                this.visit(call.label);
+                this.lowLinks.put(label, Math.min(this.lowLinks.get(label), this.lowLinks.get(call.label)));
+            } else if (this.onStack.contains(call.label)) {
+                this.lowLinks.put(label, Math.min(this.lowLinks.get(label), this.indices.get(call.label)));
+            }
+        }
+
+        // The function is the first of its component to be discovered, so
+        // the component consists of the functions above it on the stack
+        if (this.lowLinks.get(label) != index)
+            return;
+        Vector<MemLabel> component = new Vector<MemLabel>();
+        MemLabel member;
+        do {
+            member = this.stack.pop();
+            this.onStack.remove(member);
+            component.add(member);
+        } while (member != label);
+        if (component.size() > 1 || callsItself)
+            this.recursiveFunctions.addAll(component);
+    }
+
+}
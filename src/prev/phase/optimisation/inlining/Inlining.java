@@ -0,0 +1,218 @@
+package prev.phase.optimisation.inlining;
+
+import java.util.*;
+import prev.common.report.*;
+import prev.data.lin.*;
+import prev.data.mem.*;
+import prev.data.semtype.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+
+/**
+ * Replaces calls of small functions with copies of their bodies.
+ *
+ * The inlined function keeps its frame in memory: its local variables and
+ * arguments are placed in a block at the bottom of the caller's local
+ * variables and the inlined body addresses them through a new frame pointer
+ * pointing into this block. Arguments, including the static link, are stored
+ * exactly where the call would have stored them, so accesses through static
+ * links of nested functions remain correct. Blocks of different call sites
+ * share the same memory, as the inlined calls are never active at once.
+ */
+public class Inlining {
+
+    /** Functions with at most this many statements are inlined anywhere */
+    public static int INLINE_SIZE = 32;
+
+    /** Functions with at most this many statements are inlined if they are
+     * called inside a loop */
+    public static int LOOP_INLINE_SIZE = 128;
+
+    /** Functions do not grow beyond this many statements because of
+     * inlining */
+    public static int MAX_FUNCTION_SIZE = 1024;
+
+    public static Vector<LinCodeChunk> run(Vector<LinCodeChunk> codeChunks) {
+        HashMap<MemLabel, LinCodeChunk> functions = new HashMap<MemLabel, LinCodeChunk>();
+        for (LinCodeChunk codeChunk : codeChunks)
+            functions.put(codeChunk.frame.label, codeChunk);
+
+        // Functions are processed bottom-up in the call graph, so callees
+        // are inlined together with the calls inlined into them. Functions
+        // within a cycle of the call graph are never inlined.
+        HashSet<MemLabel> recursiveFunctions = new CallGraphCycles(functions).find(codeChunks);
+        HashMap<MemLabel, LinCodeChunk> inlinedFunctions = new HashMap<MemLabel, LinCodeChunk>();
+        HashSet<MemLabel> visitedFunctions = new HashSet<MemLabel>();
+        for (LinCodeChunk codeChunk : codeChunks)
+            visit(codeChunk.frame.label, functions, recursiveFunctions, inlinedFunctions, visitedFunctions);
+
+        Vector<LinCodeChunk> newCodeChunks = new Vector<LinCodeChunk>();
+        for (LinCodeChunk codeChunk : codeChunks)
+            newCodeChunks.add(inlinedFunctions.get(codeChunk.frame.label));
+        return newCodeChunks;
+    }
+
+    private static void visit(MemLabel label, HashMap<MemLabel, LinCodeChunk> functions, HashSet<MemLabel> recursiveFunctions, HashMap<MemLabel, LinCodeChunk> inlinedFunctions, HashSet<MemLabel> visitedFunctions) {
+        if (visitedFunctions.contains(label))
+            return;
+        visitedFunctions.add(label);
+
+        LinCodeChunk codeChunk = functions.get(label);
+        for (ImcStmt statement : codeChunk.stmts()) {
+            ImcCALL call = call(statement);
+            if (call != null && functions.containsKey(call.label))
+                visit(call.label, functions, recursiveFunctions, inlinedFunctions, visitedFunctions);
+        }
+
+        inlinedFunctions.put(label, inline(codeChunk, recursiveFunctions, inlinedFunctions));
+    }
+
+    private static LinCodeChunk inline(LinCodeChunk codeChunk, HashSet<MemLabel> recursiveFunctions, HashMap<MemLabel, LinCodeChunk> inlinedFunctions) {
+        Vector<ImcStmt> statements = codeChunk.stmts();
+        int[] loopDepths = loopDepths(statements);
+
+        Vector<ImcStmt> newStatements = new Vector<ImcStmt>();
+        boolean hasInlined = false;
+        int size = statements.size();
+        long blockSize = 0;
+        long argsSize = codeChunk.frame.argsSize;
+
+        for (int i = 0; i < statements.size(); i++) {
+            ImcStmt statement = statements.get(i);
+            ImcCALL call = call(statement);
+            LinCodeChunk callee = call == null ? null : inlinedFunctions.get(call.label);
+            if (callee == null || !shouldInline(callee, recursiveFunctions, loopDepths[i], size)) {
+                newStatements.add(statement);
+                continue;
+            }
+
+            ImcExpr destination = statement instanceof ImcMOVE ? ((ImcMOVE) statement).dst : null;
+            long argumentsSize = argumentsSize(call);
+            Vector<ImcStmt> body = inlineCall(codeChunk.frame, callee, call, destination, argumentsSize);
+
+            Report.debug(String.format("Inlined %s into %s", callee.frame.label.name, codeChunk.frame.label.name));
+            newStatements.addAll(body);
+            hasInlined = true;
+            size += body.size() - 1;
+            blockSize = Math.max(blockSize, callee.frame.locsSize + argumentsSize);
+            argsSize = Math.max(argsSize, callee.frame.argsSize);
+        }
+
+        if (!hasInlined)
+            return codeChunk;
+
+        // The frame is extended with the block of inlined frames and the
+        // arguments of calls made by inlined functions
+        MemFrame frame = codeChunk.frame;
+        long locsSize = frame.locsSize + blockSize;
+        long pointerSize = new SemPointer(new SemVoid()).size();
+        MemFrame newFrame = new MemFrame(frame.label, frame.depth, locsSize + 2 * pointerSize + argsSize, locsSize, argsSize, frame.FP, frame.RV, frame.privateOffsets);
+        return new LinCodeChunk(newFrame, newStatements, codeChunk.entryLabel, codeChunk.exitLabel);
+    }
+
+    /** Return the statements replacing the call of `callee` */
+    private static Vector<ImcStmt> inlineCall(MemFrame frame, LinCodeChunk callee, ImcCALL call, ImcExpr destination, long argumentsSize) {
+        Vector<ImcStmt> callStatements = new Vector<ImcStmt>();
+
+        HashSet<MemLabel> localLabels = new HashSet<MemLabel>();
+        localLabels.add(callee.exitLabel);
+        for (ImcStmt statement : callee.stmts())
+            if (statement instanceof ImcLABEL)
+                localLabels.add(((ImcLABEL) statement).label);
+
+        BodyRenamer renamer = new BodyRenamer(localLabels);
+        MemTemp framePointer = new MemTemp();
+        MemTemp returnValue = new MemTemp();
+        MemLabel exitLabel = new MemLabel();
+        renamer.rename(callee.frame.FP, framePointer);
+        renamer.rename(callee.frame.RV, returnValue);
+        renamer.rename(callee.exitLabel, exitLabel);
+
+        // The frame pointer of the inlined function points just below the
+        // arguments, which are placed right below the caller's local
+        // variables
+        ImcExpr offset = ImcCONST.of(frame.locsSize + argumentsSize);
+        callStatements.add(new ImcMOVE(ImcTEMP.of(framePointer), ImcBINOP.of(ImcBINOP.Oper.SUB, ImcTEMP.of(frame.FP), offset)));
+
+        Vector<Long> offsets = call.offs();
+        Vector<ImcExpr> arguments = call.args();
+        for (int a = 0; a < arguments.size(); a++) {
+            ImcExpr address = ImcBINOP.of(ImcBINOP.Oper.ADD, ImcTEMP.of(framePointer), ImcCONST.of(offsets.get(a)));
+            callStatements.add(new ImcMOVE(ImcMEM.of(address), arguments.get(a)));
+        }
+
+        for (ImcStmt statement : callee.stmts())
+            callStatements.add(renamer.copy(statement));
+        callStatements.add(new ImcLABEL(exitLabel));
+
+        if (destination != null)
+            callStatements.add(new ImcMOVE(destination, ImcTEMP.of(returnValue)));
+        return callStatements;
+    }
+
+    private static boolean shouldInline(LinCodeChunk callee, HashSet<MemLabel> recursiveFunctions, int loopDepth, int callerSize) {
+        if (MemFrame.LIBRARY_FUNCTIONS.contains(callee.frame.label.name))
+            return false;
+
+        // Calls of recursive functions, including functions calling each
+        // other, are left for tail-recursion elimination and tail calls
+        if (recursiveFunctions.contains(callee.frame.label))
+            return false;
+
+        int calleeSize = callee.stmts().size();
+        if (callerSize + calleeSize > MAX_FUNCTION_SIZE)
+            return false;
+        return calleeSize <= (loopDepth > 0 ? LOOP_INLINE_SIZE : INLINE_SIZE);
+    }
+
+    /** Return the call made by `statement` if the statement is a call whose
+     * result is discarded or moved to a temporary, or null otherwise */
+    static ImcCALL call(ImcStmt statement) {
+        if (statement instanceof ImcESTMT && ((ImcESTMT) statement).expr instanceof ImcCALL)
+            return (ImcCALL) ((ImcESTMT) statement).expr;
+        if (statement instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) statement;
+            if (move.dst instanceof ImcTEMP && move.src instanceof ImcCALL)
+                return (ImcCALL) move.src;
+        }
+        return null;
+    }
+
+    /** Return the size of the block of arguments of `call` */
+    private static long argumentsSize(ImcCALL call) {
+        long pointerSize = new SemPointer(new SemVoid()).size();
+        long size = 0;
+        for (long offset : call.offs())
+            size = Math.max(size, offset + pointerSize);
+        return size;
+    }
+
+    /** Estimate how frequently each statement is executed by the number of
+     * backward jumps around it */
+    private static int[] loopDepths(Vector<ImcStmt> statements) {
+        HashMap<MemLabel, Integer> labelPositions = new HashMap<MemLabel, Integer>();
+        for (int i = 0; i < statements.size(); i++)
+            if (statements.get(i) instanceof ImcLABEL)
+                labelPositions.put(((ImcLABEL) statements.get(i)).label, i);
+
+        int[] loopDepths = new int[statements.size()];
+        for (int i = 0; i < statements.size(); i++) {
+            ImcStmt statement = statements.get(i);
+            HashSet<MemLabel> targets = new HashSet<MemLabel>();
+            if (statement instanceof ImcJUMP)
+                targets.add(((ImcJUMP) statement).label);
+            if (statement instanceof ImcCJUMP) {
+                targets.add(((ImcCJUMP) statement).posLabel);
+                targets.add(((ImcCJUMP) statement).negLabel);
+            }
+            for (MemLabel target : targets) {
+                Integer position = labelPositions.get(target);
+                if (position != null && position <= i)
+                    for (int j = position; j <= i; j++)
+                        loopDepths[j]++;
+            }
+        }
+        return loopDepths;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Function inlining phase of the IR optimisation.
+ */
+package prev.phase.optimisation.inlining;
@@ -0,0 +1,489 @@
+package prev.phase.optimisation.lazy_code_motion;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.alias_analysis.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.phase.optimisation.common.available_expressions.*;
+import prev.phase.optimisation.common.dataflow.*;
+import prev.phase.optimisation.common.tree_replacement.*;
+import prev.common.report.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.mem.*;
+import java.util.*;
+
+/**
+ * Partial redundancy elimination by lazy code motion (Knoop, Rüthing and
+ * Steffen).
+ *
+ * Operators and memory loads over temporaries, constants and names are
+ * computed into a new temporary at the latest points where this removes all
+ * computations that are redundant on some path, without computing any
+ * expression on a path where it was not computed before. An expression is
+ * only moved if its new temporary is used by more than a copy right after
+ * the computation. Calls kill all expressions containing memory loads and
+ * stores kill those containing loads that may alias the store. Every
+ * statement is a node of its own, so new computations are only inserted at
+ * the beginning of nodes. Edges from conditional jumps to labels with
+ * several predecessors are split first, and the splits that remain empty are
+ * undone afterwards.
+ */
+public class LazyCodeMotion {
+
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
+    /** A new node on the edge from a conditional jump to a label */
+    private static class EdgeSplit {
+
+        ControlFlowGraphNode source;
+        ControlFlowGraphNode target;
+
+        /** The new label and the jump from it to the target, or null if
+         * the label falls through to the target */
+        ControlFlowGraphNode labelNode;
+        ControlFlowGraphNode jumpNode;
+
+        /** The jump over the split from the statement that fell through to
+         * the target, or null if there is none */
+        ControlFlowGraphNode jumpOverNode;
+
+        /** Whether any computation has been inserted into this split */
+        boolean isUsed = false;
+
+    }
+
+    public static boolean run(ControlFlowGraph graph) {
+        Vector<EdgeSplit> edgeSplits = splitCriticalEdges(graph);
+        boolean hasGraphChanged = moveComputations(graph, edgeSplits);
+        for (EdgeSplit edgeSplit : edgeSplits) {
+            if (!edgeSplit.isUsed)
+                joinEdge(graph, edgeSplit);
+        }
+        return hasGraphChanged;
+    }
+
+    private static boolean moveComputations(ControlFlowGraph graph, Vector<EdgeSplit> edgeSplits) {
+        // Expressions are densely indexed and, for each temporary (and for
+        // memory loads), the expressions containing it are precomputed.
+        Indexer<ImcExpr> expressions = new Indexer<ImcExpr>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            for (ImcExpr expression : computedExpressions(node.statement))
+                expressions.add(expression);
+        }
+        int size = expressions.size();
+        if (size == 0)
+            return false;
+
+        AliasAnalysis aliasAnalysis = AliasAnalysis.build(graph);
+        HashMap<ImcTEMP, BitVector> containingTemporary = new HashMap<ImcTEMP, BitVector>();
+        BitVector containingMemoryOperations = new BitVector(size);
+        for (int i = 0; i < size; i++) {
+            for (ImcTEMP temporary : TemporaryFinder.getTemporaries(expressions.get(i))) {
+                if (!containingTemporary.containsKey(temporary))
+                    containingTemporary.put(temporary, new BitVector(size));
+                containingTemporary.get(temporary).set(i);
+            }
+            if (MemoryOperationsFinder.getMemoryOperations(expressions.get(i)).size() > 0)
+                containingMemoryOperations.set(i);
+        }
+
+        // A node uses the expressions it computes and kills the expressions
+        // containing the temporary it defines, and the expressions containing
+        // memory loads that a store or a call may change. Nodes from which
+        // the end of the function cannot be reached kill all expressions, so
+        // nothing is computed in advance on a path that never finishes.
+        HashSet<ControlFlowGraphNode> finishing = finishingNodes(graph);
+        int bound = graph.nodeIndexBound();
+        BitVector[] uses = new BitVector[bound];
+        BitVector[] kills = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            uses[node.index()] = expressions.toBitVector(computedExpressions(node.statement));
+            BitVector killed = new BitVector(size);
+            ImcTEMP definedTemporary = definedTemporary(node.statement);
+            if (definedTemporary != null && containingTemporary.containsKey(definedTemporary))
+                killed.or(containingTemporary.get(definedTemporary));
+            if (AliasAnalysis.callsFunction(node.statement) || AliasAnalysis.storedTo(node.statement) != null)
+                killed.or(AvailableExpressionsAnalysis.killedMemoryOperations(node.statement, expressions, containingMemoryOperations, aliasAnalysis));
+            if (!finishing.contains(node))
+                killed.setAll();
+            kills[node.index()] = killed;
+        }
+
+        BasicBlockGraph blockGraph = ControlFlowGraphBuilder.buildBasicBlocks(graph);
+        // 1. Anticipated expressions: computed on every path from the node
+        //    before any of their temporaries is redefined
+        //      in = uses U (out - kills)
+        BitVector[][] anticipated = solve(graph, blockGraph, DataflowProblem.Direction.BACKWARD, DataflowProblem.Meet.INTERSECTION, size, uses, kills);
+
+        // 2. Available expressions, if computed wherever anticipated
+        //      out = (anticipated.in U in) - kills
+        BitVector[] availableGenerates = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            availableGenerates[node.index()] = anticipated[0][node.index()].copy();
+            availableGenerates[node.index()].andNot(kills[node.index()]);
+        }
+        BitVector[][] available = solve(graph, blockGraph, DataflowProblem.Direction.FORWARD, DataflowProblem.Meet.INTERSECTION, size, availableGenerates, kills);
+
+        // The earliest points where expressions could be computed
+        //   earliest = anticipated.in - available.in
+        BitVector[] earliest = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            earliest[node.index()] = anticipated[0][node.index()].copy();
+            earliest[node.index()].andNot(available[0][node.index()]);
+        }
+
+        // 3. Postponable expressions: the computation can be delayed past
+        //    the node, as the node does not use the expression
+        //      out = (earliest U in) - uses
+        BitVector[] postponableGenerates = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            postponableGenerates[node.index()] = earliest[node.index()].copy();
+            postponableGenerates[node.index()].andNot(uses[node.index()]);
+        }
+        BitVector[][] postponable = solve(graph, blockGraph, DataflowProblem.Direction.FORWARD, DataflowProblem.Meet.INTERSECTION, size, postponableGenerates, uses);
+
+        // The latest points where expressions can be computed: either the
+        // node uses the expression or it cannot be postponed into some
+        // successor
+        //   latest = (earliest U postponable.in)
+        //            ^ (uses U not ^{s in succ} (earliest[s] U postponable.in[s]))
+        BitVector[] placeable = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            placeable[node.index()] = earliest[node.index()].copy();
+            placeable[node.index()].or(postponable[0][node.index()]);
+        }
+        BitVector[] latest = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            BitVector postponed = new BitVector(size);
+            postponed.setAll();
+            for (ControlFlowGraphNode successor : node.successors)
+                postponed.and(placeable[successor.index()]);
+            BitVector stops = new BitVector(size);
+            stops.setAll();
+            stops.andNot(postponed);
+            stops.or(uses[node.index()]);
+            latest[node.index()] = placeable[node.index()].copy();
+            latest[node.index()].and(stops);
+        }
+
+        // 4. Used expressions: the value computed at the node is used later
+        //      in = (uses U out) - latest
+        BitVector[] usedGenerates = new BitVector[bound];
+        for (ControlFlowGraphNode node : graph.nodes) {
+            usedGenerates[node.index()] = uses[node.index()].copy();
+            usedGenerates[node.index()].andNot(latest[node.index()]);
+        }
+        BitVector[][] used = solve(graph, blockGraph, DataflowProblem.Direction.BACKWARD, DataflowProblem.Meet.UNION, size, usedGenerates, latest);
+
+        // Insert t <- e at the beginning of nodes where e is latest and used
+        // afterwards, and replace e with t wherever it is not latest or its
+        // value is used afterwards.
+        HashMap<ControlFlowGraphNode, EdgeSplit> splitNodes = new HashMap<ControlFlowGraphNode, EdgeSplit>();
+        for (EdgeSplit edgeSplit : edgeSplits) {
+            splitNodes.put(edgeSplit.labelNode, edgeSplit);
+            if (edgeSplit.jumpNode != null)
+                splitNodes.put(edgeSplit.jumpNode, edgeSplit);
+        }
+
+        Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes)
+            nodes.add(node);
+        BitVector[] insertions = new BitVector[bound];
+        BitVector[] replacements = new BitVector[bound];
+        for (ControlFlowGraphNode node : nodes) {
+            insertions[node.index()] = latest[node.index()].copy();
+            insertions[node.index()].and(used[1][node.index()]);
+
+            replacements[node.index()] = new BitVector(size);
+            replacements[node.index()].setAll();
+            replacements[node.index()].andNot(latest[node.index()]);
+            replacements[node.index()].or(used[1][node.index()]);
+            replacements[node.index()].and(uses[node.index()]);
+        }
+
+        // An expression is left as it is if its value is only ever used by
+        // t' <- t right after it is computed into t, as peephole optimisation
+        // would only fold the copy back into t' <- e.
+        BitVector moved = new BitVector(size);
+        for (ControlFlowGraphNode node : nodes) {
+            BitVector usefulReplacements = replacements[node.index()].copy();
+            int copied = copiedExpression(node.statement, expressions);
+            if (copied >= 0 && insertions[node.index()].get(copied))
+                usefulReplacements.clear(copied);
+            moved.or(usefulReplacements);
+        }
+
+        ImcTEMP[] temporaries = new ImcTEMP[size];
+        boolean hasGraphChanged = false;
+        for (ControlFlowGraphNode node : nodes) {
+            BitVector inserted = insertions[node.index()];
+            inserted.and(moved);
+
+            BitVector replaced = replacements[node.index()];
+            replaced.and(moved);
+
+            // Larger expressions are replaced first, as their subexpressions
+            // disappear with them
+            Vector<Integer> replacedExpressions = new Vector<Integer>();
+            for (int i = replaced.nextSetBit(0); i >= 0; i = replaced.nextSetBit(i + 1))
+                replacedExpressions.add(i);
+            replacedExpressions.sort((first, second) -> expressionSize(expressions.get(second)) - expressionSize(expressions.get(first)));
+            for (int i : replacedExpressions) {
+                Replacement replacement = new Replacement(expressions.get(i), temporary(temporaries, i));
+                ImcStmt statement = replace(node.statement, replacement);
+                if (replacement.hasReplaced()) {
+                    Report.debug(String.format("  * Replacing %s in %s", expressions.get(i), node.statement));
+                    graph.setStatement(node, statement);
+                    hasGraphChanged = true;
+                }
+            }
+
+            for (int i = inserted.nextSetBit(0); i >= 0; i = inserted.nextSetBit(i + 1)) {
+                ImcStmt computation = new ImcMOVE(temporary(temporaries, i), expressions.get(i));
+                Report.debug(String.format("  * Inserting %s before %s", computation, node.statement));
+                insertAtBeginning(graph, node, new ControlFlowGraphNode(computation));
+                if (splitNodes.containsKey(node))
+                    splitNodes.get(node).isUsed = true;
+                hasGraphChanged = true;
+            }
+        }
+
+        return hasGraphChanged;
+    }
+
+    /** Solve a gen/kill problem in which every node is a block of its own,
+     * returning the facts at the entry and at the exit of each node by node
+     * index */
+    private static BitVector[][] solve(ControlFlowGraph graph, BasicBlockGraph blockGraph, DataflowProblem.Direction direction, DataflowProblem.Meet meet, int size, BitVector[] generates, BitVector[] kills) {
+        boolean forward = direction == DataflowProblem.Direction.FORWARD;
+
+        // A block composes the transfer functions of its nodes in the
+        // direction of the problem
+        DataflowProblem problem = new DataflowProblem(direction, meet, size) {
+            public BitVector generates(BasicBlock block) {
+                BitVector blockGenerates = new BitVector(this.size);
+                for (ControlFlowGraphNode node : inDirection(block, forward))
+                    blockGenerates.transfer(generates[node.index()], kills[node.index()]);
+                return blockGenerates;
+            }
+
+            public BitVector kills(BasicBlock block) {
+                BitVector blockKills = new BitVector(this.size);
+                for (ControlFlowGraphNode node : block.nodes)
+                    blockKills.or(kills[node.index()]);
+                return blockKills;
+            }
+        };
+        DataflowSolver solution = DataflowSolver.solve(blockGraph, problem);
+
+        // Derive the facts of each node from its block
+        BitVector[] in = new BitVector[graph.nodeIndexBound()];
+        BitVector[] out = new BitVector[graph.nodeIndexBound()];
+        for (BasicBlock block : blockGraph.blocks) {
+            BitVector facts = (forward ? solution.in(block) : solution.out(block)).copy();
+            for (ControlFlowGraphNode node : inDirection(block, forward)) {
+                (forward ? in : out)[node.index()] = facts.copy();
+                facts.transfer(generates[node.index()], kills[node.index()]);
+                (forward ? out : in)[node.index()] = facts.copy();
+            }
+        }
+        return new BitVector[][] { in, out };
+    }
+
+    private static Vector<ControlFlowGraphNode> inDirection(BasicBlock block, boolean forward) {
+        Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>(block.nodes);
+        if (!forward)
+            Collections.reverse(nodes);
+        return nodes;
+    }
+
+    /** Return the movable expressions computed by `statement`. The
+     * condition of a conditional jump is not included, so it can still be
+     * compared directly, but its subexpressions are. The destination of a
+     * store is not a load, but its address is computed. */
+    private static HashSet<ImcExpr> computedExpressions(ImcStmt statement) {
+        HashSet<ImcExpr> computed = new HashSet<ImcExpr>();
+        HashSet<ImcExpr> subexpressions = new HashSet<ImcExpr>();
+        if (statement instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) statement;
+            subexpressions.addAll(SubexpressionFinder.getAllSubexpressions(move.src));
+            if (move.dst instanceof ImcMEM)
+                subexpressions.addAll(SubexpressionFinder.getAllSubexpressions(((ImcMEM) move.dst).addr));
+        } else if (statement instanceof ImcCJUMP) {
+            subexpressions.addAll(SubexpressionFinder.getAllSubexpressions(statement));
+            subexpressions.remove(((ImcCJUMP) statement).cond);
+        } else if (statement instanceof ImcESTMT) {
+            subexpressions.addAll(SubexpressionFinder.getAllSubexpressions(statement));
+        }
+        for (ImcExpr expression : subexpressions) {
+            if (isMovable(expression))
+                computed.add(expression);
+        }
+        return computed;
+    }
+
+    /** Check whether `expression` is an operator or a memory load whose
+     * value only depends on temporaries, constants, names and memory */
+    private static boolean isMovable(ImcExpr expression) {
+        if (!(expression instanceof ImcBINOP || expression instanceof ImcUNOP || expression instanceof ImcMEM))
+            return false;
+        for (ImcExpr subexpression : SubexpressionFinder.getAllSubexpressions(expression)) {
+            if (subexpression instanceof ImcCALL || subexpression instanceof ImcSEXPR)
+                return false;
+        }
+        return true;
+    }
+
+    /** Replace the computations of an expression in `statement`, but not the
+     * destination of a store */
+    private static ImcStmt replace(ImcStmt statement, Replacement replacement) {
+        if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcMEM) {
+            ImcMOVE move = (ImcMOVE) statement;
+            ImcExpr address = ((ImcMEM) move.dst).addr;
+            ImcExpr newAddress = address.accept(new ExpressionReplacer(), replacement);
+            ImcExpr newSource = move.src.accept(new ExpressionReplacer(), replacement);
+            if (newAddress == address && newSource == move.src)
+                return statement;
+            return new ImcMOVE(newAddress == address ? move.dst : ImcMEM.of(newAddress), newSource);
+        }
+        return statement.accept(new StatementReplacer(), replacement);
+    }
+
+    /** Return the index of `e` if `statement` is t <- e or -1 */
+    private static int copiedExpression(ImcStmt statement, Indexer<ImcExpr> expressions) {
+        ImcTEMP definedTemporary = definedTemporary(statement);
+        if (definedTemporary == null)
+            return -1;
+        return expressions.indexOf(((ImcMOVE) statement).src);
+    }
+
+    private static int expressionSize(ImcExpr expression) {
+        return SubexpressionFinder.getAllSubexpressions(expression).size();
+    }
+
+    private static ImcTEMP definedTemporary(ImcStmt statement) {
+        if (statement instanceof ImcMOVE && ((ImcMOVE) statement).dst instanceof ImcTEMP)
+            return (ImcTEMP) ((ImcMOVE) statement).dst;
+        return null;
+    }
+
+    private static ImcTEMP temporary(ImcTEMP[] temporaries, int index) {
+        if (temporaries[index] == null)
+            temporaries[index] = ImcTEMP.of(new MemTemp());
+        return temporaries[index];
+    }
+
+    /** Return the nodes from which a node without successors (the end of the
+     * function) can be reached */
+    private static HashSet<ControlFlowGraphNode> finishingNodes(ControlFlowGraph graph) {
+        HashSet<ControlFlowGraphNode> finishing = new HashSet<ControlFlowGraphNode>();
+        Queue<ControlFlowGraphNode> frontier = new LinkedList<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node.successors.isEmpty()) {
+                finishing.add(node);
+                frontier.add(node);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            for (ControlFlowGraphNode predecessor : frontier.remove().predecessors) {
+                if (finishing.add(predecessor))
+                    frontier.add(predecessor);
+            }
+        }
+        return finishing;
+    }
+
+    /** Insert `computation` at the beginning of `node`. Labels do nothing, so
+     * a computation at the beginning of a label is inserted after it. */
+    private static void insertAtBeginning(ControlFlowGraph graph, ControlFlowGraphNode node, ControlFlowGraphNode computation) {
+        if (node.statement instanceof ImcLABEL)
+            graph.insertAfter(node, computation);
+        else
+            graph.insertBefore(node, computation);
+    }
+
+    /** Split all edges from conditional jumps to labels with several
+     * predecessors. A split is placed directly before the label, and the
+     * statement that fell through to the label jumps over it instead. If
+     * that statement is a conditional jump, whose negative label must follow
+     * it, or another split, the split is placed at the end of the function
+     * with a jump to the label. */
+    private static Vector<EdgeSplit> splitCriticalEdges(ControlFlowGraph graph) {
+        Vector<ControlFlowGraphNode> conditionalJumps = new Vector<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : graph.nodes) {
+            if (node.statement instanceof ImcCJUMP && node.successors.size() > 1)
+                conditionalJumps.add(node);
+        }
+
+        // Later conditional jumps are split first, so the back edges of
+        // loops are placed before their headers without an extra jump
+        Collections.reverse(conditionalJumps);
+
+        Vector<EdgeSplit> edgeSplits = new Vector<EdgeSplit>();
+        HashSet<ControlFlowGraphNode> splitLabels = new HashSet<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : conditionalJumps) {
+            for (ControlFlowGraphNode target : node.getSuccessors()) {
+                if (target.predecessors.size() <= 1 || !(target.statement instanceof ImcLABEL))
+                    continue;
+
+                ImcCJUMP conditionalJump = (ImcCJUMP) node.statement;
+                MemLabel targetLabel = ((ImcLABEL) target.statement).label;
+                MemLabel splitLabel = new MemLabel();
+                EdgeSplit edgeSplit = new EdgeSplit();
+                edgeSplit.source = node;
+                edgeSplit.target = target;
+                edgeSplit.labelNode = new ControlFlowGraphNode(new ImcLABEL(splitLabel));
+
+                boolean isNegative = conditionalJump.negLabel == targetLabel;
+                ControlFlowGraphNode previous = target.previous();
+                if (isNegative || previous.statement instanceof ImcJUMP) {
+                    graph.insertNodeBefore(target, edgeSplit.labelNode);
+                } else if (!(previous.statement instanceof ImcCJUMP) && !splitLabels.contains(previous)) {
+                    // The previous statement now jumps over the split
+                    edgeSplit.jumpOverNode = new ControlFlowGraphNode(new ImcJUMP(targetLabel));
+                    graph.insertNodeBefore(target, edgeSplit.jumpOverNode);
+                    graph.insertNodeBefore(target, edgeSplit.labelNode);
+                    graph.removeEdge(previous, target);
+                    graph.addEdge(previous, edgeSplit.jumpOverNode);
+                    graph.addEdge(edgeSplit.jumpOverNode, target);
+                } else {
+                    edgeSplit.jumpNode = new ControlFlowGraphNode(new ImcJUMP(targetLabel));
+                    graph.addNode(edgeSplit.labelNode);
+                    graph.addNode(edgeSplit.jumpNode);
+                }
+                graph.removeEdge(node, target);
+                graph.addEdge(node, edgeSplit.labelNode);
+                if (edgeSplit.jumpNode != null) {
+                    graph.addEdge(edgeSplit.labelNode, edgeSplit.jumpNode);
+                    graph.addEdge(edgeSplit.jumpNode, target);
+                } else {
+                    graph.addEdge(edgeSplit.labelNode, target);
+                }
+                if (isNegative)
+                    graph.setStatement(node, new ImcCJUMP(conditionalJump.cond, conditionalJump.posLabel, splitLabel));
+                else
+                    graph.setStatement(node, new ImcCJUMP(conditionalJump.cond, splitLabel, conditionalJump.negLabel));
+                edgeSplits.add(edgeSplit);
+                splitLabels.add(edgeSplit.labelNode);
+            }
+        }
+        return edgeSplits;
+    }
+
+    /** Undo the split of an edge into which nothing has been inserted */
+    private static void joinEdge(ControlFlowGraph graph, EdgeSplit edgeSplit) {
+        ImcCJUMP conditionalJump = (ImcCJUMP) edgeSplit.source.statement;
+        MemLabel splitLabel = ((ImcLABEL) edgeSplit.labelNode.statement).label;
+        MemLabel targetLabel = ((ImcLABEL) edgeSplit.target.statement).label;
+        MemLabel positiveLabel = conditionalJump.posLabel == splitLabel ? targetLabel : conditionalJump.posLabel;
+        MemLabel negativeLabel = conditionalJump.negLabel == splitLabel ? targetLabel : conditionalJump.negLabel;
+        graph.setStatement(edgeSplit.source, new ImcCJUMP(conditionalJump.cond, positiveLabel, negativeLabel));
+        graph.removeNode(edgeSplit.labelNode);
+        if (edgeSplit.jumpNode != null)
+            graph.removeNode(edgeSplit.jumpNode);
+        if (edgeSplit.jumpOverNode != null)
+            graph.removeNode(edgeSplit.jumpOverNode);
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Lazy code motion phase of the IR optimisation.
+ */
+package prev.phase.optimisation.lazy_code_motion;
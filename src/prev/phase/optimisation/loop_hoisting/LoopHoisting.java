@@ -1,6 +1,10 @@
 package prev.phase.optimisation.loop_hoisting;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.alias_analysis.*;
+import prev.phase.optimisation.common.available_expressions.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.dominators.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
 import prev.phase.optimisation.common.reaching_definitions.*;
@@ -14,41 +18,40 @@ import java.util.*;
 
 public class LoopHoisting {
 
-    /** A mapping between loop header and preheader object containing preheader
-     * nodes */
-    private static HashMap<ControlFlowGraphNode, Preheader> preheaders = new HashMap<ControlFlowGraphNode, Preheader>();
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
 
     public static boolean run(ControlFlowGraph graph) {
         boolean hasGraphChanged = false;
 
         // The nesting tree contains all loops in the current program. The
         // first level of nestingTree is a full program.
-        LoopNode nestingTree = LoopFinder.findAllLoops(graph);
-
-        // Only add preheaders to all loops ONCE. Exclude the first level of
-        // nesting (the whole program).
-        for (LoopNode loop : nestingTree.subLoops) {
-            addPreheader(graph, loop);
-        }
+        LoopNode nestingTree = graph.analysisManager.loops();
+        DominatorTree dominatorTree = graph.analysisManager.dominators();
+        AliasAnalysis aliasAnalysis = AliasAnalysis.build(graph);
 
         // Don't optimize the first level of nesting tree.
         for (LoopNode loop : nestingTree.subLoops) {
             // Hoist statements out of the loop
-            hasGraphChanged = hasGraphChanged || hoist(graph, loop);
+            hasGraphChanged = hasGraphChanged || hoist(graph, loop, dominatorTree, aliasAnalysis);
         }
 
         return hasGraphChanged;
     }
 
-    public static void addPreheader(ControlFlowGraph graph, LoopNode loop) {
-        // Visit all subloops first
-        for (LoopNode subLoop : loop.subLoops)
-            addPreheader(graph, subLoop);
-
-        // Then, add preheader to loop
+    /** Return the preheader of the `loop`, constructing it first if needed.
+     * Preheaders are only constructed when something is about to be placed
+     * in them, as empty preheaders are removed by control-flow
+     * simplification. */
+    public static Preheader getPreheader(ControlFlowGraph graph, LoopNode loop) {
         ControlFlowGraphNode header = loop.header;
 
-        Preheader preheader = preheaders.get(header);
+        // A cached preheader may have been removed from the graph in the
+        // meantime (for example, after all of its statements were removed).
+        Preheader preheader = graph.preheaders.get(header);
+        if (preheader != null && !graph.containsNode(preheader.preheaderEnd))
+            preheader = null;
+
         if (preheader == null) {
             // Preheader does not yet exist. Construct a new one.
 
@@ -60,32 +63,85 @@ public class LoopHoisting {
             MemLabel headerLabel = ((ImcLABEL) header.statement).label;
             ControlFlowGraphNode lastPreheaderNode = new ControlFlowGraphNode(new ImcJUMP(headerLabel));
 
-            // graph.insertBefore(header, firstPreheaderNode);
-            for (ControlFlowGraphNode predecessor : header.getPredecessors()) {
-                if (!loop.containsNode(predecessor)) {
-                    graph.insertAfter(predecessor, firstPreheaderNode);
-                }
+            // The preheader is placed directly before the loop header. If the
+            // statement before the header is a part of the loop and falls
+            // through to the header, it must now jump over the preheader.
+            ControlFlowGraphNode previous = header.previous();
+            if (previous != null) {
+                if (loop.containsNode(previous) && previous.successors.contains(header))
+                    jumpOverPreheader(graph, previous, header, headerLabel);
             }
-            
-            // Remove all loop exits from predecessors of first preheader node
-            for (ControlFlowGraphNode predecessor : firstPreheaderNode.getPredecessors()) {
-                if (loop.containsNode(predecessor)) {
-                    // This is a loop exit, remove it
-                    firstPreheaderNode.predecessors.remove(predecessor);
-                    predecessor.successors.remove(firstPreheaderNode);
+
+            graph.insertNodeBefore(header, firstPreheaderNode);
+            graph.insertNodeBefore(header, lastPreheaderNode);
+
+            // All jumps from outside of the loop to the loop header now jump
+            // to the preheader instead.
+            for (ControlFlowGraphNode predecessor : header.getPredecessors()) {
+                if (loop.containsNode(predecessor))
+                    continue;
+                if (predecessor.statement instanceof ImcJUMP) {
+                    graph.setStatement(predecessor, new ImcJUMP(preheaderLabel));
+                } else if (predecessor.statement instanceof ImcCJUMP) {
+                    ImcCJUMP conditionalJump = (ImcCJUMP) predecessor.statement;
+                    MemLabel positiveLabel = conditionalJump.posLabel == headerLabel ? preheaderLabel : conditionalJump.posLabel;
+                    MemLabel negativeLabel = conditionalJump.negLabel == headerLabel ? preheaderLabel : conditionalJump.negLabel;
+                    graph.setStatement(predecessor, new ImcCJUMP(conditionalJump.cond, positiveLabel, negativeLabel));
                 }
+                graph.removeEdge(predecessor, header);
+                graph.addEdge(predecessor, firstPreheaderNode);
             }
-            
-            graph.insertAfter(firstPreheaderNode, lastPreheaderNode);
+
+            graph.addEdge(firstPreheaderNode, lastPreheaderNode);
+            graph.addEdge(lastPreheaderNode, header);
             preheader = new Preheader(graph, firstPreheaderNode, lastPreheaderNode);
         }
 
         loop.setPreheader(preheader);
-        preheaders.put(header, preheader);
+        graph.preheaders.put(header, preheader);
+        return preheader;
+    }
+
+    /** Make the `previous` node (a part of the loop) that falls through to
+     * the loop `header` explicitly jump to it, so a preheader can be inserted
+     * between them. */
+    private static void jumpOverPreheader(ControlFlowGraph graph, ControlFlowGraphNode previous, ControlFlowGraphNode header, MemLabel headerLabel) {
+        ControlFlowGraphNode jumpNode = new ControlFlowGraphNode(new ImcJUMP(headerLabel));
+        if (previous.statement instanceof ImcJUMP) {
+            return;
+        } else if (previous.statement instanceof ImcCJUMP) {
+            // The negative label must directly follow the CJUMP statement, so
+            // a new negative label is created, which then jumps to the header.
+            ImcCJUMP conditionalJump = (ImcCJUMP) previous.statement;
+            if (conditionalJump.negLabel != headerLabel)
+                return;
+            MemLabel negativeLabel = new MemLabel();
+            ControlFlowGraphNode labelNode = new ControlFlowGraphNode(new ImcLABEL(negativeLabel));
+            graph.setStatement(previous, new ImcCJUMP(conditionalJump.cond, conditionalJump.posLabel, negativeLabel));
+            graph.insertNodeBefore(header, labelNode);
+            graph.insertNodeBefore(header, jumpNode);
+            if (conditionalJump.posLabel != headerLabel) {
+                graph.removeEdge(previous, header);
+            }
+            graph.addEdge(previous, labelNode);
+            graph.addEdge(labelNode, jumpNode);
+        } else {
+            graph.insertNodeBefore(header, jumpNode);
+            graph.removeEdge(previous, header);
+            graph.addEdge(previous, jumpNode);
+        }
+        graph.addEdge(jumpNode, header);
     }
 
     /** Whether or not, the statement is loop invariant */
     public static boolean isLoopInvariant(LoopNode loop, ControlFlowGraphNode node, HashSet<ControlFlowGraphNode> alreadyVisited) {
+        return isLoopInvariant(loop, node, alreadyVisited, new HashSet<ControlFlowGraphNode>());
+    }
+
+    /** Whether or not, the statement is loop invariant, where loads are only
+     * invariant if they are among `invariantLoads` (loads from memory that
+     * is not changed within the loop) */
+    private static boolean isLoopInvariant(LoopNode loop, ControlFlowGraphNode node, HashSet<ControlFlowGraphNode> alreadyVisited, HashSet<ControlFlowGraphNode> invariantLoads) {
         // The definition d: t <- a_1 + a_2 is loop invariant within loop L if,
         // for each operand a_i:
         //   1. a_i is a constant or
@@ -110,11 +166,15 @@ public class LoopHoisting {
         } else if (move.src instanceof ImcUNOP) {
             ImcUNOP unaryOperation = (ImcUNOP) move.src;
             subexpressions.add(unaryOperation.subExpr);
+        } else if (move.src instanceof ImcMEM && invariantLoads.contains(node)) {
+            // The load t <- M[a] is treated like an operation on the
+            // temporaries of a
+            subexpressions.addAll(TemporaryFinder.getTemporaries(((ImcMEM) move.src).addr));
         } else {
             return false;
         }
 
-        HashSet<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn();
+        Set<ControlFlowGraphNode> reachingDefinitions = node.getReachingDefinitionsIn();
 
         for (ImcExpr subexpression : subexpressions) {
             // Check for condition 1: is subexpression constant
@@ -144,7 +204,7 @@ public class LoopHoisting {
             // and that definition is loop-invariant
             if (subexpressionDefinitions.size() == 1) {
                 ControlFlowGraphNode onlyReachingDefinition = subexpressionDefinitions.iterator().next();
-                if (!onlyReachingDefinition.statement.equals(node.statement) && isLoopInvariant(loop, onlyReachingDefinition, alreadyVisited)) {
+                if (!onlyReachingDefinition.statement.equals(node.statement) && isLoopInvariant(loop, onlyReachingDefinition, alreadyVisited, invariantLoads)) {
                     continue;
                 }
             }
@@ -160,17 +220,57 @@ public class LoopHoisting {
             && ((ImcMOVE) statement).src instanceof ImcBINOP;
     }
 
-    private static boolean hoist(ControlFlowGraph graph, LoopNode loop) {
+    /** Whether or not, the statement is of form t <- M[a], where a contains
+     * no loads */
+    private static boolean isLoad(ImcStmt statement) {
+        return statement instanceof ImcMOVE
+            && ((ImcMOVE) statement).dst instanceof ImcTEMP
+            && ((ImcMOVE) statement).src instanceof ImcMEM
+            && MemoryOperationsFinder.getMemoryOperations(((ImcMEM) ((ImcMOVE) statement).src).addr).isEmpty();
+    }
+
+    /** Find the loads in `loop` that read memory not changed within the loop:
+     * the loop calls no functions and none of its stores may alias the load.
+     * As a load is moved to the preheader, it must also be executed whenever
+     * the loop is entered, i.e., it must dominate all `loopExits`. */
+    private static HashSet<ControlFlowGraphNode> invariantLoads(LoopNode loop, HashSet<ControlFlowGraphNode> loopExits, DominatorTree dominatorTree, AliasAnalysis aliasAnalysis) {
+        HashSet<ControlFlowGraphNode> invariantLoads = new HashSet<ControlFlowGraphNode>();
+        Vector<ImcMEM> stores = new Vector<ImcMEM>();
+        for (ControlFlowGraphNode node : loop.getAllNodes()) {
+            if (AliasAnalysis.callsFunction(node.statement))
+                return invariantLoads;
+            ImcMEM destination = AliasAnalysis.storedTo(node.statement);
+            if (destination != null)
+                stores.add(destination);
+        }
+
+        for (ControlFlowGraphNode node : loop.getAllNodes()) {
+            if (!isLoad(node.statement))
+                continue;
+            ImcMEM load = (ImcMEM) ((ImcMOVE) node.statement).src;
+            boolean isInvariant = true;
+            for (ImcMEM store : stores)
+                isInvariant = isInvariant && !aliasAnalysis.mayAlias(load, store);
+            for (ControlFlowGraphNode loopExit : loopExits)
+                isInvariant = isInvariant && dominatorTree.dominates(node, loopExit);
+            if (isInvariant)
+                invariantLoads.add(node);
+        }
+        return invariantLoads;
+    }
+
+    /** Hoist loop invariant statements out of `loop` and its subloops.
+     * Dominance is taken from `dominatorTree`, built before any statement
+     * was hoisted. */
+    private static boolean hoist(ControlFlowGraph graph, LoopNode loop, DominatorTree dominatorTree, AliasAnalysis aliasAnalysis) {
         boolean hasGraphChanged = false;
 
         // Visit all subloops first
         for (LoopNode subLoop : loop.subLoops)
-            hasGraphChanged = hasGraphChanged || hoist(graph, subLoop);
+            hasGraphChanged = hasGraphChanged || hoist(graph, subLoop, dominatorTree, aliasAnalysis);
         
-        // Then, perform liveness analysis on control-flow graph (this will also
-        // make sure that our preheader live-out is computed)
-        LivenessAnalysis.analysis(graph);
-        ReachingDefinitionsAnalysis.run(graph);
+        // Then, perform liveness analysis on control-flow graph
+        graph.analysisManager.require(Analysis.LIVENESS, Analysis.REACHING_DEFINITIONS);
 
         // Definition d: t <- a + b can be hoisted to the end of the loop
         // preheader if:
@@ -178,56 +278,71 @@ public class LoopHoisting {
         // 2. and there is only one definition of t in the loop
         // 3. and t is not live-out of the loop preheader
 
+        // Find loop exits. Loop exit is a ControlFlowGraphNode which can jump
+        // to a ControlFlowGraphNode that is not in loop.loopItems
+        HashSet<ControlFlowGraphNode> loopExits = new HashSet<ControlFlowGraphNode>();
+        for (ControlFlowGraphNode node : loop.getAllNodes()) {
+            Set<ControlFlowGraphNode> successors = node.getSuccessors();
+            successors.removeAll(loop.getAllNodes());
+            if (successors.size() > 0)
+                loopExits.add(node);
+        }
+
+        // Loads t <- M[a] can be hoisted as well if memory at a does not
+        // change within the loop.
+        HashSet<ControlFlowGraphNode> invariantLoads = invariantLoads(loop, loopExits, dominatorTree, aliasAnalysis);
+
         // Construct a list of all possible TEMPs that can be moved out from the
         // loop. The TEMPS that won't match all three conditions will be removed.
         LinkedHashSet<ControlFlowGraphNode> hoistingCandidates = new LinkedHashSet<ControlFlowGraphNode>();
-        HashSet<ImcTEMP> alreadyDefined = new HashSet<ImcTEMP>();
         HashSet<ControlFlowGraphNode> loopNodes = loop.getAllNodes();
 
-        // Iterate over all nodes in graph, but skip those that are not inside
-        // the loop. This way, the order of the instructions is preserved. If we
-        // iterated over loopNodes.allNodes(), the statements would be hoisted
-        // in incorrect order, causing the program to break.
-        for (ControlFlowGraphNode node : graph.nodes) {
-            if (!loopNodes.contains(node))
-                continue;
+        // 2. Count all definitions of each temporary within the loop and its
+        // subloops, whether they are invariant or not
+        HashMap<ImcTEMP, Integer> definitionCounts = new HashMap<ImcTEMP, Integer>();
+        for (ControlFlowGraphNode node : loopNodes) {
+            for (ImcTEMP definedTemporary : node.getDefines()) {
+                Integer count = definitionCounts.get(definedTemporary);
+                definitionCounts.put(definedTemporary, count == null ? 1 : count + 1);
+            }
+        }
+
+        // Iterate over the nodes of the loop in reverse postorder of its
+        // blocks, so every definition is hoisted before the definitions that
+        // use it. The order of nodes in the graph is not enough, as blocks
+        // may be placed after the blocks they dominate (e.g., splits of
+        // critical edges placed at the end of the function).
+        Vector<ControlFlowGraphNode> orderedLoopNodes = new Vector<ControlFlowGraphNode>();
+        for (BasicBlock block : dominatorTree.reversePostorder()) {
+            for (ControlFlowGraphNode node : block.nodes) {
+                if (loopNodes.contains(node))
+                    orderedLoopNodes.add(node);
+            }
+        }
+        for (ControlFlowGraphNode node : orderedLoopNodes) {
             
-            if (!isBinaryOperation(node.statement))
+            if (!isBinaryOperation(node.statement) && !invariantLoads.contains(node))
                 continue;
 
             // Skip all statements that are not loop invariant            
-            if (!isLoopInvariant(loop, node, new HashSet<ControlFlowGraphNode>()))
+            if (!isLoopInvariant(loop, node, new HashSet<ControlFlowGraphNode>(), invariantLoads))
                 continue;
 
-            HashSet<ImcTEMP> definitions = node.getDefines();
-            if (definitions.size() > 1) {
+            Set<ImcTEMP> definitions = node.getDefines();
+            if (definitions.size() != 1) {
                 // More than one variable is defined, this is not a good
                 // candidate for hoisting
-                alreadyDefined.addAll(definitions);
                 continue;
             }
 
-            definitions.retainAll(alreadyDefined);
-            if (definitions.size() > 0) {
-                // One of the temporaries is redefined, this is not a good
-                // candidate for hoisting.
-                alreadyDefined.addAll(node.getDefines());
+            if (definitionCounts.get(definitions.iterator().next()) > 1) {
+                // The temporary is redefined somewhere in the loop, this is
+                // not a good candidate for hoisting.
                 continue;
             }
 
             // Node is a good candidate for hoisting
             hoistingCandidates.add(node);
-            alreadyDefined.addAll(node.getDefines());
-        }
-
-        // Find loop exits. Loop exit is a ControlFlowGraphNode which can jump
-        // to a ControlFlowGraphNode that is not in loop.loopItems
-        HashSet<ControlFlowGraphNode> loopExits = new HashSet<ControlFlowGraphNode>();
-        for (ControlFlowGraphNode node : loop.getAllNodes()) {
-            Set<ControlFlowGraphNode> successors = node.getSuccessors();
-            successors.removeAll(loop.getAllNodes());
-            if (successors.size() > 0)
-                loopExits.add(node);
         }
 
         HashSet<ControlFlowGraphNode> invalidHoistingCandidates = new HashSet<ControlFlowGraphNode>();
@@ -238,7 +353,7 @@ public class LoopHoisting {
             for (ControlFlowGraphNode loopExit : loopExits) {
                 if (loopExit.getLiveOut().contains(definedTemporary)) {
                     // This is a loop exit at which t is live-out
-                    if (!loopExit.getDominators().contains(node)) {
+                    if (!dominatorTree.dominates(node, loopExit)) {
                         // d does not dominate loop exit at which t is live out,
                         // DONT HOIST
                         invalidHoistingCandidates.add(node);
@@ -249,9 +364,10 @@ public class LoopHoisting {
         }
         hoistingCandidates.removeAll(invalidHoistingCandidates);
 
-        // 3. and t is not live-out of the loop preheader
+        // 3. and t is not live-out of the loop preheader (the preheader only
+        // jumps to the loop header, so this equals the live-in of the header)
         invalidHoistingCandidates.clear();
-        HashSet<ImcTEMP> preheaderLiveOut = loop.preheader.preheaderEnd.getLiveOut();
+        Set<ImcTEMP> preheaderLiveOut = loop.header.getLiveIn();
         for (ControlFlowGraphNode node : hoistingCandidates) {
             ImcTEMP definedTemporary = node.getDefines().iterator().next();
             if (preheaderLiveOut.contains(definedTemporary)) {
@@ -265,7 +381,7 @@ public class LoopHoisting {
         for (ControlFlowGraphNode node : hoistingCandidates) {
             Report.debug("Hoisting node: " + node);
             graph.removeNode(node);
-            loop.preheader.append(node);
+            getPreheader(graph, loop).append(node);
             hasGraphChanged = true;
         }
 
@@ -0,0 +1,472 @@
+package prev.phase.optimisation.loop_unrolling;
+
+import prev.Compiler;
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.phase.optimisation.common.dominators.*;
+import prev.phase.optimisation.induction_variable_elimination.*;
+import prev.common.report.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.mem.*;
+import java.util.*;
+
+/**
+ * Unrolls innermost counted loops.
+ *
+ * A counted loop is entered through its header label and left only through
+ * its latch, the conditional jump back to the header, which tests a basic
+ * induction variable against a loop-invariant bound. The body between them
+ * may contain branches, which are copied with new labels. If the induction
+ * variable starts at a constant and the bound is a constant, the number of
+ * iterations is known and small loops are replaced by copies of their
+ * bodies. Otherwise, a copy of the loop executing several bodies per
+ * iteration is run while enough iterations remain, and the original loop
+ * executes the remaining iterations.
+ */
+public class LoopUnrolling {
+
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
+    /** Loops are fully unrolled if they execute at most this many times */
+    public static int FULL_UNROLL_COUNT = 8;
+
+    /** Unrolled loops have at most this many statements in their bodies */
+    public static int MAX_UNROLLED_SIZE = 64;
+
+    /** A loop whose only exit is controlled by a basic induction variable */
+    private static class CountedLoop {
+
+        ControlFlowGraphNode header;
+        ControlFlowGraphNode latch;
+
+        /** The nodes of the loop after the header in the order of
+         * statements, including the latch */
+        Vector<ControlFlowGraphNode> body = new Vector<ControlFlowGraphNode>();
+
+        /** The induction variable, which is incremented by `increment` in
+         * the body and compared to `bound` by `oper` in the latch */
+        ImcTEMP inductionVariable;
+        long increment;
+        ImcBINOP.Oper oper;
+        ImcExpr bound;
+
+        /** The value of the induction variable on entry or null if not
+         * constant */
+        Long initialValue;
+
+    }
+
+    public static boolean run(ControlFlowGraph graph) {
+        // Find all loops before changing the graph, as the analyses are not
+        // updated while loops are unrolled
+        LoopNode nestingTree = graph.analysisManager.loops();
+        Vector<CountedLoop> countedLoops = new Vector<CountedLoop>();
+        findCountedLoops(graph, nestingTree, countedLoops);
+
+        boolean hasGraphChanged = false;
+        for (CountedLoop loop : countedLoops) {
+            Long tripCount = tripCount(loop);
+            if (tripCount != null && tripCount <= FULL_UNROLL_COUNT && tripCount * loop.body.size() <= MAX_UNROLLED_SIZE) {
+                Report.debug(String.format("  * Fully unrolling loop %s (%d iterations)", loop.header.statement, tripCount));
+                unrollFully(graph, loop, tripCount.intValue());
+                hasGraphChanged = true;
+                continue;
+            }
+
+            int factor = Math.min(Compiler.loopUnrollingFactor, MAX_UNROLLED_SIZE / loop.body.size());
+            if (factor < 2 || !unroll(graph, loop, factor))
+                continue;
+            Report.debug(String.format("  * Unrolled loop %s %d times", loop.header.statement, factor));
+            hasGraphChanged = true;
+        }
+
+        return hasGraphChanged;
+    }
+
+    private static void findCountedLoops(ControlFlowGraph graph, LoopNode loop, Vector<CountedLoop> countedLoops) {
+        for (LoopNode subLoop : loop.subLoops) {
+            if (subLoop.subLoops.isEmpty()) {
+                CountedLoop countedLoop = countedLoop(graph, subLoop);
+                if (countedLoop != null)
+                    countedLoops.add(countedLoop);
+            } else {
+                findCountedLoops(graph, subLoop, countedLoops);
+            }
+        }
+    }
+
+    /** Return the description of `loop` if it is a counted loop or null
+     * otherwise */
+    private static CountedLoop countedLoop(ControlFlowGraph graph, LoopNode loop) {
+        CountedLoop countedLoop = new CountedLoop();
+        countedLoop.header = loop.header;
+        if (!(loop.header.statement instanceof ImcLABEL))
+            return null;
+        MemLabel headerLabel = ((ImcLABEL) loop.header.statement).label;
+
+        // The latch must be the only jump back to the header and the only
+        // jump out of the loop
+        HashSet<ControlFlowGraphNode> loopNodes = loop.getLoopNodes();
+        for (ControlFlowGraphNode predecessor : loop.header.getPredecessors()) {
+            if (!loopNodes.contains(predecessor))
+                continue;
+            if (countedLoop.latch != null)
+                return null;
+            countedLoop.latch = predecessor;
+        }
+        if (countedLoop.latch == null || !(countedLoop.latch.statement instanceof ImcCJUMP))
+            return null;
+        ImcCJUMP latch = (ImcCJUMP) countedLoop.latch.statement;
+        if (latch.posLabel != headerLabel || latch.negLabel == headerLabel)
+            return null;
+        for (ControlFlowGraphNode node : loopNodes) {
+            for (ControlFlowGraphNode successor : node.getSuccessors())
+                if (!loopNodes.contains(successor) && node != countedLoop.latch)
+                    return null;
+            if (node.statement instanceof ImcCJUMP && node != countedLoop.latch) {
+                ImcCJUMP conditionalJump = (ImcCJUMP) node.statement;
+                if (conditionalJump.posLabel == headerLabel || conditionalJump.negLabel == headerLabel)
+                    return null;
+            }
+        }
+
+        for (ControlFlowGraphNode node : graph.nodes)
+            if (node != loop.header && loopNodes.contains(node))
+                countedLoop.body.add(node);
+
+        // The latch compares a basic induction variable with a loop-invariant
+        // bound
+        if (!(latch.cond instanceof ImcBINOP))
+            return null;
+        ImcBINOP condition = (ImcBINOP) latch.cond;
+        HashMap<ImcTEMP, InductionVariable> inductionVariables = InductionVariableElimination.detectInductionVariables(graph, loop);
+        InductionVariable inductionVariable = null;
+        if (condition.fstExpr instanceof ImcTEMP && inductionVariables.containsKey(condition.fstExpr)) {
+            inductionVariable = inductionVariables.get(condition.fstExpr);
+            countedLoop.oper = condition.oper;
+            countedLoop.bound = condition.sndExpr;
+        } else if (condition.sndExpr instanceof ImcTEMP && inductionVariables.containsKey(condition.sndExpr)) {
+            inductionVariable = inductionVariables.get(condition.sndExpr);
+            countedLoop.oper = mirror(condition.oper);
+            countedLoop.bound = condition.fstExpr;
+        }
+        if (inductionVariable == null || !inductionVariable.isBasic() || inductionVariable.getDefinitions().size() != 1)
+            return null;
+        countedLoop.inductionVariable = inductionVariable.inductionVariable;
+
+        if (!isInvariant(graph, loop, countedLoop.bound))
+            return null;
+
+        // The induction variable is incremented by a constant, and the
+        // comparison stops the loop once the variable passes the bound
+        ControlFlowGraphNode definition = inductionVariable.getDefinitions().get(0);
+        if (!graph.analysisManager.dominators().dominates(definition, countedLoop.latch))
+            return null;
+        Long increment = constantValue(InductionVariableElimination.getIncrementExpression(definition, countedLoop.inductionVariable));
+        if (increment == null || !isIncrement(definition.statement, countedLoop.inductionVariable))
+            return null;
+        countedLoop.increment = increment;
+        if (countedLoop.oper == null)
+            return null;
+        switch (countedLoop.oper) {
+            case LTH:
+            case LEQ:
+                if (increment <= 0)
+                    return null;
+                break;
+            case GTH:
+            case GEQ:
+                if (increment >= 0)
+                    return null;
+                break;
+            default:
+                return null;
+        }
+
+        countedLoop.initialValue = initialValue(graph, loop, countedLoop.inductionVariable);
+        return countedLoop;
+    }
+
+    /** Check whether `statement` is of the form i <- i + c or i <- i - c */
+    private static boolean isIncrement(ImcStmt statement, ImcTEMP inductionVariable) {
+        ImcBINOP increment = (ImcBINOP) ((ImcMOVE) statement).src;
+        if (increment.oper == ImcBINOP.Oper.SUB)
+            return increment.fstExpr.equals(inductionVariable);
+        return true;
+    }
+
+    /** Check whether `expression` is a constant or a temporary that is not
+     * defined in `loop` */
+    private static boolean isInvariant(ControlFlowGraph graph, LoopNode loop, ImcExpr expression) {
+        if (expression instanceof ImcCONST)
+            return true;
+        if (!(expression instanceof ImcTEMP))
+            return false;
+        for (ControlFlowGraphNode definition : graph.defUseIndex.definitions((ImcTEMP) expression))
+            if (loop.containsNode(definition))
+                return false;
+        return true;
+    }
+
+    /** Return the constant value of the induction variable on entry to
+     * `loop` or null if it is not known */
+    private static Long initialValue(ControlFlowGraph graph, LoopNode loop, ImcTEMP inductionVariable) {
+        graph.analysisManager.require(Analysis.REACHING_DEFINITIONS);
+        HashSet<ControlFlowGraphNode> definitions = new HashSet<ControlFlowGraphNode>(loop.header.getReachingDefinitionsIn());
+        definitions.retainAll(graph.defUseIndex.definitions(inductionVariable));
+        definitions.removeAll(loop.getLoopNodes());
+        if (definitions.size() != 1)
+            return null;
+        ImcStmt statement = definitions.iterator().next().statement;
+        if (!(statement instanceof ImcMOVE))
+            return null;
+        return constantValue(((ImcMOVE) statement).src);
+    }
+
+    /** Return the number of times the body of `loop` is executed or null if
+     * it is not known or larger than FULL_UNROLL_COUNT */
+    private static Long tripCount(CountedLoop loop) {
+        Long bound = constantValue(loop.bound);
+        if (loop.initialValue == null || bound == null)
+            return null;
+
+        // The body is always executed at least once, as the condition is
+        // only tested at the end of the loop
+        long value = loop.initialValue;
+        for (long count = 1; count <= FULL_UNROLL_COUNT; count++) {
+            value += loop.increment;
+            if (!compare(loop.oper, value, bound))
+                return count;
+        }
+        return null;
+    }
+
+    /** Replace `loop` with `tripCount` copies of its body */
+    private static void unrollFully(ControlFlowGraph graph, CountedLoop loop, int tripCount) {
+        ImcCJUMP latch = (ImcCJUMP) loop.latch.statement;
+
+        // Each copy continues with the next one, the original body is the
+        // last copy and its latch leaves the loop
+        Vector<ImcStmt> statements = new Vector<ImcStmt>();
+        MemLabel copyLabel = new MemLabel();
+        for (int i = 1; i < tripCount; i++) {
+            MemLabel nextCopyLabel = new MemLabel();
+            statements.addAll(copyBody(loop, copyLabel, continueWith(loop, nextCopyLabel)));
+            copyLabel = nextCopyLabel;
+        }
+        statements.add(new ImcLABEL(copyLabel));
+        insertStatements(graph, loop, statements, new HashMap<MemLabel, ControlFlowGraphNode>());
+
+        graph.removeEdge(loop.latch, loop.header);
+        graph.setStatement(loop.latch, new ImcJUMP(latch.negLabel));
+    }
+
+    /** Add a copy of `loop` executing `factor` bodies per iteration, which is
+     * run instead of the original loop while at least `factor` iterations
+     * remain. Return false without changing the graph if the test of the
+     * copy cannot be computed without overflow. */
+    private static boolean unroll(ControlFlowGraph graph, CountedLoop loop, int factor) {
+        ImcCJUMP latch = (ImcCJUMP) loop.latch.statement;
+        ControlFlowGraphNode exitNode = successorWithLabel(loop.latch, latch.negLabel);
+
+        MemLabel unrolledLabel = new MemLabel();
+        MemLabel guardExitLabel = new MemLabel();
+        MemLabel unrolledExitLabel = new MemLabel();
+        MemLabel remainderExitLabel = new MemLabel();
+        MemLabel remainderLabel = new MemLabel();
+
+        // The induction variable after `factor - 1` more increments must
+        // still pass the test for all bodies of the unrolled loop to run,
+        // i.e., i + distance oper bound. As i + distance can overflow, the
+        // test is i oper bound - distance, which is only used if bound -
+        // distance does not overflow.
+        Vector<ImcStmt> statements = new Vector<ImcStmt>();
+        long distance;
+        try {
+            distance = Math.multiplyExact((long) (factor - 1), loop.increment);
+        } catch (ArithmeticException exception) {
+            return false;
+        }
+        ImcExpr unrolledBound;
+        Long bound = constantValue(loop.bound);
+        if (bound != null) {
+            try {
+                unrolledBound = ImcCONST.of(Math.subtractExact(bound, distance));
+            } catch (ArithmeticException exception) {
+                return false;
+            }
+        } else {
+            // The bound is only known at run time, the original loop is run
+            // if the subtraction would overflow (the distance is positive for
+            // increasing and negative for decreasing induction variables)
+            MemLabel unrolledBoundLabel = new MemLabel();
+            ImcExpr overflows = distance > 0
+                ? ImcBINOP.of(ImcBINOP.Oper.LTH, loop.bound, ImcCONST.of(Long.MIN_VALUE + distance))
+                : ImcBINOP.of(ImcBINOP.Oper.GTH, loop.bound, ImcCONST.of(Long.MAX_VALUE + distance));
+            unrolledBound = ImcTEMP.of(new MemTemp());
+            statements.add(new ImcCJUMP(overflows, remainderLabel, unrolledBoundLabel));
+            statements.add(new ImcLABEL(unrolledBoundLabel));
+            statements.add(new ImcMOVE(unrolledBound, ImcBINOP.of(ImcBINOP.Oper.SUB, loop.bound, ImcCONST.of(distance))));
+        }
+        ImcExpr unrolledCondition = ImcBINOP.of(loop.oper, loop.inductionVariable, unrolledBound);
+
+        // The header now selects one of the loops, the original loop is
+        // entered through a new label
+        statements.add(new ImcCJUMP(unrolledCondition, unrolledLabel, guardExitLabel));
+        statements.add(new ImcLABEL(guardExitLabel));
+        statements.add(new ImcJUMP(remainderLabel));
+
+        // The unrolled loop continues in the original loop once fewer than
+        // `factor` iterations remain
+        MemLabel copyLabel = unrolledLabel;
+        for (int i = 1; i < factor; i++) {
+            MemLabel nextCopyLabel = new MemLabel();
+            statements.addAll(copyBody(loop, copyLabel, continueWith(loop, nextCopyLabel)));
+            copyLabel = nextCopyLabel;
+        }
+        Vector<ImcStmt> unrolledLatch = new Vector<ImcStmt>();
+        unrolledLatch.add(new ImcCJUMP(unrolledCondition, unrolledLabel, unrolledExitLabel));
+        unrolledLatch.add(new ImcLABEL(unrolledExitLabel));
+        unrolledLatch.add(new ImcCJUMP(latch.cond, remainderLabel, remainderExitLabel));
+        unrolledLatch.add(new ImcLABEL(remainderExitLabel));
+        unrolledLatch.add(new ImcJUMP(latch.negLabel));
+        statements.addAll(copyBody(loop, copyLabel, unrolledLatch));
+        statements.add(new ImcLABEL(remainderLabel));
+
+        HashMap<MemLabel, ControlFlowGraphNode> labelNodes = new HashMap<MemLabel, ControlFlowGraphNode>();
+        if (exitNode != null)
+            labelNodes.put(latch.negLabel, exitNode);
+        insertStatements(graph, loop, statements, labelNodes);
+
+        graph.removeEdge(loop.latch, loop.header);
+        graph.setStatement(loop.latch, new ImcCJUMP(latch.cond, remainderLabel, latch.negLabel));
+        graph.addEdge(loop.latch, labelNodes.get(remainderLabel));
+        return true;
+    }
+
+    /** Insert `statements` between the header and the body of `loop` and
+     * connect them according to their jumps */
+    private static void insertStatements(ControlFlowGraph graph, CountedLoop loop, Vector<ImcStmt> statements, HashMap<MemLabel, ControlFlowGraphNode> labelNodes) {
+        ControlFlowGraphNode first = loop.header.next();
+        if (statements.isEmpty())
+            return;
+
+        Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>();
+        for (ImcStmt statement : statements) {
+            ControlFlowGraphNode node = new ControlFlowGraphNode(statement);
+            graph.insertNodeBefore(first, node);
+            nodes.add(node);
+            if (statement instanceof ImcLABEL)
+                labelNodes.put(((ImcLABEL) statement).label, node);
+        }
+
+        graph.removeEdge(loop.header, first);
+        graph.addEdge(loop.header, nodes.firstElement());
+        for (ControlFlowGraphNode node : nodes) {
+            HashSet<MemLabel> targets = new HashSet<MemLabel>();
+            if (node.statement instanceof ImcJUMP) {
+                targets.add(((ImcJUMP) node.statement).label);
+            } else if (node.statement instanceof ImcCJUMP) {
+                targets.add(((ImcCJUMP) node.statement).posLabel);
+                targets.add(((ImcCJUMP) node.statement).negLabel);
+            } else {
+                graph.addEdge(node, node.next());
+            }
+            for (MemLabel target : targets) {
+                ControlFlowGraphNode targetNode = labelNodes.get(target);
+                if (targetNode != null)
+                    graph.addEdge(node, targetNode);
+            }
+        }
+    }
+
+    /** Return new statements of the body of `loop` starting with `label`,
+     * where the latch is replaced by `latchStatements` and the labels within
+     * the body are renamed */
+    private static Vector<ImcStmt> copyBody(CountedLoop loop, MemLabel label, Vector<ImcStmt> latchStatements) {
+        HashMap<MemLabel, MemLabel> labels = new HashMap<MemLabel, MemLabel>();
+        for (ControlFlowGraphNode node : loop.body)
+            if (node.statement instanceof ImcLABEL)
+                labels.put(((ImcLABEL) node.statement).label, new MemLabel());
+
+        Vector<ImcStmt> statements = new Vector<ImcStmt>();
+        statements.add(new ImcLABEL(label));
+        for (ControlFlowGraphNode node : loop.body) {
+            ImcStmt statement = node.statement;
+            if (node == loop.latch) {
+                statements.addAll(latchStatements);
+            } else if (statement instanceof ImcLABEL) {
+                statements.add(new ImcLABEL(labels.get(((ImcLABEL) statement).label)));
+            } else if (statement instanceof ImcJUMP) {
+                statements.add(new ImcJUMP(renamed(labels, ((ImcJUMP) statement).label)));
+            } else if (statement instanceof ImcCJUMP) {
+                ImcCJUMP conditionalJump = (ImcCJUMP) statement;
+                statements.add(new ImcCJUMP(conditionalJump.cond, renamed(labels, conditionalJump.posLabel), renamed(labels, conditionalJump.negLabel)));
+            } else if (statement instanceof ImcMOVE) {
+                statements.add(new ImcMOVE(((ImcMOVE) statement).dst, ((ImcMOVE) statement).src));
+            } else if (statement instanceof ImcESTMT) {
+                statements.add(new ImcESTMT(((ImcESTMT) statement).expr));
+            } else {
+                throw new Report.InternalError();
+            }
+        }
+        return statements;
+    }
+
+    private static MemLabel renamed(HashMap<MemLabel, MemLabel> labels, MemLabel label) {
+        MemLabel newLabel = labels.get(label);
+        return newLabel == null ? label : newLabel;
+    }
+
+    /** Return the statements replacing the latch of a copy of `loop` that
+     * continues with the copy starting at `label` */
+    private static Vector<ImcStmt> continueWith(CountedLoop loop, MemLabel label) {
+        // If the latch is the last statement of the body, the next copy
+        // directly follows it
+        Vector<ImcStmt> statements = new Vector<ImcStmt>();
+        if (loop.body.lastElement() != loop.latch)
+            statements.add(new ImcJUMP(label));
+        return statements;
+    }
+
+    private static ControlFlowGraphNode successorWithLabel(ControlFlowGraphNode node, MemLabel label) {
+        for (ControlFlowGraphNode successor : node.getSuccessors())
+            if (successor.statement instanceof ImcLABEL && ((ImcLABEL) successor.statement).label == label)
+                return successor;
+        return null;
+    }
+
+    private static Long constantValue(ImcExpr expression) {
+        if (expression instanceof ImcCONST)
+            return ((ImcCONST) expression).value;
+        if (expression instanceof ImcUNOP && ((ImcUNOP) expression).oper == ImcUNOP.Oper.NEG) {
+            Long value = constantValue(((ImcUNOP) expression).subExpr);
+            return value == null ? null : -value;
+        }
+        return null;
+    }
+
+    private static boolean compare(ImcBINOP.Oper oper, long first, long second) {
+        switch (oper) {
+            case LTH: return first < second;
+            case LEQ: return first <= second;
+            case GTH: return first > second;
+            case GEQ: return first >= second;
+            default: throw new Report.InternalError();
+        }
+    }
+
+    /** Return the operator `oper'` such that a oper b == b oper' a or null */
+    private static ImcBINOP.Oper mirror(ImcBINOP.Oper oper) {
+        switch (oper) {
+            case LTH: return ImcBINOP.Oper.GTH;
+            case LEQ: return ImcBINOP.Oper.GEQ;
+            case GTH: return ImcBINOP.Oper.LTH;
+            case GEQ: return ImcBINOP.Oper.LEQ;
+            default: return null;
+        }
+    }
+
+}
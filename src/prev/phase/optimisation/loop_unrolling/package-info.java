@@ -0,0 +1,4 @@
+/**
+ * Loop unrolling phase of the IR optimisation.
+ */
+package prev.phase.optimisation.loop_unrolling;
@@ -1,6 +1,8 @@
 package prev.phase.optimisation.peephole_optimisation;
 
 import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
 import prev.phase.optimisation.common.reaching_definitions.*;
 import prev.phase.optimisation.common.liveness_analysis.*;
 import prev.data.imc.code.*;
@@ -11,6 +13,9 @@ import prev.common.report.*;
 
 public class PeepholeOptimisation {
 
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
     public static boolean run(ControlFlowGraph graph) {
         boolean hasGraphChanged = false;
 
@@ -52,76 +57,42 @@ public class PeepholeOptimisation {
         return hasGraphChanged;
     }
 
-    public static HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> uses(ControlFlowGraph graph) {
-		HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> uses = new HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>>();
-		for (ControlFlowGraphNode node : graph.nodes) {
-            HashSet<ImcTEMP> nodeUses = node.getUses();
-            for (ImcTEMP temporary : nodeUses) {
-                if (uses.containsKey(temporary)) {
-                    uses.get(temporary).add(node);
-                } else {
-                    HashSet<ControlFlowGraphNode> newUses = new HashSet<ControlFlowGraphNode>();
-                    newUses.add(node);
-                    uses.put(temporary, newUses);
-                }
-            }
-		}
-		return uses;
-	}
-
     private static boolean removeUselessCopies(ControlFlowGraph graph) {
         // If any constant propagation has been performed, hasGraphChanged
         // should change to true.
         boolean hasGraphChanged = false;
 
-        boolean repeat = true;
-        while (repeat) {
-            repeat = false;
-
-            LivenessAnalysis.run(graph);
-
-            HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> definitions = ReachingDefinitionsAnalysis.definitions(graph);
-            HashMap<ImcTEMP, HashSet<ControlFlowGraphNode>> uses = uses(graph);
-
-            // Vector<ControlFlowGraphNode> nodesToRemove = new Vector<ControlFlowGraphNode>();
-
-            for (ControlFlowGraphNode node : graph.nodes) {
-                if (!(node.statement instanceof ImcMOVE)) continue;
+        Vector<ControlFlowGraphNode> nodes = new Vector<ControlFlowGraphNode>(graph.nodes);
+        for (ControlFlowGraphNode node : nodes) {
+            if (!(node.statement instanceof ImcMOVE)) continue;
+
+            ImcMOVE moveStatement = (ImcMOVE) node.statement;
+            if (!(moveStatement.dst instanceof ImcTEMP)) continue;
+            if (!(moveStatement.src instanceof ImcTEMP)) continue;
+
+            // Do not remove statement RV <- ... or ... <- RV (the return value
+            // is also used at the end of the function)
+            if (((ImcTEMP) moveStatement.dst).temp.equals(graph.codeChunk.frame.RV)) continue;
+            if (((ImcTEMP) moveStatement.src).temp.equals(graph.codeChunk.frame.RV)) continue;
+
+            // Check if there is only one use of moveStatement.src temporary
+            if (graph.defUseIndex.singleUse((ImcTEMP) moveStatement.src) == null) continue;
+
+            // The current [node] is a copy statement T1 <- T2. If there is only
+            // one definition of T2 <- a + b, we can replace current
+            // statement with T1 <- a + b.
+            ControlFlowGraphNode sourceDefinitionNode = graph.defUseIndex.singleDefinition((ImcTEMP) moveStatement.src);
+            if (sourceDefinitionNode == null) continue;
+            if (!(sourceDefinitionNode.statement instanceof ImcMOVE)) continue;
+            ImcExpr sourceExpression = ((ImcMOVE) sourceDefinitionNode.statement).src;
+            
+            ImcStmt modifiedStatement = new ImcMOVE(moveStatement.dst, sourceExpression);
+            Report.debug("  * Replacing statement " + sourceDefinitionNode.statement + " with " + modifiedStatement);
+            graph.setStatement(sourceDefinitionNode, modifiedStatement);
+            Report.debug(" Statement is now: " + sourceDefinitionNode.statement);
 
-                ImcMOVE moveStatement = (ImcMOVE) node.statement;
-                if (!(moveStatement.dst instanceof ImcTEMP)) continue;
-                if (!(moveStatement.src instanceof ImcTEMP)) continue;
-
-                // Do not remove statement RV <- ...
-                if (((ImcTEMP) moveStatement.dst).temp.equals(graph.codeChunk.frame.RV)) continue;
-
-                // Check if there is only one use of moveStatement.src temporary
-                HashSet<ControlFlowGraphNode> sourceUses = uses.get(moveStatement.src);
-                if (sourceUses == null) continue;
-                if (sourceUses.size() != 1) continue;
-
-                // The current [node] is a copy statement T1 <- T2. If there is only
-                // one definition of T2 <- a + b, we can replace current
-                // statement with T1 <- a + b.
-                HashSet<ControlFlowGraphNode> sourceDefinitions = definitions.get(moveStatement.src);
-                if (sourceDefinitions == null) continue;
-                if (sourceDefinitions.size() != 1) continue;
-
-                ControlFlowGraphNode sourceDefinitionNode = sourceDefinitions.iterator().next();
-                if (!(sourceDefinitionNode.statement instanceof ImcMOVE)) continue;
-                ImcExpr sourceExpression = ((ImcMOVE) sourceDefinitionNode.statement).src;
-                
-                ImcStmt modifiedStatement = new ImcMOVE(moveStatement.dst, sourceExpression);
-                Report.debug("  * Replacing statement " + sourceDefinitionNode.statement + " with " + modifiedStatement);
-                sourceDefinitionNode.statement = modifiedStatement;
-                Report.debug(" Statement is now: " + sourceDefinitionNode.statement);
-
-                graph.removeNode(node);
-                repeat = true;
-                hasGraphChanged = true;
-                break;
-
-            }
+            graph.removeNode(node);
+            hasGraphChanged = true;
         }
         
         return hasGraphChanged;
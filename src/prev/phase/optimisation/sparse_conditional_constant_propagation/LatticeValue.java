@@ -0,0 +1,71 @@
+package prev.phase.optimisation.sparse_conditional_constant_propagation;
+
+/**
+ * A value of the constant propagation lattice: TOP (no value seen yet), a
+ * constant, or BOTTOM (not a constant).
+ */
+public class LatticeValue {
+
+    public enum Kind {
+        TOP, CONSTANT, BOTTOM
+    }
+
+    public static final LatticeValue TOP = new LatticeValue(Kind.TOP, 0L);
+    public static final LatticeValue BOTTOM = new LatticeValue(Kind.BOTTOM, 0L);
+
+    public final Kind kind;
+    public final long value;
+
+    private LatticeValue(Kind kind, long value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public static LatticeValue constant(long value) {
+        return new LatticeValue(Kind.CONSTANT, value);
+    }
+
+    public boolean isTop() {
+        return this.kind == Kind.TOP;
+    }
+
+    public boolean isConstant() {
+        return this.kind == Kind.CONSTANT;
+    }
+
+    public boolean isBottom() {
+        return this.kind == Kind.BOTTOM;
+    }
+
+    /** Return the greatest lower bound of this and `other` value. */
+    public LatticeValue meet(LatticeValue other) {
+        if (this.isTop())
+            return other;
+        if (other.isTop())
+            return this;
+        if (this.isBottom() || other.isBottom())
+            return BOTTOM;
+        return this.value == other.value ? this : BOTTOM;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof LatticeValue))
+            return false;
+        LatticeValue latticeValue = (LatticeValue) o;
+        return this.kind == latticeValue.kind && this.value == latticeValue.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.kind.hashCode() + Long.hashCode(this.value);
+    }
+
+    @Override
+    public String toString() {
+        return this.isConstant() ? Long.toString(this.value) : this.kind.toString();
+    }
+
+}
@@ -0,0 +1,285 @@
+package prev.phase.optimisation.sparse_conditional_constant_propagation;
+
+import prev.phase.optimisation.common.control_flow_graph.*;
+import prev.phase.optimisation.common.analysis_manager.AnalysisManager.Analysis;
+import prev.phase.optimisation.common.liveness_analysis.*;
+import prev.phase.optimisation.common.ssa.*;
+import prev.phase.optimisation.common.tree_replacement.*;
+import prev.phase.optimisation.constant_folding.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.data.mem.*;
+import prev.common.report.*;
+import java.util.*;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck).
+ *
+ * Values of temporaries in SSA form and executability of control-flow edges
+ * are computed together, optimistically assuming that every value is a
+ * constant and every edge is never taken until shown otherwise. Constants
+ * are therefore found through loops and merges, and only along edges that
+ * can actually be taken. Afterwards, uses of constant temporaries are
+ * replaced with constants, conditional jumps with a constant condition are
+ * folded and statements that can never execute are removed.
+ */
+public class SparseConditionalConstantPropagation {
+
+    /** Analyses that remain valid when this pass changes the graph */
+    public static final EnumSet<Analysis> PRESERVED_ANALYSES = EnumSet.noneOf(Analysis.class);
+
+    private final SsaForm ssa;
+    private final LatticeValue[] values;
+
+    /** Blocks that may execute and their predecessors along edges that may
+     * be taken */
+    private final boolean[] executable;
+    private final Vector<HashSet<BasicBlock>> executablePredecessors = new Vector<HashSet<BasicBlock>>();
+
+    /** Control-flow edges (pairs of blocks) that have become executable */
+    private final ArrayDeque<BasicBlock[]> flowWorklist = new ArrayDeque<BasicBlock[]>();
+    /** Values that have been lowered in the lattice */
+    private final ArrayDeque<SsaValue> ssaWorklist = new ArrayDeque<SsaValue>();
+
+    private SparseConditionalConstantPropagation(SsaForm ssa) {
+        this.ssa = ssa;
+        this.values = new LatticeValue[ssa.values().size()];
+        for (SsaValue value : ssa.values()) {
+            // The value of a temporary at function entry is unknown
+            this.values[value.index] = value.isEntryValue() ? LatticeValue.BOTTOM : LatticeValue.TOP;
+        }
+        this.executable = new boolean[ssa.blockGraph.blocks.size()];
+        for (int i = 0; i < ssa.blockGraph.blocks.size(); i++)
+            this.executablePredecessors.add(new HashSet<BasicBlock>());
+    }
+
+    public static boolean run(ControlFlowGraph graph) {
+        ControlFlowGraphNode initialNode = graph.initialNode();
+        if (initialNode == null)
+            return false;
+
+        // Values at function entry can not be told apart from the values
+        // flowing back into the first statement.
+        if (!initialNode.predecessors.isEmpty()) {
+            Report.debug("Skipping sparse conditional constant propagation, the first statement is a jump target");
+            return false;
+        }
+
+        SsaForm ssa = SsaForm.build(graph);
+        SparseConditionalConstantPropagation propagation = new SparseConditionalConstantPropagation(ssa);
+        propagation.propagate();
+        return propagation.rewrite(graph);
+    }
+
+    private void propagate() {
+        this.visitBlock(this.ssa.blockGraph.initialBlock());
+
+        while (!this.flowWorklist.isEmpty() || !this.ssaWorklist.isEmpty()) {
+            while (!this.flowWorklist.isEmpty()) {
+                BasicBlock[] edge = this.flowWorklist.poll();
+                BasicBlock predecessor = edge[0];
+                BasicBlock block = edge[1];
+                if (!this.executablePredecessors.get(block.index).add(predecessor))
+                    continue;
+
+                if (this.executable[block.index]) {
+                    // Only φ-nodes depend on the newly executable edge
+                    for (PhiNode phi : this.ssa.phis(block))
+                        this.visitPhi(phi);
+                } else {
+                    this.visitBlock(block);
+                }
+            }
+
+            while (!this.ssaWorklist.isEmpty()) {
+                SsaValue value = this.ssaWorklist.poll();
+                for (PhiNode phi : value.phiUses) {
+                    if (this.executable[phi.block.index])
+                        this.visitPhi(phi);
+                }
+                for (ControlFlowGraphNode node : value.uses) {
+                    BasicBlock block = this.ssa.blockGraph.blockOf(node);
+                    if (this.executable[block.index])
+                        this.visitNode(node, block);
+                }
+            }
+        }
+    }
+
+    private void visitBlock(BasicBlock block) {
+        this.executable[block.index] = true;
+        for (PhiNode phi : this.ssa.phis(block))
+            this.visitPhi(phi);
+        for (ControlFlowGraphNode node : block.nodes)
+            this.visitNode(node, block);
+    }
+
+    private void visitPhi(PhiNode phi) {
+        // Only values flowing in along executable edges are merged
+        HashSet<BasicBlock> predecessors = this.executablePredecessors.get(phi.block.index);
+        LatticeValue value = LatticeValue.TOP;
+        for (Map.Entry<BasicBlock, SsaValue> operand : phi.operands.entrySet()) {
+            if (predecessors.contains(operand.getKey()))
+                value = value.meet(this.values[operand.getValue().index]);
+        }
+        this.lower(phi.target, value);
+    }
+
+    private void visitNode(ControlFlowGraphNode node, BasicBlock block) {
+        Map<ImcTEMP, SsaValue> definitions = this.ssa.definitions(node);
+        if (!definitions.isEmpty()) {
+            LatticeValue value = LatticeValue.BOTTOM;
+            if (definitions.size() == 1 && node.statement instanceof ImcMOVE)
+                value = this.evaluate(((ImcMOVE) node.statement).src, node);
+            for (SsaValue definition : definitions.values())
+                this.lower(definition, value);
+        }
+
+        if (node != block.last())
+            return;
+
+        // Mark the edges leaving the block that can be taken
+        LatticeValue condition = null;
+        if (node.statement instanceof ImcCJUMP) {
+            condition = this.evaluate(((ImcCJUMP) node.statement).cond, node);
+            if (condition.isTop())
+                return;
+        }
+        for (ControlFlowGraphNode successor : node.successors) {
+            if (condition != null && condition.isConstant() && !isJumpTarget(successor, takenLabel((ImcCJUMP) node.statement, condition)))
+                continue;
+            this.flowWorklist.add(new BasicBlock[] { block, this.ssa.blockGraph.blockOf(successor) });
+        }
+    }
+
+    private void lower(SsaValue value, LatticeValue newValue) {
+        LatticeValue oldValue = this.values[value.index];
+        LatticeValue loweredValue = oldValue.meet(newValue);
+        if (!loweredValue.equals(oldValue)) {
+            this.values[value.index] = loweredValue;
+            this.ssaWorklist.add(value);
+        }
+    }
+
+    /** Evaluate `expression` of `node` in the lattice. */
+    private LatticeValue evaluate(ImcExpr expression, ControlFlowGraphNode node) {
+        if (expression instanceof ImcCONST)
+            return LatticeValue.constant(((ImcCONST) expression).value);
+
+        Map<ImcTEMP, SsaValue> uses = this.ssa.uses(node);
+        if (expression instanceof ImcTEMP)
+            return this.values[uses.get(expression).index];
+
+        Vector<ImcTEMP> usedTemporaries = new Vector<ImcTEMP>();
+        expression.accept(new ExprGenerator(), usedTemporaries);
+        ImcExpr substitutedExpression = expression;
+        for (ImcTEMP temporary : usedTemporaries) {
+            LatticeValue value = this.values[uses.get(temporary).index];
+            if (value.isTop())
+                return LatticeValue.TOP;
+            if (value.isConstant())
+                substitutedExpression = substitutedExpression.accept(new ExpressionReplacer(), new Replacement(temporary, ImcCONST.of(value.value)));
+        }
+
+        ImcExpr foldedExpression;
+        try {
+            foldedExpression = substitutedExpression.accept(new ExpressionConstantFolder(), null);
+        } catch (ArithmeticException exception) {
+            // Division by zero is left to happen at run time
+            return LatticeValue.BOTTOM;
+        }
+        if (foldedExpression instanceof ImcCONST)
+            return LatticeValue.constant(((ImcCONST) foldedExpression).value);
+        return LatticeValue.BOTTOM;
+    }
+
+    private static MemLabel takenLabel(ImcCJUMP conditionalJump, LatticeValue condition) {
+        return condition.value != 0 ? conditionalJump.posLabel : conditionalJump.negLabel;
+    }
+
+    private static boolean isJumpTarget(ControlFlowGraphNode node, MemLabel label) {
+        return node.statement instanceof ImcLABEL && ((ImcLABEL) node.statement).label == label;
+    }
+
+    private boolean rewrite(ControlFlowGraph graph) {
+        boolean hasGraphChanged = false;
+
+        for (BasicBlock block : this.ssa.blockGraph.blocks) {
+            if (!this.executable[block.index])
+                continue;
+            for (ControlFlowGraphNode node : new Vector<ControlFlowGraphNode>(block.nodes)) {
+                boolean hasChanged = this.replaceConstants(graph, node);
+                if (node == block.last())
+                    hasChanged = this.foldConditionalJump(graph, node) || hasChanged;
+                hasGraphChanged = hasGraphChanged || hasChanged;
+            }
+        }
+
+        // Remove statements of blocks that can never execute
+        Vector<ControlFlowGraphNode> unexecutable = new Vector<ControlFlowGraphNode>();
+        for (BasicBlock block : this.ssa.blockGraph.blocks) {
+            if (!this.executable[block.index])
+                unexecutable.addAll(block.nodes);
+        }
+        for (ControlFlowGraphNode node : unexecutable) {
+            Report.debug("Removing unexecutable statement " + node.statement);
+            graph.removeNode(node);
+        }
+
+        return hasGraphChanged || unexecutable.size() > 0;
+    }
+
+    private boolean replaceConstants(ControlFlowGraph graph, ControlFlowGraphNode node) {
+        ImcStmt newStatement = node.statement;
+
+        // The source of a move to a constant temporary is replaced as a
+        // whole, other statements get constants in place of used temporaries.
+        Map<ImcTEMP, SsaValue> definitions = this.ssa.definitions(node);
+        if (definitions.size() == 1 && newStatement instanceof ImcMOVE) {
+            LatticeValue value = this.values[definitions.values().iterator().next().index];
+            if (value.isConstant() && ((ImcMOVE) newStatement).src != ImcCONST.of(value.value))
+                newStatement = new ImcMOVE(((ImcMOVE) newStatement).dst, ImcCONST.of(value.value));
+        }
+
+        for (Map.Entry<ImcTEMP, SsaValue> use : this.ssa.uses(node).entrySet()) {
+            LatticeValue value = this.values[use.getValue().index];
+            if (!value.isConstant())
+                continue;
+            boolean replaceInMoveDestination = newStatement instanceof ImcMOVE && ((ImcMOVE) newStatement).dst instanceof ImcMEM;
+            newStatement = newStatement.accept(new StatementReplacer(), new Replacement(use.getKey(), ImcCONST.of(value.value), replaceInMoveDestination));
+        }
+
+        if (newStatement == node.statement)
+            return false;
+        Report.debug("Replacing statement " + node.statement + " with " + newStatement);
+        graph.setStatement(node, newStatement);
+        return true;
+    }
+
+    private boolean foldConditionalJump(ControlFlowGraph graph, ControlFlowGraphNode node) {
+        if (!(node.statement instanceof ImcCJUMP))
+            return false;
+        ImcCJUMP conditionalJump = (ImcCJUMP) node.statement;
+        if (conditionalJump.posLabel == conditionalJump.negLabel)
+            return false;
+        LatticeValue condition = this.evaluate(conditionalJump.cond, node);
+        if (!condition.isConstant())
+            return false;
+
+        for (ControlFlowGraphNode successor : node.getSuccessors()) {
+            if (!isJumpTarget(successor, takenLabel(conditionalJump, condition)))
+                graph.removeEdge(node, successor);
+        }
+
+        if (condition.value != 0) {
+            Report.debug("Replacing statement " + node.statement + " with JUMP " + conditionalJump.posLabel.name);
+            graph.setStatement(node, new ImcJUMP(conditionalJump.posLabel));
+        } else {
+            // The negative label directly follows this statement
+            Report.debug("Removing statement " + node.statement);
+            graph.removeNode(node);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Sparse conditional constant propagation phase of the IR optimisation.
+ */
+package prev.phase.optimisation.sparse_conditional_constant_propagation;
@@ -0,0 +1,88 @@
+package prev.phase.optimisation.tail_recursion_elimination;
+
+import java.util.*;
+import prev.common.report.*;
+import prev.data.lin.*;
+import prev.data.mem.*;
+import prev.data.imc.code.expr.*;
+import prev.data.imc.code.stmt.*;
+import prev.phase.optimisation.common.escape_analysis.*;
+import prev.phase.optimisation.common.tail_position.*;
+
+/**
+ * Replaces self-recursive calls in tail position with jumps to the beginning
+ * of the function body.
+ *
+ * A call is in tail position if its result is only copied between
+ * temporaries on the way to the return value and the exit label. Its
+ * arguments are evaluated into new temporaries and stored into the argument
+ * block of the current frame, where the parameters are read from, and the
+ * function body is restarted. As the frame is reused, calls are only
+ * eliminated if no address within the frame can escape, i.e., if temporaries
+ * holding such addresses are only ever used to access memory.
+ */
+public class TailRecursionElimination {
+
+    public static LinCodeChunk run(LinCodeChunk codeChunk) {
+        Vector<ImcStmt> statements = codeChunk.stmts();
+        MemFrame frame = codeChunk.frame;
+
+        if (statements.isEmpty() || !(statements.firstElement() instanceof ImcLABEL))
+            return codeChunk;
+        if (FrameEscapeAnalysis.frameAddressEscapes(statements, frame))
+            return codeChunk;
+
+        HashMap<MemLabel, Integer> labelPositions = new HashMap<MemLabel, Integer>();
+        for (int i = 0; i < statements.size(); i++)
+            if (statements.get(i) instanceof ImcLABEL)
+                labelPositions.put(((ImcLABEL) statements.get(i)).label, i);
+
+        // The body is restarted after the entry label, so the function entry
+        // does not become a loop header
+        MemLabel restartLabel = MemLabel.uniqueFromName("tailcall");
+        Vector<ImcStmt> newStatements = new Vector<ImcStmt>();
+        newStatements.add(statements.firstElement());
+        newStatements.add(new ImcLABEL(restartLabel));
+
+        boolean hasEliminated = false;
+        for (int i = 1; i < statements.size(); i++) {
+            ImcStmt statement = statements.get(i);
+            if (!isTailCall(statements, i, codeChunk, labelPositions)) {
+                newStatements.add(statement);
+                continue;
+            }
+
+            // Evaluate all arguments before overwriting any parameter
+            ImcCALL call = (ImcCALL) ((ImcMOVE) statement).src;
+            Vector<Long> offsets = call.offs();
+            Vector<ImcExpr> arguments = call.args();
+            Vector<MemTemp> values = new Vector<MemTemp>();
+            for (ImcExpr argument : arguments) {
+                MemTemp value = new MemTemp();
+                newStatements.add(new ImcMOVE(ImcTEMP.of(value), argument));
+                values.add(value);
+            }
+            for (int a = 0; a < arguments.size(); a++) {
+                ImcExpr address = ImcBINOP.of(ImcBINOP.Oper.ADD, ImcTEMP.of(frame.FP), ImcCONST.of(offsets.get(a)));
+                newStatements.add(new ImcMOVE(ImcMEM.of(address), ImcTEMP.of(values.get(a))));
+            }
+            newStatements.add(new ImcJUMP(restartLabel));
+            hasEliminated = true;
+        }
+
+        if (!hasEliminated)
+            return codeChunk;
+
+        Report.debug(String.format("Eliminated tail recursion in %s", frame.label.name));
+        return new LinCodeChunk(frame, newStatements, codeChunk.entryLabel, codeChunk.exitLabel);
+    }
+
+    /** Check whether the statement at `position` is a self-recursive call
+     * whose result is returned without any other effect */
+    private static boolean isTailCall(Vector<ImcStmt> statements, int position, LinCodeChunk codeChunk, HashMap<MemLabel, Integer> labelPositions) {
+        if (!TailPosition.isTailCall(statements, position, codeChunk, labelPositions))
+            return false;
+        return ((ImcCALL) ((ImcMOVE) statements.get(position)).src).label.equals(codeChunk.frame.label);
+    }
+
+}
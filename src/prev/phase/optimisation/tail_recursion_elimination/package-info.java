@@ -0,0 +1,4 @@
+/**
+ * Tail-recursion elimination phase of the IR optimisation.
+ */
+package prev.phase.optimisation.tail_recursion_elimination;
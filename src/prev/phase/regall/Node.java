@@ -31,6 +31,15 @@ public class Node {
         this.neighbours.remove(neighbour);
     }
 
+    /**
+     * Nodes are hashed by their temporaries, so the order in which the graph
+     * is simplified does not depend on the thread allocating the registers.
+     */
+    @Override
+    public int hashCode() {
+        return this.temporary.hashCode();
+    }
+
     @Override
     public String toString() {
         if (this.actualSpill)
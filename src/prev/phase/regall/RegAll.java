@@ -154,6 +154,9 @@ public class RegAll extends Phase {
 				boolean definesSpilledTemporary = instruction.defs().contains(spill);
 
 				if (usesSpilledTemporary || definesSpilledTemporary) {
+					// An instruction that both uses and defines the spilled
+					// temporary (e.g., NEG t,t) is rewritten only once.
+					AsmInstr newInstruction = instruction;
 					if (usesSpilledTemporary) {
 						// Each time an instruction uses the spilled variable,
 						// the variable value must first be loaded from memory.
@@ -186,11 +189,10 @@ public class RegAll extends Phase {
 
 						// Construct a new instruction that uses new temporary
 						// instruction instead of the original one
-						AsmInstr newInstruction = new AsmOPER(((AsmOPER) instruction).instr(), uses, instruction.defs(), instruction.jumps());
+						newInstruction = new AsmOPER(((AsmOPER) instruction).instr(), uses, instruction.defs(), instruction.jumps());
 
 						modifiedInstructions.addAll(loadConstantInstructions);
 						modifiedInstructions.add(loadInstruction);
-						modifiedInstructions.add(newInstruction);
 
 					}
 					if (definesSpilledTemporary) {
@@ -201,7 +203,7 @@ public class RegAll extends Phase {
 
 						Vector<MemTemp> defines = new Vector<MemTemp>();
 						defines.add(resultTemporary);
-						AsmInstr newInstruction = new AsmOPER(((AsmOPER) instruction).instr(), instruction.uses(), defines, instruction.jumps());
+						newInstruction = new AsmOPER(((AsmOPER) instruction).instr(), newInstruction.uses(), defines, instruction.jumps());
 
 						// We also need to add a new temporary for offset. To
 						// load the offset value, we can use the method
@@ -218,7 +220,9 @@ public class RegAll extends Phase {
 						modifiedInstructions.addAll(loadConstantInstructions);
 						modifiedInstructions.add(storeInstruction);
 
-					} 
+					} else {
+						modifiedInstructions.add(newInstruction);
+					}
 				} else {
 					modifiedInstructions.add(instruction);
 				}
@@ -233,53 +237,59 @@ public class RegAll extends Phase {
 	}
 
 	public void allocate() {
+		for (Code code : AsmGen.codes)
+			this.allocate(code, this.tempToReg);
+	}
 
-		for (Code code : AsmGen.codes) {
+	/**
+	 * Allocate registers of a single function, rewriting its code if any
+	 * temporaries have to be spilled.
+	 * 
+	 * @param code      The code of the function.
+	 * @param tempToReg The mapping the registers of its temporaries are added to.
+	 */
+	public void allocate(Code code, HashMap<MemTemp, Integer> tempToReg) {
+		boolean coloringFound;
+		Graph reconstructedGraph = null;
+		do {
 			
-			boolean coloringFound;
-			Graph reconstructedGraph = null;
+			// STEP 1: BUILD INTERFERENCE GRAPH
+			Graph interferenceGraph = this.build(code);
+			HashMap<Node, HashSet<Node>> edges = interferenceGraph.edges();
+			
+			Stack<Node> stack = new Stack<Node>();
 			do {
-				
-				// STEP 1: BUILD INTERFERENCE GRAPH
-				Graph interferenceGraph = this.build(code);
-				HashMap<Node, HashSet<Node>> edges = interferenceGraph.edges();
-				
-				Stack<Node> stack = new Stack<Node>();
+				// STEP 2: PERFORM ONE STEP OF SIMPLIFICATION
+				boolean hasChanged;
 				do {
-					// STEP 2: PERFORM ONE STEP OF SIMPLIFICATION
-					boolean hasChanged;
-					do {
-						hasChanged = this.simplify(interferenceGraph, stack);
-					} while (hasChanged);
-
-					// STEP 3: SPILL
-					Node removedNode = this.spill(interferenceGraph, stack);
-				} while (!interferenceGraph.isEmpty());
-
-				// STEP 4: SELECT - GRAPH COLORING
-				reconstructedGraph = new Graph();
-				Vector<MemTemp> spills = this.select(reconstructedGraph, edges, stack);
-				coloringFound = spills.size() == 0;
-
-				if (coloringFound)
-					break;
-				
-				// Coloring has not yet been found, the code must be modified
-				// STEP 5: MODIFY THE CODE
-				this.modifyCode(code, spills);
-
-			} while (!coloringFound);
-
-			// After coloring has been found, actually use register numbers to
-			// assign registers. The frame pointer was not present in the graph
-			// and is precolored to value 253.
-			this.tempToReg.put(code.frame.FP, 253);
-			for (Node node : reconstructedGraph.nodes()) {
-				this.tempToReg.put(node.temporary, node.color);
-			}
+					hasChanged = this.simplify(interferenceGraph, stack);
+				} while (hasChanged);
 
-		}
+				// STEP 3: SPILL
+				Node removedNode = this.spill(interferenceGraph, stack);
+			} while (!interferenceGraph.isEmpty());
 
+			// STEP 4: SELECT - GRAPH COLORING
+			reconstructedGraph = new Graph();
+			Vector<MemTemp> spills = this.select(reconstructedGraph, edges, stack);
+			coloringFound = spills.size() == 0;
+
+			if (coloringFound)
+				break;
+			
+			// Coloring has not yet been found, the code must be modified
+			// STEP 5: MODIFY THE CODE
+			this.modifyCode(code, spills);
+
+		} while (!coloringFound);
+
+		// After coloring has been found, actually use register numbers to
+		// assign registers. The frame pointer was not present in the graph
+		// and is precolored to value 253.
+		tempToReg.put(code.frame.FP, 253);
+		for (Node node : reconstructedGraph.nodes()) {
+			tempToReg.put(node.temporary, node.color);
+		}
 	}
 	
 	public void log() {